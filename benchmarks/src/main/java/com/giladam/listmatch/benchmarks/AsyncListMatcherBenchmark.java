@@ -0,0 +1,156 @@
+package com.giladam.listmatch.benchmarks;
+
+import java.util.HashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.giladam.listmatch.AsyncListMatcher;
+import com.giladam.listmatch.ListMatcher;
+import com.giladam.listmatch.PatternList;
+
+
+/**
+ * Compares checking values with {@link AsyncListMatcher} from many threads at once against checking them
+ * directly with {@link ListMatcher#matchesList(String, String)}.  Each async caller keeps a window of values
+ * in flight, like a reactive pipeline would, and maxBatchSize=1 shows what the queue costs without any
+ * batching.
+ *
+ * @author Gil Adam
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(16)
+public class AsyncListMatcherBenchmark {
+
+    private static final String LIST_NAME = "benchmark";
+
+    private static final int VALUE_COUNT = 3 * 1024;
+
+    private static final int WINDOW = 32;
+
+    @Param({"1", "64"})
+    public int maxBatchSize;
+
+    @Param({"EMAIL"})
+    public Corpus.Kind kind;
+
+    @Param({"100000"})
+    public int listSize;
+
+    @Param({"42"})
+    public long seed;
+
+    private ListMatcher listMatcher;
+
+    private ExecutorService executor;
+
+    private AsyncListMatcher asyncListMatcher;
+
+    private String[] values;
+
+
+    @Setup
+    public void setup() {
+
+        Corpus corpus = Corpus.generate(kind, listSize, VALUE_COUNT / 3, seed);
+
+        listMatcher = new ListMatcher(new HashMap<String,PatternList>());
+        listMatcher.replaceList(LIST_NAME, new PatternList(corpus.getPatterns(), kind.delimiter(), false));
+
+        int processors = Runtime.getRuntime().availableProcessors();
+        executor = Executors.newFixedThreadPool(processors);
+        asyncListMatcher = new AsyncListMatcher(listMatcher, executor, maxBatchSize, 0, TimeUnit.MILLISECONDS,
+                                                AsyncListMatcher.DEFAULT_QUEUE_CAPACITY, processors);
+
+        values = new String[VALUE_COUNT];
+        for (int i=0; i<VALUE_COUNT / 3; i++) {
+            values[3 * i] = corpus.getExactHits()[i];
+            values[3 * i + 1] = corpus.getWildcardHits()[i];
+            values[3 * i + 2] = corpus.getMisses()[i];
+        }
+    }
+
+
+    @TearDown
+    public void tearDown() {
+        asyncListMatcher.close();
+        executor.shutdown();
+    }
+
+
+
+    /**
+     * Each thread walks through the values on its own.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int next;
+
+        @SuppressWarnings("unchecked")
+        private final Future<Boolean>[] window = new Future[WINDOW];
+
+        int nextIndex() {
+            int index = next;
+            next = (index + 1 == VALUE_COUNT) ? 0 : index + 1;
+            return index;
+        }
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(WINDOW)
+    public int direct(Cursor cursor) {
+
+        int matches = 0;
+        for (int i=0; i<WINDOW; i++) {
+            if (listMatcher.matchesList(LIST_NAME, values[cursor.nextIndex()])) {
+                matches++;
+            }
+        }
+
+        return matches;
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(WINDOW)
+    public int async(Cursor cursor) throws InterruptedException, ExecutionException {
+
+        for (int i=0; i<WINDOW; i++) {
+            cursor.window[i] = asyncListMatcher.matchesList(LIST_NAME, values[cursor.nextIndex()]);
+        }
+
+        int matches = 0;
+        for (int i=0; i<WINDOW; i++) {
+            if (cursor.window[i].get()) {
+                matches++;
+            }
+        }
+
+        return matches;
+    }
+}
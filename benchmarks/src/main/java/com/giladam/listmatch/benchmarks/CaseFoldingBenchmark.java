@@ -0,0 +1,134 @@
+package com.giladam.listmatch.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.giladam.listmatch.MatchingMode;
+import com.giladam.listmatch.PatternList;
+
+
+/**
+ * Measures what checking values against a case-insensitive list costs, for mostly-ASCII email and URL values
+ * in mixed case.  FOLD is a case-insensitive list, which folds each ASCII value once while copying it into a
+ * buffer that is reused for the next one, and UPPER_CASE_COPY is what that used to take: upper-casing every
+ * value into a new String and checking that against a list of upper-cased patterns.  URL lists use
+ * {@link MatchingMode#URL}.  nonAsciiPercent percent of the values have a non-ASCII character, so they go
+ * through the Unicode fallback either way.
+ *
+ * @author Gil Adam
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CaseFoldingBenchmark {
+
+    private static final int VALUE_COUNT = 3 * 1024;
+
+    @Param({"FOLD", "UPPER_CASE_COPY"})
+    public String folding;
+
+    @Param({"EMAIL", "URL"})
+    public Corpus.Kind kind;
+
+    @Param({"100000"})
+    public int listSize;
+
+    @Param({"1"})
+    public int nonAsciiPercent;
+
+    @Param({"42"})
+    public long seed;
+
+    private PatternList patternList;
+
+    private boolean upperCaseCopy;
+
+    private String[] values;
+
+    private int next;
+
+
+    @Setup
+    public void setup() {
+
+        Corpus corpus = Corpus.generate(kind, listSize, VALUE_COUNT / 3, seed);
+        upperCaseCopy = "UPPER_CASE_COPY".equals(folding);
+        MatchingMode matchingMode = (kind == Corpus.Kind.URL) ? MatchingMode.URL : MatchingMode.STANDARD;
+
+        if (upperCaseCopy) {
+            List<String> upperCasePatterns = new ArrayList<>(corpus.getPatterns().size());
+            for (String pattern : corpus.getPatterns()) {
+                upperCasePatterns.add(pattern.toUpperCase(Locale.ROOT));
+            }
+            patternList = new PatternList(upperCasePatterns, kind.delimiter(), true, matchingMode);
+        } else {
+            patternList = new PatternList(corpus.getPatterns(), kind.delimiter(), false, matchingMode);
+        }
+
+        Random random = new Random(seed);
+        values = new String[VALUE_COUNT];
+        for (int i=0; i<VALUE_COUNT / 3; i++) {
+            values[3 * i] = mixCase(corpus.getExactHits()[i], random);
+            values[3 * i + 1] = mixCase(corpus.getWildcardHits()[i], random);
+            values[3 * i + 2] = mixCase(corpus.getMisses()[i], random);
+        }
+    }
+
+
+    /**
+     * Upper-cases about a third of the letters, and now and then adds a non-ASCII one at the end.
+     */
+    private String mixCase(String value, Random random) {
+
+        StringBuilder mixed = new StringBuilder(value.length() + 1);
+        for (int i=0; i<value.length(); i++) {
+            char c = value.charAt(i);
+            mixed.append(random.nextInt(3) == 0 ? Character.toUpperCase(c) : c);
+        }
+
+        if (random.nextInt(100) < nonAsciiPercent) {
+            mixed.append('é');
+        }
+
+        return mixed.toString();
+    }
+
+
+    private int nextIndex() {
+        int index = next;
+        next = (index + 1 == VALUE_COUNT) ? 0 : index + 1;
+        return index;
+    }
+
+
+    @Benchmark
+    public boolean matches() {
+
+        String value = values[nextIndex()];
+
+        if (upperCaseCopy) {
+            return patternList.matches(value.toUpperCase(Locale.ROOT));
+        }
+
+        return patternList.matches(value);
+    }
+}
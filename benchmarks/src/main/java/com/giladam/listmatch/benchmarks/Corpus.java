@@ -0,0 +1,243 @@
+package com.giladam.listmatch.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+
+/**
+ * A synthetic pattern list with values to check against it, generated from a seed so the same corpus can be
+ * made again to compare results between commits.
+ *
+ * Like most real lists, nine out of ten patterns are exact values and the rest have wildcards in them.  The
+ * values to check come in three kinds: exact hits, values that only match a wildcard pattern, and misses
+ * that match nothing (they use hosts and addresses the patterns never do).
+ *
+ * Every pattern has a host of its own unless the corpus is generated with fewer domains than patterns, in
+ * which case the patterns share them, like lists where hundreds of patterns are for the same mail provider.
+ *
+ * @author Gil Adam
+ *
+ */
+public final class Corpus {
+
+    /**
+     * The kinds of list the tests use, each with its own component delimiter.
+     */
+    public enum Kind {
+
+        EMAIL("@"),
+        IP("."),
+        URL(null);
+
+        private final String delimiter;
+
+        Kind(String delimiter) {
+            this.delimiter = delimiter;
+        }
+
+        public String delimiter() {
+            return delimiter;
+        }
+    }
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String[] TLDS = {"com", "net", "org", "io", "co.uk", "de"};
+
+    private static final String[] PATHS = {"index.html", "login", "static/app.js", "api/v1/items", "images/logo.png"};
+
+    private static final int WILDCARD_EVERY = 10;
+
+    private final Kind kind;
+
+    //how many domains the patterns share, or 0 if every pattern has its own:
+    private final int domainCount;
+
+    private final List<String> patterns;
+
+    private final String[] exactHits;
+
+    private final String[] wildcardHits;
+
+    private final String[] misses;
+
+
+    private Corpus(Kind kind, int domainCount, List<String> patterns, String[] exactHits, String[] wildcardHits, String[] misses) {
+        this.kind = kind;
+        this.domainCount = domainCount;
+        this.patterns = patterns;
+        this.exactHits = exactHits;
+        this.wildcardHits = wildcardHits;
+        this.misses = misses;
+    }
+
+
+    /**
+     * Generates a corpus of the given kind with size patterns and valueCount values of each kind to check.
+     */
+    public static Corpus generate(Kind kind, int size, int valueCount, long seed) {
+        return generate(kind, size, valueCount, seed, 0);
+    }
+
+
+    /**
+     * Generates a corpus like {@link #generate(Kind, int, int, long)} whose patterns only use domainCount
+     * different domains (or a domain each if it is 0).
+     */
+    public static Corpus generate(Kind kind, int size, int valueCount, long seed, int domainCount) {
+
+        Corpus corpus = new Corpus(kind, domainCount, new ArrayList<String>(size), new String[valueCount],
+                                   new String[valueCount], new String[valueCount]);
+        corpus.fill(size, new Random(seed));
+
+        return corpus;
+    }
+
+
+    private void fill(int size, Random random) {
+
+        List<Integer> wildcardIds = new ArrayList<>();
+        List<Integer> exactIds = new ArrayList<>();
+
+        for (int id=0; id<size; id++) {
+            if (id % WILDCARD_EVERY == WILDCARD_EVERY - 1) {
+                patterns.add(wildcardPattern(id));
+                wildcardIds.add(id);
+            } else {
+                patterns.add(exactPattern(id));
+                exactIds.add(id);
+            }
+        }
+
+        for (int i=0; i<exactHits.length; i++) {
+            exactHits[i] = exactPattern(exactIds.get(random.nextInt(exactIds.size())));
+            wildcardHits[i] = wildcardIds.isEmpty() ? exactHits[i]
+                                                    : wildcardHit(wildcardIds.get(random.nextInt(wildcardIds.size())), random);
+            misses[i] = miss(kind, random);
+        }
+    }
+
+
+    public Kind getKind() {
+        return kind;
+    }
+
+
+    public List<String> getPatterns() {
+        return patterns;
+    }
+
+
+    public String[] getExactHits() {
+        return exactHits;
+    }
+
+
+    public String[] getWildcardHits() {
+        return wildcardHits;
+    }
+
+
+    public String[] getMisses() {
+        return misses;
+    }
+
+
+    /**
+     * Writes the patterns to a file, one per line with a comment at the top, like a real pattern file.
+     */
+    public void writeTo(File file) throws IOException {
+
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), UTF_8)) {
+            writer.write("# " + patterns.size() + " generated " + kind + " patterns\n\n");
+            for (String pattern : patterns) {
+                writer.write(pattern);
+                writer.write('\n');
+            }
+        }
+    }
+
+
+    /*
+     * Every pattern is made from its id alone, so the values can be made again from the same id.  Ids are
+     * spread with a multiplier so neighbouring patterns don't share long prefixes.
+     */
+
+    private String exactPattern(int id) {
+
+        int spread = scramble(id);
+
+        switch (kind) {
+            case EMAIL:
+                return "user" + spread + "@" + domain(id);
+            case IP:
+                return ipv4(1 + (spread >>> 24) % 223, (spread >>> 16) & 0xFF, (spread >>> 8) & 0xFF, spread & 0xFF);
+            default:
+                return "http://" + domain(id) + "/" + PATHS[id % PATHS.length];
+        }
+    }
+
+
+    private String wildcardPattern(int id) {
+
+        int spread = scramble(id);
+
+        switch (kind) {
+            case EMAIL:
+                return (id % 3 == 0) ? "*@" + domain(id) : "list" + spread + "-*@" + domain(id);
+            case IP:
+                return (id % 3 == 0) ? ipv4(1 + (spread >>> 24) % 223, (spread >>> 16) & 0xFF, "*", "*")
+                                     : ipv4(1 + (spread >>> 24) % 223, (spread >>> 16) & 0xFF, (spread >>> 8) & 0xFF, "*");
+            default:
+                return (id % 3 == 0) ? "*://" + domain(id) + "/*" : "http://" + domain(id) + "/" + PATHS[id % PATHS.length] + "*";
+        }
+    }
+
+
+    private String wildcardHit(int id, Random random) {
+        return wildcardPattern(id).replace("*", wildcardFiller(kind, random));
+    }
+
+
+    private static String wildcardFiller(Kind kind, Random random) {
+        return kind == Kind.IP ? String.valueOf(random.nextInt(256)) : "x" + random.nextInt(100000);
+    }
+
+
+    private static String miss(Kind kind, Random random) {
+
+        int n = random.nextInt(Integer.MAX_VALUE);
+
+        switch (kind) {
+            case EMAIL:
+                return "user" + n + "@miss" + n + ".invalid";
+            case IP:
+                //the patterns never start above 223:
+                return ipv4(224 + n % 32, (n >>> 8) & 0xFF, (n >>> 16) & 0xFF, n & 0xFF);
+            default:
+                return "http://miss" + n + ".invalid/" + PATHS[n % PATHS.length];
+        }
+    }
+
+
+    private String domain(int id) {
+        int domainId = domainCount > 0 ? id % domainCount : id;
+        return "host" + Integer.toString(scramble(domainId) & 0x7FFFFFFF, 36) + "." + TLDS[domainId % TLDS.length];
+    }
+
+
+    private static String ipv4(Object a, Object b, Object c, Object d) {
+        return a + "." + b + "." + c + "." + d;
+    }
+
+
+    private static int scramble(int id) {
+        return (id * 0x9E3779B1) & 0x7FFFFFFF;
+    }
+}
@@ -0,0 +1,101 @@
+package com.giladam.listmatch.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.giladam.listmatch.PatternList;
+import com.giladam.listmatch.PatternListMetrics;
+
+
+/**
+ * Measures what {@link PatternListMetrics} add to {@link PatternList#matches(String)}: nothing (NONE), the
+ * outcome counts with one in 100 checks timed (COUNTS), and that plus counting the hits of each pattern
+ * (PATTERNS).  The values are an even mix of exact hits, wildcard hits and misses, checked from 4 threads
+ * at once so the counters have to cope with contention.
+ *
+ * @author Gil Adam
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class MatchMetricsBenchmark {
+
+    private static final int VALUE_COUNT = 3 * 1024;
+
+    @Param({"NONE", "COUNTS", "PATTERNS"})
+    public String metrics;
+
+    @Param({"EMAIL"})
+    public Corpus.Kind kind;
+
+    @Param({"100000"})
+    public int listSize;
+
+    @Param({"42"})
+    public long seed;
+
+    private PatternList patternList;
+
+    private String[] values;
+
+
+    @Setup
+    public void setup() {
+
+        Corpus corpus = Corpus.generate(kind, listSize, VALUE_COUNT / 3, seed);
+        patternList = new PatternList(corpus.getPatterns(), kind.delimiter(), false);
+
+        if ("COUNTS".equals(metrics)) {
+            patternList.setMatchListener(new PatternListMetrics(100, false));
+        } else if ("PATTERNS".equals(metrics)) {
+            patternList.setMatchListener(new PatternListMetrics(100, true));
+        }
+
+        values = new String[VALUE_COUNT];
+        for (int i=0; i<VALUE_COUNT / 3; i++) {
+            values[3 * i] = corpus.getExactHits()[i];
+            values[3 * i + 1] = corpus.getWildcardHits()[i];
+            values[3 * i + 2] = corpus.getMisses()[i];
+        }
+    }
+
+
+
+    /**
+     * Each thread walks through the values on its own.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int next;
+
+        int nextIndex() {
+            int index = next;
+            next = (index + 1 == VALUE_COUNT) ? 0 : index + 1;
+            return index;
+        }
+    }
+
+
+    @Benchmark
+    public boolean matches(Cursor cursor) {
+        return patternList.matches(values[cursor.nextIndex()]);
+    }
+}
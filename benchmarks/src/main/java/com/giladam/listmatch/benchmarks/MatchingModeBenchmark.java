@@ -0,0 +1,118 @@
+package com.giladam.listmatch.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.giladam.listmatch.MatchingMode;
+import com.giladam.listmatch.PatternList;
+
+
+/**
+ * Compares the wildcard evaluation of the {@link MatchingMode}s on URL style lists (no delimiter).
+ *
+ * PREFIXED lists look like "http://host/path/*", which the standard index handles well.  INFIX lists look
+ * like "*keyword*" with random keywords, which cannot be indexed and have to be scanned by the standard mode, and that is
+ * where the automaton is expected to win.
+ *
+ * @author Gil Adam
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatchingModeBenchmark {
+
+    private static final int VALUE_COUNT = 1024;
+
+    @Param({"STANDARD", "AUTOMATON"})
+    public MatchingMode mode;
+
+    @Param({"PREFIXED", "INFIX"})
+    public String shape;
+
+    @Param({"1000", "100000"})
+    public int listSize;
+
+    private PatternList patternList;
+
+    private String[] keywords;
+
+    private String[] values;
+
+    private int next;
+
+
+    @Setup
+    public void setup() {
+
+        Random random = new Random(1234);
+
+        keywords = new String[listSize];
+        for (int i=0; i<listSize; i++) {
+            keywords[i] = keyword(random);
+        }
+
+        List<String> patterns = new ArrayList<>();
+        for (int i=0; i<listSize; i++) {
+            patterns.add(pattern(i));
+        }
+
+        patternList = new PatternList(patterns, null, false, mode);
+
+        //half of the values hit some pattern, the other half miss all of them:
+        values = new String[VALUE_COUNT];
+        for (int i=0; i<VALUE_COUNT; i++) {
+            int id = random.nextInt(listSize);
+            values[i] = (i % 2 == 0) ? hit(id) : "http://www.nothing-" + id + ".org/index.html";
+        }
+    }
+
+
+    private static String keyword(Random random) {
+
+        StringBuilder sb = new StringBuilder();
+        int length = 6 + random.nextInt(6);
+
+        for (int i=0; i<length; i++) {
+            sb.append((char) ('a' + random.nextInt(26)));
+        }
+
+        return sb.toString();
+    }
+
+
+    private String pattern(int id) {
+        return "PREFIXED".equals(shape) ? "http://host" + id + ".example.com/path/*" : "*" + keywords[id] + "*";
+    }
+
+
+    private String hit(int id) {
+        return "PREFIXED".equals(shape) ? "http://host" + id + ".example.com/path/index.html"
+                                        : "http://www.example.com/" + keywords[id] + "/index.html";
+    }
+
+
+    @Benchmark
+    public boolean matches() {
+        String value = values[next];
+        next = (next + 1) & (VALUE_COUNT - 1);
+        return patternList.matches(value);
+    }
+}
@@ -0,0 +1,83 @@
+package com.giladam.listmatch.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.giladam.listmatch.ListMatcher;
+import com.giladam.listmatch.PatternList;
+
+
+/**
+ * Prints how much heap the lists built from a corpus keep, which JMH doesn't measure.  Several lists are
+ * built from their own copies of the same patterns, like the lists of a {@link ListMatcher} read from
+ * separate files, and the heap is measured after a few full collections before and after.
+ *
+ * Run it with the benchmarks jar on the class path, optionally giving how many domains the patterns share
+ * (see {@link Corpus}), which is where the components a list keeps once show up:
+ *
+ *     java -cp target/benchmarks.jar com.giladam.listmatch.benchmarks.PatternListFootprint EMAIL 1000000 4 100
+ *
+ * @author Gil Adam
+ *
+ */
+public final class PatternListFootprint {
+
+    private static final long SEED = 42;
+
+
+    private PatternListFootprint() {
+        //just run main.
+    }
+
+
+    public static void main(String[] args) throws InterruptedException {
+
+        Corpus.Kind kind = args.length > 0 ? Corpus.Kind.valueOf(args[0]) : Corpus.Kind.EMAIL;
+        int listSize = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+        int listCount = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        int domainCount = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+
+        long before = usedHeap();
+
+        List<PatternList> lists = buildLists(kind, listSize, listCount, domainCount);
+
+        long after = usedHeap();
+
+        System.out.printf("%s, %d lists of %d patterns, %s: %,d bytes per list, %.1f bytes per pattern%n",
+                          kind, lists.size(), listSize, domainCount > 0 ? domainCount + " domains" : "a domain each",
+                          (after - before) / listCount, (after - before) / (double) listCount / listSize);
+    }
+
+
+    private static List<PatternList> buildLists(Corpus.Kind kind, int listSize, int listCount, int domainCount) {
+
+        List<PatternList> lists = new ArrayList<>(listCount);
+
+        for (int i=0; i<listCount; i++) {
+            //each list gets its own copies of the patterns, like lists read from separate files:
+            List<String> patterns = new ArrayList<>(listSize);
+            for (String pattern : Corpus.generate(kind, listSize, 1, SEED, domainCount).getPatterns()) {
+                patterns.add(new String(pattern));
+            }
+            lists.add(new PatternList(patterns, kind.delimiter(), false));
+        }
+
+        return lists;
+    }
+
+
+    /**
+     * Returns the heap in use after collecting what can be collected.
+     */
+    private static long usedHeap() throws InterruptedException {
+
+        Runtime runtime = Runtime.getRuntime();
+
+        for (int i=0; i<5; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
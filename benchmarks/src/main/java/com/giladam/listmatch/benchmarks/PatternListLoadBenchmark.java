@@ -0,0 +1,109 @@
+package com.giladam.listmatch.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.giladam.listmatch.ListMatcher;
+import com.giladam.listmatch.MatchingMode;
+import com.giladam.listmatch.PatternFileLoader;
+import com.giladam.listmatch.PatternList;
+
+
+/**
+ * Measures what it costs to get a list ready: building a {@link PatternList} from patterns already in memory,
+ * on one thread or with a {@link PatternList.Builder} on a thread per processor, reading a pattern file with
+ * {@link ListMatcher#readPatternsFromFile(File)}, and both at once with {@link PatternFileLoader}.
+ *
+ * @author Gil Adam
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PatternListLoadBenchmark {
+
+    @Param({"EMAIL", "IP", "URL"})
+    public Corpus.Kind kind;
+
+    @Param({"100", "10000", "1000000", "10000000"})
+    public int listSize;
+
+    @Param({"42"})
+    public long seed;
+
+    private List<String> patterns;
+
+    private File patternsFile;
+
+    private ForkJoinPool pool;
+
+
+    @Setup
+    public void setup() throws IOException {
+
+        Corpus corpus = Corpus.generate(kind, listSize, 1, seed);
+
+        patterns = corpus.getPatterns();
+        patternsFile = File.createTempFile("listmatch-" + kind + "-" + listSize + "-", ".txt");
+        corpus.writeTo(patternsFile);
+
+        pool = new ForkJoinPool();
+    }
+
+
+    @TearDown
+    public void tearDown() {
+        patternsFile.delete();
+        pool.shutdown();
+    }
+
+
+    @Benchmark
+    public PatternList construct() {
+        return new PatternList(patterns, kind.delimiter(), false);
+    }
+
+
+    @Benchmark
+    public PatternList build() {
+        return new PatternList.Builder(patterns, kind.delimiter(), false).pool(pool).build();
+    }
+
+
+    @Benchmark
+    public Set<String> readPatternsFromFile() throws IOException {
+        return ListMatcher.readPatternsFromFile(patternsFile);
+    }
+
+
+    @Benchmark
+    public PatternList readAndConstruct() throws IOException {
+        return new PatternList(ListMatcher.readPatternsFromFile(patternsFile), kind.delimiter(), false);
+    }
+
+
+    @Benchmark
+    public PatternList patternFileLoader() throws IOException {
+        return PatternFileLoader.load(patternsFile, kind.delimiter(), false, MatchingMode.STANDARD).getPatternList();
+    }
+}
@@ -0,0 +1,97 @@
+package com.giladam.listmatch.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.giladam.listmatch.PatternList;
+
+
+/**
+ * Measures {@link PatternList#matches(String)} for exact hits, wildcard hits and misses, on email, IP and URL
+ * lists of 100 up to 10 million patterns, both case-sensitive and not.
+ *
+ * The biggest lists need a big heap to generate, e.g. -jvmArgsAppend -Xmx8g.
+ *
+ * @author Gil Adam
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PatternListMatchBenchmark {
+
+    private static final int VALUE_COUNT = 1024;
+
+    @Param({"EMAIL", "IP", "URL"})
+    public Corpus.Kind kind;
+
+    @Param({"false", "true"})
+    public boolean caseSensitive;
+
+    @Param({"100", "10000", "1000000", "10000000"})
+    public int listSize;
+
+    @Param({"42"})
+    public long seed;
+
+    private PatternList patternList;
+
+    private String[] exactHits;
+
+    private String[] wildcardHits;
+
+    private String[] misses;
+
+    private int next;
+
+
+    @Setup
+    public void setup() {
+
+        Corpus corpus = Corpus.generate(kind, listSize, VALUE_COUNT, seed);
+
+        patternList = new PatternList(corpus.getPatterns(), kind.delimiter(), caseSensitive);
+        exactHits = corpus.getExactHits();
+        wildcardHits = corpus.getWildcardHits();
+        misses = corpus.getMisses();
+    }
+
+
+    private int nextIndex() {
+        int index = next;
+        next = (next + 1) & (VALUE_COUNT - 1);
+        return index;
+    }
+
+
+    @Benchmark
+    public boolean exactHit() {
+        return patternList.matches(exactHits[nextIndex()]);
+    }
+
+
+    @Benchmark
+    public boolean wildcardHit() {
+        return patternList.matches(wildcardHits[nextIndex()]);
+    }
+
+
+    @Benchmark
+    public boolean miss() {
+        return patternList.matches(misses[nextIndex()]);
+    }
+}
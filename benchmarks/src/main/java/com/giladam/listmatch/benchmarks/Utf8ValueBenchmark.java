@@ -0,0 +1,140 @@
+package com.giladam.listmatch.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.giladam.listmatch.MatchingMode;
+import com.giladam.listmatch.PatternList;
+
+
+/**
+ * Measures checking the same mixed-case ASCII email and URL values against a case-insensitive list when they
+ * come as Strings (STRING), as slices of a byte array (BYTE_ARRAY), or as slices of a direct ByteBuffer
+ * (DIRECT_BUFFER), so the copy a direct buffer's bytes get before they are checked can be weighed against the
+ * other two.  The values are an even mix of exact hits, wildcard hits and misses.
+ *
+ * @author Gil Adam
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Utf8ValueBenchmark {
+
+    private static final int VALUE_COUNT = 3 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Param({"STRING", "BYTE_ARRAY", "DIRECT_BUFFER"})
+    public String source;
+
+    @Param({"EMAIL", "URL"})
+    public Corpus.Kind kind;
+
+    @Param({"100000"})
+    public int listSize;
+
+    @Param({"42"})
+    public long seed;
+
+    private PatternList patternList;
+
+    private String[] values;
+
+    //every value one after the other, with where each one starts:
+    private byte[] bytes;
+    private int[] offsets;
+
+    private ByteBuffer[] directValues;
+
+    private int next;
+
+
+    @Setup
+    public void setup() {
+
+        Corpus corpus = Corpus.generate(kind, listSize, VALUE_COUNT / 3, seed);
+        MatchingMode matchingMode = (kind == Corpus.Kind.URL) ? MatchingMode.URL : MatchingMode.STANDARD;
+        patternList = new PatternList(corpus.getPatterns(), kind.delimiter(), false, matchingMode);
+
+        Random random = new Random(seed);
+        values = new String[VALUE_COUNT];
+        for (int i=0; i<VALUE_COUNT / 3; i++) {
+            values[3 * i] = mixCase(corpus.getExactHits()[i], random);
+            values[3 * i + 1] = mixCase(corpus.getWildcardHits()[i], random);
+            values[3 * i + 2] = mixCase(corpus.getMisses()[i], random);
+        }
+
+        offsets = new int[VALUE_COUNT + 1];
+        for (int i=0; i<VALUE_COUNT; i++) {
+            offsets[i + 1] = offsets[i] + values[i].getBytes(UTF_8).length;
+        }
+
+        bytes = new byte[offsets[VALUE_COUNT]];
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        directValues = new ByteBuffer[VALUE_COUNT];
+
+        for (int i=0; i<VALUE_COUNT; i++) {
+            byte[] valueBytes = values[i].getBytes(UTF_8);
+            System.arraycopy(valueBytes, 0, bytes, offsets[i], valueBytes.length);
+            direct.put(valueBytes);
+        }
+
+        for (int i=0; i<VALUE_COUNT; i++) {
+            direct.limit(offsets[i + 1]).position(offsets[i]);
+            directValues[i] = direct.slice();
+        }
+    }
+
+
+    private static String mixCase(String value, Random random) {
+
+        StringBuilder mixed = new StringBuilder(value.length());
+        for (int i=0; i<value.length(); i++) {
+            char c = value.charAt(i);
+            mixed.append(random.nextInt(3) == 0 ? Character.toUpperCase(c) : c);
+        }
+
+        return mixed.toString();
+    }
+
+
+    private int nextIndex() {
+        int index = next;
+        next = (index + 1 == VALUE_COUNT) ? 0 : index + 1;
+        return index;
+    }
+
+
+    @Benchmark
+    public boolean matches() {
+
+        int index = nextIndex();
+
+        switch (source) {
+            case "BYTE_ARRAY":
+                return patternList.matchesUtf8(bytes, offsets[index], offsets[index + 1] - offsets[index]);
+            case "DIRECT_BUFFER":
+                return patternList.matchesUtf8(directValues[index]);
+            default:
+                return patternList.matches(values[index]);
+        }
+    }
+}
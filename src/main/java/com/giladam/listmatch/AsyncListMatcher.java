@@ -0,0 +1,467 @@
+package com.giladam.listmatch;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Checks values against the lists of a {@link ListMatcher} on an executor instead of the calling thread,
+ * for callers that can't block, like the event loops of a reactive service.
+ *
+ * Values to check are put in a bounded queue, and each is answered through a Future or a
+ * {@link MatchCallback}.  A few tasks on the executor (no more than maxConcurrentBatches at a time) take
+ * whatever is in the queue, up to maxBatchSize values at once, and check each list's values together with
+ * {@link PatternList#matchesAll(List)}.  A task is started as soon as a value is queued and none is
+ * running, so under light load every value is checked right away.  Under heavy load values pile up while
+ * the tasks are busy, so they are checked in bigger batches.  If maxWait is above zero, a task that finds a
+ * partly full batch waits up to that long for more values before checking it.  This trades that much latency
+ * for bigger batches.
+ *
+ * When the queue is full, {@link #matchesList(String, String)} waits for room, which slows down whoever is
+ * producing the values, and {@link #tryMatchesList(String, String)} returns null right away instead.  If the
+ * executor rejects the task for a value, the value isn't queued and the executor's exception is thrown, and
+ * any values that are left with no task to check them fail with that exception instead of waiting.
+ *
+ * @author Gil Adam
+ *
+ */
+public class AsyncListMatcher implements Closeable {
+
+    private static Logger log = LoggerFactory.getLogger(AsyncListMatcher.class);
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 64;
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 8192;
+
+    private final ListMatcher listMatcher;
+
+    private final Executor executor;
+
+    private final int maxBatchSize;
+
+    private final long maxWaitNanos;
+
+    private final int maxConcurrentBatches;
+
+    private final BlockingQueue<MatchRequest> queue;
+
+    private final AtomicInteger runningTasks = new AtomicInteger();
+
+    private final Runnable checkQueuedValues = new Runnable() {
+        @Override
+        public void run() {
+            checkQueuedValues();
+        }
+    };
+
+    private volatile boolean closed;
+
+
+    /**
+     * Creates a new AsyncListMatcher with the default batch size and queue capacity, that doesn't wait for
+     * batches to fill up and runs up to as many batches at once as there are processors.
+     *
+     * @param listMatcher The ListMatcher whose lists the values are checked against.
+     * @param executor Where the values are checked.
+     */
+    public AsyncListMatcher(ListMatcher listMatcher, Executor executor) {
+        this(listMatcher, executor, DEFAULT_MAX_BATCH_SIZE, 0, TimeUnit.MILLISECONDS, DEFAULT_QUEUE_CAPACITY,
+             Runtime.getRuntime().availableProcessors());
+    }
+
+
+    /**
+     * Creates a new AsyncListMatcher.
+     *
+     * @param listMatcher The ListMatcher whose lists the values are checked against.
+     * @param executor Where the values are checked.
+     * @param maxBatchSize The most values checked together.
+     * @param maxWait How long to wait for a batch to fill up, or 0 to check whatever is queued right away.
+     * @param unit The unit of maxWait.
+     * @param queueCapacity The most values that can be waiting to be checked.
+     * @param maxConcurrentBatches The most batches checked at the same time, which is how many threads of the
+     *                             executor this uses at most.
+     */
+    public AsyncListMatcher(ListMatcher listMatcher, Executor executor, int maxBatchSize, long maxWait, TimeUnit unit,
+                            int queueCapacity, int maxConcurrentBatches) {
+
+        if (maxBatchSize < 1 || maxWait < 0 || queueCapacity < 1 || maxConcurrentBatches < 1) {
+            throw new IllegalArgumentException("maxBatchSize, queueCapacity and maxConcurrentBatches must be positive, "
+                                               + "and maxWait can't be negative");
+        }
+
+        this.listMatcher = Objects.requireNonNull(listMatcher, "listMatcher");
+        this.executor = Objects.requireNonNull(executor, "executor");
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitNanos = unit.toNanos(maxWait);
+        this.maxConcurrentBatches = maxConcurrentBatches;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+
+    /**
+     * Queues a value to be checked against the list specified by name, waiting for room if the queue is full.
+     * The result is the same as {@link ListMatcher#matchesList(String, String)}.
+     *
+     * @param listName The case-sensitive name of the list to test with.
+     * @param valueToTest The value to check for matching against the list.
+     * @return The result, once the value has been checked.
+     * @throws InterruptedException If interrupted while waiting for room in the queue.
+     * @throws IllegalStateException If this AsyncListMatcher was closed.
+     */
+    public Future<Boolean> matchesList(String listName, String valueToTest) throws InterruptedException {
+
+        MatchRequest request = new MatchRequest(listName, valueToTest, null);
+        ensureOpen();
+        queue.put(request);
+        startTaskFor(request);
+
+        return request;
+    }
+
+
+    /**
+     * Queues a value to be checked against the list specified by name like
+     * {@link #matchesList(String, String)}, and tells the callback the result.
+     *
+     * @param listName The case-sensitive name of the list to test with.
+     * @param valueToTest The value to check for matching against the list.
+     * @param callback Told the result on a thread of the executor.
+     * @throws InterruptedException If interrupted while waiting for room in the queue.
+     * @throws IllegalStateException If this AsyncListMatcher was closed.
+     */
+    public void matchesList(String listName, String valueToTest, MatchCallback callback) throws InterruptedException {
+
+        MatchRequest request = new MatchRequest(listName, valueToTest, Objects.requireNonNull(callback, "callback"));
+        ensureOpen();
+        queue.put(request);
+        startTaskFor(request);
+    }
+
+
+    /**
+     * Queues a value to be checked like {@link #matchesList(String, String)}, unless the queue is full.
+     *
+     * @param listName The case-sensitive name of the list to test with.
+     * @param valueToTest The value to check for matching against the list.
+     * @return The result, once the value has been checked, or null if the queue was full.
+     * @throws IllegalStateException If this AsyncListMatcher was closed.
+     */
+    public Future<Boolean> tryMatchesList(String listName, String valueToTest) {
+
+        MatchRequest request = new MatchRequest(listName, valueToTest, null);
+        ensureOpen();
+
+        if (!queue.offer(request)) {
+            return null;
+        }
+
+        startTaskFor(request);
+
+        return request;
+    }
+
+
+    /**
+     * Returns how many values are waiting to be checked.
+     */
+    public int getQueuedCount() {
+        return queue.size();
+    }
+
+
+    /**
+     * Stops taking new values.  Values already queued are still checked.  The executor belongs to the
+     * caller, so it is left alone.
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+    }
+
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("AsyncListMatcher is closed");
+        }
+    }
+
+
+    /**
+     * Starts another task to check the queued values if there aren't already as many as allowed.  If the
+     * executor won't take the task and no other task is running, the values that are still queued fail with
+     * the executor's exception, since nothing would check them until another value came along.
+     *
+     * @param request The value that was just queued, which is taken back out if the executor won't take
+     *                the task and no running task took it already, or null if there is none.
+     */
+    private void startTaskFor(MatchRequest request) {
+
+        while (!queue.isEmpty()) {
+
+            int running = runningTasks.get();
+            if (running >= maxConcurrentBatches) {
+                return;
+            }
+
+            if (runningTasks.compareAndSet(running, running + 1)) {
+                try {
+                    executor.execute(checkQueuedValues);
+                } catch (RejectedExecutionException e) {
+                    runningTasks.decrementAndGet();
+                    if (request != null && queue.remove(request)) {
+                        failStrandedValues(e);
+                        throw e;
+                    }
+                    log.warn("Executor rejected a task to check queued values", e);
+                    failStrandedValues(e);
+                }
+                return;
+            }
+        }
+    }
+
+
+    /**
+     * Fails the queued values if there is no task left to check them.
+     */
+    private void failStrandedValues(RejectedExecutionException cause) {
+
+        if (runningTasks.get() > 0) {
+            return;
+        }
+
+        List<MatchRequest> stranded = new ArrayList<>();
+        queue.drainTo(stranded);
+
+        for (MatchRequest request : stranded) {
+            request.failed(cause);
+        }
+    }
+
+
+    /**
+     * Checks batches of queued values until the queue is empty.
+     */
+    private void checkQueuedValues() {
+
+        List<MatchRequest> batch = new ArrayList<>(maxBatchSize);
+
+        try {
+            while (takeBatch(batch)) {
+                check(batch);
+                batch.clear();
+            }
+        } finally {
+            runningTasks.decrementAndGet();
+        }
+
+        //a value may have been queued after the queue was found empty but before this task stopped counting:
+        startTaskFor(null);
+    }
+
+
+    /**
+     * Takes up to maxBatchSize queued values, waiting up to maxWait for more if there are some but not that
+     * many.  Returns false if there were none.
+     */
+    private boolean takeBatch(List<MatchRequest> batch) {
+
+        queue.drainTo(batch, maxBatchSize);
+
+        if (batch.isEmpty()) {
+            return false;
+        }
+
+        long deadline = System.nanoTime() + maxWaitNanos;
+
+        try {
+            while (maxWaitNanos > 0 && batch.size() < maxBatchSize) {
+
+                long remaining = deadline - System.nanoTime();
+                MatchRequest request = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+
+                if (request == null) {
+                    break;
+                }
+
+                batch.add(request);
+                queue.drainTo(batch, maxBatchSize - batch.size());
+            }
+        } catch (InterruptedException e) {
+            //check what was taken so far, and leave the interrupt for the executor:
+            Thread.currentThread().interrupt();
+        }
+
+        return true;
+    }
+
+
+    private void check(List<MatchRequest> batch) {
+
+        Map<String,List<MatchRequest>> requestsByListName = new LinkedHashMap<>();
+
+        for (MatchRequest request : batch) {
+            List<MatchRequest> requestsForList = requestsByListName.get(request.listName);
+            if (requestsForList == null) {
+                requestsForList = new ArrayList<>();
+                requestsByListName.put(request.listName, requestsForList);
+            }
+            requestsForList.add(request);
+        }
+
+        for (Map.Entry<String,List<MatchRequest>> requestsForList : requestsByListName.entrySet()) {
+
+            List<MatchRequest> requests = requestsForList.getValue();
+
+            try {
+                List<String> values = new ArrayList<>(requests.size());
+                for (MatchRequest request : requests) {
+                    values.add(request.value);
+                }
+
+                BitSet matches = listMatcher.matchesListBatch(requestsForList.getKey(), values);
+
+                for (int i=0; i<requests.size(); i++) {
+                    requests.get(i).checked(matches.get(i));
+                }
+            } catch (Throwable t) {
+                //whatever it was, nobody may be left waiting for the values that weren't checked:
+                if (t instanceof Error) {
+                    log.error("Checking a batch for list [{}] failed", requestsForList.getKey(), t);
+                }
+                for (MatchRequest request : requests) {
+                    request.failed(t);
+                }
+            }
+        }
+    }
+
+
+
+    /**
+     * A value waiting to be checked, which is also the Future for its result.
+     */
+    private static final class MatchRequest implements Future<Boolean> {
+
+        private final String listName;
+
+        private final String value;
+
+        private final MatchCallback callback;
+
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private volatile boolean matches;
+
+        private volatile Throwable failure;
+
+
+        MatchRequest(String listName, String value, MatchCallback callback) {
+            this.listName = listName;
+            this.value = value;
+            this.callback = callback;
+        }
+
+
+        void checked(boolean matches) {
+
+            this.matches = matches;
+            done.countDown();
+
+            if (callback != null) {
+                try {
+                    callback.checked(listName, value, matches);
+                } catch (Throwable t) {
+                    log.warn("Match callback failed for list [{}]", listName, t);
+                }
+            }
+        }
+
+
+        void failed(Throwable cause) {
+
+            if (done.getCount() == 0) {
+                return;
+            }
+
+            this.failure = cause;
+            done.countDown();
+
+            if (callback != null) {
+                try {
+                    callback.failed(listName, value, cause);
+                } catch (Throwable t) {
+                    log.warn("Match callback failed for list [{}]", listName, t);
+                }
+            }
+        }
+
+
+        /**
+         * Values are checked in batches, so one can't be cancelled once it is queued.
+         */
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return false;
+        }
+
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+
+        @Override
+        public boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+
+        @Override
+        public Boolean get() throws InterruptedException, ExecutionException {
+            done.await();
+            return result();
+        }
+
+
+        @Override
+        public Boolean get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+
+            if (!done.await(timeout, unit)) {
+                throw new TimeoutException();
+            }
+
+            return result();
+        }
+
+
+        private Boolean result() throws ExecutionException {
+
+            if (failure != null) {
+                throw new ExecutionException(failure);
+            }
+
+            return matches;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.giladam.listmatch;
+
+import java.util.Locale;
+
+
+/**
+ * How case-insensitive lists fold case, the same way for patterns as for values and whatever the default
+ * locale is.
+ *
+ * ASCII text is folded one character at a time with plain arithmetic, as a {@link MatchValue} copies it into
+ * its reused buffer, so no folded String is ever made for it.  Only text with other characters is upper-cased
+ * into a new String, with the rules of {@link Locale#ROOT}, since those can't be folded correctly one at a
+ * time (e.g. "ß" becomes "SS").
+ * The default locale is never used, so a list matches the same in a JVM started in Turkey, where "i" would
+ * otherwise become "İ" instead of "I".
+ *
+ * @author Gil Adam
+ *
+ */
+final class CaseFolding {
+
+    private static final int ASCII_LIMIT = 0x80;
+
+    private static final int CASE_OFFSET = 'a' - 'A';
+
+    private static final int LETTER_COUNT = 'z' - 'a' + 1;
+
+
+    private CaseFolding() {
+    }
+
+
+    /**
+     * Returns true if the character is ASCII, so it can be folded on its own.
+     */
+    static boolean isAscii(char c) {
+        return c < ASCII_LIMIT;
+    }
+
+
+    /**
+     * Returns true if every character of the text is ASCII, so it can be folded one character at a time.
+     */
+    static boolean isAscii(CharSequence text) {
+
+        for (int i=0; i<text.length(); i++) {
+            if (!isAscii(text.charAt(i))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Folds one ASCII character, which leaves everything but a to z as it is.
+     */
+    static char foldAscii(char c) {
+        //characters below 'a' wrap around to big ones, so a single comparison tells if c is from a to z:
+        return (char) (c - 'a') < LETTER_COUNT ? (char) (c - CASE_OFFSET) : c;
+    }
+
+
+    /**
+     * Folds a whole String, returning the same String if it has nothing to fold.
+     *
+     * @param text
+     * @return
+     */
+    static String fold(String text) {
+
+        if (!isAscii(text)) {
+            return text.toUpperCase(Locale.ROOT);
+        }
+
+        int firstLowerCase = 0;
+        while (firstLowerCase < text.length() && foldAscii(text.charAt(firstLowerCase)) == text.charAt(firstLowerCase)) {
+            firstLowerCase++;
+        }
+
+        if (firstLowerCase == text.length()) {
+            return text;
+        }
+
+        char[] chars = text.toCharArray();
+        for (int i=firstLowerCase; i<chars.length; i++) {
+            chars[i] = foldAscii(chars[i]);
+        }
+
+        return new String(chars);
+    }
+}
@@ -0,0 +1,116 @@
+package com.giladam.listmatch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * The multi-component patterns of a {@link WildcardIndex} that all have the same number of components,
+ * hashed on one of their fully literal components.
+ *
+ * An email pattern like "SALES*@EXAMPLE.COM" is kept under "EXAMPLE.COM" for the second component, so
+ * checking "X@EXAMPLE.COM" only has to look at the patterns for that domain, and doesn't have to compare
+ * the domain again for each of them.  Patterns that have a wildcard in every component cannot be hashed
+ * and are checked one by one.
+ *
+ * Patterns may be added while other threads are checking values, since every bucket is replaced by a
+ * copy with the new pattern rather than changed in place.
+ *
+ * @author Gil Adam
+ *
+ */
+final class ComponentPartition {
+
+    private static final PatternListEntry[] NO_ENTRIES = new PatternListEntry[0];
+
+    private final int componentCount;
+
+    private final List<LiteralTable<PatternListEntry[]>> byLiteralComponent;
+
+    private volatile PatternListEntry[] unkeyed = NO_ENTRIES;
+
+
+    ComponentPartition(int componentCount) {
+
+        this.componentCount = componentCount;
+        this.byLiteralComponent = new ArrayList<>(componentCount);
+
+        for (int i=0; i<componentCount; i++) {
+            byLiteralComponent.add(new LiteralTable<PatternListEntry[]>());
+        }
+    }
+
+
+    void add(PatternListEntry entry) {
+
+        String[] components = entry.getComponents();
+
+        //the longest literal component is the most likely to tell patterns apart:
+        int keyComponent = -1;
+        for (int i=0; i<components.length; i++) {
+            if (!components[i].contains(PatternList.WILDCARD)
+                    && (keyComponent < 0 || components[i].length() > components[keyComponent].length())) {
+                keyComponent = i;
+            }
+        }
+
+        if (keyComponent < 0) {
+            unkeyed = append(unkeyed, entry);
+        } else {
+            LiteralTable<PatternListEntry[]> bucketsForComponent = byLiteralComponent.get(keyComponent);
+            PatternListEntry[] bucket = bucketsForComponent.get(components[keyComponent]);
+            bucketsForComponent.put(components[keyComponent], append(bucket == null ? NO_ENTRIES : bucket, entry));
+        }
+    }
+
+
+    private static PatternListEntry[] append(PatternListEntry[] entries, PatternListEntry entry) {
+        PatternListEntry[] newEntries = Arrays.copyOf(entries, entries.length + 1);
+        newEntries[entries.length] = entry;
+        return newEntries;
+    }
+
+
+    /**
+     * Returns the first pattern found that matches all of the value's components and isn't removed, or
+     * null if none do.
+     *
+     * @param value Must have exactly as many components as the patterns in this partition.
+     * @param removed
+     * @return
+     */
+    PatternListEntry findMatch(MatchValue value, Set<PatternListEntry> removed) {
+
+        for (int i=0; i<componentCount; i++) {
+
+            PatternListEntry[] bucket = byLiteralComponent.get(i).get(value, value.componentStart(i), value.componentEnd(i));
+
+            if (bucket != null) {
+                PatternListEntry match = findMatch(bucket, value, i, removed);
+                if (match != null) {
+                    return match;
+                }
+            }
+        }
+
+        return findMatch(unkeyed, value, -1, removed);
+    }
+
+
+    /**
+     * Checks the entries in a bucket, whose key component (if any) was already found to equal the value's.
+     */
+    private static PatternListEntry findMatch(PatternListEntry[] entries, MatchValue value, int keyComponent,
+                                              Set<PatternListEntry> removed) {
+
+        for (int i=0; i<entries.length; i++) {
+            if (Wildcards.componentsMatch(value, entries[i].getComponents(), keyComponent) && !removed.contains(entries[i])) {
+                return entries[i];
+            }
+        }
+
+        return null;
+    }
+}
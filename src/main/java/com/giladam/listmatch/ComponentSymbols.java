@@ -0,0 +1,69 @@
+package com.giladam.listmatch;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * A table of the literal components of the wildcard patterns of one list while its wildcard patterns are
+ * compiled, so a component like "GMAIL.COM" that hundreds of its patterns have in common is only kept once.
+ * The table is a plain map that is dropped as soon as the list is built, so it costs nothing afterwards and
+ * never holds on to anything for lists that are gone.  Patterns added to a list later keep their own.
+ *
+ * Components with a wildcard in them (like "SALES*") are usually different in every pattern and aren't
+ * worth keeping in the table, apart from a component that is just a wildcard, which is always
+ * {@link PatternList#WILDCARD} itself.
+ *
+ * Only one thread may use a table.
+ *
+ * @author Gil Adam
+ *
+ */
+final class ComponentSymbols {
+
+    private final Map<String,String> symbols = new HashMap<>();
+
+
+    /**
+     * Makes every entry use the same instance for each literal component they have in common.  Must be
+     * called before the entries are used by anything else.
+     *
+     * @param entries
+     */
+    static void internAll(Collection<PatternListEntry> entries) {
+
+        ComponentSymbols symbols = new ComponentSymbols();
+
+        for (PatternListEntry entry : entries) {
+            entry.internComponents(symbols);
+        }
+    }
+
+
+    /**
+     * Returns the component, or the instance already in the table that is equal to it.
+     *
+     * @param component
+     * @return
+     */
+    String intern(String component) {
+
+        if (component.equals(PatternList.WILDCARD)) {
+            return PatternList.WILDCARD;
+        }
+
+        if (component.indexOf(PatternList.WILDCARD_CHAR) >= 0) {
+            return component;
+        }
+
+        String symbol = symbols.get(component);
+
+        if (symbol == null) {
+            symbol = component;
+            symbols.put(symbol, symbol);
+        }
+
+        return symbol;
+    }
+}
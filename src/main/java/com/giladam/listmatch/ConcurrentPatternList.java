@@ -0,0 +1,131 @@
+package com.giladam.listmatch;
+
+import java.util.Collection;
+import java.util.Collections;
+
+
+/**
+ * A {@link PatternList} that patterns can be added to and removed from while it is being used.
+ *
+ * Exact patterns go straight into (or out of) the exact matches.  New wildcard patterns go into an index of
+ * their own that grows in place, and removed ones are passed over by every check until the wildcard
+ * patterns are next compiled, which only happens once the changes come to a fraction of all of them, so
+ * the cost of that is spread out over many changes.
+ *
+ * Checking values never locks and never waits for a change; a check sees every change that finished
+ * before it started.  Changes are made one at a time.
+ *
+ * @author Gil Adam
+ *
+ */
+public class ConcurrentPatternList extends PatternList {
+
+    /**
+     * Creates a new ConcurrentPatternList initialized with the patterns given.
+     *
+     * @param patternsToLoad
+     *   Values for patterns to match against (may be null to start empty).
+     * @param componentDelimiter
+     *   The delimited to use if a pattern can have multiple components, such as an email with a 'domainpart' and 'localpart'.
+     * @param caseSensitive
+     *   If false, all matching will be performed in a case-insensitive manner.
+     */
+    public ConcurrentPatternList(Collection<String> patternsToLoad, String componentDelimiter, boolean caseSensitive) {
+        super(patternsToLoad, componentDelimiter, caseSensitive);
+    }
+
+
+    /**
+     * Creates a new ConcurrentPatternList initialized with the patterns given, using the given
+     * {@link MatchingMode} to evaluate the wildcard patterns.
+     *
+     * @param patternsToLoad
+     *   Values for patterns to match against (may be null to start empty).
+     * @param componentDelimiter
+     *   The delimited to use if a pattern can have multiple components, such as an email with a 'domainpart' and 'localpart'.
+     * @param caseSensitive
+     *   If false, all matching will be performed in a case-insensitive manner.
+     * @param matchingMode
+     *   How the wildcard patterns should be evaluated.
+     */
+    public ConcurrentPatternList(Collection<String> patternsToLoad, String componentDelimiter, boolean caseSensitive, MatchingMode matchingMode) {
+        super(patternsToLoad, componentDelimiter, caseSensitive, matchingMode);
+    }
+
+
+    /**
+     * Creates a new ConcurrentPatternList initialized with the patterns given, using the given
+     * {@link MatchingMode} to evaluate the wildcard patterns and caching the results of up to resultCacheSize
+     * values.  The cache is cleared whenever the patterns change.
+     *
+     * @param patternsToLoad
+     *   Values for patterns to match against (may be null to start empty).
+     * @param componentDelimiter
+     *   The delimited to use if a pattern can have multiple components, such as an email with a 'domainpart' and 'localpart'.
+     * @param caseSensitive
+     *   If false, all matching will be performed in a case-insensitive manner.
+     * @param matchingMode
+     *   How the wildcard patterns should be evaluated.
+     * @param resultCacheSize
+     *   The most results to cache, or 0 for no cache.
+     */
+    public ConcurrentPatternList(Collection<String> patternsToLoad, String componentDelimiter, boolean caseSensitive, MatchingMode matchingMode,
+                                 int resultCacheSize) {
+        super(patternsToLoad, componentDelimiter, caseSensitive, matchingMode, resultCacheSize);
+    }
+
+
+    /**
+     * Adds a pattern.
+     *
+     * @param pattern
+     * @return true if the pattern was not in the list already.
+     */
+    public synchronized boolean add(String pattern) {
+        return updatePatterns(Collections.singleton(pattern), Collections.<String>emptySet());
+    }
+
+
+    /**
+     * Removes a pattern.  Patterns are compared after normalizing them, so for a case-insensitive list
+     * "USER@EXAMPLE.COM" removes "user@example.com".
+     *
+     * @param pattern
+     * @return true if the pattern was in the list.
+     */
+    public synchronized boolean remove(String pattern) {
+        return updatePatterns(Collections.<String>emptySet(), Collections.singleton(pattern));
+    }
+
+
+    /**
+     * Adds and removes many patterns at once, which is cheaper than doing them one at a time because the
+     * wildcard patterns are compiled at most once.  Removals are applied first, so a pattern in both
+     * collections ends up in the list.  A check that runs at the same time may see some of the changes
+     * before the others.
+     *
+     * @param patternsToAdd
+     * @param patternsToRemove
+     * @return true if anything changed.
+     */
+    public synchronized boolean applyChanges(Collection<String> patternsToAdd, Collection<String> patternsToRemove) {
+        return updatePatterns(patternsToAdd, patternsToRemove);
+    }
+
+
+    /**
+     * Returns true if the pattern is in the list, after normalizing it.
+     *
+     * @param pattern
+     * @return
+     */
+    public synchronized boolean contains(String pattern) {
+        return containsPattern(pattern);
+    }
+
+
+    @Override
+    public synchronized int size() {
+        return super.size();
+    }
+}
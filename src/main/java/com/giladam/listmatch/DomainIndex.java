@@ -0,0 +1,168 @@
+package com.giladam.listmatch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * The {@link WildcardMatcher} used for {@link MatchingMode#DOMAIN}.
+ *
+ * The last component of every pattern is treated as a domain name (the domain part of an email address,
+ * or the whole value when there is no delimiter).  Patterns are filed in a trie of domain labels read from
+ * the top level down, so "*.EXAMPLE.COM" lives under COM, then EXAMPLE.  Checking a value walks its domain
+ * one label at a time from the end and only fully checks the patterns filed along that path.
+ *
+ * A pattern is filed under the whole labels at the end of its domain: a literal domain under all of its
+ * labels, and a domain with wildcards under the labels that follow the first '.' after its last wildcard
+ * ("*.MAIL.EXAMPLE.COM" and "*MAIL.EXAMPLE.COM" both end up under COM, EXAMPLE).  Any value that
+ * matches such a pattern must end with those same labels, so nothing is missed.  Patterns that do not
+ * end with a whole label (like "JOHN@*" or "*.EXAMPLE.*") are handed to a {@link WildcardIndex} instead.
+ *
+ * @author Gil Adam
+ *
+ */
+final class DomainIndex implements WildcardMatcher {
+
+    static final char LABEL_SEPARATOR = '.';
+
+    private final LabelNode root = new LabelNode();
+
+    private final WildcardIndex fallback;
+
+
+    DomainIndex(Collection<PatternListEntry> entries) {
+
+        List<PatternListEntry> initFallback = new ArrayList<>();
+
+        for (PatternListEntry entry : entries) {
+
+            String[] components = entry.getComponents();
+            String[] keyLabels = components.length == 0 ? null : keyLabels(components[components.length - 1]);
+
+            if (keyLabels == null) {
+                initFallback.add(entry);
+                continue;
+            }
+
+            LabelNode node = root;
+            for (int i=keyLabels.length - 1; i>=0; i--) {
+                node = node.childFor(keyLabels[i]);
+            }
+
+            node.addEntry(entry);
+        }
+
+        this.fallback = new WildcardIndex(initFallback);
+    }
+
+
+    /**
+     * Returns the whole labels a domain pattern must end with, or null if it doesn't end with any.
+     */
+    private static String[] keyLabels(String domainPattern) {
+
+        String wholeLabels;
+        int lastWildcard = domainPattern.lastIndexOf(PatternList.WILDCARD_CHAR);
+
+        if (lastWildcard < 0) {
+            wholeLabels = domainPattern;
+        } else {
+            int labelStart = domainPattern.indexOf(LABEL_SEPARATOR, lastWildcard);
+            if (labelStart < 0) {
+                return null;
+            }
+            wholeLabels = domainPattern.substring(labelStart + 1);
+        }
+
+        //split with a negative limit so empty labels are kept the same way they are in values:
+        return wholeLabels.split("\\.", -1);
+    }
+
+
+    @Override
+    public PatternListEntry findMatch(MatchValue value) {
+        return findMatch(value, Collections.<PatternListEntry>emptySet());
+    }
+
+
+    @Override
+    public PatternListEntry findMatch(MatchValue value, Set<PatternListEntry> removed) {
+
+        int componentCount = value.componentCount();
+
+        if (componentCount == 0) {
+            return null;
+        }
+
+        int domainStart = value.componentStart(componentCount - 1);
+        int labelEnd = value.componentEnd(componentCount - 1);
+
+        LabelNode node = root;
+
+        while (node != null && labelEnd >= domainStart) {
+
+            int labelStart = labelEnd;
+            while (labelStart > domainStart && value.charAt(labelStart - 1) != LABEL_SEPARATOR) {
+                labelStart--;
+            }
+
+            node = node.children.get(value, labelStart, labelEnd);
+
+            if (node != null) {
+                PatternListEntry match = node.findMatch(value, removed);
+                if (match != null) {
+                    return match;
+                }
+            }
+
+            labelEnd = labelStart - 1;
+        }
+
+        return fallback.findMatch(value, removed);
+    }
+
+
+
+    private static final class LabelNode {
+
+        private final LiteralTable<LabelNode> children = new LiteralTable<>();
+
+        private PatternListEntry[] entries = new PatternListEntry[0];
+
+
+        LabelNode childFor(String label) {
+
+            LabelNode child = children.get(label);
+
+            if (child == null) {
+                child = new LabelNode();
+                children.put(label, child);
+            }
+
+            return child;
+        }
+
+
+        void addEntry(PatternListEntry entry) {
+            PatternListEntry[] newEntries = Arrays.copyOf(entries, entries.length + 1);
+            newEntries[entries.length] = entry;
+            this.entries = newEntries;
+        }
+
+
+        PatternListEntry findMatch(MatchValue value, Set<PatternListEntry> removed) {
+
+            for (int i=0; i<entries.length; i++) {
+                if (Wildcards.componentsMatch(value, entries[i].getComponents()) && !removed.contains(entries[i])) {
+                    return entries[i];
+                }
+            }
+
+            return null;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.giladam.listmatch;
+
+
+/**
+ * A {@link WildcardMatcher} that patterns can be added to while other threads are checking values with it,
+ * which is how {@link WildcardPatterns} keeps the patterns added since its last full compile.
+ *
+ * Adding a pattern only changes the part of the matcher it is filed under, copying what it changes instead
+ * of changing it in place, so a check that is running sees the matcher from before or after the pattern was
+ * added, never anything in between.  Only one thread may add patterns at a time.
+ *
+ * @author Gil Adam
+ *
+ */
+interface GrowableMatcher extends WildcardMatcher {
+
+    /**
+     * Adds a pattern, which every check that starts after this returns will see.
+     *
+     * @param entry
+     */
+    void add(PatternListEntry entry);
+
+}
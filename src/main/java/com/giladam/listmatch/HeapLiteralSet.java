@@ -0,0 +1,190 @@
+package com.giladam.listmatch;
+
+
+/**
+ * The {@link LiteralSet} kept on the heap, used for all but the biggest lists.  It uses open addressing with
+ * the literal Strings themselves in the slots.
+ *
+ * Only one thread may change the set at a time, but any number of threads may check it at the same time
+ * without locking.  Every change is followed by a write of the volatile slots field, which a check reads
+ * first, so a check sees every change made before it started.  Slots only ever hold Strings, which are
+ * safe to read while another thread is changing the array.  Removed patterns leave a marker behind so
+ * checks still probe past them, and markers are cleared out when the slots are rebuilt.
+ *
+ * @author Gil Adam
+ *
+ */
+final class HeapLiteralSet implements LiteralSet {
+
+    private static final int MIN_CAPACITY = 4;
+
+    //compared by identity, so it can never be confused with a real pattern:
+    private static final String REMOVED = new String("");
+
+    private volatile String[] slots;
+
+    private int size;
+
+    //slots that are not empty, including the ones marked as removed:
+    private int usedSlots;
+
+
+    HeapLiteralSet(int expectedSize) {
+        this.slots = new String[capacityFor(expectedSize)];
+    }
+
+
+    private static int capacityFor(int expectedSize) {
+
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+
+        return capacity;
+    }
+
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+
+    @Override
+    public boolean contains(MatchValue value, int start, int end) {
+
+        String[] currentSlots = slots;
+        int mask = currentSlots.length - 1;
+        int slot = spread(value.regionHash(start, end)) & mask;
+
+        String literal;
+        while ((literal = currentSlots[slot]) != null) {
+            if (literal != REMOVED && value.regionEquals(start, end, literal)) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        return false;
+    }
+
+
+    @Override
+    public boolean contains(String literal) {
+        String[] currentSlots = slots;
+        return currentSlots[find(currentSlots, literal)] != null;
+    }
+
+
+    @Override
+    public boolean add(String literal) {
+
+        String[] currentSlots = slots;
+        if (currentSlots[find(currentSlots, literal)] != null) {
+            return false;
+        }
+
+        if ((usedSlots + 1) * 2 > currentSlots.length) {
+            //leave room for as many new literals as there are now, so rebuilding is rare:
+            currentSlots = rebuild(2 * (size + 1));
+        }
+
+        //reuse the first removed slot along the way if there is one, checks for other literals just skip it:
+        int mask = currentSlots.length - 1;
+        int slot = spread(literal.hashCode()) & mask;
+        while (currentSlots[slot] != null && currentSlots[slot] != REMOVED) {
+            slot = (slot + 1) & mask;
+        }
+
+        if (currentSlots[slot] == null) {
+            usedSlots++;
+        }
+
+        currentSlots[slot] = literal;
+        size++;
+
+        //publish the change to checks that start after this:
+        this.slots = currentSlots;
+
+        return true;
+    }
+
+
+    @Override
+    public boolean remove(String literal) {
+
+        String[] currentSlots = slots;
+        int slot = find(currentSlots, literal);
+
+        if (currentSlots[slot] == null) {
+            return false;
+        }
+
+        currentSlots[slot] = REMOVED;
+        size--;
+
+        this.slots = currentSlots;
+
+        return true;
+    }
+
+
+    @Override
+    public OffHeapLiteralSet toOffHeap() {
+
+        OffHeapLiteralSet offHeap = new OffHeapLiteralSet(size);
+
+        for (String literal : slots) {
+            if (literal != null && literal != REMOVED) {
+                offHeap.add(literal);
+            }
+        }
+
+        return offHeap;
+    }
+
+
+    private static int find(String[] currentSlots, String literal) {
+
+        int mask = currentSlots.length - 1;
+        int slot = spread(literal.hashCode()) & mask;
+
+        String existing;
+        while ((existing = currentSlots[slot]) != null) {
+            if (existing != REMOVED && existing.equals(literal)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+
+    /**
+     * Copies the literals into new slots without any removed markers, leaving the old slots as they are
+     * for checks that are still using them.
+     */
+    private String[] rebuild(int expectedSize) {
+
+        String[] oldSlots = slots;
+        String[] newSlots = new String[capacityFor(expectedSize)];
+
+        for (String literal : oldSlots) {
+            if (literal != null && literal != REMOVED) {
+                newSlots[find(newSlots, literal)] = literal;
+            }
+        }
+
+        this.usedSlots = size;
+        this.slots = newSlots;
+
+        return newSlots;
+    }
+
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,428 @@
+package com.giladam.listmatch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * The {@link WildcardMatcher} used for {@link MatchingMode#IPV4}.
+ *
+ * Patterns that stand for a block of IPv4 addresses are turned into a range of 32-bit numbers: patterns
+ * whose last octets are wildcards (like "10.100.*.*"), CIDR blocks (like "10.100.0.0/16") and ranges (like
+ * "10.0.0.1-10.0.0.99").  The ranges are kept sorted by where they start, along with the furthest any
+ * range so far reaches and the pattern that reaches it, so checking an address is a binary search
+ * followed by one comparison.  Ranges may overlap.  Blocks added after the index was built go into a
+ * {@link PrefixTable}, split into CIDR blocks.
+ *
+ * Only values written the usual way (four decimal octets without leading zeros) are treated as addresses.
+ * Wildcard patterns that aren't address blocks (like "10.*.0.1") are checked as text against addresses
+ * that are in none of the blocks, and every wildcard pattern is checked as text against values that aren't
+ * addresses, so those match just like they do in the other modes.  CIDR blocks and ranges only ever match
+ * addresses.
+ *
+ * @author Gil Adam
+ *
+ */
+final class Ipv4Index implements GrowableMatcher {
+
+    private static final char OCTET_SEPARATOR = '.';
+
+    private static final int OCTET_COUNT = 4;
+
+    private static final long NOT_AN_ADDRESS = -1;
+
+    //sorted, and the same length, one for each block:
+    private final long[] blockStarts;
+
+    //where each block ends and what it is for, only needed when the pattern that reaches furthest was removed:
+    private final long[] blockEnds;
+    private final PatternListEntry[] sortedBlockEntries;
+
+    //the furthest any of the blocks up to this one reaches, and the one that does:
+    private final long[] furthestEnds;
+    private final PatternListEntry[] furthestEntries;
+
+    private final PrefixTable addedBlocks = new PrefixTable();
+
+    //wildcard patterns that aren't blocks, checked as text against addresses:
+    private final WildcardIndex unindexed;
+
+    //every wildcard pattern, checked as text against values that aren't addresses, only built when one comes along:
+    private final List<PatternListEntry> textEntries;
+    private volatile WildcardIndex textIndex;
+
+
+    Ipv4Index(Collection<PatternListEntry> entries) {
+
+        List<PatternListEntry> blockEntries = new ArrayList<>();
+        List<long[]> blocks = new ArrayList<>();
+        List<PatternListEntry> initUnindexed = new ArrayList<>();
+        this.textEntries = new ArrayList<>();
+
+        for (PatternListEntry entry : entries) {
+
+            String pattern = patternText(entry);
+            long[] block = parseBlock(pattern);
+
+            if (block != null) {
+                blockEntries.add(entry);
+                blocks.add(block);
+            } else {
+                initUnindexed.add(entry);
+            }
+
+            if (pattern.indexOf(PatternList.WILDCARD_CHAR) >= 0) {
+                textEntries.add(entry);
+            }
+        }
+
+        //sort the blocks by their start, with their index in the low bits so they can be found again:
+        long[] sortKeys = new long[blocks.size()];
+        for (int i=0; i<sortKeys.length; i++) {
+            sortKeys[i] = (blocks.get(i)[0] << 31) | i;
+        }
+        Arrays.sort(sortKeys);
+
+        this.blockStarts = new long[sortKeys.length];
+        this.blockEnds = new long[sortKeys.length];
+        this.sortedBlockEntries = new PatternListEntry[sortKeys.length];
+        this.furthestEnds = new long[sortKeys.length];
+        this.furthestEntries = new PatternListEntry[sortKeys.length];
+
+        for (int i=0; i<sortKeys.length; i++) {
+
+            int blockIndex = (int) (sortKeys[i] & Integer.MAX_VALUE);
+            long[] block = blocks.get(blockIndex);
+
+            blockStarts[i] = block[0];
+            blockEnds[i] = block[1];
+            sortedBlockEntries[i] = blockEntries.get(blockIndex);
+
+            if (i > 0 && furthestEnds[i - 1] >= block[1]) {
+                furthestEnds[i] = furthestEnds[i - 1];
+                furthestEntries[i] = furthestEntries[i - 1];
+            } else {
+                furthestEnds[i] = block[1];
+                furthestEntries[i] = blockEntries.get(blockIndex);
+            }
+        }
+
+        this.unindexed = new WildcardIndex(initUnindexed);
+    }
+
+
+    @Override
+    public void add(PatternListEntry entry) {
+
+        String pattern = patternText(entry);
+        long[] block = parseBlock(pattern);
+
+        if (block != null) {
+            addBlock(block[0], block[1], entry);
+        } else {
+            unindexed.add(entry);
+        }
+
+        if (pattern.indexOf(PatternList.WILDCARD_CHAR) >= 0) {
+            synchronized (this) {
+                textEntries.add(entry);
+                if (textIndex != null) {
+                    textIndex.add(entry);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Adds a block as the fewest CIDR blocks that cover exactly the same addresses.
+     */
+    private void addBlock(long first, long last, PatternListEntry entry) {
+
+        long start = first;
+
+        while (start <= last) {
+
+            int hostBits = (start == 0) ? 32 : Math.min(32, Long.numberOfTrailingZeros(start));
+            while (start + (1L << hostBits) - 1 > last) {
+                hostBits--;
+            }
+
+            //the address goes in the top 32 of the 128 bits:
+            addedBlocks.add(start << 32, 0, 32 - hostBits, entry);
+            start += 1L << hostBits;
+        }
+    }
+
+
+    @Override
+    public PatternListEntry findMatch(MatchValue value) {
+        return findMatch(value, Collections.<PatternListEntry>emptySet());
+    }
+
+
+    @Override
+    public PatternListEntry findMatch(MatchValue value, Set<PatternListEntry> removed) {
+
+        long address = parseAddress(value);
+
+        if (address == NOT_AN_ADDRESS) {
+            return textIndex().findMatch(value, removed);
+        }
+
+        //the last block that starts at or before the address:
+        int low = 0;
+        int high = blockStarts.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (blockStarts[middle] <= address) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        //every block up to there starts at or before the address, so it is in one if the furthest reaches it:
+        if (high >= 0 && furthestEnds[high] >= address) {
+
+            if (!removed.contains(furthestEntries[high])) {
+                return furthestEntries[high];
+            }
+
+            //that one was removed, so look back for another block the address is in, as far as any reaches it:
+            for (int i=high; i>=0 && furthestEnds[i] >= address; i--) {
+                if (blockEnds[i] >= address && !removed.contains(sortedBlockEntries[i])) {
+                    return sortedBlockEntries[i];
+                }
+            }
+        }
+
+        PatternListEntry match = addedBlocks.findMatch(address << 32, 0, removed);
+
+        return match != null ? match : unindexed.findMatch(value, removed);
+    }
+
+
+    private WildcardIndex textIndex() {
+
+        WildcardIndex index = textIndex;
+
+        if (index == null) {
+            synchronized (this) {
+                index = textIndex;
+                if (index == null) {
+                    index = new WildcardIndex(textEntries);
+                    textIndex = index;
+                }
+            }
+        }
+
+        return index;
+    }
+
+
+    /**
+     * Returns true if a normalized pattern is a CIDR block or a range, which only means something to this
+     * index and has to be kept with the wildcard patterns even though it has no wildcards.
+     */
+    static boolean isAddressBlock(String normalizedPattern) {
+        return normalizedPattern.indexOf(PatternList.WILDCARD_CHAR) < 0 && parseBlock(normalizedPattern) != null;
+    }
+
+
+    /**
+     * Puts the pattern back together from its components, which were split on '.' if it was split at all.
+     */
+    private static String patternText(PatternListEntry entry) {
+
+        String[] components = entry.getComponents();
+        if (components.length == 1) {
+            return components[0];
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (int i=0; i<components.length; i++) {
+            if (i > 0) {
+                sb.append(OCTET_SEPARATOR);
+            }
+            sb.append(components[i]);
+        }
+
+        return sb.toString();
+    }
+
+
+    /**
+     * Returns the first and last address of the block a pattern stands for, or null if it isn't one.
+     */
+    static long[] parseBlock(String pattern) {
+
+        int slash = pattern.indexOf('/');
+        if (slash >= 0) {
+            long address = parseAddress(pattern, 0, slash);
+            int prefixLength = (int) parseNumber(pattern, slash + 1, pattern.length(), 32);
+
+            if (address == NOT_AN_ADDRESS || prefixLength < 0) {
+                return null;
+            }
+
+            long hostMask = (1L << (32 - prefixLength)) - 1;
+            return new long[] {address & ~hostMask, address | hostMask};
+        }
+
+        int dash = pattern.indexOf('-');
+        if (dash >= 0) {
+            long first = parseAddress(pattern, 0, dash);
+            long last = parseAddress(pattern, dash + 1, pattern.length());
+
+            if (first == NOT_AN_ADDRESS || last == NOT_AN_ADDRESS || first > last) {
+                return null;
+            }
+
+            return new long[] {first, last};
+        }
+
+        return parseWildcardBlock(pattern);
+    }
+
+
+    /**
+     * Parses a pattern like "10.100.*.*", where some octets are given and all the ones after them are
+     * whole wildcards.
+     */
+    private static long[] parseWildcardBlock(String pattern) {
+
+        long first = 0;
+        int wildcardOctets = 0;
+        int octetStart = 0;
+
+        for (int octet=0; octet<OCTET_COUNT; octet++) {
+
+            int octetEnd = pattern.indexOf(OCTET_SEPARATOR, octetStart);
+            if (octetEnd < 0) {
+                if (octet < OCTET_COUNT - 1) {
+                    return null;
+                }
+                octetEnd = pattern.length();
+            } else if (octet == OCTET_COUNT - 1) {
+                return null;
+            }
+
+            if (octetEnd - octetStart == 1 && pattern.charAt(octetStart) == PatternList.WILDCARD_CHAR) {
+                wildcardOctets++;
+                first <<= 8;
+            } else {
+                long octetValue = parseNumber(pattern, octetStart, octetEnd, 255);
+                if (octetValue < 0 || wildcardOctets > 0) {
+                    return null;
+                }
+                first = (first << 8) | octetValue;
+            }
+
+            octetStart = octetEnd + 1;
+        }
+
+        if (wildcardOctets == 0) {
+            return null;
+        }
+
+        return new long[] {first, first | ((1L << (8 * wildcardOctets)) - 1)};
+    }
+
+
+    /**
+     * Returns the address from start to end of the pattern, or NOT_AN_ADDRESS.
+     */
+    private static long parseAddress(String pattern, int start, int end) {
+
+        long address = 0;
+        int octetStart = start;
+
+        for (int octet=0; octet<OCTET_COUNT; octet++) {
+
+            int octetEnd = octet < OCTET_COUNT - 1 ? pattern.indexOf(OCTET_SEPARATOR, octetStart) : end;
+            if (octetEnd < 0 || octetEnd > end) {
+                return NOT_AN_ADDRESS;
+            }
+
+            long octetValue = parseNumber(pattern, octetStart, octetEnd, 255);
+            if (octetValue < 0) {
+                return NOT_AN_ADDRESS;
+            }
+
+            address = (address << 8) | octetValue;
+            octetStart = octetEnd + 1;
+        }
+
+        return address;
+    }
+
+
+    /**
+     * Returns the decimal number from start to end, or -1 if it isn't one, is bigger than max, or has a
+     * leading zero.
+     */
+    private static long parseNumber(String text, int start, int end, int max) {
+
+        if (end <= start || end - start > 3 || (text.charAt(start) == '0' && end - start > 1)) {
+            return -1;
+        }
+
+        long number = 0;
+        for (int i=start; i<end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            number = number * 10 + (c - '0');
+        }
+
+        return number <= max ? number : -1;
+    }
+
+
+    /**
+     * Returns the address the whole value is, or NOT_AN_ADDRESS, without allocating anything.
+     */
+    private static long parseAddress(MatchValue value) {
+
+        int length = value.length();
+        long address = 0;
+        int octets = 0;
+        int octetValue = 0;
+        int octetDigits = 0;
+
+        for (int i=0; i<=length; i++) {
+
+            char c = i < length ? value.charAt(i) : OCTET_SEPARATOR;
+
+            if (c == OCTET_SEPARATOR) {
+                if (octetDigits == 0 || octets == OCTET_COUNT) {
+                    return NOT_AN_ADDRESS;
+                }
+                address = (address << 8) | octetValue;
+                octets++;
+                octetValue = 0;
+                octetDigits = 0;
+            } else if (c >= '0' && c <= '9') {
+                //no leading zeros, so the value reads the same as the patterns it could match as text:
+                if ((octetDigits == 1 && octetValue == 0) || octetDigits == 3) {
+                    return NOT_AN_ADDRESS;
+                }
+                octetValue = octetValue * 10 + (c - '0');
+                octetDigits++;
+                if (octetValue > 255) {
+                    return NOT_AN_ADDRESS;
+                }
+            } else {
+                return NOT_AN_ADDRESS;
+            }
+        }
+
+        return octets == OCTET_COUNT ? address : NOT_AN_ADDRESS;
+    }
+}
@@ -0,0 +1,554 @@
+package com.giladam.listmatch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * The {@link WildcardMatcher} used for {@link MatchingMode#IPV6}.
+ *
+ * IPv6 addresses can be written many ways ("2001:db8::1" and "2001:0DB8:0:0:0:0:0:1" are the same
+ * address), so patterns that are addresses or CIDR prefixes (like "2001:db8::/32") are read into 128 bits
+ * and kept in a binary trie of prefixes, and values are read the same way before they are looked up.  The
+ * trie is path-compressed, so it has at most two nodes per prefix however long the prefixes are, and
+ * checking a value visits at most one node per bit.  A prefix inside another one is kept too, even though
+ * checking a value stops at the first prefix it finds, so that removing the outer prefix from a
+ * {@link ConcurrentPatternList} doesn't hide it.  The nodes are kept in plain arrays, so even millions of
+ * prefixes take little memory.  Prefixes added after the trie was built go into a {@link PrefixTable}.
+ *
+ * Patterns with wildcards (like "2001:db8:*") are checked as text against every value, as are all
+ * patterns against values that aren't addresses, so those match the same as in the other modes.
+ *
+ * @author Gil Adam
+ *
+ */
+final class Ipv6Index implements GrowableMatcher {
+
+    private static final int ADDRESS_BITS = 128;
+
+    private static final int GROUP_COUNT = 8;
+
+    private static final int NO_NODE = -1;
+
+    private static final int MIN_NODES = 16;
+
+    //what read() should hand back:
+    private static final int VALID = 0;
+    private static final int HIGH_HALF = 1;
+    private static final int LOW_HALF = 2;
+
+    //node 0 is the root, the empty prefix that every address starts with:
+    private long[] prefixHighs;
+    private long[] prefixLows;
+    private byte[] prefixLengths;
+    private int[] zeroChildren;
+    private int[] oneChildren;
+    private PatternListEntry[] nodeEntries;
+    private int nodeCount;
+
+    //other ways of writing a prefix that is already in the trie, sorted by the node they belong to:
+    private int[] duplicateNodes = new int[0];
+    private PatternListEntry[] duplicateEntries = new PatternListEntry[0];
+
+    private final PrefixTable addedPrefixes = new PrefixTable();
+
+    private final WildcardIndex textPatterns;
+
+
+    Ipv6Index(Collection<PatternListEntry> entries) {
+
+        this.prefixHighs = new long[MIN_NODES];
+        this.prefixLows = new long[MIN_NODES];
+        this.prefixLengths = new byte[MIN_NODES];
+        this.zeroChildren = new int[MIN_NODES];
+        this.oneChildren = new int[MIN_NODES];
+        this.nodeEntries = new PatternListEntry[MIN_NODES];
+        newNode(0, 0, 0, null);
+
+        List<PatternListEntry> initTextPatterns = new ArrayList<>();
+
+        for (PatternListEntry entry : entries) {
+
+            Prefix prefix = parsePrefix(patternText(entry), entry);
+
+            if (prefix != null) {
+                insert(prefix);
+            } else {
+                initTextPatterns.add(entry);
+            }
+        }
+
+        this.textPatterns = new WildcardIndex(initTextPatterns);
+    }
+
+
+    @Override
+    public void add(PatternListEntry entry) {
+
+        Prefix prefix = parsePrefix(patternText(entry), entry);
+
+        if (prefix != null) {
+            addedPrefixes.add(prefix.high, prefix.low, prefix.length, entry);
+        } else {
+            textPatterns.add(entry);
+        }
+    }
+
+
+    @Override
+    public PatternListEntry findMatch(MatchValue value) {
+        return findMatch(value, Collections.<PatternListEntry>emptySet());
+    }
+
+
+    @Override
+    public PatternListEntry findMatch(MatchValue value, Set<PatternListEntry> removed) {
+
+        int length = value.length();
+
+        if (read(value, 0, length, VALID) != 0) {
+
+            long high = read(value, 0, length, HIGH_HALF);
+            long low = read(value, 0, length, LOW_HALF);
+
+            int node = 0;
+            while (node != NO_NODE && startsWith(high, low, prefixHighs[node], prefixLows[node], prefixLengths[node] & 0xFF)) {
+
+                //any prefix along the way is enough:
+                if (nodeEntries[node] != null) {
+                    PatternListEntry match = removed.contains(nodeEntries[node]) ? duplicateMatch(node, removed) : nodeEntries[node];
+                    if (match != null) {
+                        return match;
+                    }
+                }
+
+                int prefixLength = prefixLengths[node] & 0xFF;
+                if (prefixLength == ADDRESS_BITS) {
+                    break;
+                }
+                node = bitAt(high, low, prefixLength) == 0 ? zeroChildren[node] : oneChildren[node];
+            }
+
+            PatternListEntry match = addedPrefixes.findMatch(high, low, removed);
+            if (match != null) {
+                return match;
+            }
+        }
+
+        return textPatterns.findMatch(value, removed);
+    }
+
+
+    /**
+     * Returns another way of writing the node's prefix that isn't removed, or null if there is none.
+     */
+    private PatternListEntry duplicateMatch(int node, Set<PatternListEntry> removed) {
+
+        int i = Arrays.binarySearch(duplicateNodes, node);
+        if (i < 0) {
+            return null;
+        }
+
+        while (i > 0 && duplicateNodes[i - 1] == node) {
+            i--;
+        }
+
+        for (; i<duplicateNodes.length && duplicateNodes[i] == node; i++) {
+            if (!removed.contains(duplicateEntries[i])) {
+                return duplicateEntries[i];
+            }
+        }
+
+        return null;
+    }
+
+
+    /**
+     * Returns true if a normalized pattern is an address or a CIDR prefix, which this index keeps with the
+     * wildcard patterns even though it has no wildcards, so other ways of writing the same address match it.
+     */
+    static boolean isAddressPattern(String normalizedPattern) {
+        return parsePrefix(normalizedPattern, null) != null;
+    }
+
+
+    private static String patternText(PatternListEntry entry) {
+        String[] components = entry.getComponents();
+        return components.length == 1 ? components[0] : null;
+    }
+
+
+    /**
+     * Reads an address or CIDR prefix, returning null if the pattern is neither.
+     */
+    private static Prefix parsePrefix(String pattern, PatternListEntry entry) {
+
+        if (pattern == null || pattern.indexOf(PatternList.WILDCARD_CHAR) >= 0) {
+            return null;
+        }
+
+        int slash = pattern.indexOf('/');
+        int addressEnd = slash >= 0 ? slash : pattern.length();
+        int prefixLength = ADDRESS_BITS;
+
+        if (slash >= 0) {
+            prefixLength = parsePrefixLength(pattern, slash + 1);
+            if (prefixLength < 0) {
+                return null;
+            }
+        }
+
+        MatchValue address = MatchValue.of(pattern, null, true);
+        if (read(address, 0, addressEnd, VALID) == 0) {
+            return null;
+        }
+
+        return new Prefix(PrefixTable.maskHigh(read(address, 0, addressEnd, HIGH_HALF), prefixLength),
+                          PrefixTable.maskLow(read(address, 0, addressEnd, LOW_HALF), prefixLength),
+                          prefixLength, entry);
+    }
+
+
+    /**
+     * Returns the prefix length from start to the end of the pattern, or -1 if it isn't one.
+     */
+    private static int parsePrefixLength(String pattern, int start) {
+
+        int end = pattern.length();
+        if (end <= start || end - start > 3 || (pattern.charAt(start) == '0' && end - start > 1)) {
+            return -1;
+        }
+
+        int prefixLength = 0;
+        for (int i=start; i<end; i++) {
+            char c = pattern.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            prefixLength = prefixLength * 10 + (c - '0');
+        }
+
+        return prefixLength <= ADDRESS_BITS ? prefixLength : -1;
+    }
+
+
+    /**
+     * Reads the address from start to end of the value without allocating anything, returning 1 if it is
+     * one and 0 if not for VALID, or the high or low 64 bits of it (which must be valid).  Groups of hex
+     * digits may be left out with "::", and the last 32 bits may be written as an IPv4 address.
+     */
+    private static long read(MatchValue value, int start, int end, int part) {
+
+        //groups before the "::" and after it, each kept as the low bits of 128:
+        long headHigh = 0;
+        long headLow = 0;
+        int headGroups = 0;
+        long tailHigh = 0;
+        long tailLow = 0;
+        int tailGroups = 0;
+        boolean compressed = false;
+
+        int i = start;
+
+        if (end - start < 2) {
+            return 0;
+        }
+
+        if (value.charAt(i) == ':') {
+            if (value.charAt(i + 1) != ':') {
+                return 0;
+            }
+            compressed = true;
+            i += 2;
+        }
+
+        while (i < end) {
+
+            int groupStart = i;
+            long group = 0;
+            while (i < end && i - groupStart < 5 && hexValue(value.charAt(i)) >= 0) {
+                group = (group << 4) | hexValue(value.charAt(i));
+                i++;
+            }
+
+            long groupsToAdd;
+            int groupCount;
+
+            if (i < end && value.charAt(i) == '.') {
+                //an IPv4 address at the end stands for the last two groups:
+                groupsToAdd = readIpv4(value, groupStart, end);
+                if (groupsToAdd < 0) {
+                    return 0;
+                }
+                groupCount = 2;
+                i = end;
+            } else if (i == groupStart || i - groupStart > 4) {
+                return 0;
+            } else {
+                groupsToAdd = group;
+                groupCount = 1;
+            }
+
+            int bits = 16 * groupCount;
+            if (compressed) {
+                tailHigh = (tailHigh << bits) | (tailLow >>> (64 - bits));
+                tailLow = (tailLow << bits) | groupsToAdd;
+                tailGroups += groupCount;
+            } else {
+                headHigh = (headHigh << bits) | (headLow >>> (64 - bits));
+                headLow = (headLow << bits) | groupsToAdd;
+                headGroups += groupCount;
+            }
+
+            if (headGroups + tailGroups > GROUP_COUNT) {
+                return 0;
+            }
+
+            if (i == end) {
+                break;
+            }
+
+            if (value.charAt(i) != ':') {
+                return 0;
+            }
+            i++;
+
+            if (i < end && value.charAt(i) == ':') {
+                if (compressed) {
+                    return 0;
+                }
+                compressed = true;
+                i++;
+            } else if (i == end) {
+                return 0;
+            }
+        }
+
+        int groups = headGroups + tailGroups;
+        if (compressed ? groups == GROUP_COUNT : groups != GROUP_COUNT) {
+            return 0;
+        }
+
+        if (part == VALID) {
+            return 1;
+        }
+
+        //move the head up to the top, the "::" fills the gap with zeros:
+        int shift = 16 * (GROUP_COUNT - headGroups);
+        long high;
+        long low;
+        if (shift == 0) {
+            high = headHigh;
+            low = headLow;
+        } else if (shift >= 64) {
+            high = shift == ADDRESS_BITS ? 0 : headLow << (shift - 64);
+            low = 0;
+        } else {
+            high = (headHigh << shift) | (headLow >>> (64 - shift));
+            low = headLow << shift;
+        }
+
+        return part == HIGH_HALF ? high | tailHigh : low | tailLow;
+    }
+
+
+    /**
+     * Returns the IPv4 address from start to end as 32 bits, or -1 if it isn't one.
+     */
+    private static long readIpv4(MatchValue value, int start, int end) {
+
+        long address = 0;
+        int octets = 0;
+        int octetValue = 0;
+        int octetDigits = 0;
+
+        for (int i=start; i<=end; i++) {
+
+            char c = i < end ? value.charAt(i) : '.';
+
+            if (c == '.') {
+                if (octetDigits == 0 || octets == 4) {
+                    return -1;
+                }
+                address = (address << 8) | octetValue;
+                octets++;
+                octetValue = 0;
+                octetDigits = 0;
+            } else if (c >= '0' && c <= '9' && !(octetDigits == 1 && octetValue == 0) && octetDigits < 3) {
+                octetValue = octetValue * 10 + (c - '0');
+                octetDigits++;
+                if (octetValue > 255) {
+                    return -1;
+                }
+            } else {
+                return -1;
+            }
+        }
+
+        return octets == 4 ? address : -1;
+    }
+
+
+    private static int hexValue(char c) {
+
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        } else if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        } else if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+
+        return -1;
+    }
+
+
+    private void insert(Prefix prefix) {
+
+        int node = 0;
+
+        while (true) {
+
+            int nodeLength = prefixLengths[node] & 0xFF;
+            if (nodeLength == prefix.length) {
+                if (nodeEntries[node] == null) {
+                    nodeEntries[node] = prefix.entry;
+                } else {
+                    addDuplicate(node, prefix.entry);
+                }
+                return;
+            }
+
+            int bit = bitAt(prefix.high, prefix.low, nodeLength);
+            int child = bit == 0 ? zeroChildren[node] : oneChildren[node];
+
+            if (child == NO_NODE) {
+                setChild(node, bit, newNode(prefix.high, prefix.low, prefix.length, prefix.entry));
+                return;
+            }
+
+            int childLength = prefixLengths[child] & 0xFF;
+            int common = Math.min(Math.min(childLength, prefix.length),
+                                  commonPrefixLength(prefix.high, prefix.low, prefixHighs[child], prefixLows[child]));
+
+            if (common == childLength) {
+                node = child;
+                continue;
+            }
+
+            //the prefix and the child part ways (or the prefix ends) before the child does, so split there:
+            int middle;
+            if (common == prefix.length) {
+                middle = newNode(prefix.high, prefix.low, prefix.length, prefix.entry);
+            } else {
+                middle = newNode(PrefixTable.maskHigh(prefix.high, common), PrefixTable.maskLow(prefix.low, common), common, null);
+                setChild(middle, bitAt(prefix.high, prefix.low, common), newNode(prefix.high, prefix.low, prefix.length, prefix.entry));
+            }
+
+            setChild(middle, bitAt(prefixHighs[child], prefixLows[child], common), child);
+            setChild(node, bit, middle);
+            return;
+        }
+    }
+
+
+    private void addDuplicate(int node, PatternListEntry entry) {
+
+        int insertAt = duplicateNodes.length;
+        while (insertAt > 0 && duplicateNodes[insertAt - 1] > node) {
+            insertAt--;
+        }
+
+        int[] newNodes = new int[duplicateNodes.length + 1];
+        PatternListEntry[] newEntries = new PatternListEntry[duplicateEntries.length + 1];
+
+        System.arraycopy(duplicateNodes, 0, newNodes, 0, insertAt);
+        System.arraycopy(duplicateEntries, 0, newEntries, 0, insertAt);
+        newNodes[insertAt] = node;
+        newEntries[insertAt] = entry;
+        System.arraycopy(duplicateNodes, insertAt, newNodes, insertAt + 1, duplicateNodes.length - insertAt);
+        System.arraycopy(duplicateEntries, insertAt, newEntries, insertAt + 1, duplicateEntries.length - insertAt);
+
+        this.duplicateNodes = newNodes;
+        this.duplicateEntries = newEntries;
+    }
+
+
+    private int newNode(long high, long low, int length, PatternListEntry entry) {
+
+        if (nodeCount == prefixHighs.length) {
+            int capacity = nodeCount * 2;
+            prefixHighs = Arrays.copyOf(prefixHighs, capacity);
+            prefixLows = Arrays.copyOf(prefixLows, capacity);
+            prefixLengths = Arrays.copyOf(prefixLengths, capacity);
+            zeroChildren = Arrays.copyOf(zeroChildren, capacity);
+            oneChildren = Arrays.copyOf(oneChildren, capacity);
+            nodeEntries = Arrays.copyOf(nodeEntries, capacity);
+        }
+
+        int node = nodeCount++;
+        prefixHighs[node] = high;
+        prefixLows[node] = low;
+        prefixLengths[node] = (byte) length;
+        zeroChildren[node] = NO_NODE;
+        oneChildren[node] = NO_NODE;
+        nodeEntries[node] = entry;
+
+        return node;
+    }
+
+
+    private void setChild(int node, int bit, int child) {
+        if (bit == 0) {
+            zeroChildren[node] = child;
+        } else {
+            oneChildren[node] = child;
+        }
+    }
+
+
+    private static int bitAt(long high, long low, int position) {
+        return (int) (position < 64 ? (high >>> (63 - position)) & 1 : (low >>> (127 - position)) & 1);
+    }
+
+
+    private static boolean startsWith(long high, long low, long prefixHigh, long prefixLow, int prefixLength) {
+        return commonPrefixLength(high, low, prefixHigh, prefixLow) >= prefixLength;
+    }
+
+
+    private static int commonPrefixLength(long firstHigh, long firstLow, long secondHigh, long secondLow) {
+
+        long highDifference = firstHigh ^ secondHigh;
+        if (highDifference != 0) {
+            return Long.numberOfLeadingZeros(highDifference);
+        }
+
+        return 64 + Long.numberOfLeadingZeros(firstLow ^ secondLow);
+    }
+
+
+
+    private static final class Prefix {
+
+        private final long high;
+
+        private final long low;
+
+        private final int length;
+
+        private final PatternListEntry entry;
+
+
+        Prefix(long high, long low, int length, PatternListEntry entry) {
+            this.high = high;
+            this.low = low;
+            this.length = length;
+            this.entry = entry;
+        }
+    }
+}
@@ -1,94 +1,461 @@
-package com.giladam.listmatch;
-
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.IOException;
-import java.nio.charset.Charset;
-import java.nio.file.Files;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
-
-import org.apache.commons.lang3.StringUtils;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-
-/**
- * The main class that holds the different {@link PatternList}s to test against.
- *
- * For convenience, use readPatternsFromFile() to read patterns from a text file.
- *
- * If you just need to test against one list, then you can use {@link PatternList} by itself.
- *
- * @author Gil Adam
- *
- */
-public class ListMatcher {
-
-    private static final Charset UTF_8 = Charset.forName("UTF-8");
-
-    private static Logger log = LoggerFactory.getLogger(ListMatcher.class);
-
-    private Map<String,PatternList> listByName = Collections.emptyMap();
-
-
-    /**
-     * Creates a new ListMatcher with multiple {@link PatternList}s each which must be referenced by
-     * name when performing a match.
-     *
-     * It takes a Map of LIST_NAME => PatterList
-     *
-     * @param listByName
-     */
-    public ListMatcher(Map<String,PatternList> listByName) {
-        this.listByName = listByName;
-    }
-
-
-    /**
-     * Loads patterns to use from a File, ignoring lines that start with # characters as commented.
-     *
-     * @throws IOException
-     */
-    public static Set<String> readPatternsFromFile(File patternsFile) throws IOException {
-
-        Set<String> patternsFound = new HashSet<>();
-
-        try (BufferedReader fileReader = Files.newBufferedReader(patternsFile.toPath(), UTF_8)) {
-            String line = null;
-            while ((line = fileReader.readLine()) != null) {
-
-                String contentBeforeComments = StringUtils.trim(StringUtils.substringBefore(line, "#"));
-                if (StringUtils.isNotBlank(contentBeforeComments)) {
-                    patternsFound.add(contentBeforeComments);
-                }
-            }
-        }
-
-        return patternsFound;
-    }
-
-
-    /**
-     * Returns true if the valueToTest matches any of the entries in the list specified by name.
-     *
-     * If the list specified by name is not know to this ListMatcher, it returns false.
-     *
-     * @param listName The case-sensitive name of the list to test with.
-     * @param valueToTest The value to check for matching against the list.
-     * @return
-     */
-    public boolean matchesList(String listName, String valueToTest) {
-
-        PatternList listToUse = listByName.get(listName);
-        if (listToUse == null) {
-            log.debug("No such list [{}]", listName);
-            return false;
-        } else {
-            return listToUse.matches(valueToTest);
-        }
-    }
-
+package com.giladam.listmatch;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * The main class that holds the different {@link PatternList}s to test against.
+ *
+ * For convenience, use readPatternsFromFile() to read patterns from a text file.
+ *
+ * If you just need to test against one list, then you can use {@link PatternList} by itself.
+ *
+ * @author Gil Adam
+ *
+ */
+public class ListMatcher {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static Logger log = LoggerFactory.getLogger(ListMatcher.class);
+
+    //replaced as a whole whenever a list changes, so readers always see one consistent set of lists:
+    private volatile NamedLists lists;
+
+    //gives lists added later their listener too, null unless set:
+    private MatchListenerRegistry listenerRegistry;
+
+
+    /**
+     * Creates a new ListMatcher with multiple {@link PatternList}s each which must be referenced by
+     * name when performing a match.
+     *
+     * It takes a Map of LIST_NAME => PatterList, which is copied, so later changes to the Map are not seen.
+     * Use replaceList() to change lists afterwards.  A name whose list is null matches nothing, just like a
+     * name that isn't in the Map.
+     *
+     * @param listByName
+     */
+    public ListMatcher(Map<String,PatternList> listByName) {
+        this.lists = new NamedLists(new LinkedHashMap<>(listByName));
+    }
+
+
+    /**
+     * Adds a list, or replaces the list with the same name.
+     *
+     * Checks that are already running finish with the lists they started with, and every check after this
+     * returns sees the new list.  Checking values never waits for this.
+     *
+     * @param listName The case-sensitive name of the list.
+     * @param patternList The list to use from now on.
+     */
+    public synchronized void replaceList(String listName, PatternList patternList) {
+        replaceLists(Collections.singletonMap(listName, Objects.requireNonNull(patternList, "patternList")));
+    }
+
+
+    /**
+     * Adds or replaces several lists at once, so that every check sees either all of the new lists or none
+     * of them.  Lists with other names are kept.
+     *
+     * @param listByName The lists to use from now on, by their case-sensitive names.
+     */
+    public synchronized void replaceLists(Map<String,PatternList> listByName) {
+        replaceLists(listByName, Collections.<String>emptySet());
+    }
+
+
+    /**
+     * Removes some lists and adds or replaces others at once, so that every check sees either all of the
+     * changes or none of them.  Lists that are both removed and given are replaced, and lists with other
+     * names are kept.
+     *
+     * @param listByName The lists to use from now on, by their case-sensitive names.
+     * @param listNamesToRemove The case-sensitive names of the lists to stop using.  Names not known to this
+     *                          ListMatcher are ignored.
+     */
+    public synchronized void replaceLists(Map<String,PatternList> listByName, Collection<String> listNamesToRemove) {
+
+        Map<String,PatternList> newListByName = new LinkedHashMap<>(lists.listByName);
+        newListByName.keySet().removeAll(listNamesToRemove);
+
+        for (Map.Entry<String,PatternList> namedList : listByName.entrySet()) {
+
+            PatternList patternList = Objects.requireNonNull(namedList.getValue(), "patternList");
+            newListByName.put(namedList.getKey(), patternList);
+
+            if (listenerRegistry != null) {
+                patternList.setMatchListener(listenerRegistry.listenerFor(namedList.getKey()));
+            }
+        }
+
+        this.lists = new NamedLists(newListByName);
+    }
+
+
+    /**
+     * Gives every list the {@link MatchListener} the registry has for its name, and does the same for lists
+     * added or replaced from now on.  Use a {@link MatchMetricsRegistry} to keep metrics for every list.
+     *
+     * Each {@link PatternList} has only one listener, so a list shared with another ListMatcher ends up
+     * with the listener it was given last.
+     *
+     * @param listenerRegistry The registry to get listeners from, or null to take the listeners off all the
+     *   lists.
+     */
+    public synchronized void setMatchListenerRegistry(MatchListenerRegistry listenerRegistry) {
+
+        this.listenerRegistry = listenerRegistry;
+
+        for (Map.Entry<String,PatternList> namedList : lists.listByName.entrySet()) {
+            if (namedList.getValue() == null) {
+                continue;
+            }
+            namedList.getValue().setMatchListener(listenerRegistry != null ? listenerRegistry.listenerFor(namedList.getKey())
+                                                                           : null);
+        }
+    }
+
+
+    /**
+     * Returns all the lists currently in use, by name.  The Map can't be changed, and won't change when
+     * lists are replaced later on.
+     *
+     * @return
+     */
+    public Map<String,PatternList> getLists() {
+        return lists.listByName;
+    }
+
+
+    /**
+     * Returns the list currently used for the name, or null if there is none.
+     *
+     * @param listName The case-sensitive name of the list.
+     * @return
+     */
+    public PatternList getList(String listName) {
+        return lists.listByName.get(listName);
+    }
+
+
+    /**
+     * Loads patterns to use from a File, ignoring lines that start with # characters as commented.
+     *
+     * @throws IOException
+     */
+    public static Set<String> readPatternsFromFile(File patternsFile) throws IOException {
+
+        Set<String> patternsFound = new HashSet<>();
+
+        try (BufferedReader fileReader = Files.newBufferedReader(patternsFile.toPath(), UTF_8)) {
+            String line = null;
+            while ((line = fileReader.readLine()) != null) {
+
+                String contentBeforeComments = StringUtils.trim(StringUtils.substringBefore(line, "#"));
+                if (StringUtils.isNotBlank(contentBeforeComments)) {
+                    patternsFound.add(contentBeforeComments);
+                }
+            }
+        }
+
+        return patternsFound;
+    }
+
+
+    /**
+     * Returns true if the valueToTest matches any of the entries in the list specified by name.
+     *
+     * If the list specified by name is not know to this ListMatcher, it returns false.
+     *
+     * @param listName The case-sensitive name of the list to test with.
+     * @param valueToTest The value to check for matching against the list.
+     * @return
+     */
+    public boolean matchesList(String listName, String valueToTest) {
+
+        PatternList listToUse = getList(listName);
+        if (listToUse == null) {
+            log.debug("No such list [{}]", listName);
+            return false;
+        } else {
+            return listToUse.matches(valueToTest);
+        }
+    }
+
+
+    /**
+     * Checks the valueToTest against the list specified by name like matchesList(), but also returns how
+     * it matched, the pattern that did it, and the name of the list.  See {@link PatternList#match(String)}.
+     *
+     * If the list specified by name is not known to this ListMatcher, nothing matches.
+     *
+     * @param listName The case-sensitive name of the list to test with.
+     * @param valueToTest The value to check for matching against the list.
+     * @return The result, which is {@link MatchResult#MISS} if nothing matched.
+     */
+    public MatchResult match(String listName, String valueToTest) {
+
+        PatternList listToUse = getList(listName);
+        if (listToUse == null) {
+            log.debug("No such list [{}]", listName);
+            return MatchResult.MISS;
+        } else {
+            return listToUse.match(valueToTest).forList(listName);
+        }
+    }
+
+
+    /**
+     * Checks a whole batch of values against the list specified by name, returning a BitSet with the bit at
+     * each index set if the value at that index matches.  See {@link PatternList#matchesAll(List)}.
+     *
+     * If the list specified by name is not known to this ListMatcher, nothing matches.
+     *
+     * @param listName The case-sensitive name of the list to test with.
+     * @param valuesToTest The values to check for matching against the list.
+     * @return
+     */
+    public BitSet matchesListBatch(String listName, List<String> valuesToTest) {
+
+        PatternList listToUse = getList(listName);
+        if (listToUse == null) {
+            log.debug("No such list [{}]", listName);
+            return new BitSet();
+        } else {
+            return listToUse.matchesAll(valuesToTest);
+        }
+    }
+
+
+    /**
+     * Checks a whole batch of values against the list specified by name using the threads of the given pool.
+     * See {@link PatternList#matchesAll(List, ForkJoinPool)}.
+     *
+     * If the list specified by name is not known to this ListMatcher, nothing matches.
+     *
+     * @param listName The case-sensitive name of the list to test with.
+     * @param valuesToTest The values to check for matching against the list.
+     * @param pool The pool to check the values with.
+     * @return
+     */
+    public BitSet matchesListBatch(String listName, List<String> valuesToTest, ForkJoinPool pool) {
+
+        PatternList listToUse = getList(listName);
+        if (listToUse == null) {
+            log.debug("No such list [{}]", listName);
+            return new BitSet();
+        } else {
+            return listToUse.matchesAll(valuesToTest, pool);
+        }
+    }
+
+
+    /**
+     * Returns the names of all the lists the valueToTest matches.
+     *
+     * This is the same as calling matchesList() for every list, but the value is only upper-cased and split
+     * into components once for all the lists that share the same case sensitivity and component delimiter.
+     *
+     * @param valueToTest The value to check for matching against the lists.
+     * @return
+     */
+    public Set<String> matchingLists(String valueToTest) {
+        return matchingLists(valueToTest, null);
+    }
+
+
+    /**
+     * Returns the names of the lists, out of those given, that the valueToTest matches.  See
+     * {@link #matchingLists(String)}.
+     *
+     * Names of lists not known to this ListMatcher are ignored.
+     *
+     * @param valueToTest The value to check for matching against the lists.
+     * @param listNames The case-sensitive names of the lists to test with, or null for all of them.
+     * @return
+     */
+    public Set<String> matchingLists(String valueToTest, Collection<String> listNames) {
+
+        Set<String> matchingListNames = new LinkedHashSet<>();
+
+        if (valueToTest == null) {
+            return matchingListNames;
+        }
+
+        MatchValue valueToCheck = MatchValue.forCurrentThread();
+
+        try {
+            for (ListGroup group : lists.groups) {
+
+                boolean prepared = false;
+
+                for (int i=0; i<group.names.size(); i++) {
+
+                    String listName = group.names.get(i);
+                    if (listNames != null && !listNames.contains(listName)) {
+                        continue;
+                    }
+
+                    if (!prepared) {
+                        valueToCheck.reset(valueToTest, group.componentDelimiter, group.caseSensitive);
+                        prepared = true;
+                    }
+
+                    if (group.lists.get(i).matchesValue(valueToCheck)) {
+                        matchingListNames.add(listName);
+                    }
+                }
+            }
+        } finally {
+            valueToCheck.release();
+        }
+
+        return matchingListNames;
+    }
+
+
+
+    /**
+     * Returns a result for every list the valueToTest matches, with the list name and the pattern that
+     * matched.  Like {@link #matchingLists(String)}, the value is only prepared once for all the lists
+     * that share the same case sensitivity and component delimiter.
+     *
+     * @param valueToTest The value to check for matching against the lists.
+     * @return
+     */
+    public List<MatchResult> matchResults(String valueToTest) {
+
+        List<MatchResult> results = new ArrayList<>();
+
+        if (valueToTest == null) {
+            return results;
+        }
+
+        MatchValue valueToCheck = MatchValue.forCurrentThread();
+
+        try {
+            for (ListGroup group : lists.groups) {
+
+                valueToCheck.reset(valueToTest, group.componentDelimiter, group.caseSensitive);
+
+                for (int i=0; i<group.names.size(); i++) {
+                    MatchResult result = group.lists.get(i).check(valueToCheck, true);
+                    if (result.matched()) {
+                        results.add(result.forList(group.names.get(i)));
+                    }
+                }
+            }
+        } finally {
+            valueToCheck.release();
+        }
+
+        return results;
+    }
+
+
+
+    /**
+     * The lists known at one point in time, along with how they are grouped.  Never changed once made.
+     */
+    private static final class NamedLists {
+
+        private final Map<String,PatternList> listByName;
+
+        //the same lists, grouped by the settings that decide how a value is prepared for them:
+        private final List<ListGroup> groups;
+
+
+        NamedLists(Map<String,PatternList> listByName) {
+            this.listByName = Collections.unmodifiableMap(listByName);
+            this.groups = groupBySettings(listByName);
+        }
+
+
+        private static List<ListGroup> groupBySettings(Map<String,PatternList> listByName) {
+
+            List<ListGroup> groups = new ArrayList<>();
+
+            for (Map.Entry<String,PatternList> namedList : listByName.entrySet()) {
+
+                //a null list matches nothing, so it isn't checked at all:
+                if (namedList.getValue() == null) {
+                    continue;
+                }
+
+                ListGroup groupToUse = null;
+                for (ListGroup group : groups) {
+                    if (group.accepts(namedList.getValue())) {
+                        groupToUse = group;
+                        break;
+                    }
+                }
+
+                if (groupToUse == null) {
+                    groupToUse = new ListGroup(namedList.getValue());
+                    groups.add(groupToUse);
+                }
+
+                groupToUse.add(namedList.getKey(), namedList.getValue());
+            }
+
+            return groups;
+        }
+    }
+
+
+
+    /**
+     * Lists whose values are prepared the same way, so they can all check the same {@link MatchValue}.
+     */
+    private static final class ListGroup {
+
+        private final String componentDelimiter;
+
+        private final boolean caseSensitive;
+
+        private final List<String> names = new ArrayList<>();
+
+        private final List<PatternList> lists = new ArrayList<>();
+
+
+        ListGroup(PatternList firstList) {
+            this.componentDelimiter = StringUtils.defaultString(firstList.getComponentDelimiter());
+            this.caseSensitive = firstList.isCaseSensitive();
+        }
+
+
+        boolean accepts(PatternList patternList) {
+            return caseSensitive == patternList.isCaseSensitive()
+                   && componentDelimiter.equals(StringUtils.defaultString(patternList.getComponentDelimiter()));
+        }
+
+
+        void add(String name, PatternList patternList) {
+            names.add(name);
+            lists.add(patternList);
+        }
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,48 @@
+package com.giladam.listmatch;
+
+
+/**
+ * The set of normalized exact-match patterns of a {@link PatternList}, which can be checked straight from a
+ * range of a {@link MatchValue}.
+ *
+ * Only one thread may change the set at a time, but any number of threads may check it at the same time
+ * without locking, and a check sees every change that finished before it started.
+ *
+ * @author Gil Adam
+ *
+ */
+interface LiteralSet {
+
+    int size();
+
+
+    /**
+     * Returns true if the characters of the value from start to end equal one of the literals.
+     * Implementations must not allocate anything while doing so.
+     */
+    boolean contains(MatchValue value, int start, int end);
+
+
+    boolean contains(String literal);
+
+
+    /**
+     * Adds a literal, returning false if it was already there.  Must not be called by more than one
+     * thread at a time.
+     */
+    boolean add(String literal);
+
+
+    /**
+     * Removes a literal, returning false if it wasn't there.  Must not be called by more than one thread
+     * at a time.
+     */
+    boolean remove(String literal);
+
+
+    /**
+     * Returns the same literals as an {@link OffHeapLiteralSet}, which is this set if it already is one.
+     */
+    OffHeapLiteralSet toOffHeap();
+
+}
@@ -0,0 +1,134 @@
+package com.giladam.listmatch;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ * A small open-addressing hash table keyed on normalized literal Strings that can be looked up straight from
+ * a range of a {@link MatchValue}, without making a String out of it first.
+ *
+ * One thread may put values while others are reading: each slot holds its key and its value next to each
+ * other, the value is stored before the key, and a bigger table is only swapped in once it is complete, so a
+ * reader either finds the value that was put or doesn't find the key yet.  Values must not be changed once
+ * they are put; put a changed copy instead.
+ *
+ * @author Gil Adam
+ *
+ * @param <V>
+ */
+final class LiteralTable<V> {
+
+    private static final int MIN_CAPACITY = 4;
+
+    //the key of slot i at 2 * i and its value right after it:
+    private volatile AtomicReferenceArray<Object> slots;
+
+    private int size;
+
+
+    LiteralTable() {
+        this(0);
+    }
+
+
+    LiteralTable(int expectedSize) {
+
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+
+        this.slots = new AtomicReferenceArray<>(2 * capacity);
+    }
+
+
+    int size() {
+        return size;
+    }
+
+
+    void put(String key, V value) {
+
+        AtomicReferenceArray<Object> currentSlots = slots;
+        int slot = slotFor(currentSlots, key);
+
+        if (currentSlots.get(2 * slot) == null) {
+            if ((size + 1) * 2 > currentSlots.length() / 2) {
+                currentSlots = resize(currentSlots);
+                slot = slotFor(currentSlots, key);
+            }
+            currentSlots.set(2 * slot + 1, value);
+            currentSlots.set(2 * slot, key);
+            size++;
+        } else {
+            currentSlots.set(2 * slot + 1, value);
+        }
+    }
+
+
+    private static int slotFor(AtomicReferenceArray<Object> slots, String key) {
+
+        int mask = slots.length() / 2 - 1;
+        int slot = spread(key.hashCode()) & mask;
+
+        Object slotKey;
+        while ((slotKey = slots.get(2 * slot)) != null && !slotKey.equals(key)) {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+
+    private AtomicReferenceArray<Object> resize(AtomicReferenceArray<Object> oldSlots) {
+
+        AtomicReferenceArray<Object> newSlots = new AtomicReferenceArray<>(oldSlots.length() * 2);
+
+        for (int i=0; i<oldSlots.length(); i+=2) {
+            Object key = oldSlots.get(i);
+            if (key != null) {
+                int slot = slotFor(newSlots, (String) key);
+                newSlots.set(2 * slot, key);
+                newSlots.set(2 * slot + 1, oldSlots.get(i + 1));
+            }
+        }
+
+        this.slots = newSlots;
+        return newSlots;
+    }
+
+
+    @SuppressWarnings("unchecked")
+    V get(String key) {
+        AtomicReferenceArray<Object> currentSlots = slots;
+        return (V) currentSlots.get(2 * slotFor(currentSlots, key) + 1);
+    }
+
+
+    /**
+     * Returns the value kept under the literal that equals the characters of the value from start to end,
+     * or null if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    V get(MatchValue value, int start, int end) {
+
+        AtomicReferenceArray<Object> currentSlots = slots;
+        int mask = currentSlots.length() / 2 - 1;
+        int slot = spread(value.regionHash(start, end)) & mask;
+
+        Object key;
+        while ((key = currentSlots.get(2 * slot)) != null) {
+            if (value.regionEquals(start, end, (String) key)) {
+                return (V) currentSlots.get(2 * slot + 1);
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        return null;
+    }
+
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
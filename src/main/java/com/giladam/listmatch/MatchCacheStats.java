@@ -0,0 +1,78 @@
+package com.giladam.listmatch;
+
+
+/**
+ * A snapshot of how well the result cache of a {@link PatternList} is doing.  All counts are since the
+ * list was created; clearing the cache when the patterns change does not reset them.
+ *
+ * @author Gil Adam
+ *
+ */
+public final class MatchCacheStats {
+
+    private final long hitCount;
+
+    private final long missCount;
+
+    private final long evictionCount;
+
+    private final int size;
+
+    private final int maximumSize;
+
+
+    MatchCacheStats(long hitCount, long missCount, long evictionCount, int size, int maximumSize) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.size = size;
+        this.maximumSize = maximumSize;
+    }
+
+
+    /**
+     * The number of checks that were answered from the cache.
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+
+    /**
+     * The number of checks that had to be worked out against the wildcard patterns.
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+
+    /**
+     * The number of results thrown away to make room for newer ones.
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+
+    /**
+     * The number of results in the cache right now.
+     */
+    public int getSize() {
+        return size;
+    }
+
+
+    /**
+     * The most results the cache will hold, or 0 if the list has no cache.
+     */
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+
+    @Override
+    public String toString() {
+        return "MatchCacheStats[hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount
+               + ", size=" + size + "/" + maximumSize + "]";
+    }
+}
@@ -0,0 +1,33 @@
+package com.giladam.listmatch;
+
+
+/**
+ * Is told the result of a value checked by an {@link AsyncListMatcher}.
+ *
+ * Methods are called on a thread of the AsyncListMatcher's executor, in the middle of a batch, so they
+ * should return quickly and hand anything slow off to another thread.
+ *
+ * @author Gil Adam
+ *
+ */
+public interface MatchCallback {
+
+    /**
+     * Called once the value has been checked.
+     *
+     * @param listName The name of the list the value was checked against.
+     * @param value The value that was checked.
+     * @param matches True if the value matched the list.
+     */
+    void checked(String listName, String value, boolean matches);
+
+
+    /**
+     * Called instead of checked() if the value could not be checked.
+     *
+     * @param listName The name of the list the value was to be checked against.
+     * @param value The value that was to be checked.
+     * @param cause What went wrong.
+     */
+    void failed(String listName, String value, Throwable cause);
+}
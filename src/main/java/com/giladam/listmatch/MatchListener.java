@@ -0,0 +1,41 @@
+package com.giladam.listmatch;
+
+
+/**
+ * Gets told how every check against a {@link PatternList} turned out, to keep metrics with whatever library
+ * is in use.  See {@link PatternListMetrics} for one that keeps them itself.
+ *
+ * Listeners are called on the threads doing the checks, in the middle of them, so they must be thread-safe
+ * and quick.  A list without a listener pays nothing more than looking whether it has one.  A listener may
+ * check other values against lists, which doesn't disturb the check it was called from, but each such check
+ * makes a new copy of its value, so it's best left to another thread.
+ *
+ * @author Gil Adam
+ *
+ */
+public interface MatchListener {
+
+    /**
+     * The elapsed time given for checks that were not timed.
+     */
+    long NOT_TIMED = -1;
+
+
+    /**
+     * Called before each check to ask whether it should be timed.  Timing takes a bit longer than the check
+     * of an exact match does, so most listeners only time some of the checks.
+     */
+    boolean timeNextCheck();
+
+
+    /**
+     * Called after each check.
+     *
+     * @param outcome How the check turned out.
+     * @param matchedPattern The wildcard pattern that matched, or null if the outcome isn't WILDCARD or the
+     *   result was taken from the list's result cache.
+     * @param elapsedNanos How long the check took, or NOT_TIMED.
+     */
+    void checked(MatchOutcome outcome, PatternListEntry matchedPattern, long elapsedNanos);
+
+}
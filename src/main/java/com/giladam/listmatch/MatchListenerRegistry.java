@@ -0,0 +1,20 @@
+package com.giladam.listmatch;
+
+
+/**
+ * Hands out the {@link MatchListener} for each named list of a {@link ListMatcher}, including lists that are
+ * added or replaced later.  See {@link MatchMetricsRegistry} for one that keeps {@link PatternListMetrics}.
+ *
+ * @author Gil Adam
+ *
+ */
+public interface MatchListenerRegistry {
+
+    /**
+     * Returns the listener for the list with the given name, or null if it shouldn't have one.  Called
+     * again whenever a list of that name is replaced, so it should hand back the same listener each time
+     * if its counts should carry on.
+     */
+    MatchListener listenerFor(String listName);
+
+}
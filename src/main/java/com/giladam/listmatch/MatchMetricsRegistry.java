@@ -0,0 +1,70 @@
+package com.giladam.listmatch;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * A {@link MatchListenerRegistry} that gives each named list its own {@link PatternListMetrics}, which carry on
+ * counting when the list is replaced.
+ *
+ * @author Gil Adam
+ *
+ */
+public class MatchMetricsRegistry implements MatchListenerRegistry {
+
+    private final int latencySampleRate;
+
+    private final boolean countPatternHits;
+
+    private final Map<String,PatternListMetrics> metricsByListName = new LinkedHashMap<>();
+
+
+    /**
+     * Creates a registry whose metrics time one in every 100 checks and don't count the hits of each pattern.
+     */
+    public MatchMetricsRegistry() {
+        this(100, false);
+    }
+
+
+    /**
+     * Creates a registry whose metrics are set up as given, see
+     * {@link PatternListMetrics#PatternListMetrics(int, boolean)}.
+     */
+    public MatchMetricsRegistry(int latencySampleRate, boolean countPatternHits) {
+        this.latencySampleRate = latencySampleRate;
+        this.countPatternHits = countPatternHits;
+    }
+
+
+    @Override
+    public synchronized PatternListMetrics listenerFor(String listName) {
+
+        PatternListMetrics metrics = metricsByListName.get(listName);
+
+        if (metrics == null) {
+            metrics = new PatternListMetrics(latencySampleRate, countPatternHits);
+            metricsByListName.put(listName, metrics);
+        }
+
+        return metrics;
+    }
+
+
+    /**
+     * Returns the metrics of the list with the given name, or null if it never had any.
+     */
+    public synchronized PatternListMetrics getMetrics(String listName) {
+        return metricsByListName.get(listName);
+    }
+
+
+    /**
+     * Returns the metrics of every list that had them so far, by list name.
+     */
+    public synchronized Map<String,PatternListMetrics> getAllMetrics() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(metricsByListName));
+    }
+}
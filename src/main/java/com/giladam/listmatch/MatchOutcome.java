@@ -0,0 +1,32 @@
+package com.giladam.listmatch;
+
+
+/**
+ * How a check of a value against a {@link PatternList} turned out, as told to a {@link MatchListener}.
+ *
+ * @author Gil Adam
+ *
+ */
+public enum MatchOutcome {
+
+    /**
+     * The value is one of the exact patterns.
+     */
+    EXACT,
+
+    /**
+     * The list has the wildcard by itself as a pattern, so every value matches.
+     */
+    MATCH_ALL,
+
+    /**
+     * The value matched one of the wildcard patterns.
+     */
+    WILDCARD,
+
+    /**
+     * The value matched nothing.
+     */
+    MISS;
+
+}
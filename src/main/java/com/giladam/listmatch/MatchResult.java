@@ -0,0 +1,117 @@
+package com.giladam.listmatch;
+
+
+/**
+ * What came of checking a value with {@link PatternList#match(String)} or
+ * {@link ListMatcher#match(String, String)}: whether it matched, how, and the pattern that did it.
+ *
+ * Results never change once made.  Results without a pattern of their own, such as misses, are shared, so
+ * only a hit on an exact or wildcard pattern makes a new one.
+ *
+ * @author Gil Adam
+ *
+ */
+public final class MatchResult {
+
+    /**
+     * The result for values that matched nothing, and for null values.
+     */
+    public static final MatchResult MISS = new MatchResult(MatchOutcome.MISS, null, null, null);
+
+    static final MatchResult MATCH_ALL = new MatchResult(MatchOutcome.MATCH_ALL, PatternList.WILDCARD, null, null);
+
+    //used where only the outcome is needed, so no pattern has to be looked up:
+    static final MatchResult EXACT = new MatchResult(MatchOutcome.EXACT, null, null, null);
+    static final MatchResult WILDCARD = new MatchResult(MatchOutcome.WILDCARD, null, null, null);
+
+    private final MatchOutcome outcome;
+
+    private final String pattern;
+
+    private final PatternListEntry patternEntry;
+
+    private final String listName;
+
+
+    private MatchResult(MatchOutcome outcome, String pattern, PatternListEntry patternEntry, String listName) {
+        this.outcome = outcome;
+        this.pattern = pattern;
+        this.patternEntry = patternEntry;
+        this.listName = listName;
+    }
+
+
+    static MatchResult exact(String normalizedPattern) {
+        return new MatchResult(MatchOutcome.EXACT, normalizedPattern, null, null);
+    }
+
+
+    static MatchResult wildcard(PatternListEntry patternEntry, String componentDelimiter) {
+        return new MatchResult(MatchOutcome.WILDCARD, joinComponents(patternEntry, componentDelimiter), patternEntry, null);
+    }
+
+
+    private static String joinComponents(PatternListEntry patternEntry, String componentDelimiter) {
+
+        StringBuilder sb = new StringBuilder();
+        String[] components = patternEntry.getComponents();
+
+        for (int i=0; i<components.length; i++) {
+            if (i > 0) {
+                sb.append(componentDelimiter);
+            }
+            sb.append(components[i]);
+        }
+
+        return sb.toString();
+    }
+
+
+    /**
+     * Returns the same result for the list with the given name.  Misses stay shared and have no list name.
+     */
+    MatchResult forList(String listName) {
+        return matched() ? new MatchResult(outcome, pattern, patternEntry, listName) : this;
+    }
+
+
+    public boolean matched() {
+        return outcome != MatchOutcome.MISS;
+    }
+
+
+    public MatchOutcome getOutcome() {
+        return outcome;
+    }
+
+
+    /**
+     * Returns the normalized pattern that matched (upper-cased for a case-insensitive list), which is the
+     * same every time it matches, or null for a miss.
+     */
+    public String getPattern() {
+        return pattern;
+    }
+
+
+    /**
+     * Returns the wildcard pattern that matched, or null if the outcome isn't WILDCARD.
+     */
+    public PatternListEntry getPatternEntry() {
+        return patternEntry;
+    }
+
+
+    /**
+     * Returns the name of the list that matched for results from a {@link ListMatcher}, or null.
+     */
+    public String getListName() {
+        return listName;
+    }
+
+
+    @Override
+    public String toString() {
+        return "MatchResult [outcome=" + outcome + ", pattern=" + pattern + ", listName=" + listName + "]";
+    }
+}
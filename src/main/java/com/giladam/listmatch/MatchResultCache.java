@@ -0,0 +1,330 @@
+package com.giladam.listmatch;
+
+
+/**
+ * A bounded cache of the results of checking values against the wildcard patterns of a {@link PatternList},
+ * for lists where a few values make up most of the checks.
+ *
+ * Entries are evicted with a segmented LRU policy: a value is first kept on probation, and only moves to the
+ * protected part (at most 80% of the cache) when it is looked up again, so a burst of values that are only
+ * seen once cannot push out the ones that keep coming back.  The cache is split into segments by hash that
+ * are each locked on their own, and looking a value up does not allocate anything, only caching a new
+ * result does.
+ *
+ * Results are kept under the normalized value (upper-cased for a case-insensitive list), and both matches
+ * and non-matches are cached.  When the patterns change the cache must be cleared, and a result that was
+ * worked out before the clear is never stored after it.
+ *
+ * @author Gil Adam
+ *
+ */
+final class MatchResultCache {
+
+    private static final int MAX_SEGMENTS = 16;
+
+    private static final int PROTECTED_PERCENT = 80;
+
+    private final Segment[] segments;
+
+    private final int maximumSize;
+
+    private volatile long generation;
+
+
+    MatchResultCache(int maximumSize) {
+
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("The maximum size must be more than 0, not " + maximumSize);
+        }
+
+        int segmentCount = 1;
+        while (segmentCount < MAX_SEGMENTS && segmentCount * 2 <= maximumSize) {
+            segmentCount <<= 1;
+        }
+
+        this.maximumSize = maximumSize;
+        this.segments = new Segment[segmentCount];
+
+        for (int i=0; i<segmentCount; i++) {
+            //spread any remainder over the first segments, so the sizes add up to exactly the maximum:
+            int segmentSize = maximumSize / segmentCount + (i < maximumSize % segmentCount ? 1 : 0);
+            segments[i] = new Segment(segmentSize);
+        }
+    }
+
+
+    int maximumSize() {
+        return maximumSize;
+    }
+
+
+    /**
+     * Returns what has to be passed to put() along with a result worked out from now on.
+     */
+    long generation() {
+        return generation;
+    }
+
+
+    /**
+     * Returns the cached result for the whole (already reset) value, or null if it is not cached.
+     */
+    Boolean get(MatchValue value) {
+        int hash = value.regionHash(0, value.length());
+        return segmentFor(hash).get(value, hash);
+    }
+
+
+    /**
+     * Caches a result, unless the cache was cleared since the generation was read.
+     */
+    void put(MatchValue value, long resultGeneration, boolean result) {
+        int hash = value.regionHash(0, value.length());
+        segmentFor(hash).put(value, hash, result, resultGeneration);
+    }
+
+
+    /**
+     * Throws away every cached result.  Must be called after the patterns have changed.
+     */
+    void clear() {
+
+        synchronized (this) {
+            generation++;
+        }
+
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+
+    MatchCacheStats stats() {
+
+        long hits = 0;
+        long misses = 0;
+        long evictions = 0;
+        int size = 0;
+
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                hits += segment.hits;
+                misses += segment.misses;
+                evictions += segment.evictions;
+                size += segment.probationSize + segment.protectedSize;
+            }
+        }
+
+        return new MatchCacheStats(hits, misses, evictions, size, maximumSize);
+    }
+
+
+    private Segment segmentFor(int hash) {
+        int spread = hash ^ (hash >>> 16);
+        return segments[(spread >>> 8) & (segments.length - 1)];
+    }
+
+
+
+    /**
+     * One part of the cache with its own lock, hash table and two LRU lists (most recent first).
+     */
+    private final class Segment {
+
+        private final int capacity;
+
+        private final int maxProtected;
+
+        private final Node[] table;
+
+        private final Node probation = new Node(null, 0, false);
+
+        private final Node protectedValues = new Node(null, 0, false);
+
+        private int probationSize;
+
+        private int protectedSize;
+
+        private long hits;
+
+        private long misses;
+
+        private long evictions;
+
+
+        Segment(int capacity) {
+
+            this.capacity = capacity;
+            this.maxProtected = Math.max(1, capacity * PROTECTED_PERCENT / 100);
+
+            int tableSize = 1;
+            while (tableSize < capacity) {
+                tableSize <<= 1;
+            }
+            this.table = new Node[tableSize];
+
+            probation.unlink();
+            protectedValues.unlink();
+        }
+
+
+        synchronized Boolean get(MatchValue value, int hash) {
+
+            Node node = find(value, hash);
+
+            if (node == null) {
+                misses++;
+                return null;
+            }
+
+            hits++;
+
+            if (node.isProtected) {
+                node.unlink();
+                node.linkAfter(protectedValues);
+            } else {
+                //looked up again, so it has earned a place in the protected part:
+                node.unlink();
+                probationSize--;
+
+                if (protectedSize == maxProtected) {
+                    Node demoted = protectedValues.previous;
+                    demoted.unlink();
+                    demoted.isProtected = false;
+                    demoted.linkAfter(probation);
+                    protectedSize--;
+                    probationSize++;
+                }
+
+                node.isProtected = true;
+                node.linkAfter(protectedValues);
+                protectedSize++;
+            }
+
+            return node.result;
+        }
+
+
+        synchronized void put(MatchValue value, int hash, boolean result, long resultGeneration) {
+
+            if (resultGeneration != generation || find(value, hash) != null) {
+                return;
+            }
+
+            if (probationSize + protectedSize == capacity) {
+                evict();
+            }
+
+            Node node = new Node(value.normalizedText(), hash, result);
+
+            int bucket = hash & (table.length - 1);
+            node.nextInBucket = table[bucket];
+            table[bucket] = node;
+
+            node.linkAfter(probation);
+            probationSize++;
+        }
+
+
+        private void evict() {
+
+            Node victim;
+            if (probationSize > 0) {
+                victim = probation.previous;
+                probationSize--;
+            } else {
+                victim = protectedValues.previous;
+                protectedSize--;
+            }
+
+            victim.unlink();
+
+            int bucket = victim.hash & (table.length - 1);
+            if (table[bucket] == victim) {
+                table[bucket] = victim.nextInBucket;
+            } else {
+                Node node = table[bucket];
+                while (node.nextInBucket != victim) {
+                    node = node.nextInBucket;
+                }
+                node.nextInBucket = victim.nextInBucket;
+            }
+
+            evictions++;
+        }
+
+
+        private Node find(MatchValue value, int hash) {
+
+            Node node = table[hash & (table.length - 1)];
+            while (node != null && (node.hash != hash || !value.regionEquals(0, value.length(), node.key))) {
+                node = node.nextInBucket;
+            }
+
+            return node;
+        }
+
+
+        synchronized void clear() {
+
+            for (int i=0; i<table.length; i++) {
+                table[i] = null;
+            }
+
+            probation.unlink();
+            protectedValues.unlink();
+            probationSize = 0;
+            protectedSize = 0;
+        }
+    }
+
+
+
+    private static final class Node {
+
+        private final String key;
+
+        private final int hash;
+
+        private final boolean result;
+
+        private boolean isProtected;
+
+        private Node nextInBucket;
+
+        private Node previous;
+
+        private Node next;
+
+
+        Node(String key, int hash, boolean result) {
+            this.key = key;
+            this.hash = hash;
+            this.result = result;
+        }
+
+
+        /**
+         * Takes this node out of its list.  A node that isn't in a list (or a list head) ends up in a list
+         * of its own.
+         */
+        void unlink() {
+
+            if (previous != null) {
+                previous.next = next;
+                next.previous = previous;
+            }
+
+            previous = this;
+            next = this;
+        }
+
+
+        void linkAfter(Node node) {
+            this.previous = node;
+            this.next = node.next;
+            node.next.previous = this;
+            node.next = this;
+        }
+    }
+}
@@ -0,0 +1,397 @@
+package com.giladam.listmatch;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import org.apache.commons.lang3.StringUtils;
+
+
+/**
+ * A value being checked against a {@link PatternList}, seen as character ranges of the original value so
+ * that matching does not have to make any new Strings.
+ *
+ * Components are found by scanning for the delimiter (no regular expressions) and follow the same rules as
+ * {@link PatternListEntry}, including dropping empty trailing components.  Each value is copied into a
+ * buffer that is reused for the next one, in a single pass that also folds its case for a case-insensitive
+ * list (see {@link CaseFolding}) and works out its hash, so comparisons and lookups read plain characters and
+ * nothing has to be hashed twice.  Only values with characters that are not ASCII are upper-cased into a new
+ * String first.  Values that arrive as UTF-8 bytes are copied straight from the bytes if they are all ASCII,
+ * and only decoded into a String otherwise.
+ *
+ * Instances are meant to be reused, one per thread, so they are not thread-safe.  The one a thread reuses
+ * is only handed out again once it is released, so a check that starts while another one on the same thread
+ * is still going (such as from a {@link MatchListener}) gets a new instance instead of overwriting it.
+ *
+ * @author Gil Adam
+ *
+ */
+final class MatchValue {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    //one reusable instance per thread, so matching doesn't allocate:
+    private static final ThreadLocal<MatchValue> REUSABLE_VALUES = new ThreadLocal<MatchValue>() {
+        @Override
+        protected MatchValue initialValue() {
+            return new MatchValue();
+        }
+    };
+
+    //the value the way it is compared, reused (and grown when needed) for every value:
+    private char[] chars = new char[64];
+
+    private int length;
+
+    //the hash of the whole value, worked out while copying it:
+    private int valueHash;
+
+    private int componentCount;
+
+    private int[] componentStarts = new int[4];
+
+    private int[] componentEnds = new int[4];
+
+    //whether this is the reusable instance of its thread and handed out until release() is called:
+    private boolean inUse;
+
+
+    /**
+     * Returns the MatchValue the current thread should reuse for checking values, which must be released
+     * once the check is done.  If the reusable one is still in use further up the stack, a new one is
+     * returned instead.
+     */
+    static MatchValue forCurrentThread() {
+
+        MatchValue reusableValue = REUSABLE_VALUES.get();
+
+        if (reusableValue.inUse) {
+            return new MatchValue();
+        }
+
+        reusableValue.inUse = true;
+        return reusableValue;
+    }
+
+
+    /**
+     * Lets the current thread reuse this MatchValue for its next check, if it is the one it reuses.
+     */
+    void release() {
+        inUse = false;
+    }
+
+
+    /**
+     * Creates a new MatchValue for a single value, for when it is not worth reusing one.
+     *
+     * @param value
+     * @param componentDelimiter
+     * @param caseSensitive
+     * @return
+     */
+    static MatchValue of(String value, String componentDelimiter, boolean caseSensitive) {
+        return new MatchValue().reset(value, componentDelimiter, caseSensitive);
+    }
+
+
+    /**
+     * Points this MatchValue at a new value.
+     *
+     * @param value Must not be null.
+     * @param componentDelimiter
+     * @param caseSensitive
+     * @return this MatchValue
+     */
+    MatchValue reset(CharSequence value, String componentDelimiter, boolean caseSensitive) {
+
+        if (caseSensitive) {
+            copy(value);
+        } else if (!copyFolded(value)) {
+            //there's no cheap way to upper-case everything else correctly, so do it the same way the patterns were:
+            copy(CaseFolding.fold(value.toString()));
+        }
+
+        findComponents(componentDelimiter);
+
+        return this;
+    }
+
+
+    /**
+     * Points this MatchValue at length bytes of UTF-8 text starting at offset.
+     *
+     * @param bytes Must not be null.
+     * @param offset
+     * @param length
+     * @param componentDelimiter
+     * @param caseSensitive
+     * @return this MatchValue
+     * @throws IndexOutOfBoundsException If offset and length are outside of the bytes.
+     */
+    MatchValue reset(byte[] bytes, int offset, int length, String componentDelimiter, boolean caseSensitive) {
+
+        if (offset < 0 || length < 0 || offset > bytes.length - length) {
+            throw new IndexOutOfBoundsException("offset: " + offset + ", length: " + length + ", bytes: " + bytes.length);
+        }
+
+        char[] buffer = buffer(length);
+        boolean foldCase = !caseSensitive;
+        int hash = 0;
+
+        for (int i=0; i<length; i++) {
+
+            byte b = bytes[offset + i];
+            if (b < 0) {
+                return reset(new String(bytes, offset, length, UTF_8), componentDelimiter, caseSensitive);
+            }
+
+            char c = foldCase ? CaseFolding.foldAscii((char) b) : (char) b;
+            buffer[i] = c;
+            hash = 31 * hash + c;
+        }
+
+        copied(length, hash);
+        findComponents(componentDelimiter);
+
+        return this;
+    }
+
+
+    /**
+     * Points this MatchValue at the UTF-8 text from the buffer's position to its limit, without changing
+     * the buffer's position.
+     *
+     * @param bytes Must not be null.
+     * @param componentDelimiter
+     * @param caseSensitive
+     * @return this MatchValue
+     */
+    MatchValue reset(ByteBuffer bytes, String componentDelimiter, boolean caseSensitive) {
+
+        if (bytes.hasArray()) {
+            return reset(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining(), componentDelimiter, caseSensitive);
+        }
+
+        int start = bytes.position();
+        int length = bytes.remaining();
+        char[] buffer = buffer(length);
+        boolean foldCase = !caseSensitive;
+        int hash = 0;
+
+        for (int i=0; i<length; i++) {
+
+            byte b = bytes.get(start + i);
+            if (b < 0) {
+                return reset(UTF_8.decode(bytes.duplicate()).toString(), componentDelimiter, caseSensitive);
+            }
+
+            char c = foldCase ? CaseFolding.foldAscii((char) b) : (char) b;
+            buffer[i] = c;
+            hash = 31 * hash + c;
+        }
+
+        copied(length, hash);
+        findComponents(componentDelimiter);
+
+        return this;
+    }
+
+
+    private void copy(CharSequence value) {
+
+        int valueLength = value.length();
+        char[] buffer = buffer(valueLength);
+
+        if (value instanceof String) {
+            //Strings copy faster than one character at a time, and keep their hash once it's worked out:
+            ((String) value).getChars(0, valueLength, buffer, 0);
+            copied(valueLength, value.hashCode());
+            return;
+        }
+
+        int hash = 0;
+        for (int i=0; i<valueLength; i++) {
+            char c = value.charAt(i);
+            buffer[i] = c;
+            hash = 31 * hash + c;
+        }
+
+        copied(valueLength, hash);
+    }
+
+
+    /**
+     * Copies a value, folding its case, unless it turns out to have characters that aren't ASCII.
+     *
+     * @return False if the value wasn't copied.
+     */
+    private boolean copyFolded(CharSequence value) {
+
+        int valueLength = value.length();
+        char[] buffer = buffer(valueLength);
+        int hash = 0;
+
+        for (int i=0; i<valueLength; i++) {
+
+            char c = value.charAt(i);
+            if (!CaseFolding.isAscii(c)) {
+                return false;
+            }
+
+            c = CaseFolding.foldAscii(c);
+            buffer[i] = c;
+            hash = 31 * hash + c;
+        }
+
+        copied(valueLength, hash);
+
+        return true;
+    }
+
+
+    private char[] buffer(int capacity) {
+
+        if (chars.length < capacity) {
+            chars = new char[Math.max(capacity, chars.length * 2)];
+        }
+
+        return chars;
+    }
+
+
+    private void copied(int copiedLength, int hash) {
+        this.length = copiedLength;
+        this.valueHash = hash;
+    }
+
+
+    private void findComponents(String componentDelimiter) {
+
+        componentCount = 0;
+
+        if (length == 0) {
+            return;
+        }
+
+        if (StringUtils.isEmpty(componentDelimiter)) {
+            addComponent(0, length);
+            return;
+        }
+
+        int componentStart = 0;
+        int delimiterLength = componentDelimiter.length();
+
+        for (int i=0; i<=length - delimiterLength; i++) {
+            if (regionIs(i, componentDelimiter)) {
+                addComponent(componentStart, i);
+                componentStart = i + delimiterLength;
+                i += delimiterLength - 1;
+            }
+        }
+
+        addComponent(componentStart, length);
+
+        //like String.split(), empty trailing components are dropped:
+        while (componentCount > 0 && componentStarts[componentCount - 1] == componentEnds[componentCount - 1]) {
+            componentCount--;
+        }
+    }
+
+
+    private boolean regionIs(int start, String expected) {
+
+        for (int i=0; i<expected.length(); i++) {
+            if (chars[start + i] != expected.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    private void addComponent(int start, int end) {
+
+        if (componentCount == componentStarts.length) {
+            int[] newStarts = new int[componentCount * 2];
+            int[] newEnds = new int[componentCount * 2];
+            System.arraycopy(componentStarts, 0, newStarts, 0, componentCount);
+            System.arraycopy(componentEnds, 0, newEnds, 0, componentCount);
+            componentStarts = newStarts;
+            componentEnds = newEnds;
+        }
+
+        componentStarts[componentCount] = start;
+        componentEnds[componentCount] = end;
+        componentCount++;
+    }
+
+
+    int length() {
+        return length;
+    }
+
+
+    /**
+     * Returns the character at the index, upper-cased if the list is case-insensitive.
+     */
+    char charAt(int index) {
+        return chars[index];
+    }
+
+
+    int componentCount() {
+        return componentCount;
+    }
+
+
+    int componentStart(int component) {
+        return componentStarts[component];
+    }
+
+
+    int componentEnd(int component) {
+        return componentEnds[component];
+    }
+
+
+    /**
+     * Returns true if the characters from start to end are the same as the (already normalized) literal.
+     */
+    boolean regionEquals(int start, int end, String literal) {
+        return (end - start) == literal.length() && regionIs(start, literal);
+    }
+
+
+    /**
+     * Returns the same hash code the (normalized) characters from start to end would have as a String.
+     */
+    int regionHash(int start, int end) {
+
+        //the exact matches, the result cache and the index can all ask for the whole value's hash:
+        if (start == 0 && end == length) {
+            return valueHash;
+        }
+
+        int hash = 0;
+        for (int i=start; i<end; i++) {
+            hash = 31 * hash + chars[i];
+        }
+
+        return hash;
+    }
+
+
+    /**
+     * Returns the whole value the way it is compared, as a new String.
+     */
+    String normalizedText() {
+        return new String(chars, 0, length);
+    }
+
+
+    @Override
+    public String toString() {
+        return normalizedText();
+    }
+}
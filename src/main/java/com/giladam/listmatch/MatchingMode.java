@@ -0,0 +1,66 @@
+package com.giladam.listmatch;
+
+
+/**
+ * Selects how a {@link PatternList} evaluates its wildcard patterns.  Exact patterns are always looked up
+ * directly no matter which mode is used, and every mode gives the same results, apart from the extra
+ * patterns {@link #IPV4} and {@link #IPV6} understand and the way {@link #URL} keeps wildcards within the
+ * part of the URL they are in.
+ *
+ * @author Gil Adam
+ *
+ */
+public enum MatchingMode {
+
+    /**
+     * Indexes patterns on their literal prefix or suffix and fully checks only the ones that line up with
+     * the value.  This is the default and works well when most patterns start or end with literal text.
+     */
+    STANDARD,
+
+    /**
+     * Compiles all of the wildcard patterns into one automaton that is built lazily as values are checked,
+     * so each value is read once no matter how many patterns the list has.  This is worth it for lists with
+     * lots of patterns that have wildcards on both ends (like "*something*"), which cannot be indexed.
+     */
+    AUTOMATON,
+
+    /**
+     * Treats the last component of each pattern (the domain part of an email address, or the whole value if
+     * there is no delimiter) as a domain name and indexes patterns like "*@*.example.com" or "*.edu" by their
+     * domain labels, so checking a value takes one step per label of its domain.  Patterns that do not end in
+     * whole domain labels are evaluated the same way as {@link #STANDARD}.
+     */
+    DOMAIN,
+
+    /**
+     * For lists of IPv4 addresses, with "." or no component delimiter (with any other, it is the same as
+     * {@link #STANDARD}).  Patterns for a block of addresses
+     * are kept as ranges of numbers, so checking an address takes a binary search however many blocks the
+     * list has.  Besides patterns like "10.100.*.*", this mode also understands CIDR blocks like
+     * "10.100.0.0/16" and ranges like "10.0.0.1-10.0.0.99", which the other modes would take literally.
+     * Values that aren't written as four plain decimal octets are matched as text, like in the other modes.
+     */
+    IPV4,
+
+    /**
+     * For lists of IPv6 addresses, with no component delimiter (with one, it is the same as {@link #STANDARD}).
+     * Patterns that are addresses or CIDR prefixes like "2001:db8::/32" are read into 128 bits and kept in
+     * a binary trie, so they match the same address however it is written ("2001:db8::1" and
+     * "2001:0DB8:0:0:0:0:0:1"), and checking a value takes at most one step per bit.  Patterns with
+     * wildcards, and values that aren't addresses, are matched as text like in the other modes.
+     */
+    IPV6,
+
+    /**
+     * For lists of URLs, with no component delimiter (with one, it is the same as {@link #STANDARD}).  Patterns
+     * and values written as "scheme://host/path" are split into their scheme, host and the rest, and each
+     * part is matched on its own, so a wildcard in the scheme or host only matches within it ("http://*.edu/*"
+     * matches "http://www.example.edu/page" but not "http://example.com/x.edu/").  Patterns are indexed by the
+     * labels their host ends with and the path segments their path starts with, so checking a URL only checks
+     * the patterns for its host.  Patterns that aren't written as a URL (like "*www.*.com*"), and values
+     * that aren't URLs, are matched as text like in the other modes.
+     */
+    URL
+
+}
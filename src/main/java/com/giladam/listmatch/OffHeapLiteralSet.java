@@ -0,0 +1,677 @@
+package com.giladam.listmatch;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+
+/**
+ * The {@link LiteralSet} used for very big lists, which keeps the literals as UTF-8 bytes in direct
+ * (off-heap) memory so that they cost the garbage collector nothing, no matter how many there are.
+ *
+ * The literals are written one after the other into data chunks, each one preceded by its length.  An
+ * open-addressing table of 8-byte slots, also off-heap, points at them: each slot holds the top 24 bits
+ * of the literal's 64-bit hash (so most slots that don't match can be skipped without reading the data),
+ * the data chunk and the position in that chunk.  The hash is worked out from the UTF-8 bytes, and a
+ * value is hashed and compared by encoding its characters on the fly, so checking never makes a String or
+ * byte array.  Both the table and the data are split into chunks of at most 1GB, since a single
+ * ByteBuffer can't go past 2GB.
+ *
+ * Changes follow the same rules as {@link HeapLiteralSet}: every change is followed by a write of the
+ * volatile state field that checks read first, and a new data chunk is published that way before any slot
+ * points into it.  A literal's bytes are written before its slot is, but these are plain writes, so a check
+ * running at the same time as an add may find the new slot before it sees the bytes, or before it sees
+ * the chunk they are in.  It then reads the zeros the chunk started out with (or finds no such chunk) and
+ * treats the slot as a miss, so the only effect is that it doesn't see the literal being added yet.  Slots
+ * are aligned 8-byte values, which are written in one go.  Removed literals leave a marker in their slot
+ * and their bytes behind in the data, and both are cleaned up when the table is rebuilt.
+ *
+ * @author Gil Adam
+ *
+ */
+final class OffHeapLiteralSet implements LiteralSet {
+
+    private static final int SLOT_BYTES = 8;
+
+    //slots per table chunk, so that each chunk is 1GB:
+    private static final int TABLE_CHUNK_BITS = 27;
+
+    private static final int MIN_TABLE_CAPACITY = 16;
+
+    //positions in a data chunk take 30 bits, and position 0 is never used so no slot is ever 0:
+    private static final int POSITION_BITS = 30;
+
+    private static final int MAX_DATA_CHUNK_SIZE = (1 << POSITION_BITS) - 1;
+
+    private static final int MIN_DATA_CHUNK_SIZE = 1 << 16;
+
+    //the 10 bits above the position pick the data chunk:
+    private static final int MAX_DATA_CHUNKS = 1 << 10;
+
+    private static final int REFERENCE_BITS = 40;
+
+    private static final long REFERENCE_MASK = (1L << REFERENCE_BITS) - 1;
+
+    private static final long EMPTY = 0;
+
+    //no literal can be at the very last position of a data chunk, so this can't be a real slot:
+    private static final long REMOVED = -1;
+
+    //about how many bytes to set aside per literal when the first data chunk is made:
+    private static final int EXPECTED_LITERAL_BYTES = 32;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private volatile State state;
+
+    private int size;
+
+    private int usedSlots;
+
+    //where the next literal's bytes go:
+    private int dataChunk;
+
+    private int dataPosition;
+
+
+    OffHeapLiteralSet(int expectedSize) {
+
+        long dataSize = Math.max(MIN_DATA_CHUNK_SIZE, Math.min(MAX_DATA_CHUNK_SIZE, (long) expectedSize * EXPECTED_LITERAL_BYTES));
+
+        ByteBuffer[] data = {ByteBuffer.allocateDirect((int) dataSize)};
+        this.state = new State(newTable(capacityFor(expectedSize)), capacityFor(expectedSize), data);
+        this.dataChunk = 0;
+        this.dataPosition = 1;
+    }
+
+
+    /**
+     * Uses a table and data that were written out before, such as the memory-mapped ones of a
+     * {@link PatternListSnapshot}, in place.  The buffers may be read-only, in which case the set can't be
+     * changed.
+     */
+    OffHeapLiteralSet(ByteBuffer[] table, long capacity, ByteBuffer[] data, int size, int usedSlots) {
+        this.state = new State(table, capacity, data);
+        this.size = size;
+        this.usedSlots = usedSlots;
+        //anything added would have to go into a new chunk:
+        this.dataChunk = data.length - 1;
+        this.dataPosition = data[dataChunk].capacity();
+    }
+
+
+    private static long capacityFor(long expectedSize) {
+
+        long capacity = MIN_TABLE_CAPACITY;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+
+        return capacity;
+    }
+
+
+    private static ByteBuffer[] newTable(long capacity) {
+
+        int chunkSlots = (int) Math.min(capacity, 1L << TABLE_CHUNK_BITS);
+        ByteBuffer[] table = new ByteBuffer[(int) (capacity / chunkSlots)];
+
+        for (int i=0; i<table.length; i++) {
+            //new direct buffers are always zeroed, so every slot starts out EMPTY:
+            table[i] = ByteBuffer.allocateDirect(chunkSlots * SLOT_BYTES);
+        }
+
+        return table;
+    }
+
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+
+    @Override
+    public boolean contains(MatchValue value, int start, int end) {
+        return findSlot(state, value, start, end, hash(value, start, end)) >= 0;
+    }
+
+
+    @Override
+    public boolean contains(String literal) {
+        MatchValue value = MatchValue.of(literal, null, true);
+        return contains(value, 0, value.length());
+    }
+
+
+    @Override
+    public OffHeapLiteralSet toOffHeap() {
+        return this;
+    }
+
+
+    long capacity() {
+        return state.capacity;
+    }
+
+
+    int usedSlots() {
+        return usedSlots;
+    }
+
+
+    ByteBuffer[] tableChunks() {
+        return state.table;
+    }
+
+
+    ByteBuffer[] dataChunks() {
+        return state.data;
+    }
+
+
+    /**
+     * Returns how many bytes of a data chunk are (or may be) in use.
+     */
+    int dataChunkLength(int chunk) {
+        return chunk == dataChunk ? dataPosition : state.data[chunk].capacity();
+    }
+
+
+    @Override
+    public boolean add(String literal) {
+
+        MatchValue value = MatchValue.of(literal, null, true);
+        int length = value.length();
+        long hash = hash(value, 0, length);
+
+        State currentState = state;
+        if (findSlot(currentState, value, 0, length, hash) >= 0) {
+            return false;
+        }
+
+        if ((usedSlots + 1) * 2L > currentState.capacity) {
+            //leave room for as many new literals as there are now, so rebuilding is rare:
+            currentState = rebuild(capacityFor(2L * (size + 1)));
+        }
+
+        int byteCount = utf8Length(value, 0, length);
+        currentState = reserveData(currentState, varIntLength(byteCount) + byteCount);
+
+        //the bytes go in first, where no slot points yet:
+        ByteBuffer chunk = currentState.data[dataChunk];
+        int position = writeVarInt(chunk, dataPosition, byteCount);
+        writeUtf8(chunk, position, value, 0, length);
+
+        long reference = ((long) dataChunk << POSITION_BITS) | dataPosition;
+        dataPosition = position + byteCount;
+
+        //then the slot, reusing the first removed one along the way if there is one:
+        long mask = currentState.capacity - 1;
+        long slot = hash & mask;
+        long existing;
+        while ((existing = getSlot(currentState.table, slot)) != EMPTY && existing != REMOVED) {
+            slot = (slot + 1) & mask;
+        }
+
+        if (existing == EMPTY) {
+            usedSlots++;
+        }
+
+        putSlot(currentState.table, slot, tag(hash) | reference);
+        size++;
+
+        //publish the change to checks that start after this:
+        this.state = currentState;
+
+        return true;
+    }
+
+
+    @Override
+    public boolean remove(String literal) {
+
+        MatchValue value = MatchValue.of(literal, null, true);
+
+        State currentState = state;
+        long slot = findSlot(currentState, value, 0, value.length(), hash(value, 0, value.length()));
+
+        if (slot < 0) {
+            return false;
+        }
+
+        putSlot(currentState.table, slot, REMOVED);
+        size--;
+
+        this.state = currentState;
+
+        return true;
+    }
+
+
+    /**
+     * Returns the slot of the literal that equals the characters of the value from start to end, or -1.
+     */
+    private static long findSlot(State currentState, MatchValue value, int start, int end, long hash) {
+
+        long mask = currentState.capacity - 1;
+        long slot = hash & mask;
+        long tag = tag(hash);
+
+        long existing;
+        while ((existing = getSlot(currentState.table, slot)) != EMPTY) {
+
+            if (existing != REMOVED && (existing & ~REFERENCE_MASK) == tag
+                    && dataEquals(currentState.data, existing & REFERENCE_MASK, value, start, end)) {
+                return slot;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        return -1;
+    }
+
+
+    /**
+     * Makes sure the current data chunk has room for the bytes, moving on to a new chunk if not.
+     */
+    private State reserveData(State currentState, int byteCount) {
+
+        ByteBuffer[] data = currentState.data;
+
+        if (dataPosition + (long) byteCount <= data[dataChunk].capacity()) {
+            return currentState;
+        }
+
+        if (data.length == MAX_DATA_CHUNKS) {
+            throw new IllegalStateException("Too many literals to keep off-heap.");
+        }
+
+        //each chunk is twice as big as the one before, up to the most a position can point into:
+        long chunkSize = Math.max(byteCount + 1L, Math.min(MAX_DATA_CHUNK_SIZE, data[dataChunk].capacity() * 2L));
+
+        ByteBuffer[] newData = Arrays.copyOf(data, data.length + 1);
+        newData[data.length] = ByteBuffer.allocateDirect((int) chunkSize);
+
+        this.dataChunk = data.length;
+        this.dataPosition = 1;
+
+        State newState = new State(currentState.table, currentState.capacity, newData);
+
+        //checks must be able to get to the chunk before a slot of the table they read points into it, unlike
+        //a table that is still being rebuilt, which no check reads yet:
+        if (currentState.table == state.table) {
+            this.state = newState;
+        }
+
+        return newState;
+    }
+
+
+    /**
+     * Copies the literals that are still there into a new table and new data chunks, leaving the old ones
+     * as they are for checks that are still using them.
+     */
+    private State rebuild(long capacity) {
+
+        State oldState = state;
+
+        long oldDataBytes = 0;
+        for (ByteBuffer chunk : oldState.data) {
+            oldDataBytes += chunk.capacity();
+        }
+
+        ByteBuffer[] table = newTable(capacity);
+        ByteBuffer[] data = {ByteBuffer.allocateDirect((int) Math.max(MIN_DATA_CHUNK_SIZE, Math.min(MAX_DATA_CHUNK_SIZE, oldDataBytes)))};
+        State newState = new State(table, capacity, data);
+
+        this.dataChunk = 0;
+        this.dataPosition = 1;
+
+        for (long oldSlot=0; oldSlot<oldState.capacity; oldSlot++) {
+
+            long existing = getSlot(oldState.table, oldSlot);
+            if (existing != EMPTY && existing != REMOVED) {
+                newState = copyLiteral(oldState, existing, newState);
+            }
+        }
+
+        this.usedSlots = size;
+        this.state = newState;
+
+        return newState;
+    }
+
+
+    /**
+     * Adds every literal of another set, none of which may be in this one yet, by copying their bytes as
+     * they are, which is how a {@link PartitionedLiteralSet} is put back together.  Must not be called by
+     * more than one thread at a time.
+     */
+    void addAllDisjoint(OffHeapLiteralSet other) {
+
+        State otherState = other.state;
+        State currentState = state;
+
+        if ((usedSlots + (long) other.size) * 2 > currentState.capacity) {
+            currentState = rebuild(capacityFor(size + (long) other.size));
+        }
+
+        for (long otherSlot=0; otherSlot<otherState.capacity; otherSlot++) {
+
+            long existing = getSlot(otherState.table, otherSlot);
+            if (existing != EMPTY && existing != REMOVED) {
+                currentState = copyLiteral(otherState, existing, currentState);
+                usedSlots++;
+                size++;
+            }
+        }
+
+        //publish the change to checks that start after this:
+        this.state = currentState;
+    }
+
+
+    /**
+     * Copies the literal a slot of another state points at into the current data chunk and a free slot of
+     * the given state, returning the state to go on with.
+     */
+    private State copyLiteral(State fromState, long existing, State toState) {
+
+        //copy the literal's bytes (and length) as they are:
+        long reference = existing & REFERENCE_MASK;
+        ByteBuffer fromChunk = fromState.data[(int) (reference >>> POSITION_BITS)];
+        int fromPosition = (int) (reference & MAX_DATA_CHUNK_SIZE);
+        int byteCount = readVarInt(fromChunk, fromPosition);
+        int recordLength = varIntLength(byteCount) + byteCount;
+
+        toState = reserveData(toState, recordLength);
+        ByteBuffer chunk = toState.data[dataChunk];
+        for (int i=0; i<recordLength; i++) {
+            chunk.put(dataPosition + i, fromChunk.get(fromPosition + i));
+        }
+
+        long newReference = ((long) dataChunk << POSITION_BITS) | dataPosition;
+        dataPosition += recordLength;
+
+        //only the top of the hash is kept in the slot, so the rest has to be worked out from the bytes again:
+        long mask = toState.capacity - 1;
+        long slot = rehash(fromState, existing) & mask;
+        while (getSlot(toState.table, slot) != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+
+        putSlot(toState.table, slot, (existing & ~REFERENCE_MASK) | newReference);
+
+        return toState;
+    }
+
+
+    /**
+     * Works out the hash of the literal an old slot points at from its bytes.
+     */
+    private static long rehash(State oldState, long existing) {
+
+        long reference = existing & REFERENCE_MASK;
+        ByteBuffer chunk = oldState.data[(int) (reference >>> POSITION_BITS)];
+        int position = (int) (reference & MAX_DATA_CHUNK_SIZE);
+        int byteCount = readVarInt(chunk, position);
+        position += varIntLength(byteCount);
+
+        long hash = FNV_OFFSET_BASIS;
+        for (int i=0; i<byteCount; i++) {
+            hash = (hash ^ (chunk.get(position + i) & 0xff)) * FNV_PRIME;
+        }
+
+        return mix(hash);
+    }
+
+
+    private static long getSlot(ByteBuffer[] table, long slot) {
+        return table[(int) (slot >>> TABLE_CHUNK_BITS)].getLong((int) (slot & ((1 << TABLE_CHUNK_BITS) - 1)) * SLOT_BYTES);
+    }
+
+
+    private static void putSlot(ByteBuffer[] table, long slot, long slotValue) {
+        table[(int) (slot >>> TABLE_CHUNK_BITS)].putLong((int) (slot & ((1 << TABLE_CHUNK_BITS) - 1)) * SLOT_BYTES, slotValue);
+    }
+
+
+    private static long tag(long hash) {
+        return hash & ~REFERENCE_MASK;
+    }
+
+
+    /**
+     * FNV-1a over the UTF-8 bytes of the characters, with the bits mixed at the end so that both the top
+     * (tag) and bottom (slot) bits are spread well.
+     */
+    private static long hash(MatchValue value, int start, int end) {
+
+        long hash = FNV_OFFSET_BASIS;
+
+        for (int i=start; i<end; i++) {
+
+            int codePoint = codePointAt(value, i, end);
+            int byteCount = utf8Length(codePoint);
+
+            for (int b=0; b<byteCount; b++) {
+                hash = (hash ^ (utf8Byte(codePoint, byteCount, b) & 0xff)) * FNV_PRIME;
+            }
+
+            if (codePoint > Character.MAX_VALUE) {
+                i++;
+            }
+        }
+
+        return mix(hash);
+    }
+
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+
+    private static boolean dataEquals(ByteBuffer[] data, long reference, MatchValue value, int start, int end) {
+
+        int chunkIndex = (int) (reference >>> POSITION_BITS);
+
+        //the slot of a literal that is being added can be seen before its chunk or its bytes are:
+        if (chunkIndex >= data.length) {
+            return false;
+        }
+
+        ByteBuffer chunk = data[chunkIndex];
+        int position = (int) (reference & MAX_DATA_CHUNK_SIZE);
+
+        int byteCount = readVarInt(chunk, position);
+        if (byteCount < 0) {
+            return false;
+        }
+
+        position += varIntLength(byteCount);
+        if (byteCount > chunk.capacity() - position) {
+            return false;
+        }
+
+        int dataEnd = position + byteCount;
+
+        for (int i=start; i<end; i++) {
+
+            int codePoint = codePointAt(value, i, end);
+            int codePointBytes = utf8Length(codePoint);
+
+            if (position + codePointBytes > dataEnd) {
+                return false;
+            }
+
+            for (int b=0; b<codePointBytes; b++) {
+                if (chunk.get(position++) != utf8Byte(codePoint, codePointBytes, b)) {
+                    return false;
+                }
+            }
+
+            if (codePoint > Character.MAX_VALUE) {
+                i++;
+            }
+        }
+
+        return position == dataEnd;
+    }
+
+
+    private static int utf8Length(MatchValue value, int start, int end) {
+
+        int byteCount = 0;
+
+        for (int i=start; i<end; i++) {
+            int codePoint = codePointAt(value, i, end);
+            byteCount += utf8Length(codePoint);
+            if (codePoint > Character.MAX_VALUE) {
+                i++;
+            }
+        }
+
+        return byteCount;
+    }
+
+
+    private static void writeUtf8(ByteBuffer chunk, int position, MatchValue value, int start, int end) {
+
+        for (int i=start; i<end; i++) {
+
+            int codePoint = codePointAt(value, i, end);
+            int byteCount = utf8Length(codePoint);
+
+            for (int b=0; b<byteCount; b++) {
+                chunk.put(position++, utf8Byte(codePoint, byteCount, b));
+            }
+
+            if (codePoint > Character.MAX_VALUE) {
+                i++;
+            }
+        }
+    }
+
+
+    /**
+     * Returns the code point at the index, or '?' for half of a surrogate pair on its own, which is what
+     * String.getBytes() would write for it too.
+     */
+    private static int codePointAt(MatchValue value, int index, int end) {
+
+        char c = value.charAt(index);
+
+        if (Character.isHighSurrogate(c) && index + 1 < end && Character.isLowSurrogate(value.charAt(index + 1))) {
+            return Character.toCodePoint(c, value.charAt(index + 1));
+        } else if (Character.isSurrogate(c)) {
+            return '?';
+        }
+
+        return c;
+    }
+
+
+    private static int utf8Length(int codePoint) {
+
+        if (codePoint < 0x80) {
+            return 1;
+        } else if (codePoint < 0x800) {
+            return 2;
+        } else if (codePoint <= Character.MAX_VALUE) {
+            return 3;
+        }
+
+        return 4;
+    }
+
+
+    private static byte utf8Byte(int codePoint, int byteCount, int index) {
+
+        if (byteCount == 1) {
+            return (byte) codePoint;
+        }
+
+        if (index == 0) {
+            //the lead byte has as many high bits set as there are bytes:
+            int leadBits = (0xff00 >> byteCount) & 0xff;
+            return (byte) (leadBits | (codePoint >> (6 * (byteCount - 1))));
+        }
+
+        return (byte) (0x80 | ((codePoint >> (6 * (byteCount - 1 - index))) & 0x3f));
+    }
+
+
+    private static int varIntLength(int number) {
+
+        int length = 1;
+        while ((number >>>= 7) != 0) {
+            length++;
+        }
+
+        return length;
+    }
+
+
+    private static int writeVarInt(ByteBuffer chunk, int position, int number) {
+
+        while ((number & ~0x7f) != 0) {
+            chunk.put(position++, (byte) ((number & 0x7f) | 0x80));
+            number >>>= 7;
+        }
+
+        chunk.put(position++, (byte) number);
+
+        return position;
+    }
+
+
+    /**
+     * Returns the number at the position, or -1 if it runs past the end of the chunk or is too long to be
+     * an int.
+     */
+    private static int readVarInt(ByteBuffer chunk, int position) {
+
+        int number = 0;
+        int shift = 0;
+        byte b;
+
+        do {
+            if (position >= chunk.capacity() || shift > 28) {
+                return -1;
+            }
+            b = chunk.get(position++);
+            number |= (b & 0x7f) << shift;
+            shift += 7;
+        } while (b < 0);
+
+        return number;
+    }
+
+
+
+    /**
+     * The table and data chunks in use at one point in time.
+     */
+    private static final class State {
+
+        private final ByteBuffer[] table;
+
+        private final long capacity;
+
+        private final ByteBuffer[] data;
+
+
+        State(ByteBuffer[] table, long capacity, ByteBuffer[] data) {
+            this.table = table;
+            this.capacity = capacity;
+            this.data = data;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.giladam.listmatch;
+
+
+/**
+ * A {@link LiteralSet} split into partitions by the top bits of each literal's String hash code, so that
+ * {@link PatternList.Builder} can fill every partition on a different thread.  The partitions are all heap
+ * or all off-heap sets, each sized for the literals that go into it, and a value only ever looks in the
+ * one partition its hash picks (which {@link MatchValue} has already worked out for the exact matches).
+ *
+ * The same rules as for any other LiteralSet apply: only one thread may change the set at a time, and
+ * checks don't lock.
+ *
+ * @author Gil Adam
+ *
+ */
+final class PartitionedLiteralSet implements LiteralSet {
+
+    private final LiteralSet[] partitions;
+
+    private final int partitionShift;
+
+
+    /**
+     * @param partitions The partitions, as many as a power of two, with every literal in the one
+     *                   partitionOf() picks for it.
+     */
+    PartitionedLiteralSet(LiteralSet[] partitions) {
+
+        if (partitions.length < 2 || Integer.bitCount(partitions.length) != 1) {
+            throw new IllegalArgumentException("The number of partitions must be a power of two above 1: " + partitions.length);
+        }
+
+        this.partitions = partitions;
+        this.partitionShift = shiftFor(partitions.length);
+    }
+
+
+    /**
+     * Returns the partition a literal with the given hash goes in, out of partitionCount (a power of two).
+     */
+    static int partitionOf(int hash, int partitionCount) {
+        return partitionCount == 1 ? 0 : hash >>> shiftFor(partitionCount);
+    }
+
+
+    private static int shiftFor(int partitionCount) {
+        return Integer.SIZE - Integer.numberOfTrailingZeros(partitionCount);
+    }
+
+
+    private LiteralSet partitionFor(int hash) {
+        //a shift by 32 would leave the hash as it is, which is why there are always at least 2 partitions:
+        return partitions[hash >>> partitionShift];
+    }
+
+
+    @Override
+    public int size() {
+
+        int size = 0;
+        for (LiteralSet partition : partitions) {
+            size += partition.size();
+        }
+
+        return size;
+    }
+
+
+    @Override
+    public boolean contains(MatchValue value, int start, int end) {
+        return partitionFor(value.regionHash(start, end)).contains(value, start, end);
+    }
+
+
+    @Override
+    public boolean contains(String literal) {
+        return partitionFor(literal.hashCode()).contains(literal);
+    }
+
+
+    @Override
+    public boolean add(String literal) {
+        return partitionFor(literal.hashCode()).add(literal);
+    }
+
+
+    @Override
+    public boolean remove(String literal) {
+        return partitionFor(literal.hashCode()).remove(literal);
+    }
+
+
+    @Override
+    public OffHeapLiteralSet toOffHeap() {
+
+        OffHeapLiteralSet offHeap = new OffHeapLiteralSet(size());
+
+        for (LiteralSet partition : partitions) {
+            offHeap.addAllDisjoint(partition.toOffHeap());
+        }
+
+        return offHeap;
+    }
+}
@@ -0,0 +1,459 @@
+package com.giladam.listmatch;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Builds a {@link PatternList} straight from a pattern file, for files too big to read comfortably with
+ * {@link ListMatcher#readPatternsFromFile(File)} first.
+ *
+ * The file is memory-mapped and split into pieces that end at a line break, and the pieces are read,
+ * normalized and sorted into exact and wildcard patterns in parallel on a ForkJoinPool.  The exact patterns
+ * of each piece are added to the list's exact matches as soon as that piece and the ones before it are done,
+ * and only a few pieces are read ahead of the one being added, so the patterns of the whole file are never
+ * all on the heap as Strings at once.  The file must be UTF-8, and
+ * its lines are read the same way readPatternsFromFile() reads them: everything from a '#' on is a comment,
+ * the rest is trimmed, and lines left blank are skipped.
+ *
+ * @author Gil Adam
+ *
+ */
+public final class PatternFileLoader {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static Logger log = LoggerFactory.getLogger(PatternFileLoader.class);
+
+    //files are split into this many pieces per thread of the pool, so threads that finish early can take more:
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    //but no smaller than this, so small files aren't all overhead:
+    private static final long MIN_CHUNK_SIZE = 1 << 20;
+
+    //and no bigger than this, since a piece has to fit in one mapping:
+    private static final long MAX_CHUNK_SIZE = 1 << 30;
+
+    //how many pieces per thread of the pool are read ahead of the one being added to the list:
+    private static final int CHUNKS_AHEAD_PER_THREAD = 2;
+
+    //how much is read at a time while looking for the line break that ends a piece:
+    private static final int BOUNDARY_SCAN_SIZE = 8192;
+
+
+    private PatternFileLoader() {
+    }
+
+
+    /**
+     * Loads the patterns of a file into a new {@link PatternList} using a pool with a thread for every
+     * processor, which is shut down afterwards.
+     *
+     * @see #load(File, String, boolean, MatchingMode, ForkJoinPool)
+     */
+    public static LoadResult load(File patternsFile, String componentDelimiter, boolean caseSensitive,
+                                  MatchingMode matchingMode) throws IOException {
+
+        ForkJoinPool pool = new ForkJoinPool();
+
+        try {
+            return load(patternsFile, componentDelimiter, caseSensitive, matchingMode, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+
+    /**
+     * Loads the patterns of a file into a new {@link PatternList}, reading the file on the given pool.
+     *
+     * @param patternsFile The UTF-8 pattern file to read.
+     * @param componentDelimiter The component delimiter of the new list, see {@link PatternList}.
+     * @param caseSensitive Whether the new list is case-sensitive.
+     * @param matchingMode How the new list should evaluate its wildcard patterns.
+     * @param pool The pool to read the pieces of the file on.
+     * @return The new list, along with how many lines were read and how long it took.
+     * @throws IOException If the file can't be read or is not valid UTF-8.
+     */
+    public static LoadResult load(File patternsFile, String componentDelimiter, boolean caseSensitive,
+                                  MatchingMode matchingMode, ForkJoinPool pool) throws IOException {
+
+        Objects.requireNonNull(matchingMode, "matchingMode");
+        Objects.requireNonNull(pool, "pool");
+
+        long startTime = System.nanoTime();
+        long byteCount;
+        long lineCount = 0;
+        long patternCount = 0;
+        LiteralSet exactMatches = null;
+        Set<PatternListEntry> wildcardEntries = new HashSet<>();
+
+        try (FileChannel channel = FileChannel.open(patternsFile.toPath(), StandardOpenOption.READ)) {
+
+            byteCount = channel.size();
+            long chunkSize = Math.min(MAX_CHUNK_SIZE,
+                                      Math.max(MIN_CHUNK_SIZE, byteCount / (pool.getParallelism() * CHUNKS_PER_THREAD) + 1));
+
+            List<ChunkParser> chunkParsers = new ArrayList<>();
+            long chunkStart = 0;
+            while (chunkStart < byteCount) {
+                long chunkEnd = lineBoundaryAfter(channel, Math.min(byteCount, chunkStart + chunkSize));
+                if (chunkEnd - chunkStart > Integer.MAX_VALUE) {
+                    throw new IOException("Line too long to load at position " + chunkStart + " of " + patternsFile);
+                }
+
+                chunkParsers.add(new ChunkParser(channel, chunkStart, chunkEnd, caseSensitive, componentDelimiter,
+                                                 PatternList.indexModeFor(componentDelimiter, matchingMode)));
+                chunkStart = chunkEnd;
+            }
+
+            int chunksAhead = pool.getParallelism() * CHUNKS_AHEAD_PER_THREAD;
+            for (int i=0; i<Math.min(chunksAhead, chunkParsers.size()); i++) {
+                pool.execute(chunkParsers.get(i));
+            }
+
+            try {
+                for (int i=0; i<chunkParsers.size(); i++) {
+
+                    ParsedChunk parsedChunk = join(chunkParsers.get(i));
+                    //nothing else holds on to the piece from here, so it can go once it's in:
+                    chunkParsers.set(i, null);
+
+                    if (i + chunksAhead < chunkParsers.size()) {
+                        pool.execute(chunkParsers.get(i + chunksAhead));
+                    }
+
+                    if (exactMatches == null) {
+                        //pieces are about the same size, so the first one tells roughly how many exact patterns there are:
+                        long parsedBytes = Math.max(1, parsedChunk.end - parsedChunk.start);
+                        long expectedExactCount = parsedChunk.exactPatterns.size() * byteCount / parsedBytes;
+                        exactMatches = PatternList.newLiteralSet((int) Math.min(Integer.MAX_VALUE, expectedExactCount));
+                    }
+
+                    lineCount += parsedChunk.lineCount;
+                    patternCount += parsedChunk.exactPatterns.size() + parsedChunk.wildcardEntries.size();
+                    wildcardEntries.addAll(parsedChunk.wildcardEntries);
+
+                    for (String exactPattern : parsedChunk.exactPatterns) {
+                        exactMatches.add(exactPattern);
+                    }
+                }
+            } finally {
+                //only left if a piece failed, and then the rest aren't needed:
+                for (ChunkParser chunkParser : chunkParsers) {
+                    if (chunkParser != null) {
+                        chunkParser.cancel(false);
+                    }
+                }
+            }
+        }
+
+        if (exactMatches == null) {
+            exactMatches = PatternList.newLiteralSet(0);
+        }
+
+        PatternList patternList = new PatternList(exactMatches, wildcardEntries, componentDelimiter, caseSensitive, matchingMode, 0);
+
+        LoadResult result = new LoadResult(patternList, lineCount, patternCount, byteCount, System.nanoTime() - startTime);
+        log.debug("Loaded {} patterns from {} lines of {} in {} ms ({} lines/sec)",
+                  patternCount, lineCount, patternsFile, result.getElapsedMillis(), result.getLinesPerSecond());
+
+        return result;
+    }
+
+
+    /**
+     * Returns the position just after the first line break at or after position, or the end of the file.
+     */
+    private static long lineBoundaryAfter(FileChannel channel, long position) throws IOException {
+
+        long size = channel.size();
+        ByteBuffer buffer = ByteBuffer.allocate(BOUNDARY_SCAN_SIZE);
+
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+
+            for (int i=0; i<read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+
+            position += read;
+        }
+
+        return size;
+    }
+
+
+    private static ParsedChunk join(ChunkParser chunkParser) throws IOException {
+
+        try {
+            return chunkParser.join();
+        } catch (RuntimeException e) {
+            //the pool may rethrow a copy, with the one thrown by the parser as its cause:
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+            }
+            throw e;
+        }
+    }
+
+
+
+    /**
+     * What came of loading a pattern file: the list itself, and how long it took.
+     */
+    public static final class LoadResult {
+
+        private final PatternList patternList;
+
+        private final long lineCount;
+
+        private final long patternCount;
+
+        private final long byteCount;
+
+        private final long elapsedNanos;
+
+
+        LoadResult(PatternList patternList, long lineCount, long patternCount, long byteCount, long elapsedNanos) {
+            this.patternList = patternList;
+            this.lineCount = lineCount;
+            this.patternCount = patternCount;
+            this.byteCount = byteCount;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+
+        public PatternList getPatternList() {
+            return patternList;
+        }
+
+
+        /**
+         * Returns how many lines the file had, including comments and blank lines.
+         */
+        public long getLineCount() {
+            return lineCount;
+        }
+
+
+        /**
+         * Returns how many lines had a pattern on them, including any repeated ones.
+         */
+        public long getPatternCount() {
+            return patternCount;
+        }
+
+
+        public long getByteCount() {
+            return byteCount;
+        }
+
+
+        public long getElapsedMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        }
+
+
+        public long getLinesPerSecond() {
+            return elapsedNanos > 0 ? lineCount * TimeUnit.SECONDS.toNanos(1) / elapsedNanos : lineCount;
+        }
+
+
+        @Override
+        public String toString() {
+            return "LoadResult [lineCount=" + lineCount + ", patternCount=" + patternCount + ", byteCount=" + byteCount
+                   + ", elapsedMillis=" + getElapsedMillis() + ", linesPerSecond=" + getLinesPerSecond() + "]";
+        }
+    }
+
+
+
+    private static final class ParsedChunk {
+
+        private final long start;
+
+        private final long end;
+
+        private final List<String> exactPatterns = new ArrayList<>();
+
+        private final List<PatternListEntry> wildcardEntries = new ArrayList<>();
+
+        private long lineCount;
+
+
+        ParsedChunk(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+
+
+    /**
+     * Parses one piece of the file, which starts at the beginning of a line and ends after a line break (or at
+     * the end of the file).  Only the part of each line before any comment is decoded.
+     */
+    private static final class ChunkParser extends RecursiveTask<ParsedChunk> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+
+        private final long start;
+
+        private final long end;
+
+        private final boolean caseSensitive;
+
+        private final String componentDelimiter;
+
+        //the mode the list keeps its wildcard patterns in, which decides what goes with them:
+        private final MatchingMode indexMode;
+
+
+        ChunkParser(FileChannel channel, long start, long end, boolean caseSensitive, String componentDelimiter,
+                    MatchingMode indexMode) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            this.caseSensitive = caseSensitive;
+            this.componentDelimiter = componentDelimiter;
+            this.indexMode = indexMode;
+        }
+
+
+        @Override
+        protected ParsedChunk compute() {
+            try {
+                return parse(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start));
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+
+        private ParsedChunk parse(MappedByteBuffer bytes) throws CharacterCodingException {
+
+            ParsedChunk parsedChunk = new ParsedChunk(start, end);
+            CharsetDecoder decoder = UTF_8.newDecoder();
+            CharBuffer chars = CharBuffer.allocate(256);
+
+            int limit = bytes.limit();
+            int lineStart = 0;
+
+            while (lineStart < limit) {
+
+                //the same line breaks BufferedReader.readLine() uses, a "\r\n" just leaves an empty line between:
+                int lineEnd = lineStart;
+                int contentEnd = -1;
+                byte b;
+                while (lineEnd < limit && (b = bytes.get(lineEnd)) != '\n' && b != '\r') {
+                    if (b == '#' && contentEnd < 0) {
+                        contentEnd = lineEnd;
+                    }
+                    lineEnd++;
+                }
+
+                if (lineEnd == limit || bytes.get(lineEnd) == '\n') {
+                    parsedChunk.lineCount++;
+                }
+
+                //bytes up to ' ' are never part of a longer character in UTF-8, so this trims like String.trim():
+                int contentStart = lineStart;
+                contentEnd = contentEnd < 0 ? lineEnd : contentEnd;
+                while (contentStart < contentEnd && (bytes.get(contentStart) & 0xFF) <= ' ') {
+                    contentStart++;
+                }
+                while (contentEnd > contentStart && (bytes.get(contentEnd - 1) & 0xFF) <= ' ') {
+                    contentEnd--;
+                }
+
+                if (contentStart < contentEnd) {
+                    chars = decode(decoder, bytes, contentStart, contentEnd, chars);
+                    String pattern = chars.toString();
+
+                    if (StringUtils.isNotBlank(pattern)) {
+                        addPattern(parsedChunk, pattern);
+                    }
+                }
+
+                lineStart = lineEnd + 1;
+            }
+
+            return parsedChunk;
+        }
+
+
+        private void addPattern(ParsedChunk parsedChunk, String pattern) {
+
+            String normalizedPattern = PatternList.normalizePattern(pattern, caseSensitive);
+
+            if (PatternList.isWildcardPattern(normalizedPattern, indexMode)) {
+                parsedChunk.wildcardEntries.add(new PatternListEntry(normalizedPattern, componentDelimiter));
+            } else {
+                parsedChunk.exactPatterns.add(normalizedPattern);
+            }
+        }
+
+
+        /**
+         * Decodes the bytes from start to end into the given buffer, or a bigger one if they don't fit, and
+         * returns the buffer ready to be read.
+         */
+        private static CharBuffer decode(CharsetDecoder decoder, MappedByteBuffer bytes, int start, int end, CharBuffer chars)
+                throws CharacterCodingException {
+
+            //a UTF-8 byte never decodes to more than one char:
+            if (chars.capacity() < end - start) {
+                chars = CharBuffer.allocate(Math.max(end - start, chars.capacity() * 2));
+            }
+
+            ByteBuffer in = bytes.duplicate();
+            in.limit(end).position(start);
+            chars.clear();
+            decoder.reset();
+
+            CoderResult result = decoder.decode(in, chars, true);
+            if (!result.isUnderflow()) {
+                result.throwException();
+            }
+            result = decoder.flush(chars);
+            if (!result.isUnderflow()) {
+                result.throwException();
+            }
+
+            chars.flip();
+            return chars;
+        }
+    }
+}
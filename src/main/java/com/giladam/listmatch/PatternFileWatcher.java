@@ -0,0 +1,285 @@
+package com.giladam.listmatch;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Keeps lists of a {@link ListMatcher} up to date with the pattern files they were read from.
+ *
+ * Each watched file is checked for a new modification time or size every poll interval on a background
+ * thread.  A changed file is only read once it has kept the same modification time and size for a whole
+ * poll interval, so a file that is still being written in place isn't loaded half written.  Then only that
+ * file is read again and its new {@link PatternList} is built on the background thread, then swapped in
+ * with {@link ListMatcher#replaceList(String, PatternList)}, so checking values never waits and never sees
+ * a half-built list.  If a file cannot be read, the list that was in use before is kept.
+ *
+ * Waiting for a file to settle can't tell a writer that stopped for longer than a poll interval from one
+ * that is done, so files that are rewritten slowly should rather be written under another name and then
+ * renamed over the watched file, which replaces it all at once.
+ *
+ * Files are polled rather than watched with a WatchService, because that also works for network
+ * filesystems and for files that are replaced by renaming a new file over them.
+ *
+ * @author Gil Adam
+ *
+ */
+public class PatternFileWatcher implements Closeable {
+
+    private static Logger log = LoggerFactory.getLogger(PatternFileWatcher.class);
+
+    private final ListMatcher listMatcher;
+
+    private final ReloadListener listener;
+
+    private final ConcurrentMap<String,WatchedFile> watchedFileByListName = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService poller;
+
+
+    /**
+     * Creates a new PatternFileWatcher that replaces lists of the given ListMatcher.  Nothing is watched
+     * until watch() is called, and nothing is polled until start() is called.
+     *
+     * @param listMatcher The ListMatcher whose lists should be kept up to date.
+     * @param listener Told about every reload, or null if nobody needs to know.
+     */
+    public PatternFileWatcher(ListMatcher listMatcher, ReloadListener listener) {
+        this.listMatcher = Objects.requireNonNull(listMatcher, "listMatcher");
+        this.listener = listener;
+    }
+
+
+    /**
+     * Reads a pattern file into the named list right away, and keeps reading it again whenever it changes.
+     *
+     * @param listName The case-sensitive name of the list in the ListMatcher.
+     * @param patternsFile The file to read patterns from, see {@link ListMatcher#readPatternsFromFile(File)}.
+     * @param componentDelimiter See {@link PatternList}.
+     * @param caseSensitive See {@link PatternList}.
+     * @param matchingMode See {@link PatternList}.
+     * @throws IOException If the file cannot be read the first time.
+     */
+    public void watch(String listName, File patternsFile, String componentDelimiter, boolean caseSensitive,
+                      MatchingMode matchingMode) throws IOException {
+
+        WatchedFile watchedFile = new WatchedFile(patternsFile, componentDelimiter, caseSensitive, matchingMode);
+
+        synchronized (this) {
+            long startNanos = System.nanoTime();
+            int patternCount = reload(listName, watchedFile);
+            watchedFileByListName.put(listName, watchedFile);
+
+            notifyReloaded(listName, watchedFile, patternCount, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        }
+    }
+
+
+    /**
+     * Starts checking the watched files for changes on a background (daemon) thread.
+     *
+     * @param pollInterval How often to check.
+     * @param unit The unit of the pollInterval.
+     */
+    public synchronized void start(long pollInterval, TimeUnit unit) {
+
+        if (poller != null) {
+            throw new IllegalStateException("Already started.");
+        }
+
+        poller = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "pattern-file-watcher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        poller.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                //anything thrown out of here would cancel every poll after it:
+                try {
+                    checkForChanges();
+                } catch (Throwable t) {
+                    log.error("Checking the watched pattern files failed, trying again next poll.", t);
+                }
+            }
+        }, pollInterval, pollInterval, unit);
+    }
+
+
+    /**
+     * Checks every watched file right now and reloads the ones that changed and have stayed the same since
+     * the last check.  This is what the background thread does every poll interval, but can also be called
+     * directly, in which case a change is only reloaded by the second call that sees it.
+     */
+    public synchronized void checkForChanges() {
+
+        for (Map.Entry<String,WatchedFile> watched : watchedFileByListName.entrySet()) {
+
+            String listName = watched.getKey();
+            WatchedFile watchedFile = watched.getValue();
+
+            if (!watchedFile.hasSettledChange()) {
+                continue;
+            }
+
+            long startNanos = System.nanoTime();
+            int patternCount;
+
+            try {
+                patternCount = reload(listName, watchedFile);
+            } catch (IOException | RuntimeException e) {
+                //remember this version anyway, so a broken file isn't retried until it changes again:
+                watchedFile.markSeen();
+
+                log.warn("Could not reload list [{}] from {}, keeping the previous version.", listName, watchedFile.patternsFile, e);
+                notifyReloadFailed(listName, watchedFile, e);
+                continue;
+            }
+
+            //the new list is in use by now, whatever the listener does:
+            notifyReloaded(listName, watchedFile, patternCount, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        }
+    }
+
+
+    /**
+     * Reads the file into a new list and puts it in use, returning how many patterns it has.
+     */
+    private int reload(String listName, WatchedFile watchedFile) throws IOException {
+
+        long startNanos = System.nanoTime();
+
+        //take note of the version before reading it, so a change made while reading is picked up next time:
+        watchedFile.markSeen();
+
+        Set<String> patterns = ListMatcher.readPatternsFromFile(watchedFile.patternsFile);
+        PatternList patternList = new PatternList(patterns, watchedFile.componentDelimiter,
+                                                  watchedFile.caseSensitive, watchedFile.matchingMode);
+
+        listMatcher.replaceList(listName, patternList);
+
+        log.debug("Reloaded list [{}] with {} patterns in {} ms", listName, patterns.size(),
+                  TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+
+        return patterns.size();
+    }
+
+
+    private void notifyReloaded(String listName, WatchedFile watchedFile, int patternCount, long durationMillis) {
+
+        if (listener == null) {
+            return;
+        }
+
+        try {
+            listener.reloaded(listName, watchedFile.patternsFile, patternCount, durationMillis);
+        } catch (RuntimeException e) {
+            log.warn("ReloadListener failed after list [{}] was reloaded from {}.", listName, watchedFile.patternsFile, e);
+        }
+    }
+
+
+    private void notifyReloadFailed(String listName, WatchedFile watchedFile, Exception cause) {
+
+        if (listener == null) {
+            return;
+        }
+
+        try {
+            listener.reloadFailed(listName, watchedFile.patternsFile, cause);
+        } catch (RuntimeException e) {
+            log.warn("ReloadListener failed after list [{}] could not be reloaded from {}.", listName, watchedFile.patternsFile, e);
+        }
+    }
+
+
+    /**
+     * Stops the background thread.  The lists stay in the ListMatcher as they were last loaded.
+     */
+    @Override
+    public synchronized void close() {
+
+        if (poller != null) {
+            poller.shutdownNow();
+        }
+    }
+
+
+
+    private static final class WatchedFile {
+
+        private final File patternsFile;
+
+        private final String componentDelimiter;
+
+        private final boolean caseSensitive;
+
+        private final MatchingMode matchingMode;
+
+        private long lastModified;
+
+        private long length;
+
+        //the changed version seen by the last check, which is reloaded if the next check sees it again:
+        private long changedLastModified = -1;
+
+        private long changedLength = -1;
+
+
+        WatchedFile(File patternsFile, String componentDelimiter, boolean caseSensitive, MatchingMode matchingMode) {
+            this.patternsFile = Objects.requireNonNull(patternsFile, "patternsFile");
+            this.componentDelimiter = componentDelimiter;
+            this.caseSensitive = caseSensitive;
+            this.matchingMode = Objects.requireNonNull(matchingMode, "matchingMode");
+        }
+
+
+        /**
+         * Returns true if the file is different from the version last read, and the same as the last time
+         * this was asked.
+         */
+        boolean hasSettledChange() {
+
+            long currentLastModified = patternsFile.lastModified();
+            long currentLength = patternsFile.length();
+
+            if (currentLastModified == lastModified && currentLength == length) {
+                changedLastModified = -1;
+                changedLength = -1;
+                return false;
+            }
+
+            boolean settled = currentLastModified == changedLastModified && currentLength == changedLength;
+
+            changedLastModified = currentLastModified;
+            changedLength = currentLength;
+
+            return settled;
+        }
+
+
+        void markSeen() {
+            this.lastModified = patternsFile.lastModified();
+            this.length = patternsFile.length();
+            this.changedLastModified = -1;
+            this.changedLength = -1;
+        }
+    }
+}
@@ -1,214 +1,1052 @@
-package com.giladam.listmatch;
-
-import java.util.Collection;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.Set;
-
-import org.apache.commons.lang3.StringUtils;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-
-/**
- * Keeps track of the patterns we want to test against and any matching settings.
- *
- * If you need to manage multiple lists you may prefer to use {@link ListMatcher} to
- * have multiple named lists, or you can manage it yourself any way you like.
- *
- * @author Gil Adam
- *
- */
-public class PatternList {
-
-    /**
-     * This is a special matching character for the wildcard
-     */
-    public static final char WILDCARD_CHAR = '*';
-    public static final String WILDCARD = String.valueOf(WILDCARD_CHAR);
-
-    private static Logger log = LoggerFactory.getLogger(PatternList.class);
-
-    private Set<PatternListEntry> patterns = Collections.emptySet();
-
-    private Set<String> exactMatches = Collections.emptySet();
-
-    private boolean caseSensitive;
-
-    private String componentDelimiter;
-
-
-    /**
-     * Creates a new PatternList initialized with the patterns given.
-     *
-     * @param patternsToLoad
-     *   Values for patterns to match against.
-     * @param componentDelimiter
-     *   The delimited to use if a pattern can have multiple components, such as an email with a 'domainpart' and 'localpart'.
-     * @param caseSensitive
-     *   If true, all matching will be performed in a case-insensitive manner.
-     */
-    public PatternList(Collection<String> patternsToLoad, String componentDelimiter, boolean caseSensitive) {
-
-        this.caseSensitive = caseSensitive;
-        this.componentDelimiter = componentDelimiter;
-
-        if (patternsToLoad == null) {
-            return;
-        }
-
-        Set<PatternListEntry> initPatterns = new HashSet<>();
-        Set<String> initExactMatches = new HashSet<>();
-
-        for (String patternToLoad : patternsToLoad) {
-
-            String normalizedPatternToLoad = normalizePatternToLoad(patternToLoad);
-
-            if (containsSpecialMatchingCharacters(normalizedPatternToLoad)) {
-
-                //special case if it's just a wildcard and nothing else:
-                if (normalizedPatternToLoad.equals(WILDCARD)) {
-                    initExactMatches.add(WILDCARD);
-                } else {
-                    PatternListEntry patternListEntry = new PatternListEntry(normalizedPatternToLoad, this.componentDelimiter);
-                    initPatterns.add(patternListEntry);
-                }
-            } else {
-                initExactMatches.add(normalizedPatternToLoad);
-            }
-        }
-
-        this.exactMatches = initExactMatches;
-        this.patterns = initPatterns;
-    }
-
-
-    private String normalizePatternToLoad(String patternToLoad) {
-
-        String duplicateWildcardsRemoved = patternToLoad.replaceAll("[*]+", "*");
-        String normalized = caseSensitive ? duplicateWildcardsRemoved : StringUtils.upperCase(duplicateWildcardsRemoved);
-
-        return normalized;
-    }
-
-
-    /**
-     * Checks if a particular email address matches any pattern.
-     *
-     * @param emailAddress
-     * @return
-     */
-    public boolean matches(String value) {
-
-        //if there's nothing to check, it can't be in the allowlist
-        if (value == null) {
-            return false;
-        }
-
-        //do not convert to uppercase if case sensitive mode is used:
-        final String valueToCheck = caseSensitive ? value : StringUtils.upperCase(value);
-
-        //first just see if we have an exact match:
-        if (exactMatches.contains(valueToCheck)) {
-            log.debug("List contains matching exact value: {}", valueToCheck);
-            return true;
-        } else if (exactMatches.contains(WILDCARD)) { //or see if we just match anything by wildcard
-            log.debug("List contains wildcard any '{}' pattern so all values match.", WILDCARD);
-            return true;
-        }
-
-
-        PatternListEntry valueToTest = new PatternListEntry(valueToCheck, this.componentDelimiter);
-
-        //unfortunately, now we must test each pattern that is not exact:
-        for (PatternListEntry listEntry : this.patterns) {
-
-            String[] listEntryComponents = listEntry.getComponents();
-            String[] valueToTestComponents = valueToTest.getComponents();
-
-            //if the entry is incompatible with the value to test, it's not a match so don't try:
-            if (listEntryComponents.length == valueToTestComponents.length) {
-
-                boolean foundNonMatchingComponent = false;
-
-                for (int i=0; i<valueToTestComponents.length && (!foundNonMatchingComponent); i++) {
-                    //does the component match?
-                    if (!wildcardMatch(valueToTestComponents[i], listEntryComponents[i])) {
-                        foundNonMatchingComponent = true;
-                    }
-                }
-
-                if (!foundNonMatchingComponent) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Found match for [{}] with pattern {}", valueToCheck, listEntry);
-                    }
-
-                    return true;
-                }
-            }
-        }
-
-        return false;
-    }
-
-
-
-    private static boolean containsSpecialMatchingCharacters(String value) {
-        return (value != null) && value.contains(WILDCARD);
-    }
-
-
-    /**
-     * This wildcard matching was adapted from somebody's solution to wildcard matching problem from Leetcode.  It is
-     * not entirely clear who wrote it, but it does work so I changed it a bit for what I needed.
-     *
-     * @param value
-     * @param pattern
-     * @return
-     */
-    private boolean wildcardMatch(String value, String pattern) {
-
-        if (value == null || pattern == null) {
-            return false;
-        }
-
-        if (value.equals(pattern) || pattern.equals(WILDCARD)) {
-            return true;
-        }
-
-        int m = value.length();
-        int n = pattern.length();
-        int posS = 0;
-        int posP = 0;
-        int posStar = -1;
-        int posOfS = -1;
-
-        //if posS == posP || ++posS and ++posP.
-        //posOfS, posStar, record the positon of '*' in s and p, ++posP and go on.
-        //if not match, go back to star, ++posOfS
-        while (posS < m) {
-            if (posP < n && (value.charAt(posS) == pattern.charAt(posP))) {
-                ++posS;
-                ++posP;
-            } else if (posP < n && pattern.charAt(posP) == WILDCARD_CHAR) {
-                posStar = posP;
-                posOfS = posS;
-                ++posP;
-                continue;
-            } else if (posStar != -1) {
-                posS = posOfS;
-                posP = posStar + 1;
-                ++posOfS;
-            } else {
-                return false;
-            }
-        }
-
-        while (posP < n && pattern.charAt(posP) == WILDCARD_CHAR) {
-            ++posP;
-        }
-
-        return ((posS == m) && (posP == n));
-    }
-
-}
+package com.giladam.listmatch;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Keeps track of the patterns we want to test against and any matching settings.
+ *
+ * If you need to manage multiple lists you may prefer to use {@link ListMatcher} to
+ * have multiple named lists, or you can manage it yourself any way you like.
+ *
+ * @author Gil Adam
+ *
+ */
+public class PatternList {
+
+    /**
+     * This is a special matching character for the wildcard
+     */
+    public static final char WILDCARD_CHAR = '*';
+    public static final String WILDCARD = String.valueOf(WILDCARD_CHAR);
+
+    private static final String DUPLICATE_WILDCARDS = WILDCARD + WILDCARD;
+
+    private static Logger log = LoggerFactory.getLogger(PatternList.class);
+
+    //batches are split until a piece is about this small, which is big enough to not be all overhead:
+    private static final int MIN_BATCH_CHUNK = 1024;
+
+    //and into this many pieces per thread of the pool, so threads that finish early can steal more work:
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    //the Builder sorts patterns in pieces of at least this many:
+    private static final int MIN_BUILD_CHUNK = 4096;
+
+    //and only splits the exact matches into partitions from this many patterns on:
+    private static final int MIN_PARTITIONED_SIZE = 1 << 16;
+
+    private static final int MAX_PARTITIONS = 256;
+
+    /**
+     * The name of the system property with the number of patterns from which on a list keeps its exact
+     * matches off-heap, see {@link OffHeapLiteralSet}.
+     */
+    public static final String OFF_HEAP_THRESHOLD_PROPERTY = "com.giladam.listmatch.offHeapThreshold";
+
+    private static final int DEFAULT_OFF_HEAP_THRESHOLD = 1000000;
+
+    private final LiteralSet exactMatches;
+
+    //whether the wildcard by itself is one of the patterns, changed only by updatePatterns():
+    private volatile boolean matchesEverything;
+
+    private final WildcardPatterns wildcardPatterns;
+
+    //null unless asked for:
+    private final MatchResultCache resultCache;
+
+    //null unless someone wants to know how checks turn out:
+    private volatile MatchListener matchListener;
+
+    private final boolean caseSensitive;
+
+    private final String componentDelimiter;
+
+    private final MatchingMode matchingMode;
+
+    //the mode the wildcard patterns are actually kept in, see indexModeFor():
+    private final MatchingMode indexMode;
+
+
+    /**
+     * Creates a new PatternList initialized with the patterns given.
+     *
+     * @param patternsToLoad
+     *   Values for patterns to match against.
+     * @param componentDelimiter
+     *   The delimited to use if a pattern can have multiple components, such as an email with a 'domainpart' and 'localpart'.
+     * @param caseSensitive
+     *   If true, all matching will be performed in a case-insensitive manner.
+     */
+    public PatternList(Collection<String> patternsToLoad, String componentDelimiter, boolean caseSensitive) {
+        this(patternsToLoad, componentDelimiter, caseSensitive, MatchingMode.STANDARD);
+    }
+
+
+    /**
+     * Creates a new PatternList initialized with the patterns given, using the given {@link MatchingMode} to
+     * evaluate the wildcard patterns.
+     *
+     * @param patternsToLoad
+     *   Values for patterns to match against.
+     * @param componentDelimiter
+     *   The delimited to use if a pattern can have multiple components, such as an email with a 'domainpart' and 'localpart'.
+     * @param caseSensitive
+     *   If false, all matching will be performed in a case-insensitive manner.
+     * @param matchingMode
+     *   How the wildcard patterns should be evaluated.
+     */
+    public PatternList(Collection<String> patternsToLoad, String componentDelimiter, boolean caseSensitive, MatchingMode matchingMode) {
+        this(patternsToLoad, componentDelimiter, caseSensitive, matchingMode, 0);
+    }
+
+
+    /**
+     * Creates a new PatternList initialized with the patterns given, using the given {@link MatchingMode} to
+     * evaluate the wildcard patterns and caching the results of up to resultCacheSize values.
+     *
+     * Values that are not exact matches have to be checked against the wildcard patterns, so when the same
+     * values are checked over and over it can help to remember those results.  Both matches and non-matches
+     * are cached, under the normalized value, and the least useful results are evicted once the cache is full
+     * (see {@link #getResultCacheStats()} to find out how well it works).
+     *
+     * @param patternsToLoad
+     *   Values for patterns to match against.
+     * @param componentDelimiter
+     *   The delimited to use if a pattern can have multiple components, such as an email with a 'domainpart' and 'localpart'.
+     * @param caseSensitive
+     *   If false, all matching will be performed in a case-insensitive manner.
+     * @param matchingMode
+     *   How the wildcard patterns should be evaluated.
+     * @param resultCacheSize
+     *   The most results to cache, or 0 for no cache.
+     */
+    public PatternList(Collection<String> patternsToLoad, String componentDelimiter, boolean caseSensitive, MatchingMode matchingMode,
+                       int resultCacheSize) {
+
+        if (resultCacheSize < 0) {
+            throw new IllegalArgumentException("The result cache size can't be negative: " + resultCacheSize);
+        }
+
+        this.resultCache = resultCacheSize > 0 ? new MatchResultCache(resultCacheSize) : null;
+        this.caseSensitive = caseSensitive;
+        this.componentDelimiter = componentDelimiter;
+        this.matchingMode = Objects.requireNonNull(matchingMode, "matchingMode");
+
+        this.indexMode = indexModeFor(componentDelimiter, matchingMode);
+
+        int expectedSize = patternsToLoad != null ? patternsToLoad.size() : 0;
+        Set<PatternListEntry> initPatterns = new HashSet<>();
+
+        //the exact matches go straight into their set, so big lists don't need another copy of them on the heap:
+        this.exactMatches = newLiteralSet(expectedSize);
+
+        if (patternsToLoad != null) {
+            for (String patternToLoad : patternsToLoad) {
+
+                String normalizedPatternToLoad = normalizePatternToLoad(patternToLoad);
+
+                if (isWildcardPattern(normalizedPatternToLoad, this.indexMode)) {
+                    initPatterns.add(new PatternListEntry(normalizedPatternToLoad, this.componentDelimiter));
+                } else {
+                    exactMatches.add(normalizedPatternToLoad);
+                }
+            }
+        }
+
+        this.matchesEverything = exactMatches.contains(WILDCARD);
+        this.wildcardPatterns = new WildcardPatterns(initPatterns, this.indexMode);
+    }
+
+
+    /**
+     * Creates a PatternList from parts that were already built and normalized, such as the ones in a
+     * {@link PatternListSnapshot}.
+     */
+    PatternList(LiteralSet exactMatches, Collection<PatternListEntry> wildcardEntries, String componentDelimiter,
+                boolean caseSensitive, MatchingMode matchingMode, int resultCacheSize) {
+
+        this.resultCache = resultCacheSize > 0 ? new MatchResultCache(resultCacheSize) : null;
+        this.caseSensitive = caseSensitive;
+        this.componentDelimiter = componentDelimiter;
+        this.matchingMode = Objects.requireNonNull(matchingMode, "matchingMode");
+        this.exactMatches = exactMatches;
+        this.indexMode = indexModeFor(componentDelimiter, matchingMode);
+        this.matchesEverything = exactMatches.contains(WILDCARD);
+        this.wildcardPatterns = new WildcardPatterns(wildcardEntries, indexMode);
+    }
+
+
+    /**
+     * Returns the mode to keep the wildcard patterns in.  IP addresses and URLs can only be recognized when
+     * they aren't split up by anything other than the dots of an IPv4 address, so with any other delimiter an
+     * IPV4, IPV6 or URL list is kept like a STANDARD one.
+     */
+    static MatchingMode indexModeFor(String componentDelimiter, MatchingMode matchingMode) {
+
+        if (matchingMode == MatchingMode.IPV4 && StringUtils.isNotEmpty(componentDelimiter) && !componentDelimiter.equals(".")) {
+            return MatchingMode.STANDARD;
+        } else if ((matchingMode == MatchingMode.IPV6 || matchingMode == MatchingMode.URL) && StringUtils.isNotEmpty(componentDelimiter)) {
+            return MatchingMode.STANDARD;
+        }
+
+        return matchingMode;
+    }
+
+
+    static LiteralSet newLiteralSet(int expectedSize) {
+        return newLiteralSet(expectedSize, keepsOffHeap(expectedSize));
+    }
+
+
+    private static LiteralSet newLiteralSet(int expectedSize, boolean offHeap) {
+        return offHeap ? new OffHeapLiteralSet(expectedSize) : new HeapLiteralSet(expectedSize);
+    }
+
+
+    private static boolean keepsOffHeap(int expectedSize) {
+
+        if (expectedSize >= Integer.getInteger(OFF_HEAP_THRESHOLD_PROPERTY, DEFAULT_OFF_HEAP_THRESHOLD)) {
+            log.debug("Keeping up to {} exact matches off-heap", expectedSize);
+            return true;
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Adds and removes (not yet normalized) patterns, for {@link ConcurrentPatternList}.  Must not be called
+     * by more than one thread at a time.
+     *
+     * @return true if anything changed.
+     */
+    boolean updatePatterns(Collection<String> patternsToAdd, Collection<String> patternsToRemove) {
+
+        boolean changed = false;
+        Set<PatternListEntry> entriesToAdd = new HashSet<>();
+        Set<PatternListEntry> entriesToRemove = new HashSet<>();
+
+        for (String patternToRemove : patternsToRemove) {
+
+            String normalizedPatternToRemove = normalizePatternToLoad(patternToRemove);
+
+            if (isWildcardPattern(normalizedPatternToRemove, indexMode)) {
+                entriesToRemove.add(new PatternListEntry(normalizedPatternToRemove, this.componentDelimiter));
+            } else {
+                changed |= exactMatches.remove(normalizedPatternToRemove);
+            }
+        }
+
+        for (String patternToAdd : patternsToAdd) {
+
+            String normalizedPatternToAdd = normalizePatternToLoad(patternToAdd);
+
+            if (isWildcardPattern(normalizedPatternToAdd, indexMode)) {
+                PatternListEntry entryToAdd = new PatternListEntry(normalizedPatternToAdd, this.componentDelimiter);
+                entriesToAdd.add(entryToAdd);
+                entriesToRemove.remove(entryToAdd);
+            } else {
+                changed |= exactMatches.add(normalizedPatternToAdd);
+            }
+        }
+
+        changed |= wildcardPatterns.update(entriesToAdd, entriesToRemove);
+        this.matchesEverything = exactMatches.contains(WILDCARD);
+
+        //only now that the new patterns are in use, so no result worked out with the old ones can be cached after this:
+        if (changed && resultCache != null) {
+            resultCache.clear();
+        }
+
+        return changed;
+    }
+
+
+    /**
+     * Returns true if the (not yet normalized) pattern is in this list.
+     */
+    boolean containsPattern(String pattern) {
+
+        String normalizedPattern = normalizePatternToLoad(pattern);
+
+        if (isWildcardPattern(normalizedPattern, indexMode)) {
+            return wildcardPatterns.contains(new PatternListEntry(normalizedPattern, this.componentDelimiter));
+        } else {
+            return exactMatches.contains(normalizedPattern);
+        }
+    }
+
+
+    /**
+     * Returns how often values were found in the result cache, or all zeros if this list has no cache.
+     *
+     * @return
+     */
+    public MatchCacheStats getResultCacheStats() {
+        return resultCache != null ? resultCache.stats() : new MatchCacheStats(0, 0, 0, 0, 0);
+    }
+
+
+    /**
+     * Sets the {@link MatchListener} to tell how every check turns out from now on, such as a
+     * {@link PatternListMetrics}, replacing the one before.
+     *
+     * @param matchListener The listener to use, or null for none.
+     */
+    public void setMatchListener(MatchListener matchListener) {
+        this.matchListener = matchListener;
+    }
+
+
+    /**
+     * Returns the {@link MatchListener} told about checks, or null if there is none.
+     *
+     * @return
+     */
+    public MatchListener getMatchListener() {
+        return matchListener;
+    }
+
+
+    /**
+     * Returns the number of distinct patterns in this list, after normalizing them.
+     *
+     * @return
+     */
+    public int size() {
+        return exactMatches.size() + wildcardPatterns.size();
+    }
+
+
+    boolean isCaseSensitive() {
+        return caseSensitive;
+    }
+
+
+    String getComponentDelimiter() {
+        return componentDelimiter;
+    }
+
+
+    MatchingMode getMatchingMode() {
+        return matchingMode;
+    }
+
+
+    int getResultCacheSize() {
+        return resultCache != null ? resultCache.maximumSize() : 0;
+    }
+
+
+    LiteralSet getExactMatches() {
+        return exactMatches;
+    }
+
+
+    Collection<PatternListEntry> getWildcardEntries() {
+        return wildcardPatterns.entries();
+    }
+
+
+    private String normalizePatternToLoad(String patternToLoad) {
+        return normalizePattern(patternToLoad, caseSensitive);
+    }
+
+
+    /**
+     * Normalizes a pattern the way a list with the given case sensitivity does when it loads it, which
+     * {@link PatternFileLoader} does on several threads at once.
+     */
+    static String normalizePattern(String patternToLoad, boolean caseSensitive) {
+
+        String duplicateWildcardsRemoved = removeDuplicateWildcards(patternToLoad);
+        String normalized = caseSensitive ? duplicateWildcardsRemoved : CaseFolding.fold(duplicateWildcardsRemoved);
+
+        return normalized;
+    }
+
+
+    /**
+     * Replaces every run of wildcards with a single one, returning the same String if there are none, which
+     * is what replaceAll("[*]+", "*") does without compiling a regular expression every time.
+     */
+    static String removeDuplicateWildcards(String pattern) {
+
+        int firstDuplicate = pattern.indexOf(DUPLICATE_WILDCARDS);
+        if (firstDuplicate < 0) {
+            return pattern;
+        }
+
+        StringBuilder removed = new StringBuilder(pattern.length() - 1);
+        removed.append(pattern, 0, firstDuplicate + 1);
+
+        for (int i=firstDuplicate + 1; i<pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c != WILDCARD_CHAR || pattern.charAt(i - 1) != WILDCARD_CHAR) {
+                removed.append(c);
+            }
+        }
+
+        return removed.toString();
+    }
+
+
+    /**
+     * Checks if a particular email address matches any pattern.
+     *
+     * @param emailAddress
+     * @return
+     */
+    public boolean matches(String value) {
+
+        MatchValue valueToCheck = MatchValue.forCurrentThread();
+
+        try {
+            return matches(value, valueToCheck);
+        } finally {
+            valueToCheck.release();
+        }
+    }
+
+
+    /**
+     * Checks a value that isn't a String, such as a StringBuilder or a CharBuffer, the same way as
+     * {@link #matches(String)} without making a String of it first.  The value must not change while it is
+     * being checked.
+     *
+     * @param value
+     * @return
+     */
+    public boolean matches(CharSequence value) {
+
+        MatchValue valueToCheck = MatchValue.forCurrentThread();
+
+        try {
+            return matches(value, valueToCheck);
+        } finally {
+            valueToCheck.release();
+        }
+    }
+
+
+    /**
+     * Checks length bytes of UTF-8 text starting at offset, with the same result as checking the String
+     * they decode to.  Text that is all ASCII is copied (and case folded) straight from the bytes, and only
+     * other text is decoded first.
+     *
+     * @param utf8Value The bytes of the value, which may be null.
+     * @param offset Where the value starts in the bytes.
+     * @param length How many bytes the value has.
+     * @return
+     * @throws IndexOutOfBoundsException If offset and length are outside of the bytes.
+     */
+    public boolean matchesUtf8(byte[] utf8Value, int offset, int length) {
+
+        if (utf8Value == null) {
+            return false;
+        }
+
+        MatchValue valueToCheck = MatchValue.forCurrentThread();
+
+        try {
+            return matchesValue(valueToCheck.reset(utf8Value, offset, length, componentDelimiter, caseSensitive));
+        } finally {
+            valueToCheck.release();
+        }
+    }
+
+
+    /**
+     * Checks the UTF-8 text from the buffer's position to its limit like {@link #matchesUtf8(byte[], int, int)},
+     * without changing the buffer's position.  The bytes of a direct buffer are copied once into a buffer this
+     * thread reuses, folding their case and hashing them in the same pass, so no String is made for an ASCII
+     * value.  Reading them in place instead was measured with Utf8ValueBenchmark to be almost twice as slow,
+     * since every comparison then has to read and fold the bytes again, so that short copy is the cheaper way.
+     *
+     * @param utf8Value The buffer holding the value, which may be null.
+     * @return
+     */
+    public boolean matchesUtf8(ByteBuffer utf8Value) {
+
+        if (utf8Value == null) {
+            return false;
+        }
+
+        MatchValue valueToCheck = MatchValue.forCurrentThread();
+
+        try {
+            return matchesValue(valueToCheck.reset(utf8Value, componentDelimiter, caseSensitive));
+        } finally {
+            valueToCheck.release();
+        }
+    }
+
+
+    /**
+     * Checks a value like {@link #matches(String)}, but also returns how it matched and the pattern that
+     * did it, such as for an audit record.  The pattern comes from the same check, so this costs no more
+     * than matches() apart from making the result for a hit.
+     *
+     * Wildcard hits are never answered from the result cache, since it doesn't keep the pattern.
+     *
+     * @param value The value to check.
+     * @return The result, which is {@link MatchResult#MISS} if nothing matched.
+     */
+    public MatchResult match(String value) {
+
+        if (value == null) {
+            return MatchResult.MISS;
+        }
+
+        MatchValue valueToCheck = MatchValue.forCurrentThread();
+
+        try {
+            return check(valueToCheck.reset(value, componentDelimiter, caseSensitive), true);
+        } finally {
+            valueToCheck.release();
+        }
+    }
+
+
+    /**
+     * Checks a whole batch of values, returning a BitSet with the bit at each index set if the value at
+     * that index matches any pattern.  This is the same as calling matches() for every value, but is done
+     * on the calling thread without any per-value overhead.
+     *
+     * @param values The values to check, any of which may be null.
+     * @return
+     */
+    public BitSet matchesAll(List<String> values) {
+
+        String[] valuesToCheck = values.toArray(new String[values.size()]);
+        BitSet results = new BitSet(valuesToCheck.length);
+
+        MatchValue valueToCheck = MatchValue.forCurrentThread();
+
+        try {
+            for (int i=0; i<valuesToCheck.length; i++) {
+                if (matches(valuesToCheck[i], valueToCheck)) {
+                    results.set(i);
+                }
+            }
+        } finally {
+            valueToCheck.release();
+        }
+
+        return results;
+    }
+
+
+    /**
+     * Checks a whole batch of values using the threads of the given pool, returning a BitSet with the bit
+     * at each index set if the value at that index matches any pattern.
+     *
+     * The batch is split into chunks (a few per thread of the pool, but not too small to be worth it) that
+     * are each checked the same way as {@link #matchesAll(List)}.  The calling thread waits for all of
+     * them to finish.
+     *
+     * @param values The values to check, any of which may be null.
+     * @param pool The pool to check the values with, usually one shared by the application.
+     * @return
+     */
+    public BitSet matchesAll(List<String> values, ForkJoinPool pool) {
+
+        String[] valuesToCheck = values.toArray(new String[values.size()]);
+        boolean[] matched = new boolean[valuesToCheck.length];
+
+        int chunkSize = Math.max(MIN_BATCH_CHUNK, valuesToCheck.length / (pool.getParallelism() * CHUNKS_PER_THREAD));
+        pool.invoke(new BatchMatch(valuesToCheck, matched, 0, valuesToCheck.length, chunkSize));
+
+        BitSet results = new BitSet(matched.length);
+        for (int i=0; i<matched.length; i++) {
+            if (matched[i]) {
+                results.set(i);
+            }
+        }
+
+        return results;
+    }
+
+
+    private boolean matches(CharSequence value, MatchValue reusableValue) {
+
+        //if there's nothing to check, it can't be in the allowlist
+        if (value == null) {
+            return false;
+        }
+
+        //case is folded as the value is copied, so only values that are not plain ASCII get converted to uppercase:
+        return matchesValue(reusableValue.reset(value, componentDelimiter, caseSensitive));
+    }
+
+
+    /**
+     * Checks a value that has already been reset with this list's component delimiter and case sensitivity,
+     * so that lists with the same settings can share the work.
+     */
+    boolean matchesValue(MatchValue valueToCheck) {
+        return check(valueToCheck, false).matched();
+    }
+
+
+    /**
+     * Checks a value that has already been reset, returning one of the shared results unless withPattern is
+     * true, in which case hits come with the pattern that matched.
+     */
+    MatchResult check(MatchValue valueToCheck, boolean withPattern) {
+
+        //without a listener all this costs is finding out there is none:
+        MatchListener listener = matchListener;
+        long startTime = (listener != null && listener.timeNextCheck()) ? System.nanoTime() : MatchListener.NOT_TIMED;
+
+        //first just see if we have an exact match:
+        if (exactMatches.contains(valueToCheck, 0, valueToCheck.length())) {
+            if (log.isDebugEnabled()) {
+                log.debug("List contains matching exact value: {}", valueToCheck);
+            }
+            return checked(listener, withPattern ? MatchResult.exact(valueToCheck.normalizedText()) : MatchResult.EXACT, null, startTime);
+        } else if (matchesEverything) { //or see if we just match anything by wildcard
+            if (log.isDebugEnabled()) {
+                log.debug("List contains wildcard any '{}' pattern so all values match.", WILDCARD);
+            }
+            return checked(listener, MatchResult.MATCH_ALL, null, startTime);
+        }
+
+        //values that keep coming back may already have their answer cached, but not which pattern matched:
+        long cacheGeneration = 0;
+        if (resultCache != null) {
+            Boolean cachedResult = resultCache.get(valueToCheck);
+            if (cachedResult != null && !(cachedResult && withPattern)) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Found cached result for [{}]: {}", valueToCheck, cachedResult);
+                }
+                return checked(listener, cachedResult ? MatchResult.WILDCARD : MatchResult.MISS, null, startTime);
+            }
+            cacheGeneration = resultCache.generation();
+        }
+
+        //unfortunately, now we must test the patterns that are not exact, but the index narrows them down:
+        PatternListEntry listEntry = wildcardPatterns.findMatch(valueToCheck);
+        boolean matched = listEntry != null;
+
+        if (matched && log.isDebugEnabled()) {
+            log.debug("Found match for [{}] with pattern {}", valueToCheck, listEntry);
+        }
+
+        if (resultCache != null) {
+            resultCache.put(valueToCheck, cacheGeneration, matched);
+        }
+
+        MatchResult result;
+        if (!matched) {
+            result = MatchResult.MISS;
+        } else if (withPattern) {
+            result = MatchResult.wildcard(listEntry, componentDelimiter);
+        } else {
+            result = MatchResult.WILDCARD;
+        }
+
+        return checked(listener, result, listEntry, startTime);
+    }
+
+
+    /**
+     * Tells the listener, if there is one, how a check turned out, and returns the result.
+     */
+    private static MatchResult checked(MatchListener listener, MatchResult result, PatternListEntry matchedPattern, long startTime) {
+
+        if (listener != null) {
+            long elapsedNanos = (startTime != MatchListener.NOT_TIMED) ? Math.max(0, System.nanoTime() - startTime)
+                                                                      : MatchListener.NOT_TIMED;
+            listener.checked(result.getOutcome(), matchedPattern, elapsedNanos);
+        }
+
+        return result;
+    }
+
+
+
+    private static boolean containsSpecialMatchingCharacters(String value) {
+        return (value != null) && value.contains(WILDCARD);
+    }
+
+
+    /**
+     * Returns true if a normalized pattern has to be kept with the wildcard patterns.  A wildcard by itself
+     * is kept with the exact matches, where it is checked for specially, and address blocks and IPv6
+     * addresses are kept with the wildcard patterns in the modes that understand them.
+     */
+    static boolean isWildcardPattern(String normalizedPattern, MatchingMode matchingMode) {
+        return (containsSpecialMatchingCharacters(normalizedPattern) && !normalizedPattern.equals(WILDCARD))
+               || (matchingMode == MatchingMode.IPV4 && Ipv4Index.isAddressBlock(normalizedPattern))
+               || (matchingMode == MatchingMode.IPV6 && Ipv6Index.isAddressPattern(normalizedPattern));
+    }
+
+
+
+    /**
+     * Checks one range of a batch, splitting it in half until it is small enough to do directly.  Each
+     * chunk only writes to its own range of the results, so no locking is needed.
+     */
+    private final class BatchMatch extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String[] values;
+
+        private final boolean[] matched;
+
+        private final int start;
+
+        private final int end;
+
+        private final int chunkSize;
+
+
+        BatchMatch(String[] values, boolean[] matched, int start, int end, int chunkSize) {
+            this.values = values;
+            this.matched = matched;
+            this.start = start;
+            this.end = end;
+            this.chunkSize = chunkSize;
+        }
+
+
+        @Override
+        protected void compute() {
+
+            if (end - start <= chunkSize) {
+
+                MatchValue valueToCheck = MatchValue.forCurrentThread();
+
+                try {
+                    for (int i=start; i<end; i++) {
+                        matched[i] = matches(values[i], valueToCheck);
+                    }
+                } finally {
+                    valueToCheck.release();
+                }
+                return;
+            }
+
+            int middle = (start + end) >>> 1;
+            invokeAll(new BatchMatch(values, matched, start, middle, chunkSize),
+                      new BatchMatch(values, matched, middle, end, chunkSize));
+        }
+    }
+
+
+
+    /**
+     * Builds a PatternList on the threads of a ForkJoinPool, for lists of millions of patterns that take too
+     * long to build on one thread.  The list is the same as the one the constructor with the same arguments
+     * builds.
+     *
+     * The patterns are normalized and sorted into exact and wildcard patterns in pieces, a few per thread of
+     * the pool.  Each piece also sorts its exact patterns by the partition of the exact matches they go in
+     * (see {@link PartitionedLiteralSet}), so that every partition can then be filled on a thread of its own,
+     * sized for just the patterns it gets.  Only the wildcard patterns are indexed on one thread at the end,
+     * since lists usually have far fewer of those.
+     *
+     * <pre>
+     * PatternList denyList = new PatternList.Builder(patterns, "@", false)
+     *                                       .matchingMode(MatchingMode.DOMAIN)
+     *                                       .pool(pool)
+     *                                       .build();
+     * </pre>
+     */
+    public static final class Builder {
+
+        private final Collection<String> patternsToLoad;
+
+        private final String componentDelimiter;
+
+        private final boolean caseSensitive;
+
+        private MatchingMode matchingMode = MatchingMode.STANDARD;
+
+        private int resultCacheSize;
+
+        //null for a pool of its own, with a thread for every processor:
+        private ForkJoinPool pool;
+
+
+        /**
+         * Starts a new Builder, with the same arguments as {@link PatternList#PatternList(Collection, String, boolean)}.
+         * The patterns must not change until the list is built.
+         */
+        public Builder(Collection<String> patternsToLoad, String componentDelimiter, boolean caseSensitive) {
+            this.patternsToLoad = patternsToLoad;
+            this.componentDelimiter = componentDelimiter;
+            this.caseSensitive = caseSensitive;
+        }
+
+
+        /**
+         * Sets how the wildcard patterns should be evaluated, STANDARD unless set.
+         */
+        public Builder matchingMode(MatchingMode matchingMode) {
+            this.matchingMode = Objects.requireNonNull(matchingMode, "matchingMode");
+            return this;
+        }
+
+
+        /**
+         * Sets the most results to cache, or 0 (the default) for no cache, see
+         * {@link PatternList#PatternList(Collection, String, boolean, MatchingMode, int)}.
+         */
+        public Builder resultCacheSize(int resultCacheSize) {
+
+            if (resultCacheSize < 0) {
+                throw new IllegalArgumentException("The result cache size can't be negative: " + resultCacheSize);
+            }
+
+            this.resultCacheSize = resultCacheSize;
+            return this;
+        }
+
+
+        /**
+         * Sets the pool to build the list on, usually one shared by the application.  Without one, a pool
+         * with a thread for every processor is started for the build and shut down afterwards.
+         */
+        public Builder pool(ForkJoinPool pool) {
+            this.pool = pool;
+            return this;
+        }
+
+
+        public PatternList build() {
+
+            if (pool != null) {
+                return build(pool);
+            }
+
+            ForkJoinPool ownPool = new ForkJoinPool();
+
+            try {
+                return build(ownPool);
+            } finally {
+                ownPool.shutdown();
+            }
+        }
+
+
+        private PatternList build(ForkJoinPool buildPool) {
+
+            long startTime = System.nanoTime();
+
+            String[] patterns = patternsToLoad != null ? patternsToLoad.toArray(new String[patternsToLoad.size()]) : new String[0];
+            int parallelism = buildPool.getParallelism();
+            int partitionCount = partitionCountFor(patterns.length, parallelism);
+            int chunkSize = Math.max(MIN_BUILD_CHUNK, patterns.length / (parallelism * CHUNKS_PER_THREAD) + 1);
+            MatchingMode indexMode = indexModeFor(componentDelimiter, matchingMode);
+
+            List<PatternSorter> sorters = new ArrayList<>();
+            for (int start=0; start<patterns.length; start+=chunkSize) {
+                sorters.add(new PatternSorter(patterns, start, Math.min(patterns.length, start + chunkSize), partitionCount,
+                                              componentDelimiter, caseSensitive, indexMode));
+            }
+            buildPool.invoke(new InvokeAll(sorters));
+
+            int exactCount = 0;
+            Set<PatternListEntry> wildcardEntries = new HashSet<>();
+            for (PatternSorter sorter : sorters) {
+                for (List<String> partitionPatterns : sorter.exactPatterns) {
+                    exactCount += partitionPatterns.size();
+                }
+                wildcardEntries.addAll(sorter.wildcardEntries);
+            }
+
+            //the partitions are sized for every exact pattern, which may include some duplicates:
+            boolean offHeap = keepsOffHeap(exactCount);
+            List<PartitionFiller> fillers = new ArrayList<>(partitionCount);
+            for (int partition=0; partition<partitionCount; partition++) {
+                fillers.add(new PartitionFiller(sorters, partition, offHeap));
+            }
+            buildPool.invoke(new InvokeAll(fillers));
+
+            LiteralSet exactMatches;
+            if (partitionCount == 1) {
+                exactMatches = fillers.get(0).partition;
+            } else {
+                LiteralSet[] partitions = new LiteralSet[partitionCount];
+                for (int partition=0; partition<partitionCount; partition++) {
+                    partitions[partition] = fillers.get(partition).partition;
+                }
+                exactMatches = new PartitionedLiteralSet(partitions);
+            }
+
+            PatternList patternList = new PatternList(exactMatches, wildcardEntries, componentDelimiter, caseSensitive, matchingMode,
+                                                      resultCacheSize);
+
+            log.debug("Built a list of {} patterns in {} partitions on {} threads in {} ms", patterns.length, partitionCount,
+                      parallelism, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+
+            return patternList;
+        }
+
+
+        /**
+         * Returns how many partitions the exact matches are split into: one for small lists or a single
+         * thread, otherwise a few for every thread, rounded up to a power of two.
+         */
+        private static int partitionCountFor(int patternCount, int parallelism) {
+
+            if (parallelism == 1 || patternCount < MIN_PARTITIONED_SIZE) {
+                return 1;
+            }
+
+            return Math.min(MAX_PARTITIONS, Integer.highestOneBit(parallelism * CHUNKS_PER_THREAD - 1) << 1);
+        }
+    }
+
+
+
+    /**
+     * Runs a few tasks at once and waits for all of them, so their results can be joined afterwards.
+     */
+    private static final class InvokeAll extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<? extends ForkJoinTask<?>> tasks;
+
+
+        InvokeAll(List<? extends ForkJoinTask<?>> tasks) {
+            this.tasks = tasks;
+        }
+
+
+        @Override
+        protected void compute() {
+            invokeAll(tasks);
+        }
+    }
+
+
+
+    /**
+     * Normalizes one piece of the patterns for a {@link Builder} and sorts them into wildcard patterns and
+     * exact patterns, by the partition of the exact matches they go in.
+     */
+    private static final class PatternSorter extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String[] patterns;
+
+        private final int start;
+
+        private final int end;
+
+        private final String componentDelimiter;
+
+        private final boolean caseSensitive;
+
+        private final MatchingMode indexMode;
+
+        //by partition:
+        private final List<String>[] exactPatterns;
+
+        private final List<PatternListEntry> wildcardEntries = new ArrayList<>();
+
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        PatternSorter(String[] patterns, int start, int end, int partitionCount, String componentDelimiter, boolean caseSensitive,
+                      MatchingMode indexMode) {
+
+            this.patterns = patterns;
+            this.start = start;
+            this.end = end;
+            this.componentDelimiter = componentDelimiter;
+            this.caseSensitive = caseSensitive;
+            this.indexMode = indexMode;
+
+            this.exactPatterns = new List[partitionCount];
+            for (int partition=0; partition<partitionCount; partition++) {
+                exactPatterns[partition] = new ArrayList<>((end - start) / partitionCount + 1);
+            }
+        }
+
+
+        @Override
+        protected void compute() {
+
+            int partitionCount = exactPatterns.length;
+
+            for (int i=start; i<end; i++) {
+
+                String normalizedPattern = normalizePattern(patterns[i], caseSensitive);
+
+                if (isWildcardPattern(normalizedPattern, indexMode)) {
+                    wildcardEntries.add(new PatternListEntry(normalizedPattern, componentDelimiter));
+                } else {
+                    //this also leaves the hash code in the String, so the heap set doesn't have to work it out again:
+                    exactPatterns[PartitionedLiteralSet.partitionOf(normalizedPattern.hashCode(), partitionCount)].add(normalizedPattern);
+                }
+            }
+        }
+    }
+
+
+
+    /**
+     * Fills one partition of the exact matches for a {@link Builder} from what every piece sorted into it.
+     */
+    private static final class PartitionFiller extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<PatternSorter> sorters;
+
+        private final int partitionIndex;
+
+        private final boolean offHeap;
+
+        private LiteralSet partition;
+
+
+        PartitionFiller(List<PatternSorter> sorters, int partitionIndex, boolean offHeap) {
+            this.sorters = sorters;
+            this.partitionIndex = partitionIndex;
+            this.offHeap = offHeap;
+        }
+
+
+        @Override
+        protected void compute() {
+
+            int expectedSize = 0;
+            for (PatternSorter sorter : sorters) {
+                expectedSize += sorter.exactPatterns[partitionIndex].size();
+            }
+
+            LiteralSet newPartition = newLiteralSet(expectedSize, offHeap);
+            for (PatternSorter sorter : sorters) {
+                for (String exactPattern : sorter.exactPatterns[partitionIndex]) {
+                    newPartition.add(exactPattern);
+                }
+            }
+
+            this.partition = newPartition;
+        }
+    }
+}
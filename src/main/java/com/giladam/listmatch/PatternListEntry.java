@@ -1,92 +1,145 @@
-package com.giladam.listmatch;
-
-import java.util.Objects;
-import java.util.regex.Pattern;
-
-import org.apache.commons.lang3.StringUtils;
-
-
-/**
- * An pattern that is used to test against in a {@link PatternList}
- *
- * @author Gil Adam
- */
-public class PatternListEntry {
-
-    private final String[] components;
-
-
-    /**
-     * Constructs a new PatternListEntry with the specified value and delimits components
-     * of the pattern by componentDelimiter specified.
-     *
-     * If the componentDelimiter is null, then there will only be one component.
-     *
-     * @param value
-     * @param componentDelimiter
-     */
-    public PatternListEntry(String value, String componentDelimiter) {
-
-        if (StringUtils.isEmpty(value)) {
-            this.components = new String[0];
-        } else if (StringUtils.isEmpty(componentDelimiter)) {
-            this.components = new String[]{value};
-        } else {
-            this.components = value.split(Pattern.quote(componentDelimiter));
-        }
-    }
-
-
-    public String[] getComponents() {
-        return this.components;
-    }
-
-
-    @Override
-    public final int hashCode() {
-       return Objects.hash((Object[]) components);
-    }
-
-
-    @Override
-    public final boolean equals(Object obj) {
-
-        if (this == obj) {
-            return true;
-        }
-
-        if (obj == null) {
-            return false;
-        }
-
-        if (!(obj instanceof PatternListEntry)) {
-            return false;
-        }
-
-        PatternListEntry other = (PatternListEntry) obj;
-
-        return Objects.deepEquals(this.components, other.components);
-    }
-
-    @Override
-    public String toString() {
-
-        StringBuilder sb = new StringBuilder();
-
-        sb.append("[");
-
-        for (int i=0; i<this.components.length; i++) {
-            sb.append("'");
-            sb.append(this.components[i]);
-            sb.append("'");
-
-            if (i < (this.components.length-1)) {
-                sb.append(", ");
-            }
-        }
-
-        sb.append("]");
-
-        return sb.toString();
-    }
-}
+package com.giladam.listmatch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import org.apache.commons.lang3.StringUtils;
+
+
+/**
+ * An pattern that is used to test against in a {@link PatternList}
+ *
+ * @author Gil Adam
+ */
+public class PatternListEntry {
+
+    private final String[] components;
+
+
+    /**
+     * Constructs a new PatternListEntry with the specified value and delimits components
+     * of the pattern by componentDelimiter specified.
+     *
+     * If the componentDelimiter is null, then there will only be one component.
+     *
+     * @param value
+     * @param componentDelimiter
+     */
+    public PatternListEntry(String value, String componentDelimiter) {
+
+        if (StringUtils.isEmpty(value)) {
+            this.components = new String[0];
+        } else if (StringUtils.isEmpty(componentDelimiter)) {
+            this.components = new String[]{value};
+        } else {
+            this.components = split(value, componentDelimiter);
+        }
+    }
+
+
+    /**
+     * Splits a value on every occurrence of the delimiter exactly like value.split(Pattern.quote(delimiter))
+     * does, dropping empty trailing components, but without compiling a regular expression for every pattern.
+     */
+    static String[] split(String value, String componentDelimiter) {
+
+        int delimiterIndex = value.indexOf(componentDelimiter);
+        if (delimiterIndex < 0) {
+            return new String[]{value};
+        }
+
+        List<String> components = new ArrayList<>();
+        int componentStart = 0;
+
+        while (delimiterIndex >= 0) {
+            components.add(value.substring(componentStart, delimiterIndex));
+            componentStart = delimiterIndex + componentDelimiter.length();
+            delimiterIndex = value.indexOf(componentDelimiter, componentStart);
+        }
+
+        components.add(value.substring(componentStart));
+
+        int componentCount = components.size();
+        while (componentCount > 0 && components.get(componentCount - 1).isEmpty()) {
+            componentCount--;
+        }
+
+        return components.subList(0, componentCount).toArray(new String[componentCount]);
+    }
+
+
+    /**
+     * Constructs a new PatternListEntry from components that were already split, such as the ones saved in a
+     * {@link PatternListSnapshot}.
+     *
+     * @param components
+     */
+    PatternListEntry(String[] components) {
+        this.components = components.clone();
+    }
+
+
+    /**
+     * Replaces every component with the instance the table keeps for it, which is equal to it.
+     */
+    void internComponents(ComponentSymbols symbols) {
+        for (int i=0; i<components.length; i++) {
+            components[i] = symbols.intern(components[i]);
+        }
+    }
+
+
+    public String[] getComponents() {
+        return this.components;
+    }
+
+
+    @Override
+    public final int hashCode() {
+       return Objects.hash((Object[]) components);
+    }
+
+
+    @Override
+    public final boolean equals(Object obj) {
+
+        if (this == obj) {
+            return true;
+        }
+
+        if (obj == null) {
+            return false;
+        }
+
+        if (!(obj instanceof PatternListEntry)) {
+            return false;
+        }
+
+        PatternListEntry other = (PatternListEntry) obj;
+
+        return Objects.deepEquals(this.components, other.components);
+    }
+
+    @Override
+    public String toString() {
+
+        StringBuilder sb = new StringBuilder();
+
+        sb.append("[");
+
+        for (int i=0; i<this.components.length; i++) {
+            sb.append("'");
+            sb.append(this.components[i]);
+            sb.append("'");
+
+            if (i < (this.components.length-1)) {
+                sb.append(", ");
+            }
+        }
+
+        sb.append("]");
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,257 @@
+package com.giladam.listmatch;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * A {@link MatchListener} that keeps its own metrics for a {@link PatternList}: how many checks had each
+ * {@link MatchOutcome}, a histogram of how long a sample of the checks took, and optionally how often each
+ * wildcard pattern matched, to find patterns that are never used.
+ *
+ * The outcome counts are striped over several memory locations so threads checking at the same time don't
+ * slow each other down.  The histogram has a bucket for every power of two nanoseconds, so its percentiles
+ * are upper bounds that are at most twice the real ones.
+ *
+ * Counting the hits of each pattern is left off unless asked for, since the patterns matched most also
+ * get counted from many threads at once.  Values whose result came from the list's result cache are
+ * counted as wildcard hits or misses, but not for any pattern.
+ *
+ * @author Gil Adam
+ *
+ */
+public class PatternListMetrics implements MatchListener {
+
+    private static final int DEFAULT_LATENCY_SAMPLE_RATE = 100;
+
+    private static final int BUCKET_COUNT = 64;
+
+    private final StripedCounter exactHits = new StripedCounter();
+
+    private final StripedCounter matchAllHits = new StripedCounter();
+
+    private final StripedCounter wildcardHits = new StripedCounter();
+
+    private final StripedCounter misses = new StripedCounter();
+
+    private final int latencySampleRate;
+
+    //bucket i counts samples that took from 2^(i-1) up to 2^i - 1 nanoseconds, bucket 0 the ones that took 0:
+    private final AtomicLongArray latencyBuckets = new AtomicLongArray(BUCKET_COUNT);
+
+    //null unless asked for:
+    private final ConcurrentMap<PatternListEntry,AtomicLong> hitsByPattern;
+
+
+    /**
+     * Creates metrics that time one in every 100 checks and don't count the hits of each pattern.
+     */
+    public PatternListMetrics() {
+        this(DEFAULT_LATENCY_SAMPLE_RATE, false);
+    }
+
+
+    /**
+     * Creates metrics.
+     *
+     * @param latencySampleRate Time one in this many checks, 1 to time all of them or 0 to time none.
+     * @param countPatternHits Whether to count how often each wildcard pattern matched.
+     */
+    public PatternListMetrics(int latencySampleRate, boolean countPatternHits) {
+
+        if (latencySampleRate < 0) {
+            throw new IllegalArgumentException("The latency sample rate can't be negative: " + latencySampleRate);
+        }
+
+        this.latencySampleRate = latencySampleRate;
+        this.hitsByPattern = countPatternHits ? new ConcurrentHashMap<PatternListEntry,AtomicLong>() : null;
+    }
+
+
+    @Override
+    public boolean timeNextCheck() {
+        return latencySampleRate == 1
+               || (latencySampleRate > 1 && ThreadLocalRandom.current().nextInt(latencySampleRate) == 0);
+    }
+
+
+    @Override
+    public void checked(MatchOutcome outcome, PatternListEntry matchedPattern, long elapsedNanos) {
+
+        switch (outcome) {
+            case EXACT:
+                exactHits.increment();
+                break;
+            case MATCH_ALL:
+                matchAllHits.increment();
+                break;
+            case WILDCARD:
+                wildcardHits.increment();
+                if (hitsByPattern != null && matchedPattern != null) {
+                    countPatternHit(matchedPattern);
+                }
+                break;
+            default:
+                misses.increment();
+                break;
+        }
+
+        if (elapsedNanos >= 0) {
+            latencyBuckets.incrementAndGet(BUCKET_COUNT - Long.numberOfLeadingZeros(Math.min(elapsedNanos, Long.MAX_VALUE >>> 1)));
+        }
+    }
+
+
+    private void countPatternHit(PatternListEntry matchedPattern) {
+
+        AtomicLong hits = hitsByPattern.get(matchedPattern);
+
+        if (hits == null) {
+            AtomicLong newHits = new AtomicLong();
+            hits = hitsByPattern.putIfAbsent(matchedPattern, newHits);
+            if (hits == null) {
+                hits = newHits;
+            }
+        }
+
+        hits.incrementAndGet();
+    }
+
+
+    public long getExactHitCount() {
+        return exactHits.sum();
+    }
+
+
+    public long getMatchAllHitCount() {
+        return matchAllHits.sum();
+    }
+
+
+    public long getWildcardHitCount() {
+        return wildcardHits.sum();
+    }
+
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+
+    public long getCheckCount() {
+        return getExactHitCount() + getMatchAllHitCount() + getWildcardHitCount() + getMissCount();
+    }
+
+
+    public long getLatencySampleCount() {
+
+        long count = 0;
+        for (int i=0; i<BUCKET_COUNT; i++) {
+            count += latencyBuckets.get(i);
+        }
+
+        return count;
+    }
+
+
+    /**
+     * Returns the number of timed checks in each bucket of the histogram, where bucket 0 has the ones that
+     * took 0 nanoseconds and bucket i the ones that took from 2^(i-1) up to 2^i - 1 nanoseconds.
+     */
+    public long[] getLatencyHistogram() {
+
+        long[] histogram = new long[BUCKET_COUNT];
+        for (int i=0; i<BUCKET_COUNT; i++) {
+            histogram[i] = latencyBuckets.get(i);
+        }
+
+        return histogram;
+    }
+
+
+    /**
+     * Returns at most how many nanoseconds the given percentage of the timed checks took, such as 99 for
+     * the 99th percentile, or 0 if nothing was timed.
+     */
+    public long getLatencyPercentileNanos(double percentile) {
+
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("The percentile must be from 0 to 100, not " + percentile);
+        }
+
+        long[] histogram = getLatencyHistogram();
+
+        long total = 0;
+        for (long count : histogram) {
+            total += count;
+        }
+
+        long wanted = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+
+        for (int i=0; i<BUCKET_COUNT; i++) {
+            seen += histogram[i];
+            if (seen >= wanted && seen > 0) {
+                return i == 0 ? 0 : (1L << i) - 1;
+            }
+        }
+
+        return 0;
+    }
+
+
+    /**
+     * Returns how often each wildcard pattern matched, leaving out the ones that never did, or an empty Map
+     * if pattern hits aren't counted.
+     */
+    public Map<PatternListEntry,Long> getPatternHitCounts() {
+
+        Map<PatternListEntry,Long> hitCounts = new LinkedHashMap<>();
+
+        if (hitsByPattern != null) {
+            for (Map.Entry<PatternListEntry,AtomicLong> patternHits : hitsByPattern.entrySet()) {
+                hitCounts.put(patternHits.getKey(), patternHits.getValue().get());
+            }
+        }
+
+        return hitCounts;
+    }
+
+
+    /**
+     * Returns the wildcard patterns of the list that never matched a value, for lists whose pattern hits
+     * are counted.  Patterns are only counted for values that weren't answered from the result cache, so
+     * this is best used on lists without one.
+     */
+    public List<PatternListEntry> getUnusedPatterns(PatternList patternList) {
+
+        if (hitsByPattern == null) {
+            throw new IllegalStateException("Pattern hits are not counted");
+        }
+
+        List<PatternListEntry> unusedPatterns = new ArrayList<>();
+
+        for (PatternListEntry entry : patternList.getWildcardEntries()) {
+            if (!hitsByPattern.containsKey(entry)) {
+                unusedPatterns.add(entry);
+            }
+        }
+
+        return unusedPatterns;
+    }
+
+
+    @Override
+    public String toString() {
+        return "PatternListMetrics [exactHits=" + getExactHitCount() + ", matchAllHits=" + getMatchAllHitCount()
+               + ", wildcardHits=" + getWildcardHitCount() + ", misses=" + getMissCount()
+               + ", p50Nanos=" + getLatencyPercentileNanos(50) + ", p99Nanos=" + getLatencyPercentileNanos(99) + "]";
+    }
+}
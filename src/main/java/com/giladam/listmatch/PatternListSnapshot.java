@@ -0,0 +1,502 @@
+package com.giladam.listmatch;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Saves fully built {@link PatternList}s to a binary snapshot file and loads them back, which is much faster
+ * than reading and normalizing the patterns again.
+ *
+ * The exact matches are saved in the layout of an {@link OffHeapLiteralSet} and loaded by memory-mapping
+ * that part of the file and using it in place, so loading takes about the same time for a thousand exact
+ * matches as for a hundred million, and the operating system only reads in the pages that checks actually
+ * touch.  The wildcard patterns are saved already normalized and split into components, and are compiled
+ * for their {@link MatchingMode} when loaded (lists usually have far fewer of those).
+ *
+ * A snapshot is written to a temporary file next to it and renamed into place once it is complete, so a
+ * snapshot file that is already loaded (and mapped) somewhere is never changed under it.
+ *
+ * A snapshot file has a fixed header (magic, format version, list count, body length and a CRC32 of the
+ * body), followed by one section per list: the length of the list's settings and wildcard patterns, those
+ * themselves, then the table and data chunks of its exact matches, each starting on an 8-byte boundary.
+ *
+ * Snapshots can be built from pattern text files with the main() method:
+ *
+ * <pre>
+ * java -cp ListMatch.jar com.giladam.listmatch.PatternListSnapshot &lt;snapshot file&gt;
+ *      &lt;list name&gt; &lt;patterns file&gt; &lt;delimiter, or - for none&gt; &lt;caseSensitive&gt; &lt;matchingMode&gt; ...
+ * </pre>
+ *
+ * @author Gil Adam
+ *
+ */
+public final class PatternListSnapshot {
+
+    /**
+     * The version of the format written by this class, which is the only one it can load.
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    private static Logger log = LoggerFactory.getLogger(PatternListSnapshot.class);
+
+    private static final byte[] MAGIC = "LMSNAPSH".getBytes(Charset.forName("US-ASCII"));
+
+    //magic, version, list count, body length, body checksum:
+    private static final int HEADER_LENGTH = 8 + 4 + 4 + 8 + 8;
+
+    private static final int ALIGNMENT = 8;
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private static final String NO_DELIMITER = "-";
+
+    private static final int LIST_ARGUMENTS = 5;
+
+    static final String LIST_USAGE = "(<list name> <patterns file> <delimiter, or " + NO_DELIMITER + " for none> "
+                                     + "<caseSensitive> <matchingMode>)...";
+
+
+    private PatternListSnapshot() {
+        //do not instantiate, just use the static methods.
+    }
+
+
+    /**
+     * Saves all the lists of a ListMatcher to a snapshot file.
+     *
+     * @param listMatcher
+     * @param snapshotFile Replaced if it exists.
+     * @throws IOException
+     */
+    public static void write(ListMatcher listMatcher, File snapshotFile) throws IOException {
+        write(listMatcher.getLists(), snapshotFile);
+    }
+
+
+    /**
+     * Saves lists to a snapshot file, by name.
+     *
+     * @param listByName
+     * @param snapshotFile Replaced if it exists.
+     * @throws IOException
+     */
+    public static void write(Map<String,PatternList> listByName, File snapshotFile) throws IOException {
+
+        //the rename is only atomic within one file system, so the temporary file goes in the same directory:
+        File directory = snapshotFile.getAbsoluteFile().getParentFile();
+        File temporaryFile = File.createTempFile(snapshotFile.getName() + ".", ".tmp", directory);
+
+        try {
+            writeTo(listByName, temporaryFile);
+            Files.move(temporaryFile.toPath(), snapshotFile.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            if (temporaryFile.exists() && !temporaryFile.delete()) {
+                log.warn("Could not delete temporary snapshot file {}", temporaryFile);
+            }
+        }
+    }
+
+
+    private static void writeTo(Map<String,PatternList> listByName, File snapshotFile) throws IOException {
+
+        try (RandomAccessFile file = new RandomAccessFile(snapshotFile, "rw")) {
+
+            file.write(new byte[HEADER_LENGTH]);
+
+            ChecksummedOutput body = new ChecksummedOutput(Channels.newOutputStream(file.getChannel()), HEADER_LENGTH);
+
+            for (Map.Entry<String,PatternList> namedList : listByName.entrySet()) {
+                PatternList patternList = namedList.getValue();
+                //a ConcurrentPatternList only changes while holding its lock:
+                synchronized (patternList) {
+                    writeList(body, namedList.getKey(), patternList);
+                }
+            }
+
+            body.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            header.put(MAGIC);
+            header.putInt(FORMAT_VERSION);
+            header.putInt(listByName.size());
+            header.putLong(body.position - HEADER_LENGTH);
+            header.putLong(body.checksum.getValue());
+
+            file.seek(0);
+            file.write(header.array());
+
+            //on disk before it can be renamed into place:
+            file.getChannel().force(true);
+        }
+    }
+
+
+    private static void writeList(ChecksummedOutput body, String listName, PatternList patternList) throws IOException {
+
+        OffHeapLiteralSet exactMatches = patternList.getExactMatches().toOffHeap();
+        ByteBuffer[] tableChunks = exactMatches.tableChunks();
+        ByteBuffer[] dataChunks = exactMatches.dataChunks();
+
+        ByteArrayOutputStream metadataBytes = new ByteArrayOutputStream();
+        DataOutputStream metadata = new DataOutputStream(metadataBytes);
+
+        metadata.writeUTF(listName);
+        metadata.writeUTF(patternList.getMatchingMode().name());
+        metadata.writeBoolean(patternList.isCaseSensitive());
+        metadata.writeBoolean(patternList.getComponentDelimiter() != null);
+        if (patternList.getComponentDelimiter() != null) {
+            metadata.writeUTF(patternList.getComponentDelimiter());
+        }
+        metadata.writeInt(patternList.getResultCacheSize());
+
+        Collection<PatternListEntry> wildcardEntries = patternList.getWildcardEntries();
+        metadata.writeInt(wildcardEntries.size());
+        for (PatternListEntry entry : wildcardEntries) {
+            metadata.writeInt(entry.getComponents().length);
+            for (String component : entry.getComponents()) {
+                metadata.writeUTF(component);
+            }
+        }
+
+        metadata.writeInt(exactMatches.size());
+        metadata.writeInt(exactMatches.usedSlots());
+        metadata.writeLong(exactMatches.capacity());
+
+        metadata.writeInt(tableChunks.length);
+        for (ByteBuffer tableChunk : tableChunks) {
+            metadata.writeInt(tableChunk.capacity());
+        }
+
+        metadata.writeInt(dataChunks.length);
+        for (int i=0; i<dataChunks.length; i++) {
+            metadata.writeInt(exactMatches.dataChunkLength(i));
+        }
+
+        metadata.flush();
+
+        body.writeInt(metadataBytes.size());
+        body.write(metadataBytes.toByteArray(), metadataBytes.size());
+        body.pad();
+
+        for (ByteBuffer tableChunk : tableChunks) {
+            body.write(tableChunk, tableChunk.capacity());
+            body.pad();
+        }
+
+        for (int i=0; i<dataChunks.length; i++) {
+            body.write(dataChunks[i], exactMatches.dataChunkLength(i));
+            body.pad();
+        }
+
+        log.debug("Wrote list [{}] with {} exact and {} wildcard patterns to snapshot",
+                  listName, exactMatches.size(), wildcardEntries.size());
+    }
+
+
+    /**
+     * Loads the lists of a snapshot file, by name, after making sure the file isn't damaged.
+     *
+     * @param snapshotFile
+     * @return
+     * @throws IOException If the file can't be read, isn't a snapshot of a supported version, or is damaged.
+     */
+    public static Map<String,PatternList> load(File snapshotFile) throws IOException {
+        return load(snapshotFile, true);
+    }
+
+
+    /**
+     * Loads the lists of a snapshot file, by name.
+     *
+     * Checking the checksum reads the whole file once, so it can be skipped for a file that is known to be
+     * good, such as one that was just checked by another process.  Then only the parts of the file that
+     * are actually used are ever read.
+     *
+     * @param snapshotFile
+     * @param verifyChecksum Whether to make sure the file isn't damaged first.
+     * @return
+     * @throws IOException If the file can't be read, isn't a snapshot of a supported version, or is damaged.
+     */
+    public static Map<String,PatternList> load(File snapshotFile, boolean verifyChecksum) throws IOException {
+
+        try (RandomAccessFile file = new RandomAccessFile(snapshotFile, "r")) {
+
+            FileChannel channel = file.getChannel();
+
+            ByteBuffer header = read(channel, 0, HEADER_LENGTH);
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+            int version = header.getInt();
+            int listCount = header.getInt();
+            long bodyLength = header.getLong();
+            long checksum = header.getLong();
+
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException(snapshotFile + " is not a pattern list snapshot.");
+            }
+            if (version != FORMAT_VERSION) {
+                throw new IOException(snapshotFile + " has snapshot format version " + version + ", but only version "
+                                      + FORMAT_VERSION + " is supported.");
+            }
+            if (bodyLength != channel.size() - HEADER_LENGTH) {
+                throw new IOException(snapshotFile + " is " + channel.size() + " bytes long, but should be "
+                                      + (bodyLength + HEADER_LENGTH) + ".");
+            }
+            if (verifyChecksum && checksumOf(file, bodyLength) != checksum) {
+                throw new IOException(snapshotFile + " is damaged, its checksum does not match.");
+            }
+
+            Map<String,PatternList> listByName = new LinkedHashMap<>();
+            long position = HEADER_LENGTH;
+
+            for (int i=0; i<listCount; i++) {
+                position = readList(channel, position, listByName);
+            }
+
+            return listByName;
+        }
+    }
+
+
+    /**
+     * Reads the list whose section starts at the position, returning where the next section starts.
+     */
+    private static long readList(FileChannel channel, long position, Map<String,PatternList> listByName) throws IOException {
+
+        int metadataLength = read(channel, position, 4).getInt();
+        DataInputStream metadata = new DataInputStream(new ByteArrayInputStream(read(channel, position + 4, metadataLength).array()));
+        position = align(position + 4 + metadataLength);
+
+        String listName = metadata.readUTF();
+        MatchingMode matchingMode = MatchingMode.valueOf(metadata.readUTF());
+        boolean caseSensitive = metadata.readBoolean();
+        String componentDelimiter = metadata.readBoolean() ? metadata.readUTF() : null;
+        int resultCacheSize = metadata.readInt();
+
+        int wildcardCount = metadata.readInt();
+        List<PatternListEntry> wildcardEntries = new ArrayList<>(wildcardCount);
+        for (int i=0; i<wildcardCount; i++) {
+            String[] components = new String[metadata.readInt()];
+            for (int c=0; c<components.length; c++) {
+                components[c] = metadata.readUTF();
+            }
+            wildcardEntries.add(new PatternListEntry(components));
+        }
+
+        int size = metadata.readInt();
+        int usedSlots = metadata.readInt();
+        long capacity = metadata.readLong();
+
+        ByteBuffer[] tableChunks = new ByteBuffer[metadata.readInt()];
+        for (int i=0; i<tableChunks.length; i++) {
+            int length = metadata.readInt();
+            tableChunks[i] = channel.map(MapMode.READ_ONLY, position, length);
+            position = align(position + length);
+        }
+
+        ByteBuffer[] dataChunks = new ByteBuffer[metadata.readInt()];
+        for (int i=0; i<dataChunks.length; i++) {
+            int length = metadata.readInt();
+            dataChunks[i] = channel.map(MapMode.READ_ONLY, position, length);
+            position = align(position + length);
+        }
+
+        OffHeapLiteralSet exactMatches = new OffHeapLiteralSet(tableChunks, capacity, dataChunks, size, usedSlots);
+        listByName.put(listName, new PatternList(exactMatches, wildcardEntries, componentDelimiter, caseSensitive,
+                                                 matchingMode, resultCacheSize));
+
+        log.debug("Loaded list [{}] with {} exact and {} wildcard patterns from snapshot", listName, size, wildcardCount);
+
+        return position;
+    }
+
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("The snapshot ended early.");
+            }
+        }
+
+        buffer.flip();
+        return buffer;
+    }
+
+
+    private static long checksumOf(RandomAccessFile file, long bodyLength) throws IOException {
+
+        CRC32 checksum = new CRC32();
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+
+        InputStream body = Channels.newInputStream(file.getChannel().position(HEADER_LENGTH));
+        long remaining = bodyLength;
+
+        while (remaining > 0) {
+            int read = body.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read < 0) {
+                throw new EOFException("The snapshot ended early.");
+            }
+            checksum.update(buffer, 0, read);
+            remaining -= read;
+        }
+
+        return checksum.getValue();
+    }
+
+
+    private static long align(long position) {
+        return (position + ALIGNMENT - 1) & ~(long) (ALIGNMENT - 1);
+    }
+
+
+    /**
+     * Returns true if the arguments after the first are a whole number of lists, see {@link #readLists(String[])}.
+     */
+    static boolean isListArguments(String[] args) {
+        return args.length >= 1 + LIST_ARGUMENTS && (args.length - 1) % LIST_ARGUMENTS == 0;
+    }
+
+
+    /**
+     * Reads the lists described by the arguments after the first, five for each list: the name, the
+     * patterns file, the delimiter (or - for none), whether it is case-sensitive and the matching mode.
+     */
+    static Map<String,PatternList> readLists(String[] args) throws IOException {
+
+        Map<String,PatternList> listByName = new LinkedHashMap<>();
+
+        for (int i=1; i<args.length; i+=LIST_ARGUMENTS) {
+
+            String listName = args[i];
+            File patternsFile = new File(args[i + 1]);
+            String componentDelimiter = NO_DELIMITER.equals(args[i + 2]) ? null : args[i + 2];
+            boolean caseSensitive = Boolean.parseBoolean(args[i + 3]);
+            MatchingMode matchingMode = MatchingMode.valueOf(args[i + 4]);
+
+            PatternList patternList = new PatternList(ListMatcher.readPatternsFromFile(patternsFile), componentDelimiter,
+                                                      caseSensitive, matchingMode);
+            listByName.put(listName, patternList);
+
+            System.out.println("Read " + patternList.size() + " patterns for list " + listName + " from " + patternsFile);
+        }
+
+        return listByName;
+    }
+
+
+    /**
+     * Builds a snapshot from pattern text files, see the class comment for the arguments.
+     *
+     * @param args
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+
+        if (!isListArguments(args)) {
+            System.err.println("Usage: PatternListSnapshot <snapshot file> " + LIST_USAGE);
+            System.exit(1);
+            return;
+        }
+
+        long startMillis = System.currentTimeMillis();
+        Map<String,PatternList> listByName = readLists(args);
+
+        File snapshotFile = new File(args[0]);
+        write(listByName, snapshotFile);
+
+        System.out.println("Wrote " + listByName.size() + " lists to " + snapshotFile + " (" + snapshotFile.length()
+                           + " bytes) in " + (System.currentTimeMillis() - startMillis) + " ms");
+    }
+
+
+
+    /**
+     * Writes the body of a snapshot, keeping track of its position and checksum.
+     */
+    private static final class ChecksummedOutput {
+
+        private final OutputStream out;
+
+        private final CRC32 checksum = new CRC32();
+
+        private final byte[] buffer = new byte[COPY_BUFFER_SIZE];
+
+        private long position;
+
+
+        ChecksummedOutput(OutputStream out, long position) {
+            this.out = out;
+            this.position = position;
+        }
+
+
+        void writeInt(int value) throws IOException {
+            write(ByteBuffer.allocate(4).putInt(value).array(), 4);
+        }
+
+
+        void write(byte[] bytes, int length) throws IOException {
+            out.write(bytes, 0, length);
+            checksum.update(bytes, 0, length);
+            position += length;
+        }
+
+
+        /**
+         * Writes the first length bytes of the buffer, without changing its position.
+         */
+        void write(ByteBuffer source, int length) throws IOException {
+
+            ByteBuffer bytes = source.duplicate();
+            bytes.clear();
+            bytes.limit(length);
+
+            while (bytes.hasRemaining()) {
+                int chunkLength = Math.min(buffer.length, bytes.remaining());
+                bytes.get(buffer, 0, chunkLength);
+                write(buffer, chunkLength);
+            }
+        }
+
+
+        void pad() throws IOException {
+            int padding = (int) (align(position) - position);
+            write(new byte[padding], padding);
+        }
+
+
+        void flush() throws IOException {
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.giladam.listmatch;
+
+import java.util.Arrays;
+import java.util.Set;
+
+
+/**
+ * A character trie of single-component {@link PatternListEntry}s keyed on the literal text at one end of
+ * each pattern.
+ *
+ * A forward trie is keyed on the literal prefix of a pattern and is walked from the start of the value,
+ * a reversed trie is keyed on the literal suffix and is walked from the end of the value.  Only the entries
+ * hanging off the nodes along that walk can possibly match, so those are the only ones that get a full
+ * wildcard check.
+ *
+ * The trie is built in place, but once other threads may be walking it, entries are added with
+ * addShared(), which copies the nodes along the key and then swaps in the new root.
+ *
+ * @author Gil Adam
+ *
+ */
+final class PatternTrie {
+
+    private static final char[] NO_KEYS = new char[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
+    private static final PatternListEntry[] NO_ENTRIES = new PatternListEntry[0];
+
+    private final boolean reversed;
+
+    private volatile Node root = new Node();
+
+    private int size;
+
+
+    /**
+     * @param reversed
+     *   If true, keys are suffixes and are read from their last character backwards.
+     */
+    PatternTrie(boolean reversed) {
+        this.reversed = reversed;
+    }
+
+
+    /**
+     * Adds the entry under the given key, which must be its literal prefix (or suffix if reversed).  Only
+     * for building the trie before any other thread can see it.
+     *
+     * @param key
+     * @param entry
+     */
+    void add(String key, PatternListEntry entry) {
+
+        Node node = root;
+        int length = key.length();
+
+        for (int i=0; i<length; i++) {
+            node = node.childFor(keyChar(key, i), true);
+        }
+
+        node.addEntry(entry);
+        size++;
+    }
+
+
+    /**
+     * Adds the entry like add() does, but without changing any node another thread may be walking: the
+     * nodes along the key are copied, and the copy of the root is swapped in once the entry is in place.
+     *
+     * @param key
+     * @param entry
+     */
+    void addShared(String key, PatternListEntry entry) {
+
+        int length = key.length();
+
+        Node newRoot = root.copy();
+        Node node = newRoot;
+
+        for (int i=0; i<length; i++) {
+
+            char c = keyChar(key, i);
+            Node child = node.childFor(c, false);
+
+            child = (child == null) ? new Node() : child.copy();
+            node.setChild(c, child);
+            node = child;
+        }
+
+        node.addEntry(entry);
+        this.root = newRoot;
+        size++;
+    }
+
+
+    private char keyChar(String key, int i) {
+        return key.charAt(reversed ? key.length() - 1 - i : i);
+    }
+
+
+    int size() {
+        return size;
+    }
+
+
+    /**
+     * Walks the trie along the characters of the value from start to end and returns the first entry found
+     * along the way whose single component matches them and that isn't removed, or null if there are none.
+     *
+     * @param value
+     * @param start
+     * @param end
+     * @param removed
+     * @return
+     */
+    PatternListEntry findMatch(MatchValue value, int start, int end, Set<PatternListEntry> removed) {
+
+        Node node = root;
+        int length = end - start;
+
+        for (int i=0; node != null; i++) {
+
+            PatternListEntry match = node.findMatch(value, start, end, removed);
+            if (match != null) {
+                return match;
+            }
+
+            if (i == length) {
+                break;
+            }
+
+            node = node.childFor(value.charAt(reversed ? end - 1 - i : start + i), false);
+        }
+
+        return null;
+    }
+
+
+
+    private static final class Node {
+
+        private char[] keys = NO_KEYS;
+        private Node[] children = NO_CHILDREN;
+        private PatternListEntry[] entries = NO_ENTRIES;
+
+
+        /**
+         * Returns a node with the same children and entries, which can be changed without changing this one
+         * because neither array is ever changed in place.
+         */
+        Node copy() {
+            Node copy = new Node();
+            copy.keys = keys;
+            copy.children = children;
+            copy.entries = entries;
+            return copy;
+        }
+
+
+        Node childFor(char c, boolean create) {
+
+            int pos = Arrays.binarySearch(keys, c);
+            if (pos >= 0) {
+                return children[pos];
+            } else if (!create) {
+                return null;
+            }
+
+            int insertAt = -(pos + 1);
+            Node child = new Node();
+
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+
+            System.arraycopy(keys, 0, newKeys, 0, insertAt);
+            System.arraycopy(children, 0, newChildren, 0, insertAt);
+            newKeys[insertAt] = c;
+            newChildren[insertAt] = child;
+            System.arraycopy(keys, insertAt, newKeys, insertAt + 1, keys.length - insertAt);
+            System.arraycopy(children, insertAt, newChildren, insertAt + 1, children.length - insertAt);
+
+            this.keys = newKeys;
+            this.children = newChildren;
+
+            return child;
+        }
+
+
+        /**
+         * Replaces the child for a character, or adds it if there is none yet.
+         */
+        void setChild(char c, Node child) {
+
+            int pos = Arrays.binarySearch(keys, c);
+
+            if (pos < 0) {
+                childFor(c, true);
+                pos = Arrays.binarySearch(keys, c);
+            }
+
+            Node[] newChildren = children.clone();
+            newChildren[pos] = child;
+            this.children = newChildren;
+        }
+
+
+        void addEntry(PatternListEntry entry) {
+            PatternListEntry[] newEntries = Arrays.copyOf(entries, entries.length + 1);
+            newEntries[entries.length] = entry;
+            this.entries = newEntries;
+        }
+
+
+        PatternListEntry findMatch(MatchValue value, int start, int end, Set<PatternListEntry> removed) {
+            for (int i=0; i<entries.length; i++) {
+                if (Wildcards.wildcardMatch(value, start, end, entries[i].getComponents()[0]) && !removed.contains(entries[i])) {
+                    return entries[i];
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.giladam.listmatch;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ * Address prefixes that patterns can be added to while other threads are looking addresses up, which is
+ * where {@link Ipv4Index} and {@link Ipv6Index} keep the blocks that are added after they were built.
+ *
+ * Addresses are 128 bits, kept as their high and low 64 bits (an IPv4 address goes in the top 32 bits).
+ * There is a hash table for every prefix length that is in use, keyed on the bits of the prefix, so
+ * looking an address up is one probe for each of those lengths however many prefixes there are.  Every
+ * slot holds an immutable {@link Slot}, and a table that grows is swapped in whole, so adding a prefix
+ * only ever copies the slot or the table it goes in.  Only one thread may add at a time.
+ *
+ * @author Gil Adam
+ *
+ */
+final class PrefixTable {
+
+    static final int ADDRESS_BITS = 128;
+
+    private static final int MIN_CAPACITY = 8;
+
+    private static final Level[] NO_LEVELS = new Level[0];
+
+    private volatile Level[] levels = NO_LEVELS;
+
+
+    /**
+     * Adds the entry for every address that starts with the first length bits of high and low.
+     *
+     * @param high
+     * @param low
+     * @param length
+     * @param entry
+     */
+    void add(long high, long low, int length, PatternListEntry entry) {
+
+        long prefixHigh = maskHigh(high, length);
+        long prefixLow = maskLow(low, length);
+
+        Level[] currentLevels = levels;
+        int levelIndex = 0;
+        while (levelIndex < currentLevels.length && currentLevels[levelIndex].length != length) {
+            levelIndex++;
+        }
+
+        Level level = (levelIndex < currentLevels.length) ? currentLevels[levelIndex] : new Level(length, MIN_CAPACITY);
+        Level grownLevel = level.put(prefixHigh, prefixLow, entry);
+
+        if (grownLevel != level || levelIndex == currentLevels.length) {
+            Level[] newLevels = Arrays.copyOf(currentLevels, Math.max(currentLevels.length, levelIndex + 1));
+            newLevels[levelIndex] = grownLevel;
+            this.levels = newLevels;
+        }
+    }
+
+
+    /**
+     * Returns an entry for a prefix the address starts with that isn't removed, or null if there is none.
+     *
+     * @param high
+     * @param low
+     * @param removed
+     * @return
+     */
+    PatternListEntry findMatch(long high, long low, Set<PatternListEntry> removed) {
+
+        Level[] currentLevels = levels;
+
+        for (int i=0; i<currentLevels.length; i++) {
+
+            Level level = currentLevels[i];
+            Slot slot = level.get(maskHigh(high, level.length), maskLow(low, level.length));
+
+            if (slot != null) {
+                for (PatternListEntry entry : slot.entries) {
+                    if (!removed.contains(entry)) {
+                        return entry;
+                    }
+                }
+            }
+        }
+
+        return null;
+    }
+
+
+    static long maskHigh(long high, int length) {
+        if (length >= 64) {
+            return high;
+        }
+        return length == 0 ? 0 : high & (-1L << (64 - length));
+    }
+
+
+    static long maskLow(long low, int length) {
+        if (length <= 64) {
+            return 0;
+        }
+        return length == ADDRESS_BITS ? low : low & (-1L << (ADDRESS_BITS - length));
+    }
+
+
+    /**
+     * Mixes all the bits of the prefix into the low bits, since prefixes mostly differ only in their top bits.
+     */
+    private static int hash(long high, long low) {
+
+        long hash = high ^ Long.rotateLeft(low, 32);
+        hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+        hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+
+        return (int) (hash ^ (hash >>> 33));
+    }
+
+
+
+    /**
+     * The prefixes of one length, in an open-addressing table.
+     */
+    private static final class Level {
+
+        private final int length;
+
+        private final AtomicReferenceArray<Slot> slots;
+
+        private int size;
+
+
+        Level(int length, int capacity) {
+            this.length = length;
+            this.slots = new AtomicReferenceArray<>(capacity);
+        }
+
+
+        /**
+         * Adds the entry under the prefix, returning this level, or a bigger copy of it if it had to grow.
+         */
+        Level put(long high, long low, PatternListEntry entry) {
+
+            int slotIndex = slotFor(high, low);
+            Slot slot = slots.get(slotIndex);
+
+            if (slot != null) {
+                PatternListEntry[] entries = Arrays.copyOf(slot.entries, slot.entries.length + 1);
+                entries[slot.entries.length] = entry;
+                slots.set(slotIndex, new Slot(high, low, entries));
+                return this;
+            }
+
+            Level level = this;
+
+            if ((size + 1) * 2 > slots.length()) {
+                level = new Level(length, slots.length() * 2);
+                for (int i=0; i<slots.length(); i++) {
+                    Slot oldSlot = slots.get(i);
+                    if (oldSlot != null) {
+                        level.slots.set(level.slotFor(oldSlot.high, oldSlot.low), oldSlot);
+                    }
+                }
+                level.size = size;
+                slotIndex = level.slotFor(high, low);
+            }
+
+            level.slots.set(slotIndex, new Slot(high, low, new PatternListEntry[]{entry}));
+            level.size++;
+
+            return level;
+        }
+
+
+        Slot get(long high, long low) {
+
+            Slot slot = slots.get(slotFor(high, low));
+            return (slot != null && slot.high == high && slot.low == low) ? slot : null;
+        }
+
+
+        /**
+         * Returns the slot the prefix is in, or the empty one it would go in.
+         */
+        private int slotFor(long high, long low) {
+
+            int mask = slots.length() - 1;
+            int slotIndex = hash(high, low) & mask;
+
+            Slot slot;
+            while ((slot = slots.get(slotIndex)) != null && (slot.high != high || slot.low != low)) {
+                slotIndex = (slotIndex + 1) & mask;
+            }
+
+            return slotIndex;
+        }
+    }
+
+
+
+    /**
+     * The entries of one prefix, never changed once it is in a table.
+     */
+    private static final class Slot {
+
+        private final long high;
+
+        private final long low;
+
+        private final PatternListEntry[] entries;
+
+
+        Slot(long high, long low, PatternListEntry[] entries) {
+            this.high = high;
+            this.low = low;
+            this.entries = entries;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.giladam.listmatch;
+
+import java.io.File;
+
+
+/**
+ * Is told about every reload a {@link PatternFileWatcher} attempts, so reload times and failures can be
+ * logged or reported.
+ *
+ * Methods are called on the watcher's own thread (or the thread calling checkForChanges()), so they should
+ * return quickly.
+ *
+ * @author Gil Adam
+ *
+ */
+public interface ReloadListener {
+
+    /**
+     * Called after a changed file was read and its new list is in use.
+     *
+     * @param listName The name of the list that was replaced.
+     * @param patternsFile The file the list was read from.
+     * @param patternCount The number of patterns read from the file.
+     * @param durationMillis How long reading the file and building the list took.
+     */
+    void reloaded(String listName, File patternsFile, int patternCount, long durationMillis);
+
+
+    /**
+     * Called when a changed file could not be read.  The list that was in use before stays in use.
+     *
+     * @param listName The name of the list that could not be replaced.
+     * @param patternsFile The file that could not be read.
+     * @param cause What went wrong.
+     */
+    void reloadFailed(String listName, File patternsFile, Exception cause);
+}
@@ -0,0 +1,390 @@
+package com.giladam.listmatch;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Shares lists between all the JVMs on a host through a directory of memory-mapped {@link PatternListSnapshot}
+ * files, so the exact matches of big lists are kept once per host instead of once per JVM.
+ *
+ * The directory has one snapshot file for each generation of the lists ("lists-&lt;generation&gt;.snapshot")
+ * and a small header file ("lists.current") with the number of the current generation.
+ * {@link #publish(File, Map)} writes a new generation (which {@link PatternListSnapshot} does under a
+ * temporary name before renaming it into place), and only then writes its number into the header, so a
+ * generation is never seen before it is complete.
+ *
+ * Every JVM that uses the lists keeps the header mapped and reads the number from it on each poll, which
+ * is a single read from memory.  When the number changes, the new generation is loaded with its exact
+ * matches mapped in place, so every JVM reads the same pages of the operating system's cache, and all of
+ * its lists are swapped into the {@link ListMatcher} at once, along with removing the lists the generation
+ * before had that this one doesn't.  Lists put into the ListMatcher some other way are left alone.
+ * Checking values never waits for any of this.
+ * Wildcard patterns are still compiled by each JVM, but lists usually have far fewer of those.
+ *
+ * Publishing a generation deletes all but the previous one.  Where a file can be deleted while it is mapped
+ * (like on Linux), a JVM that hasn't moved on yet keeps using it until it does.
+ *
+ * New generations can be published from pattern text files with the main() method:
+ *
+ * <pre>
+ * java -cp ListMatch.jar com.giladam.listmatch.SharedPatternLists &lt;directory&gt;
+ *      &lt;list name&gt; &lt;patterns file&gt; &lt;delimiter, or - for none&gt; &lt;caseSensitive&gt; &lt;matchingMode&gt; ...
+ * </pre>
+ *
+ * @author Gil Adam
+ *
+ */
+public class SharedPatternLists implements Closeable {
+
+    private static Logger log = LoggerFactory.getLogger(SharedPatternLists.class);
+
+    static final String HEADER_FILE_NAME = "lists.current";
+
+    private static final String GENERATION_PREFIX = "lists-";
+
+    private static final String GENERATION_SUFFIX = ".snapshot";
+
+    private static final byte[] MAGIC = "LMSHARED".getBytes(Charset.forName("US-ASCII"));
+
+    //magic, generation:
+    private static final int HEADER_LENGTH = 8 + 8;
+
+    private static final int GENERATION_OFFSET = 8;
+
+    private static final long NO_GENERATION = 0;
+
+    private final File directory;
+
+    private final ListMatcher listMatcher;
+
+    private final ReloadListener listener;
+
+    //mapped once the header file exists:
+    private ByteBuffer header;
+
+    private volatile long generation = NO_GENERATION;
+
+    //the names of the lists the generation in use put into the ListMatcher:
+    private Set<String> loadedListNames = Collections.emptySet();
+
+    private ScheduledExecutorService poller;
+
+
+    /**
+     * Creates a new SharedPatternLists that puts the lists published to the directory into the ListMatcher.
+     * Nothing is loaded until update() or start() is called.
+     *
+     * @param directory The directory the lists are published to.
+     * @param listMatcher The ListMatcher to put the lists in.
+     * @param listener Told about every list loaded, or null if nobody needs to know.
+     */
+    public SharedPatternLists(File directory, ListMatcher listMatcher, ReloadListener listener) {
+        this.directory = Objects.requireNonNull(directory, "directory");
+        this.listMatcher = Objects.requireNonNull(listMatcher, "listMatcher");
+        this.listener = listener;
+    }
+
+
+    /**
+     * Publishes lists as the next generation in the directory, which is created if needed.  Only one
+     * process (and one thread) publishes at a time.
+     *
+     * @param directory The directory to publish the lists to.
+     * @param listByName The lists, by name.
+     * @return The number of the generation that was published.
+     * @throws IOException
+     */
+    public static synchronized long publish(File directory, Map<String,PatternList> listByName) throws IOException {
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+
+        File headerFile = new File(directory, HEADER_FILE_NAME);
+
+        try (RandomAccessFile headerAccess = new RandomAccessFile(headerFile, "rw")) {
+
+            FileChannel channel = headerAccess.getChannel();
+
+            //held until the new generation is in the header, so no other process publishes at the same time:
+            FileLock lock = channel.lock();
+
+            try {
+                if (channel.size() < HEADER_LENGTH) {
+                    ByteBuffer newHeader = ByteBuffer.allocate(HEADER_LENGTH);
+                    newHeader.put(MAGIC).putLong(NO_GENERATION).flip();
+                    channel.write(newHeader, 0);
+                }
+
+                MappedByteBuffer header = channel.map(MapMode.READ_WRITE, 0, HEADER_LENGTH);
+                checkMagic(header, headerFile);
+
+                long newGeneration = header.getLong(GENERATION_OFFSET) + 1;
+                PatternListSnapshot.write(listByName, generationFile(directory, newGeneration));
+
+                header.putLong(GENERATION_OFFSET, newGeneration);
+                header.force();
+
+                deleteGenerationsBefore(directory, newGeneration - 1);
+
+                log.debug("Published generation {} with {} lists to {}", newGeneration, listByName.size(), directory);
+
+                return newGeneration;
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+
+    private static void deleteGenerationsBefore(File directory, long oldestKept) {
+
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            long fileGeneration = generationOf(file);
+            if (fileGeneration != NO_GENERATION && fileGeneration < oldestKept && !file.delete()) {
+                log.debug("Could not delete old generation {}, it may still be in use", file);
+            }
+        }
+    }
+
+
+    static File generationFile(File directory, long generation) {
+        return new File(directory, GENERATION_PREFIX + generation + GENERATION_SUFFIX);
+    }
+
+
+    /**
+     * Returns the generation a file in the directory is for, or NO_GENERATION if it isn't one.
+     */
+    private static long generationOf(File file) {
+
+        String name = file.getName();
+        if (!name.startsWith(GENERATION_PREFIX) || !name.endsWith(GENERATION_SUFFIX)) {
+            return NO_GENERATION;
+        }
+
+        try {
+            return Long.parseLong(name.substring(GENERATION_PREFIX.length(), name.length() - GENERATION_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return NO_GENERATION;
+        }
+    }
+
+
+    private static void checkMagic(ByteBuffer header, File headerFile) throws IOException {
+        for (int i=0; i<MAGIC.length; i++) {
+            if (header.get(i) != MAGIC[i]) {
+                throw new IOException(headerFile + " is not a shared pattern list header.");
+            }
+        }
+    }
+
+
+    /**
+     * Starts checking for new generations on a background (daemon) thread, starting right away.
+     *
+     * @param pollInterval How often to check.
+     * @param unit The unit of the pollInterval.
+     */
+    public synchronized void start(long pollInterval, TimeUnit unit) {
+
+        if (poller != null) {
+            throw new IllegalStateException("Already started.");
+        }
+
+        poller = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "shared-pattern-lists");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        poller.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                //anything thrown out of here would cancel every poll after it:
+                try {
+                    checkForUpdate();
+                } catch (Throwable t) {
+                    log.error("Checking for a new generation of lists in {} failed, trying again next poll.", directory, t);
+                }
+            }
+        }, 0, pollInterval, unit);
+    }
+
+
+    /**
+     * Loads the current generation if it's not the one in use, which is what the background thread does
+     * every poll interval, logging anything that goes wrong and trying again next time.
+     */
+    public synchronized void checkForUpdate() {
+        try {
+            update();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not load the current generation of lists from {}, keeping generation {}.", directory, generation, e);
+            notifyReloadFailed(e);
+        }
+    }
+
+
+    /**
+     * Loads the current generation if it's not the one in use.
+     *
+     * @return True if a new generation was loaded.
+     * @throws IOException If the current generation can't be loaded, in which case the one in use is kept.
+     */
+    public synchronized boolean update() throws IOException {
+
+        long publishedGeneration = publishedGeneration();
+        if (publishedGeneration == NO_GENERATION || publishedGeneration == generation) {
+            return false;
+        }
+
+        long startNanos = System.nanoTime();
+        File generationFile = generationFile(directory, publishedGeneration);
+
+        if (!generationFile.isFile()) {
+            throw new FileNotFoundException(generationFile + " was published but can't be found.");
+        }
+
+        //the file was complete before it was published, so reading all of it to check it isn't needed:
+        Map<String,PatternList> listByName = PatternListSnapshot.load(generationFile, false);
+
+        Set<String> droppedListNames = new HashSet<>(loadedListNames);
+        droppedListNames.removeAll(listByName.keySet());
+
+        listMatcher.replaceLists(listByName, droppedListNames);
+        this.loadedListNames = new HashSet<>(listByName.keySet());
+        this.generation = publishedGeneration;
+
+        long durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        log.debug("Loaded generation {} with {} lists in {} ms, dropping {}",
+                  publishedGeneration, listByName.size(), durationMillis, droppedListNames);
+
+        //the new generation is in use by now, whatever the listener does:
+        for (Map.Entry<String,PatternList> namedList : listByName.entrySet()) {
+            notifyReloaded(namedList.getKey(), generationFile, namedList.getValue().size(), durationMillis);
+        }
+
+        return true;
+    }
+
+
+    private void notifyReloaded(String listName, File generationFile, int patternCount, long durationMillis) {
+
+        if (listener == null) {
+            return;
+        }
+
+        try {
+            listener.reloaded(listName, generationFile, patternCount, durationMillis);
+        } catch (RuntimeException e) {
+            log.warn("ReloadListener failed after list [{}] was loaded from {}.", listName, generationFile, e);
+        }
+    }
+
+
+    private void notifyReloadFailed(Exception cause) {
+
+        if (listener == null) {
+            return;
+        }
+
+        try {
+            listener.reloadFailed(null, directory, cause);
+        } catch (RuntimeException e) {
+            log.warn("ReloadListener failed after the lists in {} could not be loaded.", directory, e);
+        }
+    }
+
+
+    private long publishedGeneration() throws IOException {
+
+        if (header == null) {
+
+            File headerFile = new File(directory, HEADER_FILE_NAME);
+            if (headerFile.length() < HEADER_LENGTH) {
+                return NO_GENERATION;
+            }
+
+            //the mapping stays valid after the file is closed:
+            try (RandomAccessFile headerAccess = new RandomAccessFile(headerFile, "r")) {
+                ByteBuffer mappedHeader = headerAccess.getChannel().map(MapMode.READ_ONLY, 0, HEADER_LENGTH);
+                checkMagic(mappedHeader, headerFile);
+                this.header = mappedHeader;
+            }
+        }
+
+        return header.getLong(GENERATION_OFFSET);
+    }
+
+
+    /**
+     * Returns the generation in use, or 0 if none has been loaded yet.
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+
+    /**
+     * Stops the background thread.  The lists stay in the ListMatcher as they were last loaded.
+     */
+    @Override
+    public synchronized void close() {
+
+        if (poller != null) {
+            poller.shutdownNow();
+        }
+    }
+
+
+    /**
+     * Publishes a new generation of lists from pattern text files, see the class comment for the arguments.
+     *
+     * @param args
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+
+        if (!PatternListSnapshot.isListArguments(args)) {
+            System.err.println("Usage: SharedPatternLists <directory> " + PatternListSnapshot.LIST_USAGE);
+            System.exit(1);
+            return;
+        }
+
+        Map<String,PatternList> listByName = PatternListSnapshot.readLists(args);
+        long publishedGeneration = publish(new File(args[0]), listByName);
+
+        System.out.println("Published generation " + publishedGeneration + " with " + listByName.size() + " lists to " + args[0]);
+    }
+}
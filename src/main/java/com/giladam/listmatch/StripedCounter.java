@@ -0,0 +1,66 @@
+package com.giladam.listmatch;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * A counter that many threads can add to at once without fighting over one memory location, like the
+ * LongAdder of newer Java versions.
+ *
+ * Each thread adds to one of several cells picked by its id, and the cells are spaced a cache line apart so
+ * threads on different cores don't keep taking the line from each other.  Reading the count adds up all the
+ * cells, so it is only exact while nothing is being added.
+ *
+ * @author Gil Adam
+ *
+ */
+final class StripedCounter {
+
+    //longs from one cell to the next, two 64 byte cache lines since neighbouring lines are often fetched together:
+    private static final int CELL_SPACING = 16;
+
+    private static final int MAX_CELLS = 64;
+
+    private static final int CELL_COUNT = cellCount();
+
+    private final AtomicLongArray cells = new AtomicLongArray(CELL_COUNT * CELL_SPACING);
+
+
+    private static int cellCount() {
+
+        int cellCount = 1;
+        while (cellCount < Runtime.getRuntime().availableProcessors() && cellCount < MAX_CELLS) {
+            cellCount <<= 1;
+        }
+
+        return cellCount;
+    }
+
+
+    void increment() {
+        add(1);
+    }
+
+
+    void add(long amount) {
+        cells.getAndAdd(cellIndex(), amount);
+    }
+
+
+    long sum() {
+
+        long sum = 0;
+        for (int i=0; i<CELL_COUNT; i++) {
+            sum += cells.get(i * CELL_SPACING);
+        }
+
+        return sum;
+    }
+
+
+    private static int cellIndex() {
+        //thread ids are handed out in order, so spread them out over the cells:
+        int hash = (int) Thread.currentThread().getId() * 0x9E3779B9;
+        return ((hash >>> 16) & (CELL_COUNT - 1)) * CELL_SPACING;
+    }
+}
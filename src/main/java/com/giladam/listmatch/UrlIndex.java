@@ -0,0 +1,464 @@
+package com.giladam.listmatch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * The {@link WildcardMatcher} used for {@link MatchingMode#URL}.
+ *
+ * Patterns written as a URL ("scheme://host/path") are split into their scheme, host and the rest (path,
+ * query and fragment), and each part is matched on its own, so a wildcard in the host stays within the
+ * host.  The patterns are filed in a trie of host labels read from the top level down, like in
+ * {@link DomainIndex}, under the whole labels at the end of their host ("*.EXAMPLE.COM" under COM, then
+ * EXAMPLE).  Under each host pattern, they are filed in a trie of the whole path segments their path
+ * starts with ("/ALLOWED/*" under "", then ALLOWED).  Checking a value splits it up once, walks its host
+ * labels, and for every host pattern that matches walks its path segments, so only the patterns for its
+ * host are ever checked.
+ *
+ * Patterns that aren't written as a URL (like "*www.*.com*") are matched as text against the whole value,
+ * and so is every pattern against values that aren't URLs.  So are patterns whose host ends in a wildcard
+ * (like "http://*" or "https://*.google.com*"), which are usually meant to cover any path too, and would be
+ * filed right under the top of the trie anyway.  They match exactly the values they do in
+ * {@link MatchingMode#STANDARD}.
+ *
+ * Patterns can be added while the index is in use: new nodes are only linked in once they are complete, and
+ * the patterns of a node are replaced by a copy with the new one added.
+ *
+ * @author Gil Adam
+ *
+ */
+final class UrlIndex implements GrowableMatcher {
+
+    private static final String SCHEME_SEPARATOR = "://";
+
+    private static final char LABEL_SEPARATOR = '.';
+
+    private static final char SEGMENT_SEPARATOR = '/';
+
+    private final HostNode root = new HostNode();
+
+    //patterns that aren't URLs, matched as text:
+    private final WildcardIndex textPatterns;
+
+    //every pattern, matched as text against values that aren't URLs, only built when one comes along:
+    private final List<PatternListEntry> allEntries;
+    private volatile WildcardIndex allPatterns;
+
+
+    UrlIndex(Collection<PatternListEntry> entries) {
+
+        this.allEntries = new ArrayList<>(entries);
+        List<PatternListEntry> initTextPatterns = new ArrayList<>();
+
+        for (PatternListEntry entry : entries) {
+
+            UrlPattern urlPattern = UrlPattern.parse(entry);
+
+            if (urlPattern == null) {
+                initTextPatterns.add(entry);
+            } else {
+                addUrlPattern(urlPattern);
+            }
+        }
+
+        this.textPatterns = new WildcardIndex(initTextPatterns);
+    }
+
+
+    private void addUrlPattern(UrlPattern urlPattern) {
+
+        HostNode hostNode = root;
+        String[] keyLabels = keyLabels(urlPattern.host);
+        for (int i=keyLabels.length - 1; i>=0; i--) {
+            hostNode = hostNode.childFor(keyLabels[i]);
+        }
+
+        PathNode pathNode = hostNode.pathsFor(urlPattern.host);
+        for (String segment : keySegments(urlPattern.rest)) {
+            pathNode = pathNode.childFor(segment);
+        }
+
+        pathNode.addPattern(urlPattern);
+    }
+
+
+    @Override
+    public void add(PatternListEntry entry) {
+
+        UrlPattern urlPattern = UrlPattern.parse(entry);
+
+        if (urlPattern == null) {
+            textPatterns.add(entry);
+        } else {
+            addUrlPattern(urlPattern);
+        }
+
+        synchronized (this) {
+            allEntries.add(entry);
+            if (allPatterns != null) {
+                allPatterns.add(entry);
+            }
+        }
+    }
+
+
+    /**
+     * Returns the whole labels the host pattern ends with, which every host it matches ends with too.
+     */
+    private static String[] keyLabels(String hostPattern) {
+
+        String wholeLabels;
+        int lastWildcard = hostPattern.lastIndexOf(PatternList.WILDCARD_CHAR);
+
+        if (lastWildcard < 0) {
+            wholeLabels = hostPattern;
+        } else {
+            int labelStart = hostPattern.indexOf(LABEL_SEPARATOR, lastWildcard);
+            if (labelStart < 0) {
+                return new String[0];
+            }
+            wholeLabels = hostPattern.substring(labelStart + 1);
+        }
+
+        return wholeLabels.split("\\.", -1);
+    }
+
+
+    /**
+     * Returns the whole path segments (each followed by a '/') the rest of a pattern starts with, which the
+     * rest of every URL it matches starts with too.
+     */
+    private static String[] keySegments(String restPattern) {
+
+        String literalPrefix = Wildcards.literalPrefix(restPattern);
+        int lastSeparator = literalPrefix.lastIndexOf(SEGMENT_SEPARATOR);
+
+        if (lastSeparator < 0) {
+            return new String[0];
+        }
+
+        return literalPrefix.substring(0, lastSeparator).split("/", -1);
+    }
+
+
+    @Override
+    public PatternListEntry findMatch(MatchValue value) {
+        return findMatch(value, Collections.<PatternListEntry>emptySet());
+    }
+
+
+    @Override
+    public PatternListEntry findMatch(MatchValue value, Set<PatternListEntry> removed) {
+
+        int length = value.length();
+        int schemeEnd = schemeEnd(value);
+
+        if (schemeEnd < 0) {
+            return allPatterns().findMatch(value, removed);
+        }
+
+        int hostStart = schemeEnd + SCHEME_SEPARATOR.length();
+        int hostEnd = hostStart;
+        while (hostEnd < length && !isHostEnd(value.charAt(hostEnd))) {
+            hostEnd++;
+        }
+
+        //host patterns without whole labels at the end, then down the labels of the host from its end:
+        PatternListEntry match = root.findMatch(value, schemeEnd, hostStart, hostEnd, removed);
+
+        HostNode node = root;
+        int labelEnd = hostEnd;
+
+        while (match == null && node != null && labelEnd >= hostStart) {
+
+            int labelStart = labelEnd;
+            while (labelStart > hostStart && value.charAt(labelStart - 1) != LABEL_SEPARATOR) {
+                labelStart--;
+            }
+
+            node = node.children.get(value, labelStart, labelEnd);
+
+            if (node != null) {
+                match = node.findMatch(value, schemeEnd, hostStart, hostEnd, removed);
+            }
+
+            labelEnd = labelStart - 1;
+        }
+
+        return match != null ? match : textPatterns.findMatch(value, removed);
+    }
+
+
+    private WildcardIndex allPatterns() {
+
+        WildcardIndex index = allPatterns;
+
+        if (index == null) {
+            synchronized (this) {
+                index = allPatterns;
+                if (index == null) {
+                    index = new WildcardIndex(allEntries);
+                    allPatterns = index;
+                }
+            }
+        }
+
+        return index;
+    }
+
+
+    /**
+     * Returns where the "://" after the scheme of the value starts, or -1 if the value isn't a URL.
+     */
+    private static int schemeEnd(MatchValue value) {
+
+        int length = value.length();
+
+        for (int i=0; i<length; i++) {
+
+            char c = value.charAt(i);
+
+            if (c == ':') {
+                boolean separator = i > 0 && i + 2 < length &&value.charAt(i + 1) == '/' && value.charAt(i + 2) == '/';
+                return separator ? i : -1;
+            }
+
+            if (!isSchemeChar(c)) {
+                return -1;
+            }
+        }
+
+        return -1;
+    }
+
+
+    private static boolean isSchemeChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '+' || c == '-' || c == '.';
+    }
+
+
+    private static boolean isHostEnd(char c) {
+        return c == SEGMENT_SEPARATOR || c == '?' || c == '#';
+    }
+
+
+
+    /**
+     * A pattern written as a URL, split into its parts.
+     */
+    private static final class UrlPattern {
+
+        private final PatternListEntry entry;
+
+        private final String scheme;
+
+        private final String host;
+
+        private final String rest;
+
+
+        private UrlPattern(PatternListEntry entry, String scheme, String host, String rest) {
+            this.entry = entry;
+            this.scheme = scheme;
+            this.host = host;
+            this.rest = rest;
+        }
+
+
+        /**
+         * Splits up a pattern, or returns null if it isn't written as a URL or has to be matched as text.
+         */
+        static UrlPattern parse(PatternListEntry entry) {
+
+            String[] components = entry.getComponents();
+            if (components.length != 1) {
+                return null;
+            }
+
+            String pattern = components[0];
+            int schemeEnd = pattern.indexOf(SCHEME_SEPARATOR);
+            if (schemeEnd <= 0) {
+                return null;
+            }
+
+            for (int i=0; i<schemeEnd; i++) {
+                char c = pattern.charAt(i);
+                if (!isSchemeChar(c) && c != PatternList.WILDCARD_CHAR) {
+                    return null;
+                }
+            }
+
+            int hostStart = schemeEnd + SCHEME_SEPARATOR.length();
+            int hostEnd = hostStart;
+            while (hostEnd < pattern.length() && !isHostEnd(pattern.charAt(hostEnd))) {
+                hostEnd++;
+            }
+
+            //a wildcard at the end of the host can match the path as well:
+            if (hostEnd > hostStart && pattern.charAt(hostEnd - 1) == PatternList.WILDCARD_CHAR) {
+                return null;
+            }
+
+            return new UrlPattern(entry, pattern.substring(0, schemeEnd), pattern.substring(hostStart, hostEnd),
+                                  pattern.substring(hostEnd));
+        }
+
+
+        boolean matches(MatchValue value, int schemeEnd, int restStart) {
+            return Wildcards.wildcardMatch(value, 0, schemeEnd, scheme)
+                   && Wildcards.wildcardMatch(value, restStart, value.length(), rest);
+        }
+    }
+
+
+
+    /**
+     * The patterns filed under some whole labels at the end of their host, grouped by their host pattern.
+     */
+    private static final class HostNode {
+
+        private final LiteralTable<HostNode> children = new LiteralTable<>();
+
+        private volatile HostPaths[] hosts = new HostPaths[0];
+
+
+        HostNode childFor(String label) {
+
+            HostNode child = children.get(label);
+
+            if (child == null) {
+                child = new HostNode();
+                children.put(label, child);
+            }
+
+            return child;
+        }
+
+
+        PathNode pathsFor(String hostPattern) {
+
+            HostPaths[] currentHosts = hosts;
+
+            for (HostPaths host : currentHosts) {
+                if (host.hostPattern.equals(hostPattern)) {
+                    return host.paths;
+                }
+            }
+
+            HostPaths[] newHosts = Arrays.copyOf(currentHosts, currentHosts.length + 1);
+            newHosts[currentHosts.length] = new HostPaths(hostPattern, new PathNode());
+            hosts = newHosts;
+
+            return newHosts[currentHosts.length].paths;
+        }
+
+
+        PatternListEntry findMatch(MatchValue value, int schemeEnd, int hostStart, int hostEnd, Set<PatternListEntry> removed) {
+
+            HostPaths[] currentHosts = hosts;
+
+            for (int i=0; i<currentHosts.length; i++) {
+                if (Wildcards.wildcardMatch(value, hostStart, hostEnd, currentHosts[i].hostPattern)) {
+                    PatternListEntry match = currentHosts[i].paths.findMatch(value, schemeEnd, hostEnd, removed);
+                    if (match != null) {
+                        return match;
+                    }
+                }
+            }
+
+            return null;
+        }
+    }
+
+
+
+    /**
+     * A host pattern and the paths of the patterns with it.
+     */
+    private static final class HostPaths {
+
+        private final String hostPattern;
+
+        private final PathNode paths;
+
+
+        HostPaths(String hostPattern, PathNode paths) {
+            this.hostPattern = hostPattern;
+            this.paths = paths;
+        }
+    }
+
+
+
+    /**
+     * The patterns of one host pattern filed under the whole path segments they start with.
+     */
+    private static final class PathNode {
+
+        private final LiteralTable<PathNode> children = new LiteralTable<>();
+
+        private volatile UrlPattern[] patterns = new UrlPattern[0];
+
+
+        PathNode childFor(String segment) {
+
+            PathNode child = children.get(segment);
+
+            if (child == null) {
+                child = new PathNode();
+                children.put(segment, child);
+            }
+
+            return child;
+        }
+
+
+        void addPattern(UrlPattern urlPattern) {
+            UrlPattern[] newPatterns = Arrays.copyOf(patterns, patterns.length + 1);
+            newPatterns[patterns.length] = urlPattern;
+            patterns = newPatterns;
+        }
+
+
+        /**
+         * Checks the patterns here and under every whole segment the rest of the value (from restStart)
+         * starts with.
+         */
+        PatternListEntry findMatch(MatchValue value, int schemeEnd, int restStart, Set<PatternListEntry> removed) {
+
+            int length = value.length();
+            PathNode node = this;
+            int segmentStart = restStart;
+
+            while (node != null) {
+
+                UrlPattern[] nodePatterns = node.patterns;
+
+                for (int i=0; i<nodePatterns.length; i++) {
+                    if (nodePatterns[i].matches(value, schemeEnd, restStart) && !removed.contains(nodePatterns[i].entry)) {
+                        return nodePatterns[i].entry;
+                    }
+                }
+
+                int segmentEnd = segmentStart;
+                while (segmentEnd < length && value.charAt(segmentEnd) != SEGMENT_SEPARATOR) {
+                    segmentEnd++;
+                }
+
+                if (segmentEnd == length) {
+                    return null;
+                }
+
+                node = node.children.get(value, segmentStart, segmentEnd);
+                segmentStart = segmentEnd + 1;
+            }
+
+            return null;
+        }
+    }
+}
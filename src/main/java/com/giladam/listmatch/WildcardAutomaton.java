@@ -0,0 +1,577 @@
+package com.giladam.listmatch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Matches a value against all of the wildcard patterns of a {@link PatternList} at once by running it
+ * through a single automaton, which is used for {@link MatchingMode#AUTOMATON}.
+ *
+ * Every pattern is turned into a sequence of tokens: its literal characters, a wildcard token for each
+ * '*' and a separator token between components.  Those sequences are merged into one trie, which is the
+ * NFA: a node that was entered through a wildcard loops on any character except the separator, and
+ * lets the wildcard match nothing by being part of its parent's closure.  The value is fed in as its
+ * characters with a separator symbol between components, so component boundaries are respected without
+ * any per-component bookkeeping.  Because shared prefixes share nodes (all the patterns starting with
+ * "*" share the same looping node right under the root), a value only ever has a handful of live NFA
+ * states, much like an Aho-Corasick automaton.
+ *
+ * The DFA is built lazily: each DFA state is the set of NFA states that are still alive, and a transition
+ * is only computed the first time some value needs it.  Every cached state is counted at roughly what it
+ * takes up (mostly its table of ASCII transitions), and once the cache comes to more than
+ * {@link #DEFAULT_CACHE_BYTES} it is thrown away and built up again.  That keeps each AUTOMATON list to about
+ * that much memory for its cache (some 50 thousand states) however big its full DFA would be.
+ *
+ * @author Gil Adam
+ *
+ */
+final class WildcardAutomaton implements WildcardMatcher {
+
+    static final long DEFAULT_CACHE_BYTES = 32L * 1024 * 1024;
+
+    //a DFA state, its transition table, its key and its map entry, without its NFA states:
+    private static final int STATE_BYTES = 640;
+
+    private static final int WILDCARD_TOKEN = -1;
+    private static final int SEPARATOR_TOKEN = -2;
+
+    private static final int ROOT = 0;
+    private static final int NO_NODE = -1;
+
+    private static final int ASCII_SIZE = 128;
+
+    private static final DfaState DEAD = new DfaState(new int[0], null, null);
+
+    //the trie, with the edges of node n at edgeKeys/edgeTargets[edgeStarts[n] .. edgeStarts[n+1]) sorted by key:
+    private final int[] edgeStarts;
+    private final int[] edgeKeys;
+    private final int[] edgeTargets;
+    private final int[] wildcardChildren;
+    private final boolean[] looping;
+    private final PatternListEntry[] acceptedEntries;
+
+    private final boolean empty;
+
+    private final int[] startStates;
+
+    private final long cacheBytes;
+
+    private volatile StateCache stateCache;
+
+
+    WildcardAutomaton(Collection<PatternListEntry> patternEntries) {
+        this(patternEntries, DEFAULT_CACHE_BYTES);
+    }
+
+
+    WildcardAutomaton(Collection<PatternListEntry> patternEntries, long cacheBytes) {
+
+        this.cacheBytes = cacheBytes;
+
+        final List<int[]> sequences = new ArrayList<>();
+        List<PatternListEntry> sequenceEntries = new ArrayList<>();
+
+        for (PatternListEntry entry : patternEntries) {
+            //an entry without components can never line up with a value, so it has no place in the automaton:
+            if (entry.getComponents().length > 0) {
+                sequences.add(toTokens(entry.getComponents()));
+                sequenceEntries.add(entry);
+            }
+        }
+
+        this.empty = sequences.isEmpty();
+
+        //sorting the sequences first means the trie can be built by only remembering the path to the last one,
+        //and that every node gets its children in key order:
+        Integer[] order = new Integer[sequences.size()];
+        for (int i=0; i<order.length; i++) {
+            order[i] = i;
+        }
+
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return compareTokens(sequences.get(a), sequences.get(b));
+            }
+        });
+
+        IntList edgeParents = new IntList();
+        IntList edgeKeyList = new IntList();
+        List<PatternListEntry> initAcceptedEntries = new ArrayList<>();
+        initAcceptedEntries.add(null);
+
+        int[] path = new int[1];
+        int[] previous = new int[0];
+
+        for (Integer index : order) {
+
+            int[] sequence = sequences.get(index);
+
+            if (path.length < sequence.length + 1) {
+                path = Arrays.copyOf(path, sequence.length + 1);
+            }
+
+            int common = 0;
+            while (common < sequence.length && common < previous.length && sequence[common] == previous[common]) {
+                common++;
+            }
+
+            for (int k=common; k<sequence.length; k++) {
+                //node ids are handed out in creation order, so the new node is the next one:
+                path[k + 1] = initAcceptedEntries.size();
+                initAcceptedEntries.add(null);
+                edgeParents.add(path[k]);
+                edgeKeyList.add(sequence[k]);
+            }
+
+            int acceptingNode = path[sequence.length];
+            if (initAcceptedEntries.get(acceptingNode) == null) {
+                initAcceptedEntries.set(acceptingNode, sequenceEntries.get(index));
+            }
+
+            previous = sequence;
+        }
+
+        int nodeCount = initAcceptedEntries.size();
+
+        this.acceptedEntries = initAcceptedEntries.toArray(new PatternListEntry[nodeCount]);
+        this.looping = new boolean[nodeCount];
+        this.wildcardChildren = new int[nodeCount];
+        Arrays.fill(wildcardChildren, NO_NODE);
+
+        //lay the edges out per parent, which keeps them in key order because they were created in key order:
+        this.edgeStarts = new int[nodeCount + 1];
+        for (int e=0; e<edgeParents.size(); e++) {
+            if (edgeKeyList.get(e) != WILDCARD_TOKEN) {
+                edgeStarts[edgeParents.get(e) + 1]++;
+            }
+        }
+        for (int n=0; n<nodeCount; n++) {
+            edgeStarts[n + 1] += edgeStarts[n];
+        }
+
+        this.edgeKeys = new int[edgeStarts[nodeCount]];
+        this.edgeTargets = new int[edgeStarts[nodeCount]];
+
+        int[] fill = Arrays.copyOf(edgeStarts, nodeCount);
+        for (int e=0; e<edgeParents.size(); e++) {
+
+            int parent = edgeParents.get(e);
+            int child = e + 1;
+
+            if (edgeKeyList.get(e) == WILDCARD_TOKEN) {
+                wildcardChildren[parent] = child;
+                looping[child] = true;
+            } else {
+                edgeKeys[fill[parent]] = edgeKeyList.get(e);
+                edgeTargets[fill[parent]] = child;
+                fill[parent]++;
+            }
+        }
+
+        this.startStates = closure(new int[]{ROOT}, 1);
+        this.stateCache = new StateCache(newState(startStates));
+    }
+
+
+    private static int[] toTokens(String[] components) {
+
+        //one token per character and one separator between components:
+        int length = components.length - 1;
+        for (String component : components) {
+            length += component.length();
+        }
+
+        int[] tokens = new int[length];
+        int pos = 0;
+
+        for (int i=0; i<components.length; i++) {
+            if (i > 0) {
+                tokens[pos++] = SEPARATOR_TOKEN;
+            }
+
+            String component = components[i];
+            for (int j=0; j<component.length(); j++) {
+                char c = component.charAt(j);
+                tokens[pos++] = (c == PatternList.WILDCARD_CHAR) ? WILDCARD_TOKEN : c;
+            }
+        }
+
+        return tokens;
+    }
+
+
+    private static int compareTokens(int[] a, int[] b) {
+
+        int length = Math.min(a.length, b.length);
+        for (int i=0; i<length; i++) {
+            if (a[i] != b[i]) {
+                return a[i] < b[i] ? -1 : 1;
+            }
+        }
+
+        return a.length - b.length;
+    }
+
+
+    @Override
+    public PatternListEntry findMatch(MatchValue value) {
+        return findMatch(value, Collections.<PatternListEntry>emptySet());
+    }
+
+
+    @Override
+    public PatternListEntry findMatch(MatchValue value, Set<PatternListEntry> removed) {
+
+        int componentCount = value.componentCount();
+
+        //an empty value has no components, so no pattern can line up with it:
+        if (componentCount == 0 || empty) {
+            return null;
+        }
+
+        int lastComponent = componentCount - 1;
+        DfaState state = stateCache.start;
+
+        for (int i=0; i<componentCount && state != DEAD; i++) {
+
+            if (i > 0) {
+                state = step(state, SEPARATOR_TOKEN);
+            }
+
+            int end = value.componentEnd(i);
+            for (int j=value.componentStart(i); j<end && state != DEAD; j++) {
+
+                //in the last component, a pattern that is down to its trailing wildcard has already matched:
+                if (i == lastComponent && state.trailingWildcardEntry != null) {
+                    PatternListEntry match = acceptedEntry(state, true, removed);
+                    if (match != null) {
+                        return match;
+                    }
+                }
+
+                state = step(state, value.charAt(j));
+            }
+        }
+
+        return acceptedEntry(state, false, removed);
+    }
+
+
+    /**
+     * Returns the entry the state accepts, or if that one was removed, any other one it accepts.
+     */
+    private PatternListEntry acceptedEntry(DfaState state, boolean trailingWildcardOnly, Set<PatternListEntry> removed) {
+
+        PatternListEntry entry = trailingWildcardOnly ? state.trailingWildcardEntry : state.acceptedEntry;
+
+        if (entry == null || !removed.contains(entry)) {
+            return entry;
+        }
+
+        //the state only keeps the first entry it accepts, so the others have to be found among its NFA states:
+        for (int nfaState : state.nfaStates) {
+            PatternListEntry other = acceptedEntries[nfaState];
+            if (other != null && (looping[nfaState] || !trailingWildcardOnly) && !removed.contains(other)) {
+                return other;
+            }
+        }
+
+        return null;
+    }
+
+
+    private DfaState step(DfaState state, int symbol) {
+
+        DfaState next = state.transition(symbol);
+
+        if (next == null) {
+            next = internState(advance(state.nfaStates, symbol));
+            state.setTransition(symbol, next);
+        }
+
+        return next;
+    }
+
+
+    private DfaState internState(int[] nfaStates) {
+
+        if (nfaStates.length == 0) {
+            return DEAD;
+        }
+
+        StateCache cache = this.stateCache;
+
+        if (cache.bytes.get() > cacheBytes) {
+            cache = new StateCache(newState(startStates));
+            this.stateCache = cache;
+        }
+
+        StateKey key = new StateKey(nfaStates);
+        DfaState state = cache.states.get(key);
+
+        if (state == null) {
+            DfaState newState = newState(nfaStates);
+            state = cache.states.putIfAbsent(key, newState);
+
+            if (state == null) {
+                cache.bytes.addAndGet(STATE_BYTES + 4L * nfaStates.length);
+                state = newState;
+            }
+        }
+
+        return state;
+    }
+
+
+    private DfaState newState(int[] nfaStates) {
+
+        PatternListEntry acceptedEntry = null;
+        PatternListEntry trailingWildcardEntry = null;
+
+        for (int nfaState : nfaStates) {
+
+            PatternListEntry entry = acceptedEntries[nfaState];
+
+            if (entry != null) {
+                acceptedEntry = (acceptedEntry == null) ? entry : acceptedEntry;
+
+                if (looping[nfaState] && trailingWildcardEntry == null) {
+                    trailingWildcardEntry = entry;
+                }
+            }
+        }
+
+        return new DfaState(nfaStates, acceptedEntry, trailingWildcardEntry);
+    }
+
+
+    private int edgeTarget(int node, int symbol) {
+
+        int low = edgeStarts[node];
+        int high = edgeStarts[node + 1] - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int key = edgeKeys[mid];
+
+            if (key < symbol) {
+                low = mid + 1;
+            } else if (key > symbol) {
+                high = mid - 1;
+            } else {
+                return edgeTargets[mid];
+            }
+        }
+
+        return NO_NODE;
+    }
+
+
+    /**
+     * Returns the sorted NFA states reachable from the given ones after reading the symbol.
+     */
+    private int[] advance(int[] nfaStates, int symbol) {
+
+        int[] next = new int[nfaStates.length * 2];
+        int count = 0;
+
+        for (int nfaState : nfaStates) {
+
+            //a wildcard can keep consuming characters, but it never crosses into another component:
+            if (looping[nfaState] && symbol != SEPARATOR_TOKEN) {
+                next[count++] = nfaState;
+            }
+
+            int target = edgeTarget(nfaState, symbol);
+            if (target != NO_NODE) {
+                next[count++] = target;
+            }
+        }
+
+        return closure(next, count);
+    }
+
+
+    /**
+     * Adds the states that are reachable by letting wildcards match nothing, then sorts and removes duplicates.
+     */
+    private int[] closure(int[] nfaStates, int count) {
+
+        int[] closed = nfaStates;
+        int closedCount = count;
+
+        for (int i=0; i<count; i++) {
+            int nfaState = wildcardChildren[nfaStates[i]];
+
+            while (nfaState != NO_NODE) {
+                if (closedCount == closed.length) {
+                    closed = Arrays.copyOf(closed, closed.length * 2 + 1);
+                }
+                closed[closedCount++] = nfaState;
+
+                nfaState = wildcardChildren[nfaState];
+            }
+        }
+
+        Arrays.sort(closed, 0, closedCount);
+
+        int unique = 0;
+        for (int i=0; i<closedCount; i++) {
+            if (unique == 0 || closed[unique - 1] != closed[i]) {
+                closed[unique++] = closed[i];
+            }
+        }
+
+        return Arrays.copyOf(closed, unique);
+    }
+
+
+
+    /**
+     * Just enough of a growable int array to build the trie without boxing every edge.
+     */
+    private static final class IntList {
+
+        private int[] values = new int[16];
+
+        private int size;
+
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+
+        int get(int index) {
+            return values[index];
+        }
+
+
+        int size() {
+            return size;
+        }
+    }
+
+
+
+    /**
+     * The DFA states built so far, starting at the state before any symbol was read.
+     */
+    private static final class StateCache {
+
+        private final DfaState start;
+
+        private final ConcurrentMap<StateKey,DfaState> states = new ConcurrentHashMap<>();
+
+        //roughly how much memory the states take up:
+        private final AtomicLong bytes = new AtomicLong();
+
+
+        StateCache(DfaState start) {
+            this.start = start;
+        }
+    }
+
+
+
+    private static final class StateKey {
+
+        private final int[] nfaStates;
+
+        private final int hash;
+
+
+        StateKey(int[] nfaStates) {
+            this.nfaStates = nfaStates;
+            this.hash = Arrays.hashCode(nfaStates);
+        }
+
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+
+        @Override
+        public boolean equals(Object obj) {
+            return (obj instanceof StateKey) && Arrays.equals(nfaStates, ((StateKey) obj).nfaStates);
+        }
+    }
+
+
+
+    /**
+     * A DFA state.  Transitions are filled in lazily and may race, which is harmless because two threads
+     * computing the same transition end up with the same interned state (or an equivalent one after a flush).
+     */
+    private static final class DfaState {
+
+        private final int[] nfaStates;
+
+        private final PatternListEntry acceptedEntry;
+
+        private final PatternListEntry trailingWildcardEntry;
+
+        private final DfaState[] asciiTransitions = new DfaState[ASCII_SIZE];
+
+        private volatile DfaState separatorTransition;
+
+        private volatile ConcurrentMap<Integer,DfaState> otherTransitions;
+
+
+        DfaState(int[] nfaStates, PatternListEntry acceptedEntry, PatternListEntry trailingWildcardEntry) {
+            this.nfaStates = nfaStates;
+            this.acceptedEntry = acceptedEntry;
+            this.trailingWildcardEntry = trailingWildcardEntry;
+        }
+
+
+        DfaState transition(int symbol) {
+
+            if (symbol >= 0 && symbol < ASCII_SIZE) {
+                return asciiTransitions[symbol];
+            } else if (symbol == SEPARATOR_TOKEN) {
+                return separatorTransition;
+            }
+
+            ConcurrentMap<Integer,DfaState> others = otherTransitions;
+            return others == null ? null : others.get(symbol);
+        }
+
+
+        void setTransition(int symbol, DfaState next) {
+
+            if (symbol >= 0 && symbol < ASCII_SIZE) {
+                asciiTransitions[symbol] = next;
+            } else if (symbol == SEPARATOR_TOKEN) {
+                separatorTransition = next;
+            } else {
+                ConcurrentMap<Integer,DfaState> others = otherTransitions;
+                if (others == null) {
+                    synchronized (this) {
+                        others = otherTransitions;
+                        if (others == null) {
+                            others = new ConcurrentHashMap<>();
+                            otherTransitions = others;
+                        }
+                    }
+                }
+                others.put(symbol, next);
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.giladam.listmatch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * The {@link WildcardMatcher} used for {@link MatchingMode#STANDARD}.
+ *
+ * Single-component patterns are put in a forward trie on their literal prefix or a reversed trie on their
+ * literal suffix, whichever is longer, so a lookup only has to fully check the patterns whose literal end
+ * actually lines up with the value.  Patterns with no literal text at either end (like "*SOMETHING*") are
+ * still checked one by one.  Patterns with multiple components are grouped by how many components they
+ * have and then hashed on a literal component, see {@link ComponentPartition}.
+ *
+ * Patterns can be added while the index is in use, which copies only the trie nodes or the bucket the
+ * pattern is filed under.
+ *
+ * @author Gil Adam
+ *
+ */
+final class WildcardIndex implements GrowableMatcher {
+
+    private final PatternTrie prefixTrie = new PatternTrie(false);
+
+    private final PatternTrie suffixTrie = new PatternTrie(true);
+
+    private volatile PatternListEntry[] unindexed;
+
+    private volatile ComponentPartition[] partitionsByCount;
+
+
+    WildcardIndex(Collection<PatternListEntry> entries) {
+
+        List<PatternListEntry> initUnindexed = new ArrayList<>();
+        List<ComponentPartition> initPartitions = new ArrayList<>();
+
+        for (PatternListEntry entry : entries) {
+
+            String[] components = entry.getComponents();
+
+            if (components.length != 1) {
+                while (initPartitions.size() <= components.length) {
+                    initPartitions.add(null);
+                }
+
+                ComponentPartition partition = initPartitions.get(components.length);
+                if (partition == null) {
+                    partition = new ComponentPartition(components.length);
+                    initPartitions.set(components.length, partition);
+                }
+
+                partition.add(entry);
+                continue;
+            }
+
+            String prefix = Wildcards.literalPrefix(components[0]);
+            String suffix = Wildcards.literalSuffix(components[0]);
+
+            if (prefix.isEmpty() && suffix.isEmpty()) {
+                initUnindexed.add(entry);
+            } else if (prefix.length() >= suffix.length()) {
+                prefixTrie.add(prefix, entry);
+            } else {
+                suffixTrie.add(suffix, entry);
+            }
+        }
+
+        this.unindexed = initUnindexed.toArray(new PatternListEntry[initUnindexed.size()]);
+        this.partitionsByCount = initPartitions.toArray(new ComponentPartition[initPartitions.size()]);
+    }
+
+
+    @Override
+    public void add(PatternListEntry entry) {
+
+        String[] components = entry.getComponents();
+
+        if (components.length != 1) {
+
+            ComponentPartition[] partitions = partitionsByCount;
+
+            if (components.length < partitions.length && partitions[components.length] != null) {
+                partitions[components.length].add(entry);
+                return;
+            }
+
+            ComponentPartition partition = new ComponentPartition(components.length);
+            partition.add(entry);
+
+            ComponentPartition[] newPartitions = Arrays.copyOf(partitions, Math.max(partitions.length, components.length + 1));
+            newPartitions[components.length] = partition;
+            this.partitionsByCount = newPartitions;
+            return;
+        }
+
+        String prefix = Wildcards.literalPrefix(components[0]);
+        String suffix = Wildcards.literalSuffix(components[0]);
+
+        if (prefix.isEmpty() && suffix.isEmpty()) {
+            PatternListEntry[] newUnindexed = Arrays.copyOf(unindexed, unindexed.length + 1);
+            newUnindexed[unindexed.length] = entry;
+            this.unindexed = newUnindexed;
+        } else if (prefix.length() >= suffix.length()) {
+            prefixTrie.addShared(prefix, entry);
+        } else {
+            suffixTrie.addShared(suffix, entry);
+        }
+    }
+
+
+    @Override
+    public PatternListEntry findMatch(MatchValue value) {
+        return findMatch(value, Collections.<PatternListEntry>emptySet());
+    }
+
+
+    @Override
+    public PatternListEntry findMatch(MatchValue value, Set<PatternListEntry> removed) {
+
+        int componentCount = value.componentCount();
+
+        if (componentCount == 1) {
+            return findSingleComponentMatch(value, value.componentStart(0), value.componentEnd(0), removed);
+        }
+
+        //only patterns with as many components as the value can match it:
+        ComponentPartition[] partitions = partitionsByCount;
+        if (componentCount >= partitions.length || partitions[componentCount] == null) {
+            return null;
+        }
+
+        return partitions[componentCount].findMatch(value, removed);
+    }
+
+
+    private PatternListEntry findSingleComponentMatch(MatchValue value, int start, int end, Set<PatternListEntry> removed) {
+
+        PatternListEntry match = prefixTrie.findMatch(value, start, end, removed);
+
+        if (match == null) {
+            match = suffixTrie.findMatch(value, start, end, removed);
+        }
+
+        PatternListEntry[] currentUnindexed = unindexed;
+        for (int i=0; match == null && i<currentUnindexed.length; i++) {
+            if (Wildcards.wildcardMatch(value, start, end, currentUnindexed[i].getComponents()[0])
+                    && !removed.contains(currentUnindexed[i])) {
+                match = currentUnindexed[i];
+            }
+        }
+
+        return match;
+    }
+}
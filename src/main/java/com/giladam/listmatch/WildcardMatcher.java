@@ -0,0 +1,40 @@
+package com.giladam.listmatch;
+
+import java.util.Set;
+
+
+/**
+ * The compiled form of the wildcard (non-exact) patterns in a {@link PatternList}, which is what does
+ * the actual work once a value was not found among the exact matches.
+ *
+ * Implementations must be safe to use from multiple threads at once.
+ *
+ * @author Gil Adam
+ *
+ */
+interface WildcardMatcher {
+
+    /**
+     * Returns a pattern that matches all of the value's components, or null if none do.
+     *
+     * Implementations must not allocate anything while doing so, other than the first time some lazily built
+     * structure is needed.
+     *
+     * @param value The value being checked.
+     * @return
+     */
+    PatternListEntry findMatch(MatchValue value);
+
+
+    /**
+     * Returns a pattern that matches all of the value's components and isn't one of the removed ones, or
+     * null if none do.  This lets a matcher keep being used after some of the patterns it was built from
+     * were taken out of the list, without building it again.
+     *
+     * @param value The value being checked.
+     * @param removed Patterns to pass over, which may be changed by another thread while this runs.
+     * @return
+     */
+    PatternListEntry findMatch(MatchValue value, Set<PatternListEntry> removed);
+
+}
@@ -0,0 +1,226 @@
+package com.giladam.listmatch;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * The wildcard (non-exact) patterns of a {@link PatternList} together with the {@link WildcardMatcher}
+ * compiled from them for its {@link MatchingMode}.
+ *
+ * Patterns can be added and removed while other threads are checking values, and each change only costs
+ * as much as the pattern being changed.  Patterns added since the last full compile go into a
+ * {@link GrowableMatcher} that copies only the trie nodes or the bucket a new pattern is filed under.
+ * Removed patterns stay where they are, but go into a set of removed patterns that both matchers pass
+ * over, and a removed pattern that is added again is simply taken out of that set.  Once the added and
+ * removed patterns come to a fraction of the whole list, everything is compiled again, which spreads the
+ * cost of that out over at least as many changes.  Checks never lock.
+ *
+ * Only one thread may change the patterns at a time.
+ *
+ * @author Gil Adam
+ *
+ */
+final class WildcardPatterns {
+
+    //added and removed patterns are kept apart until there are more than this many...
+    private static final int MIN_RECOMPILE_SIZE = 256;
+
+    //...and more than this fraction of all of them:
+    private static final int RECOMPILE_FRACTION = 8;
+
+    private static final Set<PatternListEntry> NONE_REMOVED = Collections.emptySet();
+
+    private final MatchingMode matchingMode;
+
+    //every pattern in the list, only used by the thread changing them:
+    private final Set<PatternListEntry> entries;
+
+    //how many patterns went into the added matcher since the last full compile:
+    private int addedCount;
+
+    private volatile Matchers matchers;
+
+
+    WildcardPatterns(Collection<PatternListEntry> entries, MatchingMode matchingMode) {
+        this.matchingMode = matchingMode;
+        this.entries = new HashSet<>(entries);
+
+        //the entries are all new, so nothing else uses them yet:
+        ComponentSymbols.internAll(this.entries);
+
+        this.matchers = new Matchers(compile(this.entries, matchingMode), null, NONE_REMOVED);
+    }
+
+
+    private static WildcardMatcher compile(Collection<PatternListEntry> entries, MatchingMode matchingMode) {
+
+        switch (matchingMode) {
+            case AUTOMATON:
+                return new WildcardAutomaton(entries);
+            case DOMAIN:
+                return new DomainIndex(entries);
+            case IPV4:
+                return new Ipv4Index(entries);
+            case IPV6:
+                return new Ipv6Index(entries);
+            case URL:
+                return new UrlIndex(entries);
+            default:
+                return new WildcardIndex(entries);
+        }
+    }
+
+
+    /**
+     * Returns an empty matcher for the patterns added after the last full compile.  These are kept in a plain
+     * index unless the mode matches patterns differently from plain text, so that a pattern matches the same
+     * values before and after it is compiled with the rest.
+     */
+    private static GrowableMatcher newAddedMatcher(MatchingMode matchingMode) {
+
+        List<PatternListEntry> noEntries = Collections.emptyList();
+
+        switch (matchingMode) {
+            case IPV4:
+                return new Ipv4Index(noEntries);
+            case IPV6:
+                return new Ipv6Index(noEntries);
+            case URL:
+                return new UrlIndex(noEntries);
+            default:
+                return new WildcardIndex(noEntries);
+        }
+    }
+
+
+    int size() {
+        return entries.size();
+    }
+
+
+    /**
+     * Returns a copy of all the patterns.  Must not be called while another thread is changing them.
+     */
+    List<PatternListEntry> entries() {
+        return new ArrayList<>(entries);
+    }
+
+
+    boolean contains(PatternListEntry entry) {
+        return entries.contains(entry);
+    }
+
+
+    /**
+     * Removes and then adds patterns.  Checks that run at the same time may see some of the changes before
+     * the others.
+     *
+     * @return true if anything changed.
+     */
+    boolean update(Collection<PatternListEntry> entriesToAdd, Collection<PatternListEntry> entriesToRemove) {
+
+        boolean changed = false;
+
+        for (PatternListEntry entry : entriesToRemove) {
+            if (entries.remove(entry)) {
+                removedSet().add(entry);
+                changed = true;
+            }
+        }
+
+        for (PatternListEntry entry : entriesToAdd) {
+            if (entries.add(entry)) {
+                //a pattern that was removed since the last full compile is still in one of the matchers:
+                if (!matchers.removed.remove(entry)) {
+                    addedMatcher().add(entry);
+                    addedCount++;
+                }
+                changed = true;
+            }
+        }
+
+        int changeCount = addedCount + matchers.removed.size();
+        if (changeCount > MIN_RECOMPILE_SIZE && changeCount > entries.size() / RECOMPILE_FRACTION) {
+            this.addedCount = 0;
+            this.matchers = new Matchers(compile(entries, matchingMode), null, NONE_REMOVED);
+        }
+
+        return changed;
+    }
+
+
+    private GrowableMatcher addedMatcher() {
+
+        Matchers currentMatchers = matchers;
+
+        if (currentMatchers.added == null) {
+            currentMatchers = new Matchers(currentMatchers.compiled, newAddedMatcher(matchingMode), currentMatchers.removed);
+            this.matchers = currentMatchers;
+        }
+
+        return currentMatchers.added;
+    }
+
+
+    private Set<PatternListEntry> removedSet() {
+
+        Matchers currentMatchers = matchers;
+
+        //lists that never have patterns removed keep checking against an empty set that can't change:
+        if (currentMatchers.removed == NONE_REMOVED) {
+            Set<PatternListEntry> removed = Collections.newSetFromMap(new ConcurrentHashMap<PatternListEntry,Boolean>());
+            currentMatchers = new Matchers(currentMatchers.compiled, currentMatchers.added, removed);
+            this.matchers = currentMatchers;
+        }
+
+        return currentMatchers.removed;
+    }
+
+
+    boolean add(PatternListEntry entry) {
+        return update(Collections.singleton(entry), Collections.<PatternListEntry>emptySet());
+    }
+
+
+    boolean remove(PatternListEntry entry) {
+        return update(Collections.<PatternListEntry>emptySet(), Collections.singleton(entry));
+    }
+
+
+    PatternListEntry findMatch(MatchValue value) {
+
+        Matchers currentMatchers = matchers;
+
+        PatternListEntry match = currentMatchers.compiled.findMatch(value, currentMatchers.removed);
+
+        if (match == null && currentMatchers.added != null) {
+            match = currentMatchers.added.findMatch(value, currentMatchers.removed);
+        }
+
+        return match;
+    }
+
+
+
+    private static final class Matchers {
+
+        private final WildcardMatcher compiled;
+
+        private final GrowableMatcher added;
+
+        private final Set<PatternListEntry> removed;
+
+
+        Matchers(WildcardMatcher compiled, GrowableMatcher added, Set<PatternListEntry> removed) {
+            this.compiled = compiled;
+            this.added = added;
+            this.removed = removed;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.giladam.listmatch;
+
+
+/**
+ * Static helpers for working with the wildcard character in patterns.
+ *
+ * @author Gil Adam
+ *
+ */
+final class Wildcards {
+
+    private Wildcards() {
+        //do not instantiate, just use the static utilities.
+    }
+
+
+    /**
+     * Returns the literal characters at the start of the pattern, up to the first wildcard.
+     *
+     * @param pattern
+     * @return
+     */
+    static String literalPrefix(String pattern) {
+        int firstWildcard = pattern.indexOf(PatternList.WILDCARD_CHAR);
+        return firstWildcard < 0 ? pattern : pattern.substring(0, firstWildcard);
+    }
+
+
+    /**
+     * Returns the literal characters at the end of the pattern, after the last wildcard.
+     *
+     * @param pattern
+     * @return
+     */
+    static String literalSuffix(String pattern) {
+        int lastWildcard = pattern.lastIndexOf(PatternList.WILDCARD_CHAR);
+        return lastWildcard < 0 ? pattern : pattern.substring(lastWildcard + 1);
+    }
+
+
+    /**
+     * This wildcard matching was adapted from somebody's solution to wildcard matching problem from Leetcode.  It is
+     * not entirely clear who wrote it, but it does work so I changed it a bit for what I needed.
+     *
+     * It works on the characters of the value from start to end so that components never have to be copied out.
+     *
+     * @param value
+     * @param start
+     * @param end
+     * @param pattern
+     * @return
+     */
+    static boolean wildcardMatch(MatchValue value, int start, int end, String pattern) {
+
+        if (pattern.equals(PatternList.WILDCARD)) {
+            return true;
+        }
+
+        int m = end;
+        int n = pattern.length();
+        int posS = start;
+        int posP = 0;
+        int posStar = -1;
+        int posOfS = -1;
+
+        //if posS == posP || ++posS and ++posP.
+        //posOfS, posStar, record the positon of '*' in s and p, ++posP and go on.
+        //if not match, go back to star, ++posOfS
+        while (posS < m) {
+            if (posP < n && (value.charAt(posS) == pattern.charAt(posP))) {
+                ++posS;
+                ++posP;
+            } else if (posP < n && pattern.charAt(posP) == PatternList.WILDCARD_CHAR) {
+                posStar = posP;
+                posOfS = posS;
+                ++posP;
+                continue;
+            } else if (posStar != -1) {
+                posS = posOfS;
+                posP = posStar + 1;
+                ++posOfS;
+            } else {
+                return false;
+            }
+        }
+
+        while (posP < n && pattern.charAt(posP) == PatternList.WILDCARD_CHAR) {
+            ++posP;
+        }
+
+        return ((posS == m) && (posP == n));
+    }
+
+
+    /**
+     * Returns true if the value has as many components as the pattern and every one of them matches.
+     *
+     * @param value
+     * @param listEntryComponents
+     * @return
+     */
+    static boolean componentsMatch(MatchValue value, String[] listEntryComponents) {
+        return componentsMatch(value, listEntryComponents, -1);
+    }
+
+
+    /**
+     * Returns true if the value has as many components as the pattern and every one of them matches, without
+     * checking the component at knownMatch, which the caller already found to be equal.
+     *
+     * @param value
+     * @param listEntryComponents
+     * @param knownMatch The index of the component to skip, or -1 to check them all.
+     * @return
+     */
+    static boolean componentsMatch(MatchValue value, String[] listEntryComponents, int knownMatch) {
+
+        //if the entry is incompatible with the value to test, it's not a match so don't try:
+        if (value.componentCount() != listEntryComponents.length) {
+            return false;
+        }
+
+        for (int i=0; i<listEntryComponents.length; i++) {
+            //does the component match?
+            if (i != knownMatch
+                    && !wildcardMatch(value, value.componentStart(i), value.componentEnd(i), listEntryComponents[i])) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
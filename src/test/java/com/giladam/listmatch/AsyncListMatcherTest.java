@@ -0,0 +1,285 @@
+package com.giladam.listmatch;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Sets;
+
+
+public class AsyncListMatcherTest {
+
+    private static ListMatcher newListMatcher() {
+        ListMatcher listMatcher = new ListMatcher(Collections.<String,PatternList>emptyMap());
+        listMatcher.replaceList("email.denylist", new PatternList(Sets.newHashSet("*@spam.com", "someone@junk.com"), "@", false));
+        listMatcher.replaceList("ip.denylist", new PatternList(Sets.newHashSet("10.0.0.*"), ".", false));
+        return listMatcher;
+    }
+
+
+    /**
+     * Checks lots of values from lots of threads and makes sure every one gets the same answer as checking
+     * it directly.
+     */
+    @Test
+    public void testResultsAgreeWithListMatcher() throws Exception {
+
+        ListMatcher listMatcher = newListMatcher();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try (final AsyncListMatcher asyncListMatcher = new AsyncListMatcher(listMatcher, executor, 16, 1, TimeUnit.MILLISECONDS, 64, 2)) {
+
+            final String[] listNames = {"email.denylist", "ip.denylist", "no.such.list"};
+            final String[] values = {"a@spam.com", "SOMEONE@junk.com", "b@junk.com", "10.0.0.7", "10.0.1.7", null};
+
+            List<Thread> producers = new ArrayList<>();
+            final List<List<Future<Boolean>>> futuresByProducer = new ArrayList<>();
+
+            for (int p=0; p<4; p++) {
+                final List<Future<Boolean>> futures = new ArrayList<>();
+                futuresByProducer.add(futures);
+                producers.add(new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (int i=0; i<3000; i++) {
+                                futures.add(asyncListMatcher.matchesList(listNames[i % listNames.length], values[i % values.length]));
+                            }
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+            }
+
+            for (Thread producer : producers) {
+                producer.start();
+            }
+            for (Thread producer : producers) {
+                producer.join();
+            }
+
+            for (List<Future<Boolean>> futures : futuresByProducer) {
+                Assert.assertEquals(3000, futures.size());
+                for (int i=0; i<futures.size(); i++) {
+                    boolean expected = listMatcher.matchesList(listNames[i % listNames.length], values[i % values.length]);
+                    Assert.assertEquals(expected, futures.get(i).get(5, TimeUnit.SECONDS));
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+
+    @Test
+    public void testCallbackAndFullQueue() throws Exception {
+
+        //nothing runs until the executor is told to, so the queue fills up:
+        final List<Runnable> tasks = Collections.synchronizedList(new ArrayList<Runnable>());
+        Executor heldExecutor = new Executor() {
+            @Override
+            public void execute(Runnable task) {
+                tasks.add(task);
+            }
+        };
+
+        final AtomicInteger matched = new AtomicInteger();
+        final CountDownLatch called = new CountDownLatch(3);
+        MatchCallback callback = new MatchCallback() {
+            @Override
+            public void checked(String listName, String value, boolean matches) {
+                if (matches) {
+                    matched.incrementAndGet();
+                }
+                called.countDown();
+            }
+
+            @Override
+            public void failed(String listName, String value, Throwable cause) {
+                Assert.fail(cause.toString());
+            }
+        };
+
+        try (AsyncListMatcher asyncListMatcher = new AsyncListMatcher(newListMatcher(), heldExecutor, 8, 0, TimeUnit.MILLISECONDS, 3, 1)) {
+
+            asyncListMatcher.matchesList("email.denylist", "a@spam.com", callback);
+            asyncListMatcher.matchesList("email.denylist", "a@ham.com", callback);
+            asyncListMatcher.matchesList("ip.denylist", "10.0.0.1", callback);
+
+            Assert.assertEquals(3, asyncListMatcher.getQueuedCount());
+            Assert.assertNull(asyncListMatcher.tryMatchesList("email.denylist", "b@spam.com"));
+            Assert.assertEquals(1, tasks.size());
+
+            tasks.get(0).run();
+
+            Assert.assertTrue(called.await(1, TimeUnit.SECONDS));
+            Assert.assertEquals(2, matched.get());
+            Assert.assertEquals(0, asyncListMatcher.getQueuedCount());
+
+            Future<Boolean> result = asyncListMatcher.tryMatchesList("email.denylist", "b@spam.com");
+            Assert.assertFalse(result.isDone());
+            tasks.get(1).run();
+            Assert.assertTrue(result.get());
+
+            asyncListMatcher.close();
+
+            try {
+                asyncListMatcher.matchesList("email.denylist", "c@spam.com");
+                Assert.fail("Expected closed AsyncListMatcher to refuse values");
+            } catch (IllegalStateException e) {
+                //expected
+            }
+        }
+    }
+
+
+    /**
+     * This test makes sure an Error while checking a batch fails the values that were waiting for it instead
+     * of leaving them waiting forever, and that a callback that throws one doesn't keep the rest of the
+     * batch from being answered.
+     */
+    @Test
+    public void testErrorsFailWaitingValues() throws Exception {
+
+        ListMatcher listMatcher = newListMatcher();
+        listMatcher.replaceList("broken", new PatternList(Sets.newHashSet("*@spam.com"), "@", false) {
+            @Override
+            public BitSet matchesAll(List<String> values) {
+                throw new StackOverflowError("broken list");
+            }
+        });
+
+        final List<Runnable> tasks = Collections.synchronizedList(new ArrayList<Runnable>());
+        Executor heldExecutor = new Executor() {
+            @Override
+            public void execute(Runnable task) {
+                tasks.add(task);
+            }
+        };
+
+        MatchCallback throwingCallback = new MatchCallback() {
+            @Override
+            public void checked(String listName, String value, boolean matches) {
+                throw new AssertionError("callback");
+            }
+
+            @Override
+            public void failed(String listName, String value, Throwable cause) {
+                throw new AssertionError("callback");
+            }
+        };
+
+        try (AsyncListMatcher asyncListMatcher = new AsyncListMatcher(listMatcher, heldExecutor, 8, 0, TimeUnit.MILLISECONDS, 8, 1)) {
+
+            Future<Boolean> broken = asyncListMatcher.matchesList("broken", "a@spam.com");
+            asyncListMatcher.matchesList("email.denylist", "a@spam.com", throwingCallback);
+            Future<Boolean> afterCallback = asyncListMatcher.matchesList("email.denylist", "b@spam.com");
+
+            tasks.get(0).run();
+
+            try {
+                broken.get(1, TimeUnit.SECONDS);
+                Assert.fail("Expected the broken list to fail the value");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof StackOverflowError);
+            }
+
+            Assert.assertTrue(afterCallback.get(1, TimeUnit.SECONDS));
+        }
+    }
+
+
+    /**
+     * This test makes sure a value queued just as the only task is finishing is failed rather than left
+     * waiting when the executor rejects the follow-up task that should check it.  Each round queues one
+     * value, which starts the task, and then another one at about the time that task finishes, after which
+     * the executor takes no more tasks.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRejectedFollowUpTaskFailsQueuedValues() throws Exception {
+
+        final ExecutorService pool = Executors.newSingleThreadExecutor();
+        Random random = new Random(3);
+
+        try {
+            for (int round=0; round<2000; round++) {
+
+                final AtomicInteger executeCount = new AtomicInteger();
+
+                //takes the first task of the round and rejects the rest:
+                Executor rejectingExecutor = new Executor() {
+                    @Override
+                    public void execute(Runnable task) {
+                        if (executeCount.incrementAndGet() > 1) {
+                            throw new RejectedExecutionException("no more tasks");
+                        }
+                        pool.execute(task);
+                    }
+                };
+
+                try (AsyncListMatcher asyncListMatcher = new AsyncListMatcher(newListMatcher(), rejectingExecutor, 8, 0, TimeUnit.MILLISECONDS, 8, 1)) {
+
+                    Future<Boolean> first = asyncListMatcher.matchesList("email.denylist", "a@spam.com");
+
+                    long spinUntil = System.nanoTime() + random.nextInt(20000);
+                    while (System.nanoTime() < spinUntil) {
+                        Thread.yield();
+                    }
+
+                    Future<Boolean> second;
+                    try {
+                        second = asyncListMatcher.matchesList("email.denylist", "b@spam.com");
+                    } catch (RejectedExecutionException e) {
+                        //the task was already done, so this value was never queued
+                        second = null;
+                    }
+
+                    Assert.assertTrue(first.get(10, TimeUnit.SECONDS));
+
+                    if (second != null) {
+                        try {
+                            Assert.assertTrue(second.get(10, TimeUnit.SECONDS));
+                        } catch (ExecutionException e) {
+                            Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+                        }
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testRejectedValueIsNotQueued() throws Exception {
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+
+        try (AsyncListMatcher asyncListMatcher = new AsyncListMatcher(newListMatcher(), executor)) {
+            try {
+                asyncListMatcher.matchesList("email.denylist", "a@spam.com");
+            } finally {
+                Assert.assertEquals(0, asyncListMatcher.getQueuedCount());
+            }
+        }
+    }
+}
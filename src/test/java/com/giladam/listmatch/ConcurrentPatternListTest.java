@@ -0,0 +1,230 @@
+package com.giladam.listmatch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Sets;
+
+
+public class ConcurrentPatternListTest {
+
+    @Test
+    public void testAddAndRemoveExactPatterns() {
+
+        ConcurrentPatternList patternList = new ConcurrentPatternList(Sets.newHashSet("user@example.com"), "@", false);
+
+        Assert.assertTrue(patternList.add("Blocked@Example.com"));
+        Assert.assertFalse(patternList.add("blocked@example.com"));
+        Assert.assertTrue(patternList.matches("BLOCKED@example.com"));
+        Assert.assertTrue(patternList.contains("blocked@EXAMPLE.com"));
+        Assert.assertEquals(2, patternList.size());
+
+        Assert.assertTrue(patternList.remove("blocked@example.com"));
+        Assert.assertFalse(patternList.remove("blocked@example.com"));
+        Assert.assertFalse(patternList.matches("blocked@example.com"));
+        Assert.assertTrue(patternList.matches("user@example.com"));
+        Assert.assertEquals(1, patternList.size());
+    }
+
+
+    @Test
+    public void testAddAndRemoveWildcardPatterns() {
+
+        for (MatchingMode mode : MatchingMode.values()) {
+
+            ConcurrentPatternList patternList = new ConcurrentPatternList(Sets.newHashSet("*@spam.com"), "@", false, mode);
+
+            Assert.assertTrue(patternList.add("*@junk.com"));
+            Assert.assertFalse(patternList.add("**@junk.com"));
+            Assert.assertTrue(patternList.matches("someone@junk.com"));
+            Assert.assertTrue(patternList.matches("someone@spam.com"));
+
+            Assert.assertTrue(patternList.remove("*@spam.com"));
+            Assert.assertFalse(patternList.matches("someone@spam.com"));
+            Assert.assertTrue(patternList.matches("someone@junk.com"));
+
+            Assert.assertTrue(patternList.remove("*@junk.com"));
+            Assert.assertFalse(patternList.matches("someone@junk.com"));
+            Assert.assertEquals(0, patternList.size());
+
+            Assert.assertTrue(patternList.add("*"));
+            Assert.assertTrue(patternList.matches("anything"));
+            Assert.assertTrue(patternList.remove("*"));
+            Assert.assertFalse(patternList.matches("anything"));
+        }
+    }
+
+
+    /**
+     * This test makes sure removing one of two patterns that match the same values keeps the other one
+     * matching, whichever matcher each of them is in, and that removed patterns can be added again.
+     */
+    @Test
+    public void testRemovingOverlappingPatterns() {
+
+        for (MatchingMode mode : MatchingMode.values()) {
+            assertRemovingOverlappingPatterns(mode, "@", "*@spam.com", "bad*@spam.com", "bad@spam.com");
+        }
+
+        assertRemovingOverlappingPatterns(MatchingMode.IPV4, ".", "10.0.0.0/8", "10.1.0.0/16", "10.1.2.3");
+        assertRemovingOverlappingPatterns(MatchingMode.IPV6, null, "2001:db8::/32", "2001:db8:1::/48", "2001:db8:1::5");
+    }
+
+
+    private static void assertRemovingOverlappingPatterns(MatchingMode mode, String delimiter,
+                                                          String wider, String narrower, String value) {
+
+        //both compiled together:
+        ConcurrentPatternList patternList = new ConcurrentPatternList(Sets.newHashSet(wider, narrower), delimiter, false, mode);
+        Assert.assertTrue(patternList.remove(wider));
+        Assert.assertTrue(mode.name(), patternList.matches(value));
+        Assert.assertTrue(patternList.add(wider));
+        Assert.assertTrue(patternList.remove(narrower));
+        Assert.assertTrue(mode.name(), patternList.matches(value));
+        Assert.assertTrue(patternList.remove(wider));
+        Assert.assertFalse(mode.name(), patternList.matches(value));
+
+        //one compiled and one added:
+        patternList = new ConcurrentPatternList(Sets.newHashSet(wider), delimiter, false, mode);
+        Assert.assertTrue(patternList.add(narrower));
+        Assert.assertTrue(patternList.remove(wider));
+        Assert.assertTrue(mode.name(), patternList.matches(value));
+        Assert.assertTrue(patternList.remove(narrower));
+        Assert.assertFalse(mode.name(), patternList.matches(value));
+        Assert.assertTrue(patternList.add(narrower));
+        Assert.assertTrue(mode.name(), patternList.matches(value));
+
+        //both added:
+        patternList = new ConcurrentPatternList(null, delimiter, false, mode);
+        Assert.assertTrue(patternList.add(wider));
+        Assert.assertTrue(patternList.add(narrower));
+        Assert.assertTrue(patternList.remove(narrower));
+        Assert.assertTrue(mode.name(), patternList.matches(value));
+        Assert.assertTrue(patternList.remove(wider));
+        Assert.assertFalse(mode.name(), patternList.matches(value));
+    }
+
+
+    /**
+     * This test makes sure URL patterns keep a wildcard in the host within the host whether they were added
+     * to the list, loaded with it or compiled with the rest after enough were added.
+     */
+    @Test
+    public void testAddedUrlPatterns() {
+
+        ConcurrentPatternList patternList = new ConcurrentPatternList(Sets.newHashSet("http://www.example.com/allowed/*"),
+                                                                      null, false, MatchingMode.URL);
+
+        Assert.assertTrue(patternList.add("http://*.edu/*"));
+        Assert.assertTrue(patternList.add("*/robots.txt"));
+        assertUrlPatternsMatch(patternList);
+
+        //enough to compile all of them again:
+        for (int i=0; i<300; i++) {
+            Assert.assertTrue(patternList.add("http://host" + i + ".example.org/*"));
+        }
+        assertUrlPatternsMatch(patternList);
+        Assert.assertTrue(patternList.matches("http://host299.example.org/index.html"));
+
+        Assert.assertTrue(patternList.remove("http://*.edu/*"));
+        Assert.assertFalse(patternList.matches("http://www.example.edu/"));
+        Assert.assertTrue(patternList.add("http://*.edu/*"));
+        assertUrlPatternsMatch(patternList);
+    }
+
+
+    private static void assertUrlPatternsMatch(PatternList patternList) {
+
+        String[] expectedMatches = {"http://www.example.edu/",
+                                    "http://www.example.com/allowed/page",
+                                    "https://www.example.org/robots.txt",
+                                    "www.example.edu/robots.txt"};
+
+        String[] expectedNotMatches = {"http://example.com/x.edu/",
+                                       "http://www.example.edu.au/",
+                                       "http://www.example.com/other"};
+
+        TestingUtil.assertMatchingCorrectly(patternList, expectedMatches, expectedNotMatches);
+    }
+
+
+    /**
+     * This test makes sure enough added wildcard patterns to be compiled with the rest still all match, and
+     * that applying changes in bulk removes before adding.
+     */
+    @Test
+    public void testManyChanges() {
+
+        ConcurrentPatternList patternList = new ConcurrentPatternList(null, "@", false);
+
+        List<String> patterns = new ArrayList<>();
+        for (int i=0; i<1000; i++) {
+            patterns.add("user" + i + "*@example.com");
+            patterns.add("user" + i + "@example.org");
+        }
+
+        for (String pattern : patterns) {
+            Assert.assertTrue(patternList.add(pattern));
+        }
+
+        Assert.assertEquals(2000, patternList.size());
+        for (int i=0; i<1000; i++) {
+            Assert.assertTrue(patternList.matches("user" + i + "x@example.com"));
+            Assert.assertTrue(patternList.matches("user" + i + "@example.org"));
+        }
+
+        Assert.assertTrue(patternList.applyChanges(Sets.newHashSet("user1*@example.com", "new*@example.net"),
+                                                   Sets.newHashSet(patterns.subList(0, 1000))));
+
+        Assert.assertTrue(patternList.matches("user1x@example.com"));
+        Assert.assertFalse(patternList.matches("user2x@example.com"));
+        Assert.assertTrue(patternList.matches("newcomer@example.net"));
+        Assert.assertTrue(patternList.matches("user999@example.org"));
+        Assert.assertEquals(1002, patternList.size());
+
+        Assert.assertFalse(patternList.applyChanges(Collections.<String>emptySet(), Sets.newHashSet("nothing@nowhere.com")));
+    }
+
+
+    /**
+     * This test makes sure checks running while patterns change keep seeing the patterns that never change.
+     *
+     * @throws InterruptedException
+     */
+    @Test
+    public void testChecksWhileChanging() throws InterruptedException {
+
+        final ConcurrentPatternList patternList = new ConcurrentPatternList(Sets.newHashSet("stays@example.com",
+                                                                                            "stays*@example.net"), "@", false);
+        final AtomicReference<String> failure = new AtomicReference<>();
+
+        Thread checker = new Thread() {
+            @Override
+            public void run() {
+                for (int i=0; i<200000 && failure.get() == null; i++) {
+                    if (!patternList.matches("stays@example.com") || !patternList.matches("staysalso@example.net")) {
+                        failure.set("Lost a pattern that was never removed after " + i + " checks.");
+                    }
+                }
+            }
+        };
+        checker.start();
+
+        for (int i=0; i<2000; i++) {
+            patternList.add("added" + i + "@example.com");
+            patternList.add("added" + i + "*@example.net");
+            if (i % 3 == 0) {
+                patternList.remove("added" + (i / 2) + "@example.com");
+                patternList.remove("added" + (i / 2) + "*@example.net");
+            }
+        }
+
+        checker.join();
+        Assert.assertNull(failure.get());
+    }
+}
@@ -0,0 +1,109 @@
+package com.giladam.listmatch;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Sets;
+
+
+public class DomainIndexTest {
+
+    @Test
+    public void testEmailDomainPatterns() {
+
+        Collection<String> patterns = Sets.newHashSet("*@*.example.com",
+                                                      "*@*.edu",
+                                                      "sales*@domain.com",
+                                                      "someuser@*");
+
+        PatternList patternList = new PatternList(patterns, "@", false, MatchingMode.DOMAIN);
+
+        String[] expectedMatches = {"a@mail.example.com",
+                                    "a@deep.mail.example.com",
+                                    "student@school.EDU",
+                                    "sales.east@domain.com",
+                                    "someuser@anywhere.org"};
+
+        String[] expectedNotMatches = {"a@example.com",
+                                       "a@notexample.com",
+                                       "a@school.edu.org",
+                                       "marketing@domain.com",
+                                       "mail.example.com",
+                                       null};
+
+        TestingUtil.assertMatchingCorrectly(patternList, expectedMatches, expectedNotMatches);
+    }
+
+
+    @Test
+    public void testDomainListWithoutDelimiter() {
+
+        PatternList patternList = new PatternList(Sets.newHashSet("*.edu", "*mail.example.com"), null, false, MatchingMode.DOMAIN);
+
+        String[] expectedMatches = {"school.edu",
+                                    "www.cs.school.edu",
+                                    "mail.example.com",
+                                    "webmail.example.com"};
+
+        String[] expectedNotMatches = {"edu",
+                                       "school.edu.com",
+                                       "example.com"};
+
+        TestingUtil.assertMatchingCorrectly(patternList, expectedMatches, expectedNotMatches);
+    }
+
+
+    /**
+     * Makes sure the domain trie finds exactly what the standard index finds.
+     */
+    @Test
+    public void testDomainIndexAgreesWithStandardIndex() {
+
+        Random random = new Random(3);
+
+        List<PatternListEntry> entries = new ArrayList<>();
+        while (entries.size() < 500) {
+            String pattern = randomString(random, true) + "@" + randomString(random, true);
+            if (pattern.contains(PatternList.WILDCARD)) {
+                entries.add(new PatternListEntry(pattern, "@"));
+            }
+        }
+
+        WildcardIndex standardIndex = new WildcardIndex(entries);
+        DomainIndex domainIndex = new DomainIndex(entries);
+
+        for (int i=0; i<5000; i++) {
+
+            MatchValue value = MatchValue.of(randomString(random, false) + "@" + randomString(random, false), "@", true);
+
+            Assert.assertEquals("Unexpected result for " + value,
+                                standardIndex.findMatch(value) != null,
+                                domainIndex.findMatch(value) != null);
+        }
+    }
+
+
+    private static String randomString(Random random, boolean allowWildcards) {
+
+        StringBuilder sb = new StringBuilder();
+        int length = 1 + random.nextInt(7);
+
+        for (int i=0; i<length; i++) {
+            int pick = random.nextInt(10);
+            if (allowWildcards && pick < 2) {
+                sb.append(PatternList.WILDCARD_CHAR);
+            } else if (pick < 5) {
+                sb.append('.');
+            } else {
+                sb.append((char) ('A' + random.nextInt(2)));
+            }
+        }
+
+        return sb.toString().replaceAll("[*]+", "*");
+    }
+}
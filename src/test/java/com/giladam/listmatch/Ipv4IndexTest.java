@@ -0,0 +1,156 @@
+package com.giladam.listmatch;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Sets;
+
+
+public class Ipv4IndexTest {
+
+    @Test
+    public void testWildcardCidrAndRangePatterns() {
+
+        Collection<String> patterns = Sets.newHashSet("10.100.*.*",
+                                                      "192.168.1.*",
+                                                      "172.16.0.0/12",
+                                                      "8.8.8.8/32",
+                                                      "100.64.0.10-100.64.1.20",
+                                                      "127.0.0.1",
+                                                      "10.*.0.1");
+
+        PatternList patternList = new PatternList(patterns, ".", false, MatchingMode.IPV4);
+
+        String[] expectedMatches = {"10.100.0.0",
+                                    "10.100.255.255",
+                                    "192.168.1.77",
+                                    "172.16.0.0",
+                                    "172.31.255.255",
+                                    "8.8.8.8",
+                                    "100.64.0.10",
+                                    "100.64.0.255",
+                                    "100.64.1.20",
+                                    "127.0.0.1",
+                                    "10.5.0.1",
+                                    //not an address, so the wildcard patterns are matched as text:
+                                    "10.100.x.y"};
+
+        String[] expectedNotMatches = {"10.101.0.0",
+                                       "192.168.2.1",
+                                       "172.32.0.0",
+                                       "172.15.255.255",
+                                       "8.8.8.9",
+                                       "100.64.0.9",
+                                       "100.64.1.21",
+                                       "10.5.0.2",
+                                       "172.16.0.0/12",
+                                       "10.100.1",
+                                       "",
+                                       null};
+
+        TestingUtil.assertMatchingCorrectly(patternList, expectedMatches, expectedNotMatches);
+
+        Assert.assertEquals("172.16.0.0/12", patternList.match("172.20.1.1").getPattern());
+        Assert.assertEquals(MatchOutcome.WILDCARD, patternList.match("100.64.1.0").getOutcome());
+    }
+
+
+    @Test
+    public void testOverlappingBlocks() {
+
+        PatternList patternList = new PatternList(Sets.newHashSet("10.0.0.0/8", "10.1.2.0/24", "10.0.0.5-11.0.0.5",
+                                                                  "0.0.0.0-0.0.0.3"), null, false, MatchingMode.IPV4);
+
+        String[] expectedMatches = {"10.1.2.3", "10.255.0.0", "11.0.0.5", "0.0.0.0", "0.0.0.3"};
+        String[] expectedNotMatches = {"9.255.255.255", "11.0.0.6", "0.0.0.4"};
+
+        TestingUtil.assertMatchingCorrectly(patternList, expectedMatches, expectedNotMatches);
+    }
+
+
+    @Test
+    public void testBlocksAddedToLiveList() {
+
+        ConcurrentPatternList patternList = new ConcurrentPatternList(Sets.newHashSet("10.0.*.*"), ".", false, MatchingMode.IPV4);
+
+        Assert.assertFalse(patternList.matches("192.168.0.1"));
+        Assert.assertTrue(patternList.add("192.168.0.0/16"));
+        Assert.assertTrue(patternList.matches("192.168.0.1"));
+        Assert.assertTrue(patternList.contains("192.168.0.0/16"));
+        Assert.assertTrue(patternList.remove("192.168.0.0/16"));
+        Assert.assertFalse(patternList.matches("192.168.0.1"));
+    }
+
+
+    @Test
+    public void testOtherDelimiterWorksLikeStandard() {
+
+        PatternList patternList = new PatternList(Sets.newHashSet("10.0.*.*", "10.0.0.0/8"), "@", false, MatchingMode.IPV4);
+
+        TestingUtil.assertMatchingCorrectly(patternList, new String[] {"10.0.1.1", "10.0.0.0/8"}, new String[] {"10.1.0.0"});
+    }
+
+
+    /**
+     * Makes sure wildcard patterns find exactly what the standard index finds, for addresses and for values
+     * that only look a bit like them.
+     */
+    @Test
+    public void testIpv4IndexAgreesWithStandardIndex() {
+
+        Random random = new Random(4);
+
+        List<PatternListEntry> entries = new ArrayList<>();
+        while (entries.size() < 500) {
+            String pattern = randomAddress(random, true);
+            if (pattern.contains(PatternList.WILDCARD)) {
+                entries.add(new PatternListEntry(pattern, "."));
+            }
+        }
+
+        WildcardIndex standardIndex = new WildcardIndex(entries);
+        Ipv4Index ipv4Index = new Ipv4Index(entries);
+
+        for (int i=0; i<20000; i++) {
+
+            MatchValue value = MatchValue.of(randomAddress(random, false), ".", true);
+
+            Assert.assertEquals("Unexpected result for " + value,
+                                standardIndex.findMatch(value) != null,
+                                ipv4Index.findMatch(value) != null);
+        }
+    }
+
+
+    private static String randomAddress(Random random, boolean allowWildcards) {
+
+        StringBuilder sb = new StringBuilder();
+        int octets = random.nextInt(20) == 0 ? 3 + random.nextInt(3) : 4;
+
+        for (int i=0; i<octets; i++) {
+            if (i > 0) {
+                sb.append('.');
+            }
+
+            int pick = random.nextInt(20);
+            if (allowWildcards && pick < 6) {
+                sb.append(PatternList.WILDCARD_CHAR);
+            } else if (allowWildcards && pick < 7) {
+                sb.append(random.nextInt(3)).append(PatternList.WILDCARD_CHAR);
+            } else if (pick == 8) {
+                sb.append('0').append(random.nextInt(3));
+            } else if (pick == 9) {
+                sb.append(250 + random.nextInt(10));
+            } else {
+                sb.append(random.nextInt(3));
+            }
+        }
+
+        return sb.toString();
+    }
+}
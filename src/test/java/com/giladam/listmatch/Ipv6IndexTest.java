@@ -0,0 +1,153 @@
+package com.giladam.listmatch;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Sets;
+
+
+public class Ipv6IndexTest {
+
+    @Test
+    public void testAddressesAndPrefixesMatchHoweverWritten() {
+
+        Collection<String> patterns = Sets.newHashSet("2001:db8::1",
+                                                      "2001:db8:aaaa::/48",
+                                                      "fe80::/10",
+                                                      "::ffff:10.0.0.0/120",
+                                                      "::1",
+                                                      "2001:db8:ffff:*",
+                                                      "not an address");
+
+        PatternList patternList = new PatternList(patterns, null, false, MatchingMode.IPV6);
+
+        String[] expectedMatches = {"2001:db8::1",
+                                    "2001:0DB8:0:0:0:0:0:1",
+                                    "2001:0db8:0000:0000:0000:0000:0000:0001",
+                                    "2001:db8:aaaa::",
+                                    "2001:db8:aaaa:ffff:ffff:ffff:ffff:ffff",
+                                    "fe80::1234",
+                                    "febf:ffff::",
+                                    "::ffff:10.0.0.200",
+                                    "::ffff:a00:1",
+                                    "0:0:0:0:0:0:0:1",
+                                    "2001:db8:ffff:1::",
+                                    "not an address"};
+
+        String[] expectedNotMatches = {"2001:db8::2",
+                                       "2001:db8:aaab::",
+                                       "fec0::",
+                                       "::ffff:10.0.1.0",
+                                       "::",
+                                       "2001:db8:fffe::1",
+                                       "2001:db8::1::2",
+                                       "2001:db8:0:0:0:0:0:0:1",
+                                       "12345::",
+                                       "",
+                                       null};
+
+        TestingUtil.assertMatchingCorrectly(patternList, expectedMatches, expectedNotMatches);
+
+        Assert.assertEquals("2001:DB8:AAAA::/48", patternList.match("2001:db8:aaaa:1::").getPattern());
+    }
+
+
+    @Test
+    public void testNestedAndSplitPrefixes() {
+
+        PatternList patternList = new PatternList(Sets.newHashSet("2001:db8:1::/48", "2001:db8::/32", "2001:db9:8000::/33",
+                                                                  "2001:db9::7", "::/128"), null, true, MatchingMode.IPV6);
+
+        String[] expectedMatches = {"2001:db8:2::", "2001:db9:8000::1", "2001:db9::7", "::"};
+        String[] expectedNotMatches = {"2001:db9::6", "2001:db9:7fff::", "2001:dba::", "::1"};
+
+        TestingUtil.assertMatchingCorrectly(patternList, expectedMatches, expectedNotMatches);
+    }
+
+
+    @Test
+    public void testPrefixesAddedToLiveList() {
+
+        ConcurrentPatternList patternList = new ConcurrentPatternList(Sets.newHashSet("2001:db8::/32"), null, false, MatchingMode.IPV6);
+
+        Assert.assertFalse(patternList.matches("fd00::1"));
+        Assert.assertTrue(patternList.add("fd00::/8"));
+        Assert.assertTrue(patternList.matches("fd00::1"));
+        Assert.assertTrue(patternList.remove("2001:db8::/32"));
+        Assert.assertFalse(patternList.matches("2001:db8::1"));
+    }
+
+
+    /**
+     * Makes sure a big trie of random prefixes finds exactly what checking every prefix one by one finds.
+     */
+    @Test
+    public void testTrieAgreesWithCheckingEachPrefix() {
+
+        Random random = new Random(6);
+
+        List<PatternListEntry> entries = new ArrayList<>();
+        List<long[]> prefixes = new ArrayList<>();
+
+        for (int i=0; i<2000; i++) {
+            long high = random.nextLong() & 0xFFFF0000FFFFFFFFL;
+            long low = random.nextLong();
+            int length = random.nextInt(129);
+            entries.add(new PatternListEntry(address(high, low) + "/" + length, null));
+            prefixes.add(new long[] {high, low, length});
+        }
+
+        Ipv6Index index = new Ipv6Index(entries);
+
+        for (int i=0; i<20000; i++) {
+
+            //mostly addresses close to one of the prefixes, so the deep parts of the trie get used:
+            long[] near = prefixes.get(random.nextInt(prefixes.size()));
+            long high = random.nextBoolean() ? near[0] ^ (1L << random.nextInt(64)) : random.nextLong();
+            long low = near[1] ^ (random.nextInt(4) == 0 ? random.nextLong() : 1L << random.nextInt(64));
+
+            boolean expected = false;
+            for (long[] prefix : prefixes) {
+                expected |= startsWith(high, low, prefix);
+            }
+
+            MatchValue value = MatchValue.of(address(high, low), null, true);
+            Assert.assertEquals("Unexpected result for " + value, expected, index.findMatch(value) != null);
+        }
+    }
+
+
+    private static boolean startsWith(long high, long low, long[] prefix) {
+
+        int length = (int) prefix[2];
+        for (int bit=0; bit<length; bit++) {
+            long valueBit = bit < 64 ? high >>> (63 - bit) : low >>> (127 - bit);
+            long prefixBit = bit < 64 ? prefix[0] >>> (63 - bit) : prefix[1] >>> (127 - bit);
+            if (((valueBit ^ prefixBit) & 1) != 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    private static String address(long high, long low) {
+
+        StringBuilder sb = new StringBuilder();
+        for (int group=0; group<8; group++) {
+            long half = group < 4 ? high : low;
+            if (group > 0) {
+                sb.append(':');
+            }
+            sb.append(Long.toHexString((half >>> (48 - 16 * (group % 4))) & 0xFFFF));
+        }
+
+        return sb.toString();
+    }
+}
@@ -1,80 +1,223 @@
-package com.giladam.listmatch;
-
-import java.io.File;
-import java.io.IOException;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.Set;
-
-import org.junit.Assert;
-import org.junit.Test;
-
-import com.google.common.collect.Sets;
-
-
-public class ListMatcherTest {
-
-    /**
-     * This test makes sure that loading an empty file returns an empty collection.
-     *
-     * @throws IOException
-     */
-    @Test
-    public void testReadPatternsInFile_EmptyFileReturnsEmpty() throws IOException {
-
-        Collection<String> patterns = ListMatcher.readPatternsFromFile(new File("src/test/resources/empty_file.txt"));
-        Assert.assertTrue(patterns.isEmpty());
-    }
-
-
-    /**
-     * This test makes sure that it throws an IOException if something goes wrong loading the file..
-     */
-    @Test(expected=IOException.class)
-    public void testReadPatternsInFile_ThrowsExceptionOnFailedReading() throws IOException {
-        ListMatcher.readPatternsFromFile(new File("src/test/resources/does not exist.txt"));
-        Assert.fail("Should not get here, because an IOException should have been thrown.");
-    }
-
-
-    /**
-     * This test makes sure that commented out lines are ignored.
-     *
-     * @throws IOException
-     */
-    @Test
-    public void testReadPatternsInFile_IgnoresCommentedLines() throws IOException {
-
-        Set<String> readPatterns = ListMatcher.readPatternsFromFile(new File("src/test/resources/commented_lines_test.txt"));
-
-        //make sure the read patterns contains the ones we care about and ONLY these
-        Set<String> expectedPatterns = Sets.newHashSet("comments_after_with_whitespace_after@test.com",
-                                                       "comments_after_without_whitespace_after@test.com",
-                                                       "nocomments@test.com");
-
-        //make sure the read patterns contains the ones we care about:
-        for (String expectedPattern : expectedPatterns) {
-            Assert.assertTrue("Expected to have read: " + expectedPattern, readPatterns.contains(expectedPattern));
-        }
-
-        //make sure we don't have any others:
-        for (String readPattern : readPatterns) {
-            Assert.assertTrue("Not expecting to have read: " + readPattern, expectedPatterns.contains(readPattern));
-        }
-    }
-
-
-    /**
-     * This test makes sure if you try to test again a list that does exist, you get false.
-     */
-    @Test
-    public void testNoSuchListReturnsFalse() {
-
-        ListMatcher listMatcher = new ListMatcher(Collections.<String,PatternList>emptyMap());
-
-        Assert.assertFalse(listMatcher.matchesList("no such list", "something to check"));
-    }
-
-
-
-}
+package com.giladam.listmatch;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Sets;
+
+
+public class ListMatcherTest {
+
+    /**
+     * This test makes sure that loading an empty file returns an empty collection.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testReadPatternsInFile_EmptyFileReturnsEmpty() throws IOException {
+
+        Collection<String> patterns = ListMatcher.readPatternsFromFile(new File("src/test/resources/empty_file.txt"));
+        Assert.assertTrue(patterns.isEmpty());
+    }
+
+
+    /**
+     * This test makes sure that it throws an IOException if something goes wrong loading the file..
+     */
+    @Test(expected=IOException.class)
+    public void testReadPatternsInFile_ThrowsExceptionOnFailedReading() throws IOException {
+        ListMatcher.readPatternsFromFile(new File("src/test/resources/does not exist.txt"));
+        Assert.fail("Should not get here, because an IOException should have been thrown.");
+    }
+
+
+    /**
+     * This test makes sure that commented out lines are ignored.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testReadPatternsInFile_IgnoresCommentedLines() throws IOException {
+
+        Set<String> readPatterns = ListMatcher.readPatternsFromFile(new File("src/test/resources/commented_lines_test.txt"));
+
+        //make sure the read patterns contains the ones we care about and ONLY these
+        Set<String> expectedPatterns = Sets.newHashSet("comments_after_with_whitespace_after@test.com",
+                                                       "comments_after_without_whitespace_after@test.com",
+                                                       "nocomments@test.com");
+
+        //make sure the read patterns contains the ones we care about:
+        for (String expectedPattern : expectedPatterns) {
+            Assert.assertTrue("Expected to have read: " + expectedPattern, readPatterns.contains(expectedPattern));
+        }
+
+        //make sure we don't have any others:
+        for (String readPattern : readPatterns) {
+            Assert.assertTrue("Not expecting to have read: " + readPattern, expectedPatterns.contains(readPattern));
+        }
+    }
+
+
+    /**
+     * This test makes sure if you try to test again a list that does exist, you get false.
+     */
+    @Test
+    public void testNoSuchListReturnsFalse() {
+
+        ListMatcher listMatcher = new ListMatcher(Collections.<String,PatternList>emptyMap());
+
+        Assert.assertFalse(listMatcher.matchesList("no such list", "something to check"));
+    }
+
+
+    /**
+     * This test makes sure a list given as null matches nothing, like a list that doesn't exist.
+     */
+    @Test
+    public void testNullListReturnsFalse() {
+
+        Map<String,PatternList> listByName = new HashMap<>();
+        listByName.put("email.denylist", null);
+        listByName.put("email.allowlist", new PatternList(Sets.newHashSet("*@example.com"), "@", false));
+
+        ListMatcher listMatcher = new ListMatcher(listByName);
+        listMatcher.setMatchListenerRegistry(new MatchMetricsRegistry());
+
+        Assert.assertFalse(listMatcher.matchesList("email.denylist", "someone@example.com"));
+        Assert.assertEquals(Sets.newHashSet("email.allowlist"), listMatcher.matchingLists("someone@example.com"));
+    }
+
+
+    /**
+     * This test makes sure a batch is checked against the right list, and that an unknown list matches nothing.
+     */
+    @Test
+    public void testMatchesListBatch() {
+
+        PatternList denylist = new PatternList(Sets.newHashSet("*@spam.com", "bad@example.com"), "@", false);
+        ListMatcher listMatcher = new ListMatcher(Collections.singletonMap("email.denylist", denylist));
+
+        List<String> values = Arrays.asList("someone@spam.com", "good@example.com", "BAD@example.com", null);
+
+        BitSet expected = new BitSet();
+        expected.set(0);
+        expected.set(2);
+
+        Assert.assertEquals(expected, listMatcher.matchesListBatch("email.denylist", values));
+        Assert.assertTrue(listMatcher.matchesListBatch("no such list", values).isEmpty());
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            Assert.assertEquals(expected, listMatcher.matchesListBatch("email.denylist", values, pool));
+            Assert.assertTrue(listMatcher.matchesListBatch("no such list", values, pool).isEmpty());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * This test makes sure checking a value against many lists at once gives the same answers as checking
+     * each list, including lists that split or compare the value differently.
+     */
+    @Test
+    public void testMatchingLists() {
+
+        Map<String,PatternList> listByName = new HashMap<>();
+        listByName.put("email.allowlist", new PatternList(Sets.newHashSet("*@example.com"), "@", false));
+        listByName.put("email.denylist", new PatternList(Sets.newHashSet("spam*@*"), "@", false));
+        listByName.put("email.vip", new PatternList(Sets.newHashSet("boss@example.com"), "@", true));
+        listByName.put("email.exact", new PatternList(Sets.newHashSet("SPAMMER@EXAMPLE.COM"), null, false));
+
+        ListMatcher listMatcher = new ListMatcher(listByName);
+
+        Assert.assertEquals(Sets.newHashSet("email.allowlist", "email.denylist", "email.exact"),
+                            listMatcher.matchingLists("spammer@example.com"));
+        Assert.assertEquals(Sets.newHashSet("email.allowlist", "email.vip"),
+                            listMatcher.matchingLists("boss@example.com"));
+        Assert.assertEquals(Sets.newHashSet("email.allowlist"),
+                            listMatcher.matchingLists("BOSS@example.com"));
+        Assert.assertTrue(listMatcher.matchingLists("nobody@nowhere.org").isEmpty());
+        Assert.assertTrue(listMatcher.matchingLists(null).isEmpty());
+
+        Assert.assertEquals(Sets.newHashSet("email.denylist"),
+                            listMatcher.matchingLists("spammer@example.com", Sets.newHashSet("email.denylist",
+                                                                                            "email.vip",
+                                                                                            "no such list")));
+
+        for (String value : new String[]{"spammer@example.com", "boss@example.com", "someone@else.com"}) {
+            Set<String> matchingLists = listMatcher.matchingLists(value);
+            for (String listName : listByName.keySet()) {
+                Assert.assertEquals(listName + " for " + value, listMatcher.matchesList(listName, value),
+                                    matchingLists.contains(listName));
+            }
+        }
+    }
+
+
+    /**
+     * This test makes sure a replaced list is used from then on, including by matchingLists().
+     */
+    @Test
+    public void testReplaceList() {
+
+        ListMatcher listMatcher = new ListMatcher(Collections.singletonMap("email.denylist",
+                                                                           new PatternList(Sets.newHashSet("*@spam.com"), "@", false)));
+
+        listMatcher.replaceList("email.denylist", new PatternList(Sets.newHashSet("*@junk.com"), "@", false));
+        listMatcher.replaceList("email.allowlist", new PatternList(Sets.newHashSet("*@junk.com"), "@", true));
+
+        Assert.assertFalse(listMatcher.matchesList("email.denylist", "someone@spam.com"));
+        Assert.assertTrue(listMatcher.matchesList("email.denylist", "someone@junk.com"));
+        Assert.assertEquals(Sets.newHashSet("email.denylist", "email.allowlist"), listMatcher.matchingLists("someone@junk.com"));
+    }
+
+
+    /**
+     * This test makes sure match() and matchResults() report the list name along with the pattern.
+     */
+    @Test
+    public void testMatchResults() {
+
+        Map<String,PatternList> listByName = new LinkedHashMap<>();
+        listByName.put("email.denylist", new PatternList(Sets.newHashSet("*@spam.com"), "@", false));
+        listByName.put("email.allowlist", new PatternList(Sets.newHashSet("friend@spam.com"), "@", false));
+        listByName.put("url.denylist", new PatternList(Sets.newHashSet("*spam*"), null, true));
+        ListMatcher listMatcher = new ListMatcher(listByName);
+
+        MatchResult result = listMatcher.match("email.denylist", "someone@spam.com");
+        Assert.assertEquals("email.denylist", result.getListName());
+        Assert.assertEquals("*@SPAM.COM", result.getPattern());
+        Assert.assertSame(MatchResult.MISS, listMatcher.match("email.denylist", "someone@example.com"));
+        Assert.assertSame(MatchResult.MISS, listMatcher.match("no.such.list", "someone@spam.com"));
+
+        List<MatchResult> results = listMatcher.matchResults("friend@spam.com");
+        Map<String,String> patternByListName = new HashMap<>();
+        for (MatchResult listResult : results) {
+            patternByListName.put(listResult.getListName(), listResult.getPattern());
+        }
+
+        Map<String,String> expected = new HashMap<>();
+        expected.put("email.denylist", "*@SPAM.COM");
+        expected.put("email.allowlist", "FRIEND@SPAM.COM");
+        expected.put("url.denylist", "*spam*");
+        Assert.assertEquals(expected, patternByListName);
+        Assert.assertEquals(listMatcher.matchingLists("friend@spam.com"), patternByListName.keySet());
+
+        Assert.assertTrue(listMatcher.matchResults(null).isEmpty());
+    }
+
+
+}
@@ -0,0 +1,105 @@
+package com.giladam.listmatch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Sets;
+
+
+public class MatchResultCacheTest {
+
+    private static MatchValue value(String value) {
+        return MatchValue.of(value, "@", false);
+    }
+
+
+    @Test
+    public void testCachesNormalizedValues() {
+
+        MatchResultCache cache = new MatchResultCache(100);
+
+        Assert.assertNull(cache.get(value("someone@example.com")));
+
+        cache.put(value("someone@example.com"), cache.generation(), true);
+        cache.put(value("nobody@example.com"), cache.generation(), false);
+
+        Assert.assertEquals(Boolean.TRUE, cache.get(value("SOMEONE@Example.com")));
+        Assert.assertEquals(Boolean.FALSE, cache.get(value("nobody@example.com")));
+
+        MatchCacheStats stats = cache.stats();
+        Assert.assertEquals(2, stats.getHitCount());
+        Assert.assertEquals(1, stats.getMissCount());
+        Assert.assertEquals(2, stats.getSize());
+        Assert.assertEquals(100, stats.getMaximumSize());
+    }
+
+
+    /**
+     * This test makes sure a value that keeps being looked up survives a flood of values that are only seen once.
+     */
+    @Test
+    public void testFrequentValuesAreNotEvictedByOneOffs() {
+
+        MatchResultCache cache = new MatchResultCache(64);
+
+        cache.put(value("frequent@example.com"), cache.generation(), true);
+
+        for (int i=0; i<10000; i++) {
+            if (i % 100 == 0) {
+                Assert.assertEquals("Lost after " + i, Boolean.TRUE, cache.get(value("frequent@example.com")));
+            }
+            cache.put(value("once" + i + "@example.com"), cache.generation(), false);
+        }
+
+        MatchCacheStats stats = cache.stats();
+        Assert.assertTrue(stats.getSize() <= 64);
+        Assert.assertTrue(stats.getEvictionCount() > 9000);
+    }
+
+
+    /**
+     * This test makes sure a result worked out before the cache was cleared is not kept.
+     */
+    @Test
+    public void testClearRejectsOlderResults() {
+
+        MatchResultCache cache = new MatchResultCache(10);
+
+        long generation = cache.generation();
+        cache.put(value("someone@example.com"), generation, true);
+        cache.clear();
+        cache.put(value("other@example.com"), generation, true);
+
+        Assert.assertNull(cache.get(value("someone@example.com")));
+        Assert.assertNull(cache.get(value("other@example.com")));
+        Assert.assertEquals(0, cache.stats().getSize());
+    }
+
+
+    /**
+     * This test makes sure a list with a cache answers the same as one without, and that changing the
+     * patterns clears it.
+     */
+    @Test
+    public void testPatternListWithCache() {
+
+        ConcurrentPatternList patternList = new ConcurrentPatternList(Sets.newHashSet("*@spam.com", "exact@example.com"),
+                                                                      "@", false, MatchingMode.STANDARD, 10);
+
+        for (int round=0; round<3; round++) {
+            Assert.assertTrue(patternList.matches("someone@SPAM.com"));
+            Assert.assertFalse(patternList.matches("someone@example.com"));
+            Assert.assertTrue(patternList.matches("exact@example.com"));
+        }
+
+        MatchCacheStats stats = patternList.getResultCacheStats();
+        Assert.assertEquals(4, stats.getHitCount());
+        Assert.assertEquals(2, stats.getMissCount());
+
+        patternList.add("*@example.com");
+        Assert.assertEquals(0, patternList.getResultCacheStats().getSize());
+        Assert.assertTrue(patternList.matches("someone@example.com"));
+
+        Assert.assertEquals(0, new PatternList(null, "@", false).getResultCacheStats().getMaximumSize());
+    }
+}
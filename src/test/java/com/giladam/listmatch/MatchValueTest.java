@@ -0,0 +1,94 @@
+package com.giladam.listmatch;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class MatchValueTest {
+
+    /**
+     * Makes sure values are split into components exactly the way patterns are.
+     */
+    @Test
+    public void testComponentsAgreeWithPatternListEntry() {
+
+        String[] values = {"", "@", "@@", "a", "a@", "@a", "a@b", "a@@b", "a@b@", "@a@b@@", "this@has@four@fields.com"};
+
+        for (String value : values) {
+            assertSameComponents(value, "@");
+            assertSameComponents(value, "");
+            assertSameComponents(value, null);
+        }
+
+        assertSameComponents("a::b:::c::", "::");
+        assertSameComponents("10.100.0.1", ".");
+    }
+
+
+    @Test
+    public void testCaseFolding() {
+
+        MatchValue value = MatchValue.of("Test@Example.com", "@", false);
+
+        Assert.assertTrue(value.regionEquals(0, 4, "TEST"));
+        Assert.assertEquals("EXAMPLE.COM".hashCode(), value.regionHash(value.componentStart(1), value.componentEnd(1)));
+
+        MatchValue caseSensitiveValue = MatchValue.of("Test@Example.com", "@", true);
+
+        Assert.assertFalse(caseSensitiveValue.regionEquals(0, 4, "TEST"));
+        Assert.assertTrue(caseSensitiveValue.regionEquals(0, 4, "Test"));
+    }
+
+
+    @Test
+    public void testNonAsciiValuesAreUpperCased() {
+
+        MatchValue value = MatchValue.of("더 유니 코드.abc", "", false);
+
+        Assert.assertTrue(value.regionEquals(0, value.length(), "더 유니 코드.ABC"));
+        Assert.assertEquals("STRASSE", CaseFolding.fold("straße"));
+    }
+
+
+    /**
+     * Makes sure patterns and values fold the same way whatever the default locale is, which in Turkish
+     * would upper-case "i" to a dotted capital I.
+     */
+    @Test
+    public void testCaseFoldingIgnoresDefaultLocale() {
+
+        Locale defaultLocale = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+
+        try {
+            Assert.assertEquals("ISTANBUL.ÇOM", CaseFolding.fold("istanbul.çom"));
+
+            String alreadyFolded = "ISTANBUL@EXAMPLE.COM";
+            Assert.assertSame(alreadyFolded, CaseFolding.fold(alreadyFolded));
+
+            PatternList patternList = new PatternList(Arrays.asList("info@*", "*@istanbul.çom"), "@", false);
+            Assert.assertTrue(patternList.matches("info@şehir.com"));
+            Assert.assertTrue(patternList.matches("someone@Istanbul.çom"));
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+
+
+    private static void assertSameComponents(String value, String delimiter) {
+
+        String[] expected = new PatternListEntry(value, delimiter).getComponents();
+        MatchValue matchValue = MatchValue.of(value, delimiter, true);
+
+        Assert.assertEquals("Component count for [" + value + "]", expected.length, matchValue.componentCount());
+
+        for (int i=0; i<expected.length; i++) {
+            Assert.assertEquals("Component " + i + " of [" + value + "]",
+                                expected[i],
+                                value.substring(matchValue.componentStart(i), matchValue.componentEnd(i)));
+        }
+    }
+}
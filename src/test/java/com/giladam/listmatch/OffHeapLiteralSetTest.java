@@ -0,0 +1,200 @@
+package com.giladam.listmatch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Sets;
+
+
+public class OffHeapLiteralSetTest {
+
+    private static boolean contains(LiteralSet literalSet, String value, boolean caseSensitive) {
+        MatchValue matchValue = MatchValue.of(value, null, caseSensitive);
+        return literalSet.contains(matchValue, 0, matchValue.length());
+    }
+
+
+    @Test
+    public void testAddContainsRemove() {
+
+        OffHeapLiteralSet literalSet = new OffHeapLiteralSet(10);
+
+        Assert.assertTrue(literalSet.add("USER@EXAMPLE.COM"));
+        Assert.assertFalse(literalSet.add("USER@EXAMPLE.COM"));
+        Assert.assertTrue(literalSet.add(""));
+        Assert.assertEquals(2, literalSet.size());
+
+        Assert.assertTrue(contains(literalSet, "user@example.com", false));
+        Assert.assertFalse(contains(literalSet, "user@example.com", true));
+        Assert.assertTrue(contains(literalSet, "", true));
+        Assert.assertFalse(contains(literalSet, "USER@EXAMPLE.CO", true));
+
+        Assert.assertTrue(literalSet.remove("USER@EXAMPLE.COM"));
+        Assert.assertFalse(literalSet.remove("USER@EXAMPLE.COM"));
+        Assert.assertFalse(contains(literalSet, "USER@EXAMPLE.COM", true));
+        Assert.assertEquals(1, literalSet.size());
+
+        Assert.assertTrue(literalSet.add("USER@EXAMPLE.COM"));
+        Assert.assertTrue(literalSet.contains("USER@EXAMPLE.COM"));
+    }
+
+
+    /**
+     * This test makes sure characters that take more than one byte in UTF-8 are kept and compared correctly,
+     * including surrogate pairs and half pairs.
+     */
+    @Test
+    public void testNonAsciiLiterals() {
+
+        OffHeapLiteralSet literalSet = new OffHeapLiteralSet(10);
+
+        String[] literals = {"這是中國人", "더 유니 코드", "STRASSE", "ÜBER", "😀 SMILE", "HALF \uD83D PAIR", "é"};
+
+        for (String literal : literals) {
+            Assert.assertTrue(literalSet.add(literal));
+        }
+
+        for (String literal : literals) {
+            Assert.assertTrue(literal, contains(literalSet, literal, true));
+            Assert.assertFalse(literal, contains(literalSet, literal + "X", true));
+        }
+
+        Assert.assertTrue(contains(literalSet, "über", false));
+        Assert.assertFalse(contains(literalSet, "e", true));
+    }
+
+
+    /**
+     * This test makes sure the off-heap set agrees with the heap set through enough changes to grow and
+     * rebuild its table and data several times.
+     */
+    @Test
+    public void testAgreesWithHeapLiteralSet() {
+
+        Random random = new Random(42);
+        OffHeapLiteralSet offHeap = new OffHeapLiteralSet(0);
+        HeapLiteralSet onHeap = new HeapLiteralSet(0);
+
+        List<String> literals = new ArrayList<>();
+        for (int i=0; i<30000; i++) {
+            literals.add("USER" + random.nextInt(20000) + "@DOMAIN" + random.nextInt(100) + ".COM");
+        }
+
+        for (int i=0; i<literals.size(); i++) {
+            String literal = literals.get(i);
+            if (i % 4 == 3) {
+                Assert.assertEquals(onHeap.remove(literal), offHeap.remove(literal));
+            } else {
+                Assert.assertEquals(onHeap.add(literal), offHeap.add(literal));
+            }
+        }
+
+        Assert.assertEquals(onHeap.size(), offHeap.size());
+
+        for (int i=0; i<20000; i++) {
+            String value = "user" + random.nextInt(20000) + "@domain" + random.nextInt(100) + ".com";
+            Assert.assertEquals(value, contains(onHeap, value, false), contains(offHeap, value, false));
+        }
+    }
+
+
+    /**
+     * This test makes sure checks that run while literals are added never fail, and always find the literals
+     * that were added before they started.  Each round adds enough literals to move on to new data chunks
+     * and rebuild the table a few times, while the checks keep looking up the literal being added.
+     *
+     * @throws InterruptedException
+     */
+    @Test
+    public void testChecksWhileAdding() throws InterruptedException {
+
+        for (int round=0; round<50; round++) {
+
+            final OffHeapLiteralSet literalSet = new OffHeapLiteralSet(0);
+            final AtomicInteger addedCount = new AtomicInteger();
+            final AtomicReference<Throwable> failure = new AtomicReference<>();
+            final int literalCount = 5000;
+
+            List<Thread> checkers = new ArrayList<>();
+            for (int t=0; t<3; t++) {
+
+                final Random random = new Random(t);
+
+                Thread checker = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            while (addedCount.get() < literalCount) {
+
+                                int added = addedCount.get();
+
+                                //the literal being added right now is the one that can be half-written:
+                                contains(literalSet, literal(added), true);
+
+                                if (added > 0) {
+                                    int index = random.nextInt(added);
+                                    Assert.assertTrue(literal(index), contains(literalSet, literal(index), true));
+                                }
+                            }
+                        } catch (Throwable e) {
+                            failure.compareAndSet(null, e);
+                        }
+                    }
+                };
+
+                checkers.add(checker);
+                checker.start();
+            }
+
+            for (int i=0; i<literalCount; i++) {
+                Assert.assertTrue(literalSet.add(literal(i)));
+                addedCount.incrementAndGet();
+            }
+
+            for (Thread checker : checkers) {
+                checker.join();
+            }
+
+            if (failure.get() != null) {
+                throw new AssertionError(failure.get());
+            }
+
+            Assert.assertTrue(literalSet.dataChunks().length > 1);
+        }
+    }
+
+
+    private static String literal(int index) {
+        return "USER" + index + "@A-DOMAIN-LONG-ENOUGH-TO-FILL-CHUNKS.COM";
+    }
+
+
+    /**
+     * This test makes sure a PatternList picks the off-heap set from the configured size on.
+     */
+    @Test
+    public void testPatternListAboveThreshold() {
+
+        System.setProperty(PatternList.OFF_HEAP_THRESHOLD_PROPERTY, "2");
+        try {
+            ConcurrentPatternList patternList = new ConcurrentPatternList(Sets.newHashSet("user@example.com",
+                                                                                          "other@example.com",
+                                                                                          "*@spam.com"), "@", false);
+
+            Assert.assertTrue(patternList.matches("USER@example.com"));
+            Assert.assertTrue(patternList.matches("someone@spam.com"));
+            Assert.assertFalse(patternList.matches("someone@example.com"));
+
+            patternList.add("*");
+            Assert.assertTrue(patternList.matches("someone@example.com"));
+        } finally {
+            System.clearProperty(PatternList.OFF_HEAP_THRESHOLD_PROPERTY);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.giladam.listmatch;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+public class PatternFileLoaderTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+
+    /**
+     * This test makes sure the files that come with the tests load into lists that match just like lists made
+     * from readPatternsFromFile().
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testLoadsLikeReadPatternsFromFile() throws IOException {
+
+        String[] fileNames = {"email_patterns.txt", "http_patterns.txt", "commented_lines_test.txt", "empty_file.txt"};
+        String[] values = {"user@domain.com", "someone@anylocalpart.com", "http://www.example.com/", "nope", "", "*"};
+
+        for (String fileName : fileNames) {
+
+            File patternsFile = new File(getClass().getClassLoader().getResource(fileName).getFile());
+
+            PatternList expected = new PatternList(ListMatcher.readPatternsFromFile(patternsFile), "@", false);
+            PatternFileLoader.LoadResult result = PatternFileLoader.load(patternsFile, "@", false, MatchingMode.STANDARD);
+            PatternList loaded = result.getPatternList();
+
+            Assert.assertEquals(fileName, expected.size(), loaded.size());
+            Assert.assertEquals(patternsFile.length(), result.getByteCount());
+
+            for (String value : values) {
+                Assert.assertEquals(fileName + " for " + value, expected.matches(value), loaded.matches(value));
+            }
+        }
+    }
+
+
+    /**
+     * This test makes sure a file that is split into several pieces keeps the comment, blank line and line
+     * break rules and loses no lines at the piece boundaries.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testLoadsFileInPieces() throws IOException {
+
+        File patternsFile = folder.newFile("patterns.txt");
+        int patternCount = 100000;
+
+        try (OutputStream out = Files.newOutputStream(patternsFile.toPath())) {
+            out.write("# a header comment\r\n\r\n   \t \n".getBytes(UTF_8));
+            for (int i=0; i<patternCount; i++) {
+                String line;
+                switch (i % 4) {
+                    case 0: line = "user" + i + "@domain.com\n"; break;
+                    case 1: line = "  這是中國人" + i + "@domain.com  # with a comment\r\n"; break;
+                    case 2: line = "\t*@sub" + i + ".example.com\n"; break;
+                    default: line = "SHOUT" + i + "@**.example.com\n"; break;
+                }
+                out.write(line.getBytes(UTF_8));
+            }
+            //no line break after the last one:
+            out.write("last@domain.com".getBytes(UTF_8));
+        }
+
+        PatternList expected = new PatternList(ListMatcher.readPatternsFromFile(patternsFile), "@", false);
+
+        //with a single thread only some of the pieces are read ahead of the one being added:
+        for (int parallelism : new int[]{1, 4}) {
+
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            PatternFileLoader.LoadResult result;
+            try {
+                result = PatternFileLoader.load(patternsFile, "@", false, MatchingMode.STANDARD, pool);
+            } finally {
+                pool.shutdown();
+            }
+
+            PatternList loaded = result.getPatternList();
+
+            Assert.assertEquals(patternCount + 1, result.getPatternCount());
+            Assert.assertEquals(patternCount + 4, result.getLineCount());
+            Assert.assertEquals(expected.size(), loaded.size());
+
+            for (int i=0; i<patternCount; i+=997) {
+                String[] values = {"user" + i + "@domain.com", "這是中國人" + i + "@DOMAIN.com", "x@sub" + i + ".example.com",
+                                   "shout" + i + "@a.example.com", "other" + i + "@domain.com"};
+                for (String value : values) {
+                    Assert.assertEquals(value, expected.matches(value), loaded.matches(value));
+                }
+            }
+
+            Assert.assertTrue(loaded.matches("last@domain.com"));
+        }
+    }
+
+
+    /**
+     * This test makes sure a file that isn't valid UTF-8 fails to load instead of loading garbled patterns.
+     *
+     * @throws IOException
+     */
+    @Test(expected = IOException.class)
+    public void testInvalidUtf8() throws IOException {
+
+        File patternsFile = folder.newFile("invalid.txt");
+        Files.write(patternsFile.toPath(), new byte[] {'a', '@', (byte) 0xC3, (byte) 0x28, '\n'});
+
+        PatternFileLoader.load(patternsFile, "@", false, MatchingMode.STANDARD);
+    }
+}
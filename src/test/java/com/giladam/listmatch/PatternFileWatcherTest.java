@@ -0,0 +1,184 @@
+package com.giladam.listmatch;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+public class PatternFileWatcherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+
+    /**
+     * This test makes sure a changed file replaces its list, and that a file that can't be read leaves the
+     * previous list in place.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testChangedFileIsReloaded() throws IOException {
+
+        File denylistFile = folder.newFile("denylist.txt");
+        writePatterns(denylistFile, 1000, "*@spam.com");
+
+        ListMatcher listMatcher = new ListMatcher(Collections.<String,PatternList>emptyMap());
+        RecordingListener listener = new RecordingListener();
+
+        try (PatternFileWatcher watcher = new PatternFileWatcher(listMatcher, listener)) {
+
+            watcher.watch("email.denylist", denylistFile, "@", false, MatchingMode.STANDARD);
+
+            Assert.assertTrue(listMatcher.matchesList("email.denylist", "someone@spam.com"));
+            Assert.assertFalse(listMatcher.matchesList("email.denylist", "someone@junk.com"));
+
+            //nothing changed, so nothing is reloaded:
+            watcher.checkForChanges();
+            Assert.assertEquals(Arrays.asList("email.denylist"), listener.reloadedLists);
+
+            writePatterns(denylistFile, 2000, "*@junk.com", "# a comment");
+
+            //the first check only sees the change, in case the file is still being written:
+            watcher.checkForChanges();
+            Assert.assertTrue(listMatcher.matchesList("email.denylist", "someone@spam.com"));
+
+            //it's still being written, so it's not read yet:
+            writePatterns(denylistFile, 3000, "*@junk.com", "# a comment", "*@more.com");
+            watcher.checkForChanges();
+            Assert.assertTrue(listMatcher.matchesList("email.denylist", "someone@spam.com"));
+
+            watcher.checkForChanges();
+
+            Assert.assertFalse(listMatcher.matchesList("email.denylist", "someone@spam.com"));
+            Assert.assertTrue(listMatcher.matchesList("email.denylist", "someone@junk.com"));
+            Assert.assertTrue(listMatcher.matchesList("email.denylist", "someone@more.com"));
+            Assert.assertEquals(Arrays.asList("email.denylist", "email.denylist"), listener.reloadedLists);
+
+            Assert.assertTrue(denylistFile.delete());
+            watcher.checkForChanges();
+            watcher.checkForChanges();
+
+            Assert.assertTrue(listMatcher.matchesList("email.denylist", "someone@junk.com"));
+            Assert.assertEquals(Arrays.asList("email.denylist"), listener.failedLists);
+        }
+    }
+
+
+    /**
+     * This test makes sure a listener that throws doesn't stop the background thread, and that a
+     * reloaded list counts as reloaded whatever the listener does.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testThrowingListenerKeepsPolling() throws Exception {
+
+        File denylistFile = folder.newFile("denylist.txt");
+        writePatterns(denylistFile, 1000, "*@spam.com");
+
+        ListMatcher listMatcher = new ListMatcher(Collections.<String,PatternList>emptyMap());
+        final CountDownLatch calls = new CountDownLatch(3);
+
+        ReloadListener listener = new ReloadListener() {
+            @Override
+            public void reloaded(String listName, File patternsFile, int patternCount, long durationMillis) {
+                calls.countDown();
+                throw new IllegalStateException("reloaded");
+            }
+
+            @Override
+            public void reloadFailed(String listName, File patternsFile, Exception cause) {
+                calls.countDown();
+                throw new IllegalStateException("reloadFailed");
+            }
+        };
+
+        try (PatternFileWatcher watcher = new PatternFileWatcher(listMatcher, listener)) {
+
+            watcher.watch("email.denylist", denylistFile, "@", false, MatchingMode.STANDARD);
+            watcher.start(10, TimeUnit.MILLISECONDS);
+
+            Assert.assertTrue(denylistFile.delete());
+            Thread.sleep(200);
+            writePatterns(denylistFile, 2000, "*@junk.com");
+
+            Assert.assertTrue(calls.await(10, TimeUnit.SECONDS));
+            Assert.assertTrue(listMatcher.matchesList("email.denylist", "someone@junk.com"));
+        }
+    }
+
+
+    /**
+     * This test makes sure the background thread picks up changes on its own.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testBackgroundPolling() throws Exception {
+
+        File allowlistFile = folder.newFile("allowlist.txt");
+        writePatterns(allowlistFile, 1000, "user@example.com");
+
+        ListMatcher listMatcher = new ListMatcher(Collections.<String,PatternList>emptyMap());
+        final CountDownLatch reloaded = new CountDownLatch(2);
+
+        ReloadListener listener = new RecordingListener() {
+            @Override
+            public void reloaded(String listName, File patternsFile, int patternCount, long durationMillis) {
+                reloaded.countDown();
+            }
+        };
+
+        try (PatternFileWatcher watcher = new PatternFileWatcher(listMatcher, listener)) {
+
+            watcher.watch("email.allowlist", allowlistFile, "@", false, MatchingMode.STANDARD);
+            watcher.start(10, TimeUnit.MILLISECONDS);
+
+            writePatterns(allowlistFile, 2000, "*@example.com");
+
+            Assert.assertTrue(reloaded.await(10, TimeUnit.SECONDS));
+            Assert.assertTrue(listMatcher.matchesList("email.allowlist", "anyone@example.com"));
+        }
+    }
+
+
+    private static void writePatterns(File patternsFile, long lastModified, String... patterns) throws IOException {
+        Files.write(patternsFile.toPath(), Arrays.asList(patterns), Charset.forName("UTF-8"));
+        //file times can be too coarse to see two quick writes, so make sure each version looks different:
+        Assert.assertTrue(patternsFile.setLastModified(lastModified));
+    }
+
+
+
+    private static class RecordingListener implements ReloadListener {
+
+        private final List<String> reloadedLists = new ArrayList<>();
+
+        private final List<String> failedLists = new ArrayList<>();
+
+
+        @Override
+        public void reloaded(String listName, File patternsFile, int patternCount, long durationMillis) {
+            reloadedLists.add(listName);
+        }
+
+
+        @Override
+        public void reloadFailed(String listName, File patternsFile, Exception cause) {
+            failedLists.add(listName);
+        }
+    }
+}
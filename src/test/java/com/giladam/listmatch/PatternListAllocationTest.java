@@ -0,0 +1,149 @@
+package com.giladam.listmatch;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+
+import com.google.common.collect.Sets;
+
+
+/**
+ * Makes sure that checking values does not allocate anything once everything is warmed up, using the
+ * per-thread allocation counter of the JVM.
+ *
+ * @author Gil Adam
+ *
+ */
+public class PatternListAllocationTest {
+
+    private static final int WARMUP_ROUNDS = 50000;
+
+    private static final int MEASURED_ROUNDS = 100000;
+
+    private static final int MEASURED_ATTEMPTS = 3;
+
+    //a little room for whatever the allocation counter itself needs:
+    private static final long ALLOWED_BYTES = 1024;
+
+    private final Logger libraryLogger = (Logger) LoggerFactory.getLogger("com.giladam");
+
+    private Level previousLevel;
+
+
+    @Before
+    public void quietLogging() {
+        //debug logging is turned on for tests, and building log messages allocates:
+        previousLevel = libraryLogger.getLevel();
+        libraryLogger.setLevel(Level.INFO);
+    }
+
+
+    @After
+    public void restoreLogging() {
+        libraryLogger.setLevel(previousLevel);
+    }
+
+
+    @Test
+    public void testEmailMatchingDoesNotAllocate() {
+
+        String[] values = {"user@domain.com", "Someone@AnyLocalPart.com", "startswith.more@domain.com",
+                           "nobody@nowhere.org", "a@b@c", ""};
+
+        for (MatchingMode mode : MatchingMode.values()) {
+            PatternList patternList = new PatternList(Sets.newHashSet("user@domain.com",
+                                                                      "*@anylocalpart.com",
+                                                                      "startswith*@domain.com",
+                                                                      "*endswith@domain.com",
+                                                                      "*@*.example.com",
+                                                                      "anydomain@*"), "@", false, mode);
+
+            assertNoAllocation(mode.toString(), patternList, values);
+        }
+    }
+
+
+    @Test
+    public void testIpAndUrlMatchingDoesNotAllocate() {
+
+        PatternList ipList = new PatternList(Sets.newHashSet("10.0.0.*", "10.100.0.1"), ".", false);
+        assertNoAllocation("ip", ipList, new String[]{"10.0.0.1", "10.100.0.1", "20.0.0.2"});
+
+        PatternList ipv4List = new PatternList(Sets.newHashSet("10.0.0.*", "172.16.0.0/12", "10.*.0.1"), ".", false, MatchingMode.IPV4);
+        assertNoAllocation("ipv4", ipv4List, new String[]{"10.0.0.1", "172.20.1.1", "10.5.0.1", "20.0.0.2", "10.0.0.x"});
+
+        PatternList ipv6List = new PatternList(Sets.newHashSet("2001:db8::/32", "fe80::1", "2001:db9:*"), null, false, MatchingMode.IPV6);
+        assertNoAllocation("ipv6", ipv6List, new String[]{"2001:db8::1", "FE80:0:0:0:0:0:0:1", "2001:db9::", "::ffff:10.0.0.1", "x"});
+
+        PatternList urlList = new PatternList(Sets.newHashSet("http://www.example.com/allowed/*",
+                                                              "*/robots.txt",
+                                                              "*www.*.com*"), null, false);
+        assertNoAllocation("url", urlList, new String[]{"http://www.example.com/allowed/url",
+                                                        "https://www.examples.com/robots.txt",
+                                                        "http://www.example.edu/index.html"});
+
+        PatternList urlIndexList = new PatternList(Sets.newHashSet("http://www.example.com/allowed/*",
+                                                                   "*://*.example.org/*",
+                                                                   "*/robots.txt"), null, false, MatchingMode.URL);
+        assertNoAllocation("url index", urlIndexList, new String[]{"http://www.example.com/allowed/url",
+                                                                   "https://a.example.org/?q=1",
+                                                                   "https://www.examples.com/robots.txt",
+                                                                   "not a url"});
+    }
+
+
+    @Test
+    public void testOffHeapMatchingDoesNotAllocate() {
+
+        System.setProperty(PatternList.OFF_HEAP_THRESHOLD_PROPERTY, "0");
+        try {
+            PatternList patternList = new PatternList(Sets.newHashSet("user@domain.com", "這是中國人@domain.com"), "@", false);
+            assertNoAllocation("off-heap", patternList, new String[]{"user@domain.com", "USER@Domain.com",
+                                                                     "nobody@nowhere.org"});
+        } finally {
+            System.clearProperty(PatternList.OFF_HEAP_THRESHOLD_PROPERTY);
+        }
+    }
+
+
+    private static void assertNoAllocation(String description, PatternList patternList, String[] values) {
+
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported() && threadBean.isThreadAllocatedMemoryEnabled());
+
+        long threadId = Thread.currentThread().getId();
+        int matched = 0;
+
+        for (int i=0; i<WARMUP_ROUNDS; i++) {
+            matched += patternList.matches(values[i % values.length]) ? 1 : 0;
+        }
+
+        //the JIT can still be busy (and deoptimizing allocates), so take the best of a few runs:
+        long allocated = Long.MAX_VALUE;
+
+        for (int attempt=0; attempt<MEASURED_ATTEMPTS; attempt++) {
+
+            long before = threadBean.getThreadAllocatedBytes(threadId);
+
+            for (int i=0; i<MEASURED_ROUNDS; i++) {
+                matched += patternList.matches(values[i % values.length]) ? 1 : 0;
+            }
+
+            allocated = Math.min(allocated, threadBean.getThreadAllocatedBytes(threadId) - before);
+        }
+
+        Assert.assertTrue(matched > 0);
+        Assert.assertTrue("Matching " + description + " allocated " + allocated + " bytes for " + MEASURED_ROUNDS + " values",
+                          allocated < ALLOWED_BYTES);
+    }
+}
@@ -0,0 +1,158 @@
+package com.giladam.listmatch;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.Sets;
+
+
+public class PatternListBuilderTest {
+
+    //enough patterns for the exact matches to be split into partitions:
+    private static final int PATTERN_COUNT = 80000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+
+    /**
+     * Makes sure a big list built on several threads matches exactly like one built by the constructor.
+     */
+    @Test
+    public void testBuiltListMatchesLikeConstructedList() {
+
+        Random random = new Random(42);
+        List<String> patterns = randomPatterns(random);
+        List<String> values = randomValues(random, patterns);
+
+        PatternList constructed = new PatternList(patterns, "@", false);
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        try {
+            PatternList built = new PatternList.Builder(patterns, "@", false).pool(pool).build();
+
+            Assert.assertTrue(built.getExactMatches() instanceof PartitionedLiteralSet);
+            Assert.assertEquals(constructed.size(), built.size());
+            assertSameMatches(constructed, built, values);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+
+    /**
+     * Makes sure a list with off-heap partitions works, and that a snapshot of it loads as a single set.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testOffHeapPartitionsAndSnapshot() throws IOException {
+
+        Random random = new Random(7);
+        List<String> patterns = randomPatterns(random);
+        List<String> values = randomValues(random, patterns);
+
+        PatternList constructed = new PatternList(patterns, "@", true);
+        ForkJoinPool pool = new ForkJoinPool(2);
+
+        System.setProperty(PatternList.OFF_HEAP_THRESHOLD_PROPERTY, "0");
+        try {
+            PatternList built = new PatternList.Builder(patterns, "@", true).pool(pool).build();
+            assertSameMatches(constructed, built, values);
+
+            File snapshotFile = folder.newFile("built.snapshot");
+            PatternListSnapshot.write(Collections.singletonMap("built", built), snapshotFile);
+            Map<String,PatternList> loaded = PatternListSnapshot.load(snapshotFile);
+
+            Assert.assertEquals(constructed.size(), loaded.get("built").size());
+            assertSameMatches(constructed, loaded.get("built"), values);
+        } finally {
+            System.clearProperty(PatternList.OFF_HEAP_THRESHOLD_PROPERTY);
+            pool.shutdown();
+        }
+    }
+
+
+    /**
+     * Makes sure small lists, settings and changes after building all work like they do for the constructor.
+     */
+    @Test
+    public void testSettingsAndSmallLists() {
+
+        PatternList built = new PatternList.Builder(Sets.newHashSet("user@domain.com", "**@any***.com", "*.example.com"), null, false)
+                                           .matchingMode(MatchingMode.DOMAIN)
+                                           .resultCacheSize(10)
+                                           .build();
+
+        Assert.assertEquals(MatchingMode.DOMAIN, built.getMatchingMode());
+        Assert.assertEquals(10, built.getResultCacheSize());
+        Assert.assertEquals(3, built.size());
+        Assert.assertTrue(built.matches("USER@domain.com"));
+        Assert.assertTrue(built.matches("someone@anything.com"));
+        Assert.assertTrue(built.matches("mail.example.com"));
+        Assert.assertFalse(built.matches("example.org"));
+
+        Assert.assertEquals(0, new PatternList.Builder(null, "@", false).build().size());
+        Assert.assertTrue(new PatternList.Builder(Sets.newHashSet("**"), "@", false).build().matches("anything"));
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeResultCacheSize() {
+        new PatternList.Builder(Sets.newHashSet("a"), "@", false).resultCacheSize(-1);
+    }
+
+
+    private static List<String> randomPatterns(Random random) {
+
+        List<String> patterns = new ArrayList<>(PATTERN_COUNT);
+        for (int i=0; i<PATTERN_COUNT; i++) {
+            String localPart = "User" + random.nextInt(PATTERN_COUNT);
+            String domain = "Domain" + random.nextInt(1000) + ".com";
+
+            switch (random.nextInt(20)) {
+                case 0:
+                    patterns.add("**@" + domain);
+                    break;
+                case 1:
+                    patterns.add(localPart.substring(0, 5) + "*" + random.nextInt(10) + "@" + domain);
+                    break;
+                default:
+                    patterns.add(localPart + "@" + domain);
+            }
+        }
+
+        return patterns;
+    }
+
+
+    private static List<String> randomValues(Random random, List<String> patterns) {
+
+        List<String> values = new ArrayList<>();
+        for (int i=0; i<2000; i++) {
+            values.add(patterns.get(random.nextInt(patterns.size())).replace("*", "x").toLowerCase());
+            values.add("user" + random.nextInt(PATTERN_COUNT) + "@domain" + random.nextInt(1000) + ".com");
+            values.add("Other" + random.nextInt(PATTERN_COUNT) + "@Domain" + random.nextInt(1000) + ".com");
+        }
+
+        return values;
+    }
+
+
+    private static void assertSameMatches(PatternList expected, PatternList actual, List<String> values) {
+        for (String value : values) {
+            Assert.assertEquals(value, expected.matches(value), actual.matches(value));
+        }
+    }
+}
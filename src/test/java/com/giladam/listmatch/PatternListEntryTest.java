@@ -1,46 +1,93 @@
-package com.giladam.listmatch;
-
-import nl.jqno.equalsverifier.EqualsVerifier;
-
-import org.junit.Assert;
-import org.junit.Test;
-
-import com.google.common.base.Objects;
-
-
-public class PatternListEntryTest {
-
-    @Test
-    public void testHashCode() {
-
-        PatternListEntry pe1 = new PatternListEntry("test", "");
-        PatternListEntry pe2 = new PatternListEntry("test2", "");
-
-        Assert.assertNotEquals(pe1.hashCode(), pe2.hashCode());
-        Assert.assertFalse(Objects.equal(pe1, pe2));
-    }
-
-
-    @Test
-    public void testEquals() {
-        EqualsVerifier.forClass(PatternListEntry.class).verify();
-    }
-
-
-    @Test
-    public void testToString_EmptyComponents() {
-
-        PatternListEntry pe = new PatternListEntry("", "");
-
-        Assert.assertEquals("[]", pe.toString());
-    }
-
-
-    @Test
-    public void testToString_EmailAddressPattern() {
-
-        PatternListEntry pe = new PatternListEntry("email@domain.com", "@");
-
-        Assert.assertEquals("['email', 'domain.com']", pe.toString());
-    }
-}
+package com.giladam.listmatch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import nl.jqno.equalsverifier.EqualsVerifier;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Objects;
+
+
+public class PatternListEntryTest {
+
+    @Test
+    public void testHashCode() {
+
+        PatternListEntry pe1 = new PatternListEntry("test", "");
+        PatternListEntry pe2 = new PatternListEntry("test2", "");
+
+        Assert.assertNotEquals(pe1.hashCode(), pe2.hashCode());
+        Assert.assertFalse(Objects.equal(pe1, pe2));
+    }
+
+
+    @Test
+    public void testEquals() {
+        EqualsVerifier.forClass(PatternListEntry.class).verify();
+    }
+
+
+    @Test
+    public void testToString_EmptyComponents() {
+
+        PatternListEntry pe = new PatternListEntry("", "");
+
+        Assert.assertEquals("[]", pe.toString());
+    }
+
+
+    @Test
+    public void testToString_EmailAddressPattern() {
+
+        PatternListEntry pe = new PatternListEntry("email@domain.com", "@");
+
+        Assert.assertEquals("['email', 'domain.com']", pe.toString());
+    }
+
+
+    @Test
+    public void testLiteralComponentsAreShared() {
+
+        PatternListEntry pe1 = new PatternListEntry("sales*@" + new String("GMAIL.COM"), "@");
+        PatternListEntry pe2 = new PatternListEntry(new String[]{"*", new String("GMAIL.COM")});
+        PatternListEntry pe3 = new PatternListEntry("sales*@yahoo.com", "@");
+
+        Assert.assertNotSame(pe1.getComponents()[1], pe2.getComponents()[1]);
+
+        ComponentSymbols.internAll(Arrays.asList(pe1, pe2, pe3));
+
+        Assert.assertSame(pe1.getComponents()[1], pe2.getComponents()[1]);
+        Assert.assertSame(PatternList.WILDCARD, pe2.getComponents()[0]);
+        Assert.assertNotSame(pe1.getComponents()[0], pe3.getComponents()[0]);
+        Assert.assertEquals(pe1.getComponents()[0], pe3.getComponents()[0]);
+
+        //the patterns of a list share them once it is built:
+        PatternList patternList = new PatternList(Arrays.asList("a*@gmail.com", "b*@gmail.com"), "@", false);
+        List<PatternListEntry> entries = new ArrayList<>(patternList.getWildcardEntries());
+        Assert.assertSame(entries.get(0).getComponents()[1], entries.get(1).getComponents()[1]);
+    }
+
+
+    /**
+     * Makes sure components are split exactly like String.split() with the quoted delimiter used to.
+     */
+    @Test
+    public void testSplitAgreesWithStringSplit() {
+
+        String[] values = {"a", "@", "@@", "a@", "@a", "a@b", "a@@b", "a@b@", "@a@b@@", "a.b", "a*b", "a::b:::c::"};
+        String[] delimiters = {"@", ".", "*", "::", "\\", "$"};
+
+        for (String value : values) {
+            for (String delimiter : delimiters) {
+                Assert.assertArrayEquals(value + " split on " + delimiter,
+                                         value.split(Pattern.quote(delimiter)),
+                                         PatternListEntry.split(value, delimiter));
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.giladam.listmatch;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Sets;
+
+
+public class PatternListMetricsTest {
+
+    /**
+     * This test makes sure every kind of outcome is counted, and pattern hits are counted for the wildcard
+     * pattern that matched.
+     */
+    @Test
+    public void testCountsOutcomesAndPatternHits() {
+
+        PatternList patternList = new PatternList(Sets.newHashSet("user@domain.com", "*@anylocalpart.com",
+                                                                  "startswith*@domain.com"), "@", false);
+        PatternListMetrics metrics = new PatternListMetrics(1, true);
+        patternList.setMatchListener(metrics);
+
+        Assert.assertTrue(patternList.matches("USER@domain.com"));
+        Assert.assertTrue(patternList.matches("someone@anylocalpart.com"));
+        Assert.assertTrue(patternList.matches("other@anylocalpart.com"));
+        Assert.assertFalse(patternList.matches("nobody@nowhere.com"));
+        Assert.assertFalse(patternList.matches(null));
+
+        Assert.assertEquals(1, metrics.getExactHitCount());
+        Assert.assertEquals(0, metrics.getMatchAllHitCount());
+        Assert.assertEquals(2, metrics.getWildcardHitCount());
+        //null values aren't checked at all:
+        Assert.assertEquals(1, metrics.getMissCount());
+        Assert.assertEquals(4, metrics.getCheckCount());
+        Assert.assertEquals(4, metrics.getLatencySampleCount());
+        Assert.assertTrue(metrics.getLatencyPercentileNanos(50) <= metrics.getLatencyPercentileNanos(100));
+
+        PatternListEntry anyLocalPart = new PatternListEntry("*@ANYLOCALPART.COM", "@");
+        Map<PatternListEntry,Long> hitCounts = metrics.getPatternHitCounts();
+        Assert.assertEquals(Collections.singletonMap(anyLocalPart, 2L), hitCounts);
+
+        Assert.assertEquals(Arrays.asList(new PatternListEntry("STARTSWITH*@DOMAIN.COM", "@")),
+                            metrics.getUnusedPatterns(patternList));
+
+        patternList.setMatchListener(null);
+        patternList.matches("user@domain.com");
+        Assert.assertEquals(4, metrics.getCheckCount());
+    }
+
+
+    /**
+     * This test makes sure the match-all pattern, cached results and batches are counted too.
+     */
+    @Test
+    public void testCountsMatchAllCachedAndBatches() {
+
+        PatternList everything = new PatternList(Sets.newHashSet("*"), "@", false);
+        PatternListMetrics everythingMetrics = new PatternListMetrics(0, false);
+        everything.setMatchListener(everythingMetrics);
+
+        everything.matches("anything");
+        Assert.assertEquals(1, everythingMetrics.getMatchAllHitCount());
+        Assert.assertEquals(0, everythingMetrics.getLatencySampleCount());
+        Assert.assertTrue(everythingMetrics.getPatternHitCounts().isEmpty());
+
+        PatternList cached = new PatternList(Sets.newHashSet("*@anylocalpart.com"), "@", false, MatchingMode.STANDARD, 10);
+        PatternListMetrics cachedMetrics = new PatternListMetrics(1, true);
+        cached.setMatchListener(cachedMetrics);
+
+        List<String> values = Arrays.asList("a@anylocalpart.com", "a@anylocalpart.com", "b@elsewhere.com", "b@elsewhere.com");
+        cached.matchesAll(values);
+
+        Assert.assertEquals(2, cachedMetrics.getWildcardHitCount());
+        Assert.assertEquals(2, cachedMetrics.getMissCount());
+        //the second hit came from the cache, which doesn't know the pattern:
+        Assert.assertEquals(Long.valueOf(1), cachedMetrics.getPatternHitCounts().get(new PatternListEntry("*@ANYLOCALPART.COM", "@")));
+    }
+
+
+    /**
+     * This test makes sure the registry gives lists of a ListMatcher their metrics, including lists that are
+     * replaced later, whose counts carry on.
+     */
+    @Test
+    public void testRegistryWithListMatcher() {
+
+        ListMatcher listMatcher = new ListMatcher(Collections.singletonMap("email", new PatternList(Sets.newHashSet("user@domain.com"), "@", false)));
+        MatchMetricsRegistry registry = new MatchMetricsRegistry();
+        listMatcher.setMatchListenerRegistry(registry);
+
+        Assert.assertTrue(listMatcher.matchesList("email", "user@domain.com"));
+
+        listMatcher.replaceList("email", new PatternList(Sets.newHashSet("*@domain.com"), "@", false));
+        listMatcher.replaceList("ip", new PatternList(Sets.newHashSet("10.0.*.*"), ".", false));
+
+        Assert.assertEquals(Sets.newHashSet("ip"), listMatcher.matchingLists("10.0.1.2"));
+        Assert.assertTrue(listMatcher.matchesList("email", "other@domain.com"));
+
+        PatternListMetrics emailMetrics = registry.getMetrics("email");
+        Assert.assertEquals(1, emailMetrics.getExactHitCount());
+        Assert.assertEquals(1, emailMetrics.getWildcardHitCount());
+        Assert.assertEquals(1, emailMetrics.getMissCount());
+        Assert.assertEquals(1, registry.getMetrics("ip").getWildcardHitCount());
+        Assert.assertEquals(2, registry.getAllMetrics().size());
+
+        listMatcher.setMatchListenerRegistry(null);
+        Assert.assertNull(listMatcher.getList("email").getMatchListener());
+    }
+
+
+    /**
+     * This test makes sure a listener that checks another value while it is being told about a check
+     * doesn't change the value the rest of the lists are checked with.
+     */
+    @Test
+    public void testListenerThatChecksOtherValues() {
+
+        final PatternList auditList = new PatternList(Sets.newHashSet("audited@domain.com"), "@", false);
+
+        PatternList firstList = new PatternList(Sets.newHashSet("user@domain.com"), "@", false);
+        firstList.setMatchListener(new MatchListener() {
+            @Override
+            public boolean timeNextCheck() {
+                return false;
+            }
+
+            @Override
+            public void checked(MatchOutcome outcome, PatternListEntry matchedPattern, long elapsedNanos) {
+                Assert.assertTrue(auditList.matches("audited@domain.com"));
+            }
+        });
+
+        Map<String,PatternList> listByName = new LinkedHashMap<>();
+        listByName.put("first", firstList);
+        listByName.put("second", new PatternList(Sets.newHashSet("user@*"), "@", false));
+        ListMatcher listMatcher = new ListMatcher(listByName);
+
+        Assert.assertEquals(Sets.newHashSet("first", "second"), listMatcher.matchingLists("user@domain.com"));
+        Assert.assertEquals(2, listMatcher.matchResults("user@domain.com").size());
+        Assert.assertEquals(Collections.singleton("second"), listMatcher.matchingLists("user@other.com"));
+    }
+
+
+    /**
+     * This test makes sure counts from many threads at once all add up.
+     *
+     * @throws InterruptedException
+     */
+    @Test
+    public void testStripedCounterFromManyThreads() throws InterruptedException {
+
+        final StripedCounter counter = new StripedCounter();
+        Thread[] threads = new Thread[8];
+
+        for (int i=0; i<threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j=0; j<100000; j++) {
+                        counter.increment();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertEquals(800000, counter.sum());
+    }
+}
@@ -0,0 +1,184 @@
+package com.giladam.listmatch;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.Sets;
+
+
+public class PatternListSnapshotTest {
+
+    private static final String[] VALUES = {"user@domain.com", "USER@DOMAIN.COM", "someone@anylocalpart.com",
+                                            "startswithmore@domain.com", "x@mail.example.com", "a@b@c",
+                                            "這是中國人@domain.com", "http://www.example.com/allowed/page",
+                                            "http://www.example.com/other", "10.0.0.1", "10.1.0.1", "", "anything"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+
+    /**
+     * This test makes sure loaded lists keep their settings and match exactly like the lists that were saved.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testLoadedListsMatchTheSame() throws IOException {
+
+        Map<String,PatternList> listByName = new LinkedHashMap<>();
+        listByName.put("email.allowlist", new PatternList(Sets.newHashSet("user@domain.com", "*@anylocalpart.com",
+                                                                          "startswith*@domain.com", "這是中國人@domain.com",
+                                                                          "*@", "*@*.example.com"), "@", false));
+        listByName.put("email.sensitive", new PatternList(Sets.newHashSet("user@domain.com", "*@*.example.com"),
+                                                          "@", true, MatchingMode.AUTOMATON, 100));
+        listByName.put("email.domains", new PatternList(Sets.newHashSet("*@*.example.com", "*@domain.com"),
+                                                        "@", false, MatchingMode.DOMAIN));
+        listByName.put("url", new PatternList(Sets.newHashSet("http://www.example.com/allowed/*"), null, false));
+        listByName.put("ip", new PatternList(Sets.newHashSet("10.0.*.*", "10.1.0.1"), ".", false));
+        listByName.put("everything", new PatternList(Sets.newHashSet("*"), "", false));
+        listByName.put("empty", new PatternList(null, "@", false));
+
+        File snapshotFile = folder.newFile("lists.snapshot");
+        PatternListSnapshot.write(new ListMatcher(listByName), snapshotFile);
+
+        Map<String,PatternList> loaded = PatternListSnapshot.load(snapshotFile);
+        Assert.assertEquals(listByName.keySet(), loaded.keySet());
+
+        for (String listName : listByName.keySet()) {
+
+            PatternList original = listByName.get(listName);
+            PatternList copy = loaded.get(listName);
+
+            Assert.assertEquals(original.size(), copy.size());
+            Assert.assertEquals(original.getMatchingMode(), copy.getMatchingMode());
+            Assert.assertEquals(original.getResultCacheSize(), copy.getResultCacheSize());
+
+            for (String value : VALUES) {
+                Assert.assertEquals(listName + " for " + value, original.matches(value), copy.matches(value));
+            }
+        }
+    }
+
+
+    /**
+     * This test makes sure a list kept off-heap, with removed patterns in it, is saved and loaded correctly.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testOffHeapListRoundTrip() throws IOException {
+
+        System.setProperty(PatternList.OFF_HEAP_THRESHOLD_PROPERTY, "0");
+        try {
+            ConcurrentPatternList patternList = new ConcurrentPatternList(null, "@", false);
+            for (int i=0; i<5000; i++) {
+                patternList.add("user" + i + "@example.com");
+            }
+            patternList.remove("user7@example.com");
+
+            File snapshotFile = folder.newFile("big.snapshot");
+            PatternListSnapshot.write(Collections.<String,PatternList>singletonMap("denylist", patternList), snapshotFile);
+
+            PatternList loaded = PatternListSnapshot.load(snapshotFile, false).get("denylist");
+
+            Assert.assertEquals(4999, loaded.size());
+            Assert.assertTrue(loaded.matches("USER4999@example.com"));
+            Assert.assertTrue(loaded.matches("user0@example.com"));
+            Assert.assertFalse(loaded.matches("user7@example.com"));
+            Assert.assertFalse(loaded.matches("user5000@example.com"));
+        } finally {
+            System.clearProperty(PatternList.OFF_HEAP_THRESHOLD_PROPERTY);
+        }
+    }
+
+
+    /**
+     * This test makes sure writing a snapshot over one that is loaded replaces the file instead of changing
+     * it, so the lists loaded from the old one keep working, and that no temporary files are left behind.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testOverwritingLoadedSnapshot() throws IOException {
+
+        File snapshotFile = folder.newFile("replaced.snapshot");
+        PatternListSnapshot.write(Collections.singletonMap("list", new PatternList(Sets.newHashSet("user@domain.com"), "@", false)),
+                                  snapshotFile);
+
+        PatternList loaded = PatternListSnapshot.load(snapshotFile, false).get("list");
+
+        PatternListSnapshot.write(Collections.singletonMap("list", new PatternList(Sets.newHashSet("other@domain.com"), "@", false)),
+                                  snapshotFile);
+
+        Assert.assertTrue(loaded.matches("user@domain.com"));
+        Assert.assertFalse(loaded.matches("other@domain.com"));
+        Assert.assertTrue(PatternListSnapshot.load(snapshotFile).get("list").matches("other@domain.com"));
+        Assert.assertEquals(1, folder.getRoot().listFiles().length);
+    }
+
+
+    /**
+     * This test makes sure a damaged snapshot is refused.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testDamagedSnapshotIsRefused() throws IOException {
+
+        File snapshotFile = folder.newFile("damaged.snapshot");
+        PatternList patternList = new PatternList(Sets.newHashSet("user@domain.com"), "@", false);
+        PatternListSnapshot.write(Collections.singletonMap("list", patternList), snapshotFile);
+
+        try (RandomAccessFile file = new RandomAccessFile(snapshotFile, "rw")) {
+            file.seek(file.length() - 1);
+            int lastByte = file.read();
+            file.seek(file.length() - 1);
+            file.write(lastByte ^ 0xff);
+        }
+
+        try {
+            PatternListSnapshot.load(snapshotFile);
+            Assert.fail("Should not load a damaged snapshot.");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("checksum"));
+        }
+    }
+
+
+    @Test(expected=IOException.class)
+    public void testNotASnapshotIsRefused() throws IOException {
+        PatternListSnapshot.load(new File("src/test/resources/email_patterns.txt"));
+    }
+
+
+    /**
+     * This test makes sure the tool builds a snapshot from a pattern text file.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testBuildFromTextFile() throws IOException {
+
+        File snapshotFile = new File(folder.getRoot(), "built.snapshot");
+
+        PatternListSnapshot.main(new String[]{snapshotFile.getPath(),
+                                              "email", "src/test/resources/email_patterns.txt", "@", "false", "STANDARD",
+                                              "http", "src/test/resources/http_patterns.txt", "-", "false", "AUTOMATON"});
+
+        Map<String,PatternList> loaded = PatternListSnapshot.load(snapshotFile);
+
+        PatternList emailList = new PatternList(ListMatcher.readPatternsFromFile(new File("src/test/resources/email_patterns.txt")), "@", false);
+        Assert.assertEquals(emailList.size(), loaded.get("email").size());
+        Assert.assertEquals(MatchingMode.AUTOMATON, loaded.get("http").getMatchingMode());
+        Assert.assertNull(loaded.get("http").getComponentDelimiter());
+    }
+}
@@ -1,155 +1,288 @@
-package com.giladam.listmatch;
-
-import java.util.Collection;
-import java.util.Set;
-
-import org.junit.Assert;
-import org.junit.Test;
-
-import com.google.common.collect.Sets;
-
-
-public class PatternListTest {
-
-    /**
-     * This test just makes sure nothing blows up if you initialize with null.
-     */
-    @Test
-    public void testNullInitializationWorks() {
-
-        PatternList pl = new PatternList(null, null, false);
-
-        Assert.assertFalse(pl.matches("Should not match"));
-    }
-
-
-    @Test
-    public void testIncompatibleEntryReturnsFalse() {
-
-        Set<String> emailPatterns = Sets.newHashSet("test@example.com",
-                                                    "test2*@example.com");
-
-        PatternList plForEmails = new PatternList(emailPatterns, "@", false);
-
-        Assert.assertFalse(plForEmails.matches("this@has@four@fields.com"));
-    }
-
-
-    @Test
-    public void testWildcardStartsWith() {
-
-        Collection<String> patterns = Sets.newHashSet("*something");
-
-        PatternList patternList = new PatternList(patterns, "", false);
-
-        String[] expectedMatches = {"anythingsomething",
-                                    "somethingsomething",
-                                    "這是中國人something"};
-
-        String[] expectedNotMatches = {"somethingsomethingelse",
-                                       "notit",
-                                       null,
-                                       ""};
-
-        TestingUtil.assertMatchingCorrectly(patternList, expectedMatches, expectedNotMatches);
-    }
-
-
-    @Test
-    public void testWildcardEndsWith() {
-
-        Collection<String> patterns = Sets.newHashSet("something*");
-
-        PatternList patternList = new PatternList(patterns, "", false);
-
-        String[] expectedMatches = {"somethinganything",
-                                    "somethingsomething",
-                                    "something這是中國人"};
-
-        String[] expectedNotMatches = {"nonesomethingsomethingelse",
-                                       "notit",
-                                       null,
-                                       ""};
-
-        TestingUtil.assertMatchingCorrectly(patternList, expectedMatches, expectedNotMatches);
-    }
-
-
-    @Test
-    public void testWildcardAlone() {
-
-        Collection<String> patterns = Sets.newHashSet("*");
-
-        PatternList patternList = new PatternList(patterns, "", false);
-
-        String[] expectedMatches = {"somethinganything",
-                                    "somethingsomething",
-                                    "something這是中國人",
-                                    ""};
-
-        String[] expectedNotMatches = {null};
-
-        TestingUtil.assertMatchingCorrectly(patternList, expectedMatches, expectedNotMatches);
-    }
-
-
-    @Test
-    public void testNoWildcardExactValue() {
-
-        Collection<String> patterns = Sets.newHashSet("這是中國人");
-
-        PatternList patternList = new PatternList(patterns, "", false);
-
-        String[] expectedMatches = {"這是中國人"};
-
-        String[] expectedNotMatches = {null,
-                                       "something else",
-                                       "這是不是中國人"};
-
-        TestingUtil.assertMatchingCorrectly(patternList, expectedMatches, expectedNotMatches);
-    }
-
-
-
-    @Test
-    public void testWildcardInMiddle() {
-
-        Collection<String> patterns = Sets.newHashSet("www.*.com");
-
-        PatternList patternList = new PatternList(patterns, "", false);
-
-        String[] expectedMatches = {"www.abc123.com",
-                                    "www.더 유니 코드.com",
-                                    "www.www.www.com"};
-
-        String[] expectedNotMatches = {"www.com",
-                                       null,
-                                       "something else",
-                                       "這是不是中國人",
-                                       "123.abc.com",
-                                       "abc.com",
-                                       "",
-                                       };
-
-        TestingUtil.assertMatchingCorrectly(patternList, expectedMatches, expectedNotMatches);
-    }
-
-
-
-    @Test
-    public void testUnicodeHandling() {
-
-        Collection<String> patterns = Sets.newHashSet("더 유니 코드.*.더 유니 코드");
-
-        PatternList patternList = new PatternList(patterns, "", false);
-
-        String[] expectedMatches = {"더 유니 코드.abc123.더 유니 코드",
-                                    "더 유니 코드.더 유니 코드.더 유니 코드"};
-
-        String[] expectedNotMatches = {"這是不是中國人.something.這是不是中國人"};
-
-        TestingUtil.assertMatchingCorrectly(patternList, expectedMatches, expectedNotMatches);
-    }
-
-
-}
+package com.giladam.listmatch;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Sets;
+
+
+public class PatternListTest {
+
+    /**
+     * This test just makes sure nothing blows up if you initialize with null.
+     */
+    @Test
+    public void testNullInitializationWorks() {
+
+        PatternList pl = new PatternList(null, null, false);
+
+        Assert.assertFalse(pl.matches("Should not match"));
+    }
+
+
+    @Test
+    public void testIncompatibleEntryReturnsFalse() {
+
+        Set<String> emailPatterns = Sets.newHashSet("test@example.com",
+                                                    "test2*@example.com");
+
+        PatternList plForEmails = new PatternList(emailPatterns, "@", false);
+
+        Assert.assertFalse(plForEmails.matches("this@has@four@fields.com"));
+    }
+
+
+    @Test
+    public void testWildcardStartsWith() {
+
+        Collection<String> patterns = Sets.newHashSet("*something");
+
+        PatternList patternList = new PatternList(patterns, "", false);
+
+        String[] expectedMatches = {"anythingsomething",
+                                    "somethingsomething",
+                                    "這是中國人something"};
+
+        String[] expectedNotMatches = {"somethingsomethingelse",
+                                       "notit",
+                                       null,
+                                       ""};
+
+        TestingUtil.assertMatchingCorrectly(patternList, expectedMatches, expectedNotMatches);
+    }
+
+
+    @Test
+    public void testWildcardEndsWith() {
+
+        Collection<String> patterns = Sets.newHashSet("something*");
+
+        PatternList patternList = new PatternList(patterns, "", false);
+
+        String[] expectedMatches = {"somethinganything",
+                                    "somethingsomething",
+                                    "something這是中國人"};
+
+        String[] expectedNotMatches = {"nonesomethingsomethingelse",
+                                       "notit",
+                                       null,
+                                       ""};
+
+        TestingUtil.assertMatchingCorrectly(patternList, expectedMatches, expectedNotMatches);
+    }
+
+
+    @Test
+    public void testWildcardAlone() {
+
+        Collection<String> patterns = Sets.newHashSet("*");
+
+        PatternList patternList = new PatternList(patterns, "", false);
+
+        String[] expectedMatches = {"somethinganything",
+                                    "somethingsomething",
+                                    "something這是中國人",
+                                    ""};
+
+        String[] expectedNotMatches = {null};
+
+        TestingUtil.assertMatchingCorrectly(patternList, expectedMatches, expectedNotMatches);
+    }
+
+
+    @Test
+    public void testNoWildcardExactValue() {
+
+        Collection<String> patterns = Sets.newHashSet("這是中國人");
+
+        PatternList patternList = new PatternList(patterns, "", false);
+
+        String[] expectedMatches = {"這是中國人"};
+
+        String[] expectedNotMatches = {null,
+                                       "something else",
+                                       "這是不是中國人"};
+
+        TestingUtil.assertMatchingCorrectly(patternList, expectedMatches, expectedNotMatches);
+    }
+
+
+
+    @Test
+    public void testWildcardInMiddle() {
+
+        Collection<String> patterns = Sets.newHashSet("www.*.com");
+
+        PatternList patternList = new PatternList(patterns, "", false);
+
+        String[] expectedMatches = {"www.abc123.com",
+                                    "www.더 유니 코드.com",
+                                    "www.www.www.com"};
+
+        String[] expectedNotMatches = {"www.com",
+                                       null,
+                                       "something else",
+                                       "這是不是中國人",
+                                       "123.abc.com",
+                                       "abc.com",
+                                       "",
+                                       };
+
+        TestingUtil.assertMatchingCorrectly(patternList, expectedMatches, expectedNotMatches);
+    }
+
+
+
+    @Test
+    public void testUnicodeHandling() {
+
+        Collection<String> patterns = Sets.newHashSet("더 유니 코드.*.더 유니 코드");
+
+        PatternList patternList = new PatternList(patterns, "", false);
+
+        String[] expectedMatches = {"더 유니 코드.abc123.더 유니 코드",
+                                    "더 유니 코드.더 유니 코드.더 유니 코드"};
+
+        String[] expectedNotMatches = {"這是不是中國人.something.這是不是中國人"};
+
+        TestingUtil.assertMatchingCorrectly(patternList, expectedMatches, expectedNotMatches);
+    }
+
+
+    /**
+     * This test makes sure a batch checked on a pool gets the same answers as checking one value at a time,
+     * with enough values to actually be split up.
+     */
+    @Test
+    public void testParallelBatchMatchesSameAsOneAtATime() {
+
+        PatternList patternList = new PatternList(Sets.newHashSet("user1@example.com",
+                                                                  "*7@example.com",
+                                                                  "user2*@*.example.com"), "@", false);
+
+        List<String> values = new ArrayList<>();
+        for (int i=0; i<20000; i++) {
+            values.add((i % 10 == 0) ? null : "USER" + i + "@" + ((i % 3 == 0) ? "mail." : "") + "example.com");
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            BitSet results = patternList.matchesAll(values, pool);
+
+            int matchCount = 0;
+            for (int i=0; i<values.size(); i++) {
+                Assert.assertEquals("Batch result for " + values.get(i), patternList.matches(values.get(i)), results.get(i));
+                matchCount += results.get(i) ? 1 : 0;
+            }
+
+            Assert.assertTrue(matchCount > 0);
+            Assert.assertEquals(results, patternList.matchesAll(values));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+
+    /**
+     * This test makes sure match() reports how a value matched and the normalized pattern that did it, and
+     * agrees with matches(), also on a list with a result cache.
+     */
+    @Test
+    public void testMatchReportsPattern() {
+
+        Set<String> patterns = Sets.newHashSet("user@domain.com", "*@anylocalpart.com", "startswith**@*.domain.com");
+        PatternList[] patternLists = {new PatternList(patterns, "@", false),
+                                      new PatternList(patterns, "@", false, MatchingMode.STANDARD, 10)};
+
+        for (PatternList patternList : patternLists) {
+            for (int i=0; i<2; i++) {
+                MatchResult exact = patternList.match("User@Domain.com");
+                Assert.assertEquals(MatchOutcome.EXACT, exact.getOutcome());
+                Assert.assertEquals("USER@DOMAIN.COM", exact.getPattern());
+                Assert.assertNull(exact.getPatternEntry());
+
+                MatchResult wildcard = patternList.match("startswithmore@mail.domain.com");
+                Assert.assertTrue(wildcard.matched());
+                Assert.assertEquals(MatchOutcome.WILDCARD, wildcard.getOutcome());
+                Assert.assertEquals("STARTSWITH*@*.DOMAIN.COM", wildcard.getPattern());
+                Assert.assertEquals(new PatternListEntry("STARTSWITH*@*.DOMAIN.COM", "@"), wildcard.getPatternEntry());
+                Assert.assertTrue(patternList.matches("startswithmore@mail.domain.com"));
+
+                Assert.assertSame(MatchResult.MISS, patternList.match("nobody@nowhere.com"));
+                Assert.assertSame(MatchResult.MISS, patternList.match(null));
+                Assert.assertNull(MatchResult.MISS.getListName());
+            }
+        }
+
+        MatchResult everything = new PatternList(Sets.newHashSet("*"), "@", false).match("anything");
+        Assert.assertEquals(MatchOutcome.MATCH_ALL, everything.getOutcome());
+        Assert.assertEquals(PatternList.WILDCARD, everything.getPattern());
+    }
+
+
+    @Test
+    public void testBytesAndCharSequencesMatchLikeStrings() {
+
+        Charset utf8 = Charset.forName("UTF-8");
+
+        Collection<String> patterns = Sets.newHashSet("user@domain.com",
+                                                      "*@anylocalpart.com",
+                                                      "startswith*@*.domain.com",
+                                                      "münchen@*.de",
+                                                      "*@straße.de");
+
+        String[] values = {"user@domain.com", "USER@Domain.com", "x@anylocalpart.com", "startsWithMore@mail.DOMAIN.com",
+                           "München@example.de", "MÜNCHEN@example.de", "a@STRASSE.de", "a@straße.de",
+                           "user@domain.com.au", "@", "", "nobody@nowhere.com"};
+
+        for (boolean caseSensitive : new boolean[]{false, true}) {
+
+            PatternList patternList = new PatternList(patterns, "@", caseSensitive);
+
+            for (String value : values) {
+
+                boolean expected = patternList.matches(value);
+                byte[] bytes = value.getBytes(utf8);
+
+                //padded on both sides, so the offset and length have to be right:
+                byte[] padded = new byte[bytes.length + 4];
+                padded[0] = 'a';
+                padded[1] = '@';
+                System.arraycopy(bytes, 0, padded, 2, bytes.length);
+                padded[padded.length - 1] = (byte) 0xC3;
+
+                ByteBuffer direct = ByteBuffer.allocateDirect(padded.length);
+                direct.put(padded);
+                direct.position(2).limit(2 + bytes.length);
+
+                ByteBuffer heap = ByteBuffer.wrap(padded, 2, bytes.length).slice();
+
+                Assert.assertEquals(value, expected, patternList.matches(new StringBuilder(value)));
+                Assert.assertEquals(value, expected, patternList.matchesUtf8(padded, 2, bytes.length));
+                Assert.assertEquals(value, expected, patternList.matchesUtf8(direct));
+                Assert.assertEquals(value, expected, patternList.matchesUtf8(heap));
+
+                Assert.assertEquals(2, direct.position());
+                Assert.assertEquals(0, heap.position());
+            }
+
+            Assert.assertFalse(patternList.matchesUtf8(null, 0, 0));
+            Assert.assertFalse(patternList.matchesUtf8((ByteBuffer) null));
+        }
+    }
+
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testBytesOutOfBounds() {
+        new PatternList(Sets.newHashSet("*"), "@", false).matchesUtf8(new byte[4], 2, 3);
+    }
+}
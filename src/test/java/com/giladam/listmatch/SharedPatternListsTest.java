@@ -0,0 +1,205 @@
+package com.giladam.listmatch;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.Sets;
+
+
+public class SharedPatternListsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+
+    /**
+     * This test makes sure each published generation is picked up once, replaces the lists, and that old
+     * generations are cleaned up.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testPublishedGenerationsAreLoaded() throws IOException {
+
+        File directory = new File(folder.getRoot(), "shared");
+        ListMatcher listMatcher = new ListMatcher(Collections.<String,PatternList>emptyMap());
+
+        try (SharedPatternLists sharedLists = new SharedPatternLists(directory, listMatcher, null)) {
+
+            Assert.assertFalse(sharedLists.update());
+            Assert.assertEquals(0, sharedLists.getGeneration());
+
+            Assert.assertEquals(1, SharedPatternLists.publish(directory, lists("user@domain.com", "*@anylocalpart.com")));
+            Assert.assertTrue(sharedLists.update());
+            Assert.assertEquals(1, sharedLists.getGeneration());
+
+            Assert.assertTrue(listMatcher.matchesList("email", "USER@domain.com"));
+            Assert.assertTrue(listMatcher.matchesList("email", "someone@anylocalpart.com"));
+            Assert.assertFalse(listMatcher.matchesList("email", "other@domain.com"));
+
+            Assert.assertEquals(2, SharedPatternLists.publish(directory, lists("other@domain.com")));
+            Assert.assertTrue(sharedLists.update());
+            Assert.assertFalse(sharedLists.update());
+            Assert.assertEquals(2, sharedLists.getGeneration());
+
+            Assert.assertFalse(listMatcher.matchesList("email", "user@domain.com"));
+            Assert.assertTrue(listMatcher.matchesList("email", "other@domain.com"));
+
+            Assert.assertEquals(3, SharedPatternLists.publish(directory, lists("user@domain.com")));
+            Assert.assertFalse(SharedPatternLists.generationFile(directory, 1).exists());
+            Assert.assertTrue(SharedPatternLists.generationFile(directory, 2).exists());
+            Assert.assertTrue(SharedPatternLists.generationFile(directory, 3).exists());
+
+            //the reader is still on generation 2, which it keeps using until it updates:
+            Assert.assertTrue(listMatcher.matchesList("email", "other@domain.com"));
+            Assert.assertTrue(sharedLists.update());
+            Assert.assertTrue(listMatcher.matchesList("email", "user@domain.com"));
+        }
+    }
+
+
+    /**
+     * This test makes sure a list that a new generation no longer has is removed, while lists put into the
+     * ListMatcher some other way are kept.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testDroppedListsAreRemoved() throws IOException {
+
+        File directory = new File(folder.getRoot(), "shared");
+        ListMatcher listMatcher = new ListMatcher(Collections.singletonMap("local", new PatternList(Sets.newHashSet("10.0.0.1"), ".", false)));
+
+        try (SharedPatternLists sharedLists = new SharedPatternLists(directory, listMatcher, null)) {
+
+            Map<String,PatternList> listByName = new HashMap<>(lists("user@domain.com"));
+            listByName.put("ip", new PatternList(Sets.newHashSet("10.0.0.*"), ".", false));
+            SharedPatternLists.publish(directory, listByName);
+            Assert.assertTrue(sharedLists.update());
+            Assert.assertEquals(Sets.newHashSet("email", "ip", "local"), listMatcher.getLists().keySet());
+
+            SharedPatternLists.publish(directory, lists("other@domain.com"));
+            Assert.assertTrue(sharedLists.update());
+            Assert.assertEquals(Sets.newHashSet("email", "local"), listMatcher.getLists().keySet());
+            Assert.assertTrue(listMatcher.matchesList("email", "other@domain.com"));
+        }
+    }
+
+
+    /**
+     * This test makes sure a listener that throws after a generation was loaded doesn't make it look like
+     * the generation failed to load.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testThrowingListenerDoesNotFailTheUpdate() throws IOException {
+
+        File directory = new File(folder.getRoot(), "shared");
+        ListMatcher listMatcher = new ListMatcher(Collections.<String,PatternList>emptyMap());
+        final AtomicInteger failures = new AtomicInteger();
+
+        ReloadListener listener = new ReloadListener() {
+            @Override
+            public void reloaded(String listName, File patternsFile, int patternCount, long durationMillis) {
+                throw new IllegalStateException("listener");
+            }
+
+            @Override
+            public void reloadFailed(String listName, File patternsFile, Exception cause) {
+                failures.incrementAndGet();
+            }
+        };
+
+        try (SharedPatternLists sharedLists = new SharedPatternLists(directory, listMatcher, listener)) {
+
+            SharedPatternLists.publish(directory, lists("user@domain.com"));
+            sharedLists.checkForUpdate();
+
+            Assert.assertEquals(1, sharedLists.getGeneration());
+            Assert.assertEquals(0, failures.get());
+            Assert.assertTrue(listMatcher.matchesList("email", "user@domain.com"));
+        }
+    }
+
+
+    /**
+     * This test makes sure lists published by another JVM are picked up by the background thread.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testGenerationsPublishedByAnotherProcessArePolled() throws Exception {
+
+        File directory = new File(folder.getRoot(), "shared");
+        ListMatcher listMatcher = new ListMatcher(Collections.<String,PatternList>emptyMap());
+
+        try (SharedPatternLists sharedLists = new SharedPatternLists(directory, listMatcher, null)) {
+
+            sharedLists.start(10, TimeUnit.MILLISECONDS);
+
+            publishFromAnotherProcess(directory, "user@domain.com", "*@anylocalpart.com");
+            awaitGeneration(sharedLists, 1);
+
+            Assert.assertTrue(listMatcher.matchesList("email", "user@domain.com"));
+            Assert.assertTrue(listMatcher.matchesList("email", "someone@anylocalpart.com"));
+
+            publishFromAnotherProcess(directory, "other@domain.com");
+            awaitGeneration(sharedLists, 2);
+
+            Assert.assertFalse(listMatcher.matchesList("email", "user@domain.com"));
+            Assert.assertTrue(listMatcher.matchesList("email", "other@domain.com"));
+        }
+    }
+
+
+    private static Map<String,PatternList> lists(String... patterns) {
+        return Collections.singletonMap("email", new PatternList(Sets.newHashSet(patterns), "@", false));
+    }
+
+
+    private void publishFromAnotherProcess(File directory, String... patterns) throws Exception {
+
+        File patternsFile = folder.newFile();
+        try (PrintWriter writer = new PrintWriter(patternsFile, "UTF-8")) {
+            for (String pattern : patterns) {
+                writer.println(pattern);
+            }
+        }
+
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<String> command = Arrays.asList(java, "-cp", System.getProperty("java.class.path"),
+                                             SharedPatternLists.class.getName(), directory.getPath(),
+                                             "email", patternsFile.getPath(), "@", "false", "STANDARD");
+
+        Process process = new ProcessBuilder(command).redirectErrorStream(true)
+                                                     .redirectOutput(folder.newFile())
+                                                     .start();
+
+        Assert.assertEquals(0, process.waitFor());
+    }
+
+
+    private static void awaitGeneration(SharedPatternLists sharedLists, long generation) throws InterruptedException {
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (sharedLists.getGeneration() != generation && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        Assert.assertEquals(generation, sharedLists.getGeneration());
+    }
+}
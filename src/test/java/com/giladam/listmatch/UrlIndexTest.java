@@ -0,0 +1,144 @@
+package com.giladam.listmatch;
+
+import java.util.Collection;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Sets;
+
+
+public class UrlIndexTest {
+
+    @Test
+    public void testHostAndPathPatterns() {
+
+        Collection<String> patterns = Sets.newHashSet("http://*.edu/*",
+                                                      "http://www.example.com/allowed/*",
+                                                      "https://www.example.com/specific.html",
+                                                      "*://*.example.org/public/*/index.html",
+                                                      "http*://static.example.net*/*",
+                                                      "ftp://files.example.com");
+
+        PatternList patternList = new PatternList(patterns, null, false, MatchingMode.URL);
+
+        String[] expectedMatches = {"http://www.example.edu/",
+                                    "http://cs.example.edu/courses/index.html?term=fall",
+                                    "http://www.example.com/allowed/url",
+                                    "HTTP://WWW.EXAMPLE.COM/allowed/path/here?withParams=true&more=here",
+                                    "https://www.example.com/specific.html",
+                                    "ftp://a.b.example.org/public/docs/index.html",
+                                    "https://static.example.net:8443/app.js",
+                                    "httpx://static.example.net/",
+                                    "ftp://files.example.com"};
+
+        String[] expectedNotMatches = {"http://www.example.edu.au/",
+                                       "http://example.com/x.edu/",
+                                       "https://www.example.edu/",
+                                       "http://www.example.com/allowed",
+                                       "http://www.example.com/notallowed.html",
+                                       "https://www.example.com/allowed.html",
+                                       "https://www.example.com/specific.html?x=1",
+                                       "ftp://example.org/public/docs/index.html",
+                                       "ftp://a.example.org/private/docs/index.html",
+                                       "http://static.example.net",
+                                       "ftp://files.example.com/",
+                                       "",
+                                       null};
+
+        TestingUtil.assertMatchingCorrectly(patternList, expectedMatches, expectedNotMatches);
+
+        Assert.assertEquals("HTTP://WWW.EXAMPLE.COM/ALLOWED/*", patternList.match("http://www.example.com/allowed/x").getPattern());
+    }
+
+
+    @Test
+    public void testPatternsAndValuesThatAreNotUrlsMatchAsText() {
+
+        Collection<String> patterns = Sets.newHashSet("*/robots.txt",
+                                                      "*www.*.com*",
+                                                      "http://www.example.com/*");
+
+        PatternList patternList = new PatternList(patterns, null, false, MatchingMode.URL);
+
+        String[] expectedMatches = {"http://www.examples.com/something/nested/deep/robots.txt",
+                                    "https://www.examples.com/robots.txt",
+                                    "ftp://www.test.com/anythingok/something.html",
+                                    "www.somethingelse.com",
+                                    "www.example.edu/robots.txt",
+                                    "http://www.example.com/",
+                                    "not a url http://www.example.com/"};
+
+        String[] expectedNotMatches = {"https://www.examples.org/robots.txt.bak",
+                                       "http://www.example.edu/anythingok/something.html",
+                                       "notallowed.somethingelse.com",
+                                       "http:/www.example.org"};
+
+        TestingUtil.assertMatchingCorrectly(patternList, expectedMatches, expectedNotMatches);
+    }
+
+
+    @Test
+    public void testSameResultsAsStandardForUrlPatternTests() {
+
+        Collection<String> patterns = Sets.newHashSet("http://www.example.com/allowed/*",
+                                                      "https://www.example.com/specific.html",
+                                                      "*://www.anyprotocol.com",
+                                                      "http*://www.example-https-or-http.com",
+                                                      "http://www.*.com/*/something.html");
+
+        PatternList urlList = new PatternList(patterns, null, false, MatchingMode.URL);
+        PatternList standardList = new PatternList(patterns, null, false);
+
+        String[] values = {"http://www.example.com/allowed/url",
+                           "http://www.example.com/allowed/path/here?withParams=true&more=here",
+                           "https://www.example.com/specific.html",
+                           "http://www.example.com/notallowed.html",
+                           "https://www.example.com/allowed.html",
+                           "ftp://www.anyprotocol.com",
+                           "http://www.notexample.com",
+                           "httpabcdefg://www.example-https-or-http.com",
+                           "httpabc-//www.example-https-or-http.com",
+                           "http://www.test2.com/2/something.html",
+                           "http://hello.example.com/anythingok/something.html",
+                           "http://www.example.com/anythingok/notsomething.html",
+                           "10.100.1.0",
+                           "test@example.com"};
+
+        for (String value : values) {
+            Assert.assertEquals(value, standardList.matches(value), urlList.matches(value));
+        }
+
+        //allow-list patterns whose host ends in a wildcard cover the path too:
+        Collection<String> allowPatterns = Sets.newHashSet("http://*", "https://*.google.com*", "ftp://files.*");
+
+        PatternList urlAllowList = new PatternList(allowPatterns, null, false, MatchingMode.URL);
+        PatternList standardAllowList = new PatternList(allowPatterns, null, false);
+
+        String[] allowValues = {"http://example.com/page",
+                                "http://example.com",
+                                "https://www.google.com/search?q=x",
+                                "https://mail.google.com",
+                                "https://google.com/",
+                                "https://evil.com/x.google.com",
+                                "ftp://files.example.com/pub/file.txt",
+                                "ftp://www.example.com/files.txt"};
+
+        for (String value : allowValues) {
+            Assert.assertEquals(value, standardAllowList.matches(value), urlAllowList.matches(value));
+        }
+
+        Assert.assertTrue(urlAllowList.matches("http://example.com/page"));
+        Assert.assertTrue(urlAllowList.matches("https://www.google.com/search"));
+    }
+
+
+    @Test
+    public void testWithDelimiterIsStandard() {
+
+        PatternList patternList = new PatternList(Sets.newHashSet("*@*.example.com"), "@", false, MatchingMode.URL);
+
+        Assert.assertTrue(patternList.matches("someone@mail.example.com"));
+        Assert.assertFalse(patternList.matches("someone@example.org"));
+    }
+}
@@ -0,0 +1,102 @@
+package com.giladam.listmatch;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Sets;
+
+
+public class WildcardAutomatonTest {
+
+    @Test
+    public void testEmailPatternsWithAutomaton() {
+
+        Collection<String> patterns = Sets.newHashSet("*@anylocalpart.com",
+                                                      "startswith*@domain.com",
+                                                      "someuser@*",
+                                                      "user@domain.com");
+
+        PatternList patternList = new PatternList(patterns, "@", false, MatchingMode.AUTOMATON);
+
+        String[] expectedMatches = {"something@anylocalpart.com",
+                                    "startswith.has.dots@domain.com",
+                                    "someuser@example.with.dots.com",
+                                    "USER@domain.com"};
+
+        String[] expectedNotMatches = {"something@notjustanylocalpart.com",
+                                       "notstartswith@domain.com",
+                                       "this@has@four@fields.com",
+                                       "anylocalpart.com",
+                                       "",
+                                       null};
+
+        TestingUtil.assertMatchingCorrectly(patternList, expectedMatches, expectedNotMatches);
+    }
+
+
+    @Test
+    public void testWildcardsDoNotCrossComponents() {
+
+        PatternList patternList = new PatternList(Sets.newHashSet("a*b"), "@", true, MatchingMode.AUTOMATON);
+
+        TestingUtil.assertMatchingCorrectly(patternList, new String[]{"ab", "axxb"}, new String[]{"a@b", "a@xb", "axxbc"});
+    }
+
+
+    /**
+     * Makes sure the automaton finds exactly what the standard index finds, including after its state cache
+     * has been flushed several times because of a tiny budget.
+     */
+    @Test
+    public void testAutomatonAgreesWithIndex() {
+
+        Random random = new Random(7);
+
+        List<PatternListEntry> entries = new ArrayList<>();
+        while (entries.size() < 300) {
+            String pattern = randomString(random, true);
+
+            //only patterns with wildcards end up being evaluated by the WildcardMatcher:
+            if (pattern.contains(PatternList.WILDCARD)) {
+                entries.add(new PatternListEntry(pattern, "@"));
+            }
+        }
+
+        WildcardIndex index = new WildcardIndex(entries);
+        WildcardAutomaton automaton = new WildcardAutomaton(entries, 50 * 1024);
+
+        for (int i=0; i<5000; i++) {
+
+            MatchValue value = MatchValue.of(randomString(random, false), "@", true);
+
+            Assert.assertEquals("Unexpected result for " + value,
+                                index.findMatch(value) != null,
+                                automaton.findMatch(value) != null);
+        }
+    }
+
+
+    private static String randomString(Random random, boolean allowWildcards) {
+
+        StringBuilder sb = new StringBuilder();
+        int length = 1 + random.nextInt(8);
+
+        for (int i=0; i<length; i++) {
+            int pick = random.nextInt(10);
+            if (allowWildcards && pick < 2) {
+                sb.append(PatternList.WILDCARD_CHAR);
+            } else if (pick == 2) {
+                sb.append('@');
+            } else {
+                sb.append((char) ('A' + random.nextInt(3)));
+            }
+        }
+
+        return sb.toString().replaceAll("[*]+", "*");
+    }
+}
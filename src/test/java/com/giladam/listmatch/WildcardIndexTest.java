@@ -0,0 +1,134 @@
+package com.giladam.listmatch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+
+public class WildcardIndexTest {
+
+    private static PatternListEntry entry(String pattern) {
+        return new PatternListEntry(pattern, null);
+    }
+
+
+    private static MatchValue value(String value) {
+        return MatchValue.of(value, "@", true);
+    }
+
+
+    @Test
+    public void testPrefixSuffixAndUnindexedPatterns() {
+
+        List<PatternListEntry> entries = Lists.newArrayList(entry("HTTP://WWW.EXAMPLE.COM/*"),
+                                                            entry("*/ROBOTS.TXT"),
+                                                            entry("*WWW.*.EDU*"));
+
+        WildcardIndex index = new WildcardIndex(entries);
+
+        Assert.assertEquals(entries.get(0), index.findMatch(value("HTTP://WWW.EXAMPLE.COM/ANYTHING")));
+        Assert.assertEquals(entries.get(1), index.findMatch(value("FTP://HOST/ROBOTS.TXT")));
+        Assert.assertEquals(entries.get(2), index.findMatch(value("HTTP://WWW.SCHOOL.EDU/")));
+        Assert.assertNull(index.findMatch(value("HTTP://WWW.EXAMPLE.ORG/ROBOTS.TXT.BAK")));
+    }
+
+
+    /**
+     * Makes sure the index finds exactly what checking every pattern one by one would find.
+     */
+    @Test
+    public void testIndexAgreesWithFullScan() {
+
+        Random random = new Random(42);
+
+        List<PatternListEntry> entries = new ArrayList<>();
+        for (int i=0; i<500; i++) {
+            entries.add(entry(randomString(random, true)));
+        }
+
+        WildcardIndex index = new WildcardIndex(entries);
+
+        for (int i=0; i<5000; i++) {
+
+            MatchValue value = value(randomString(random, false));
+
+            boolean expected = false;
+            for (PatternListEntry entry : entries) {
+                expected |= Wildcards.wildcardMatch(value, 0, value.length(), entry.getComponents()[0]);
+            }
+
+            Assert.assertEquals("Unexpected result for " + value, expected, index.findMatch(value) != null);
+        }
+    }
+
+
+    @Test
+    public void testMultiComponentPatternsHashedOnLiteralComponent() {
+
+        List<PatternListEntry> entries = Lists.newArrayList(new PatternListEntry("*@EXAMPLE.COM", "@"),
+                                                            new PatternListEntry("SALES*@DOMAIN.COM", "@"),
+                                                            new PatternListEntry("ADMIN@*", "@"),
+                                                            new PatternListEntry("*@*.EDU", "@"));
+
+        WildcardIndex index = new WildcardIndex(entries);
+
+        Assert.assertEquals(entries.get(0), index.findMatch(value("X@EXAMPLE.COM")));
+        Assert.assertEquals(entries.get(1), index.findMatch(value("SALES.EAST@DOMAIN.COM")));
+        Assert.assertEquals(entries.get(2), index.findMatch(value("ADMIN@ANYWHERE.ORG")));
+        Assert.assertEquals(entries.get(3), index.findMatch(value("STUDENT@SCHOOL.EDU")));
+        Assert.assertNull(index.findMatch(value("MARKETING@DOMAIN.COM")));
+        Assert.assertNull(index.findMatch(value("X@EXAMPLE.COM@EXTRA")));
+    }
+
+
+    /**
+     * Makes sure hashing multi-component patterns on a literal component finds exactly what checking every
+     * pattern one by one would find.
+     */
+    @Test
+    public void testPartitionedPatternsAgreeWithFullScan() {
+
+        Random random = new Random(11);
+
+        List<PatternListEntry> entries = new ArrayList<>();
+        for (int i=0; i<500; i++) {
+            entries.add(new PatternListEntry(randomString(random, true) + "@" + randomString(random, true), "@"));
+        }
+
+        WildcardIndex index = new WildcardIndex(entries);
+
+        for (int i=0; i<5000; i++) {
+
+            MatchValue value = value(randomString(random, false) + "@" + randomString(random, false));
+
+            boolean expected = false;
+            for (PatternListEntry entry : entries) {
+                expected |= Wildcards.componentsMatch(value, entry.getComponents());
+            }
+
+            Assert.assertEquals("Unexpected result for " + value, expected, index.findMatch(value) != null);
+        }
+    }
+
+
+    private static String randomString(Random random, boolean allowWildcards) {
+
+        StringBuilder sb = new StringBuilder();
+        int length = 1 + random.nextInt(6);
+
+        for (int i=0; i<length; i++) {
+            if (allowWildcards && random.nextInt(4) == 0) {
+                sb.append(PatternList.WILDCARD_CHAR);
+            } else {
+                sb.append((char) ('A' + random.nextInt(3)));
+            }
+        }
+
+        return sb.toString().replaceAll("[*]+", "*");
+    }
+}